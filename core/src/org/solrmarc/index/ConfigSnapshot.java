@@ -0,0 +1,331 @@
+package org.solrmarc.index;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+import org.solrmarc.tools.PropertiesUtils;
+
+/**
+ * The fully resolved configuration of a SolrIndexer:  its parsed index
+ *  specifications, its translation maps and the lists (such as location
+ *  lists) loaded with SolrIndexer.loadPropertiesSet, together with the
+ *  length and CRC32 checksum of every file they were read from.
+ *
+ * The first run writes the snapshot once the indexer is configured;  later
+ *  runs with the same indexer class, index properties and search path load
+ *  it instead of reading and parsing the properties files again, as long as
+ *  every file it was made from is still found on the search path with the
+ *  same contents.  Otherwise the snapshot is ignored and written again.
+ *
+ * The snapshot is a compact binary file, followed by a checksum of its
+ *  contents so a partly written or damaged snapshot is never used.
+ */
+final class ConfigSnapshot
+{
+    private static Logger logger = Logger.getLogger(ConfigSnapshot.class.getName());
+
+    private static final int MAGIC = 0x534d4353;   // "SMCS"
+    /** changed whenever the contents of the snapshot or their meaning change */
+    private static final int VERSION = 1;
+
+    /** what the indexer was configured from:  its class, index properties and search path */
+    private final String configKey;
+    /** length and checksum of each file read, by the name it was looked up with */
+    private final Map<String, long[]> sources = new LinkedHashMap<String, long[]>();
+    final Map<String, String[]> fieldMap = new LinkedHashMap<String, String[]>();
+    final Map<String, Map<String, String>> transMaps = new LinkedHashMap<String, Map<String, String>>();
+    final Map<String, Set<String>> propertySets = new LinkedHashMap<String, Set<String>>();
+
+    private ConfigSnapshot(String configKey)
+    {
+        this.configKey = configKey;
+    }
+
+    /**
+     * start recording the configuration of an indexer
+     */
+    static ConfigSnapshot record(String indexerClassName, String indexingPropsFile, String propertyDirs[])
+    {
+        return new ConfigSnapshot(configKey(indexerClassName, indexingPropsFile, propertyDirs));
+    }
+
+    private static String configKey(String indexerClassName, String indexingPropsFile, String propertyDirs[])
+    {
+        StringBuilder key = new StringBuilder(indexerClassName).append('|').append(indexingPropsFile);
+        if (propertyDirs != null)
+            for (String dir : propertyDirs)
+                key.append('|').append(dir);
+        return key.toString();
+    }
+
+    /**
+     * read a file from the search path, noting its length and checksum
+     * @return the contents of the file
+     */
+    byte[] readSource(String propertyDirs[], String fileName)
+    {
+        byte contents[] = readFile(propertyDirs, fileName);
+        sources.put(fileName, new long[] { contents.length, checksum(contents) });
+        return contents;
+    }
+
+    /**
+     * read a file from the search path, as PropertiesUtils.loadProperties
+     *  finds it
+     */
+    static byte[] readFile(String propertyDirs[], String fileName)
+    {
+        InputStream in = PropertiesUtils.getPropertyFileInputStream(propertyDirs, fileName);
+        try
+        {
+            try
+            {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte buffer[] = new byte[8192];
+                int length;
+                while ((length = in.read(buffer)) != -1)
+                    out.write(buffer, 0, length);
+                return out.toByteArray();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Unable to read properties file: " + fileName, e);
+        }
+    }
+
+    private static long checksum(byte contents[])
+    {
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+
+    /**
+     * @return the snapshot of an indexer's configuration in a file, or null if
+     *  there is none, or it is for a different configuration, or any of the
+     *  files it was made from have changed
+     */
+    static ConfigSnapshot load(File snapshotFile, String indexerClassName, String indexingPropsFile, String propertyDirs[])
+    {
+        if (!snapshotFile.isFile())
+            return null;
+        ConfigSnapshot snapshot;
+        try
+        {
+            snapshot = read(snapshotFile);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Ignoring unreadable configuration snapshot " + snapshotFile + " -- " + e.getMessage());
+            return null;
+        }
+        if (snapshot == null)
+        {
+            logger.info("Ignoring configuration snapshot " + snapshotFile + " written by another version");
+            return null;
+        }
+        if (!snapshot.configKey.equals(configKey(indexerClassName, indexingPropsFile, propertyDirs)))
+        {
+            logger.info("Ignoring configuration snapshot " + snapshotFile + " of a different configuration");
+            return null;
+        }
+        for (Map.Entry<String, long[]> source : snapshot.sources.entrySet())
+        {
+            byte contents[];
+            try
+            {
+                contents = readFile(propertyDirs, source.getKey());
+            }
+            catch (IllegalArgumentException e)
+            {
+                logger.info("Ignoring configuration snapshot " + snapshotFile + ": " + source.getKey() + " is gone");
+                return null;
+            }
+            if (contents.length != source.getValue()[0] || checksum(contents) != source.getValue()[1])
+            {
+                logger.info("Ignoring configuration snapshot " + snapshotFile + ": " + source.getKey() + " has changed");
+                return null;
+            }
+        }
+        logger.info("Loaded indexing configuration from snapshot " + snapshotFile);
+        return snapshot;
+    }
+
+    /**
+     * @return the snapshot in the file, or null if it was written by another
+     *  version
+     */
+    private static ConfigSnapshot read(File snapshotFile)
+            throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+        try
+        {
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a configuration snapshot");
+            if (in.readInt() != VERSION)
+                return null;
+            int length = in.readInt();
+            if (length < 0 || length > snapshotFile.length())
+                throw new IOException("truncated");
+            byte body[] = new byte[length];
+            in.readFully(body);
+            if (in.readLong() != checksum(body))
+                throw new IOException("checksum mismatch");
+            return readBody(new DataInputStream(new ByteArrayInputStream(body)));
+        }
+        catch (EOFException e)
+        {
+            throw new IOException("truncated");
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static ConfigSnapshot readBody(DataInputStream in)
+            throws IOException
+    {
+        ConfigSnapshot snapshot = new ConfigSnapshot(readString(in));
+        for (int i = in.readInt(); i > 0; i--)
+            snapshot.sources.put(readString(in), new long[] { in.readLong(), in.readLong() });
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            String name = readString(in);
+            String fieldDef[] = new String[in.readInt()];
+            for (int j = 0; j < fieldDef.length; j++)
+                fieldDef[j] = readString(in);
+            snapshot.fieldMap.put(name, fieldDef);
+        }
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            String name = readString(in);
+            Map<String, String> entries = new LinkedHashMap<String, String>();
+            for (int j = in.readInt(); j > 0; j--)
+                entries.put(readString(in), readString(in));
+            snapshot.transMaps.put(name, entries);
+        }
+        for (int i = in.readInt(); i > 0; i--)
+        {
+            String name = readString(in);
+            Set<String> values = new LinkedHashSet<String>();
+            for (int j = in.readInt(); j > 0; j--)
+                values.add(readString(in));
+            snapshot.propertySets.put(name, values);
+        }
+        return snapshot;
+    }
+
+    /**
+     * write the snapshot to a temporary file and rename it, so another
+     *  indexing run never reads a partly written snapshot
+     */
+    void write(File snapshotFile)
+    {
+        File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+        try
+        {
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            writeBody(new DataOutputStream(bodyBytes));
+            byte body[] = bodyBytes.toByteArray();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(body.length);
+                out.write(body);
+                out.writeLong(checksum(body));
+            }
+            finally
+            {
+                out.close();
+            }
+            if (!tmpFile.renameTo(snapshotFile) && !(snapshotFile.delete() && tmpFile.renameTo(snapshotFile)))
+                throw new IOException("unable to rename " + tmpFile);
+            logger.info("Wrote indexing configuration snapshot " + snapshotFile);
+        }
+        catch (IOException e)
+        {
+            tmpFile.delete();
+            logger.warn("Unable to write configuration snapshot " + snapshotFile + " -- " + e.getMessage());
+        }
+    }
+
+    private void writeBody(DataOutputStream out)
+            throws IOException
+    {
+        writeString(out, configKey);
+        out.writeInt(sources.size());
+        for (Map.Entry<String, long[]> source : sources.entrySet())
+        {
+            writeString(out, source.getKey());
+            out.writeLong(source.getValue()[0]);
+            out.writeLong(source.getValue()[1]);
+        }
+        out.writeInt(fieldMap.size());
+        for (Map.Entry<String, String[]> field : fieldMap.entrySet())
+        {
+            writeString(out, field.getKey());
+            out.writeInt(field.getValue().length);
+            for (String value : field.getValue())
+                writeString(out, value);
+        }
+        out.writeInt(transMaps.size());
+        for (Map.Entry<String, Map<String, String>> transMap : transMaps.entrySet())
+        {
+            writeString(out, transMap.getKey());
+            out.writeInt(transMap.getValue().size());
+            for (Map.Entry<String, String> entry : transMap.getValue().entrySet())
+            {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+        out.writeInt(propertySets.size());
+        for (Map.Entry<String, Set<String>> set : propertySets.entrySet())
+        {
+            writeString(out, set.getKey());
+            out.writeInt(set.getValue().size());
+            for (String value : set.getValue())
+                writeString(out, value);
+        }
+        out.flush();
+    }
+
+    /**
+     * write a string that may be null, as its length in UTF-8 bytes (-1 for
+     *  null) and the bytes, since DataOutput.writeUTF is limited to 64K
+     */
+    private static void writeString(DataOutputStream out, String value)
+            throws IOException
+    {
+        if (value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte bytes[] = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in)
+            throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte bytes[] = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
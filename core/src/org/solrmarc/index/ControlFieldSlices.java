@@ -0,0 +1,102 @@
+package org.solrmarc.index;
+
+import java.util.*;
+
+import org.marc4j.marc.ControlField;
+import org.solrmarc.tools.Utils;
+
+/**
+ * The simple parts wanting one control field tag, grouped by the character
+ *  positions they want, so the value of each field is fetched once and each
+ *  distinct slice of it (e.g. 008[35-37], asked for by a language and a
+ *  language_facet specification written differently) is cut once and added
+ *  to every part wanting it.  Parts wanting the whole value share its
+ *  trimmed value the same way.  The values are exactly those
+ *  FieldSpecPart.collect gives for each part.  Built by TagDispatcher while
+ *  the index properties are compiled;  immutable after that.
+ */
+final class ControlFieldSlices
+{
+    /** the slots of the parts wanting the whole value */
+    private final int wholeSlots[];
+    /** the distinct character positions wanted, in the order first wanted */
+    private final int substarts[];
+    private final int subends[];
+    /** the slots of the parts wanting each of those positions */
+    private final int sliceSlots[][];
+
+    /**
+     * @param tagParts the simple parts wanting a control field tag
+     */
+    ControlFieldSlices(FieldSpecPart tagParts[])
+    {
+        List<Integer> whole = new ArrayList<Integer>();
+        List<int[]> ranges = new ArrayList<int[]>();
+        List<List<Integer>> rangeSlots = new ArrayList<List<Integer>>();
+        for (FieldSpecPart part : tagParts)
+        {
+            if (part.subend == 0)
+            {
+                whole.add(part.slot);
+                continue;
+            }
+            int r = 0;
+            while (r < ranges.size() && (ranges.get(r)[0] != part.substart || ranges.get(r)[1] != part.subend))
+                r++;
+            if (r == ranges.size())
+            {
+                ranges.add(new int[] { part.substart, part.subend });
+                rangeSlots.add(new ArrayList<Integer>());
+            }
+            rangeSlots.get(r).add(part.slot);
+        }
+        wholeSlots = toArray(whole);
+        substarts = new int[ranges.size()];
+        subends = new int[ranges.size()];
+        sliceSlots = new int[ranges.size()][];
+        for (int r = 0; r < ranges.size(); r++)
+        {
+            substarts[r] = ranges.get(r)[0];
+            subends[r] = ranges.get(r)[1];
+            sliceSlots[r] = toArray(rangeSlots.get(r));
+        }
+    }
+
+    /**
+     * add the values of all the parts for the fields with their tag
+     * @param fields the record's fields with the tag, in order
+     * @param values the values of each slot
+     */
+    void collect(List<?> fields, List<String> values[])
+    {
+        for (Object vf : fields)
+        {
+            String data = ((ControlField) vf).getData();
+            if (wholeSlots.length > 0)
+                add(data.trim(), wholeSlots, values);
+            for (int i = 0; i < substarts.length; i++)
+            {
+                if (data.length() >= subends[i])
+                    add(Utils.slice(data, substarts[i], subends[i]), sliceSlots[i], values);
+            }
+        }
+    }
+
+    private static void add(String value, int slots[], List<String> values[])
+    {
+        for (int slot : slots)
+        {
+            if (values[slot] == null)
+                values[slot] = new ArrayList<String>(2);
+            values[slot].add(value);
+        }
+    }
+
+    private static int[] toArray(List<Integer> list)
+    {
+        int array[] = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+}
@@ -0,0 +1,99 @@
+package org.solrmarc.index;
+
+import java.lang.reflect.*;
+
+import org.marc4j.marc.Record;
+
+/**
+ * A custom indexing method bound, when the index properties are loaded, to
+ *  the object it is called on (the indexer or a mixin) and to the arguments
+ *  given for it in the index specification.  Calling it for a record only
+ *  needs a copy of the argument array with the record (or, for a method
+ *  whose first parameter is a RecordContext, the record's context) in front;
+ *  the method is never looked up again.  Invokers are immutable and can be
+ *  called from any thread.
+ */
+final class CustomMethodInvoker
+{
+    private final Object target;
+    private final Method method;
+    /** the arguments of the method, with a place for the record at 0 */
+    private final Object argsTemplate[];
+    /** true if the method takes the RecordContext instead of the Record */
+    private final boolean takesContext;
+    /** the name the profiler records the time spent in the method under */
+    final String profileName;
+
+    private CustomMethodInvoker(Object target, Method method, Object argsTemplate[])
+    {
+        this.target = target;
+        this.method = method;
+        this.argsTemplate = argsTemplate;
+        takesContext = method.getParameterTypes()[0] == RecordContext.class;
+        profileName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+
+    /**
+     * find the method taking a Record (or a RecordContext) and, if parms isn't
+     *  null, a String for each of parms; the number of parms picks between
+     *  overloaded methods like getAllAlphaSubfields
+     * @param target the indexer or mixin the method is called on
+     * @param functionName name of the method
+     * @param parms the arguments after the record, or null if there are none
+     * @throws NoSuchMethodException if the class of target has no such public method
+     */
+    static CustomMethodInvoker bind(Object target, String functionName, String parms[])
+            throws NoSuchMethodException
+    {
+        int numParms = (parms != null) ? parms.length : 0;
+        Class<?> parmClasses[] = new Class<?>[numParms + 1];
+        Object argsTemplate[] = new Object[numParms + 1];
+        parmClasses[0] = Record.class;
+        for (int i = 0; i < numParms; i++)
+        {
+            parmClasses[i + 1] = String.class;
+            argsTemplate[i + 1] = parms[i];
+        }
+        Method method;
+        try
+        {
+            method = target.getClass().getMethod(functionName, parmClasses);
+        }
+        catch (NoSuchMethodException e)
+        {
+            parmClasses[0] = RecordContext.class;
+            method = target.getClass().getMethod(functionName, parmClasses);
+        }
+        try
+        {
+            // skip the access check on each call; the method is public anyway
+            method.setAccessible(true);
+        }
+        catch (SecurityException e)
+        {
+            // checked on each call instead
+        }
+        return new CustomMethodInvoker(target, method, argsTemplate);
+    }
+
+    /**
+     * @return the type of the values the method returns
+     */
+    Class<?> getReturnType()
+    {
+        return method.getReturnType();
+    }
+
+    /**
+     * call the method for a record
+     * @param context the context of the record
+     * @return the value it returned
+     */
+    Object invoke(RecordContext context)
+            throws IllegalAccessException, InvocationTargetException
+    {
+        Object args[] = argsTemplate.clone();
+        args[0] = takesContext ? context : context.getRecord();
+        return method.invoke(target, args);
+    }
+}
@@ -0,0 +1,33 @@
+package org.solrmarc.index;
+
+/**
+ * Where SolrIndexer.indexRecord puts the solr fields of a record.  The
+ *  fields can be written straight into the document sent to Solr (see
+ *  org.solrmarc.solr.SolrInputDocumentSink), rather than into a map that is
+ *  then copied into the document;  MapDocumentSink keeps the map of
+ *  createFldNames2ValsMap for the code that wants one.
+ *
+ * The values of a field are given as createFldNames2ValsMap holds them:  a
+ *  String, or a Collection of values when there are several.  A sink keeps
+ *  the value it is given, so it must not be changed afterwards.
+ */
+public interface DocumentSink
+{
+    /**
+     * set the value of a solr field, replacing any value it already has
+     * @param fieldName the name of the solr field
+     * @param value a String, or a Collection of values
+     */
+    public abstract void setField(String fieldName, Object value);
+
+    /**
+     * @return the value of a solr field, as given to setField, or null if
+     *  it hasn't been set
+     */
+    public abstract Object getField(String fieldName);
+
+    /**
+     * @return the number of solr fields set
+     */
+    public abstract int size();
+}
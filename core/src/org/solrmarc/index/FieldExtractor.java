@@ -0,0 +1,530 @@
+package org.solrmarc.index;
+
+import java.util.*;
+
+import org.marc4j.marc.Record;
+import org.solrmarc.tools.*;
+
+/**
+ * One index specification of an index.properties file, compiled when the
+ *  properties are loaded:  the kind of specification is decided, its
+ *  arguments parsed and its translation map looked up once, so indexing a
+ *  record only has to run each extractor in turn.  Extractors are immutable.
+ *
+ * The values of a specification are collected in a ValueCollector from the
+ *  indexing thread's pool rather than in a new set for each specification
+ *  of each record;  only the values put in the record's solr document
+ *  are copied out of it.
+ *
+ * @see SolrIndexer#indexRecord(RecordContext, DocumentSink)
+ */
+abstract class FieldExtractor
+{
+    /** the key of the index specification in the properties */
+    final String specName;
+    /** the solr field the values are added to */
+    final String indexField;
+
+    FieldExtractor(String specName, String indexField)
+    {
+        this.specName = specName;
+        this.indexField = indexField;
+    }
+
+    /**
+     * add the values of this specification for a record to its solr
+     *  fields
+     * @param indexer the indexer this extractor was compiled for
+     * @param doc the solr fields of the record
+     * @param context the context of the marc record being indexed
+     * @throws SolrMarcIndexerException if the record should be deleted or
+     *  not indexed
+     */
+    abstract void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context);
+
+    /**
+     * @return true if the extractor stores whole records as binary MARC, and
+     *  so can use the bytes they were read from
+     */
+    boolean usesRecordBytes()
+    {
+        return false;
+    }
+
+    /**
+     * set a solr field to a value, unless it is null or empty, as
+     *  SolrIndexer.addFieldToMap does
+     */
+    static void setValue(DocumentSink doc, String indexField, String fieldVal)
+    {
+        if (fieldVal != null && fieldVal.length() > 0)
+            doc.setField(indexField, fieldVal);
+    }
+
+    /**
+     * set a solr field to a set of values, or to the value if there is only
+     *  one, as SolrIndexer.addFieldsToMap does
+     */
+    static void setValues(DocumentSink doc, String indexField, Set<String> fieldVals)
+    {
+        if (fieldVals.size() == 1)
+            doc.setField(indexField, fieldVals.iterator().next());
+        else if (!fieldVals.isEmpty())
+            doc.setField(indexField, fieldVals);
+    }
+
+    /**
+     * add the values collected for the solr field to the document, as
+     *  setValues does
+     */
+    final void addValues(DocumentSink doc, ValueCollector values)
+    {
+        Object fieldValue = values.toFieldValue();
+        if (fieldValue != null)
+            doc.setField(indexField, fieldValue);
+    }
+
+    /**
+     * @return the values of a compiled field specification for a record,
+     *  translated with allowDefault if there is a translation map, in a
+     *  collector from the calling thread's pool, to be released by the caller
+     */
+    static ValueCollector collect(RecordContext context, FieldSpecPart parts[], TranslationMap transMap)
+    {
+        ValueCollector fieldVals = ValueCollector.acquire();
+        context.collectFieldList(parts, fieldVals);
+        if (transMap == null)
+            return fieldVals;
+        ValueCollector result = ValueCollector.acquire();
+        transMap.remap(fieldVals, true, result);
+        fieldVals.release();
+        return result;
+    }
+
+    /**
+     * compile an index specification parsed by SolrIndexer.fillMapFromProperties
+     * @param indexer the indexer holding the translation maps and mixins
+     * @param dispatcher the field specification parts of the indexer,
+     *  grouped by tag
+     * @param specName the key of the specification in the properties
+     * @param fieldDef the parsed specification:  solr field, index type,
+     *  index parameter and translation map name
+     * @return the extractor, or null if the specification produces no values
+     */
+    static FieldExtractor compile(SolrIndexer indexer, TagDispatcher dispatcher, String specName, String fieldDef[])
+    {
+        String indexField = fieldDef[0];
+        String indexType = fieldDef[1];
+        String indexParm = fieldDef[2];
+        String mapName = fieldDef[3];
+        TranslationMap transMap = (mapName != null) ? indexer.getTranslationMap(mapName) : null;
+
+        if (indexType.equals("constant"))
+            return new Constant(specName, indexField, indexParm);
+        else if (indexType.equals("first"))
+            return new First(specName, indexField, dispatcher.compile(indexParm), transMap);
+        else if (indexType.equals("all"))
+            return new All(specName, indexField, dispatcher.compile(indexParm), transMap);
+        else if (indexType.equals("DeleteRecordIfFieldEmpty"))
+            return new DeleteRecordIfFieldEmpty(specName, indexField, dispatcher.compile(indexParm), transMap);
+        else if (indexType.startsWith("join"))
+        {
+            String joinChar = " ";
+            if (indexType.contains("(") && indexType.endsWith(")"))
+                joinChar = indexType.replace("join(", "").replace(")", "");
+            return new Join(specName, indexField, dispatcher.compile(indexParm), joinChar);
+        }
+        else if (indexType.equals("std"))
+        {
+            if (indexParm.equals("era"))
+                return new Era(specName, indexField, transMap);
+            return new Std(specName, indexField, StdType.forParm(indexParm));
+        }
+        else if (indexType.startsWith("custom"))
+            return new Custom(indexer, specName, indexField, indexType, indexParm, transMap);
+        // script specifications aren't supported
+        return null;
+    }
+
+
+    /**
+     * a constant value, or several separated by |, split and with duplicate
+     *  and empty values removed once when the specification is compiled
+     */
+    static final class Constant extends FieldExtractor
+    {
+        /** the value if there is only one, or null */
+        private final String value;
+        /** the distinct values if there are several, or null */
+        private final String values[];
+
+        Constant(String specName, String indexField, String indexParm)
+        {
+            super(specName, indexField);
+            Set<String> distinct = new LinkedHashSet<String>();
+            if (indexParm.contains("|"))
+                distinct.addAll(Arrays.asList(indexParm.split("[|]")));
+            else
+                distinct.add(indexParm);
+            // if a zero length string appears, remove it
+            distinct.remove("");
+            value = (distinct.size() == 1) ? distinct.iterator().next() : null;
+            values = (distinct.size() > 1) ? distinct.toArray(new String[distinct.size()]) : null;
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            if (value != null)
+                doc.setField(indexField, value);
+            else if (values != null)
+            {
+                // each record gets its own set, as the sets of a field map may be added to
+                Set<String> result = new LinkedHashSet<String>(values.length * 2);
+                Collections.addAll(result, values);
+                doc.setField(indexField, result);
+            }
+        }
+    }
+
+
+    /**
+     * the first value of a field specification, translated
+     */
+    static final class First extends FieldExtractor
+    {
+        private final FieldSpecPart parts[];
+        private final TranslationMap transMap;
+
+        First(String specName, String indexField, FieldSpecPart parts[], TranslationMap transMap)
+        {
+            super(specName, indexField);
+            this.parts = parts;
+            this.transMap = transMap;
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            ValueCollector fieldVals = ValueCollector.acquire();
+            ValueCollector result = null;
+            try
+            {
+                context.collectFieldList(parts, fieldVals);
+                String value;
+                if (transMap == null)
+                    value = fieldVals.first();
+                else
+                {
+                    result = ValueCollector.acquire();
+                    transMap.remap(fieldVals, false, result);
+                    // the value for no value, or else the default value
+                    if (!result.isEmpty())
+                        value = result.first();
+                    else if (transMap.containsKey(""))
+                        value = transMap.get("");
+                    else
+                        value = transMap.get("__DEFAULT");
+                }
+                setValue(doc, indexField, value);
+            }
+            finally
+            {
+                fieldVals.release();
+                if (result != null)
+                    result.release();
+            }
+        }
+    }
+
+
+    /**
+     * all the values of a field specification, translated
+     */
+    static final class All extends FieldExtractor
+    {
+        private final FieldSpecPart parts[];
+        private final TranslationMap transMap;
+
+        All(String specName, String indexField, FieldSpecPart parts[], TranslationMap transMap)
+        {
+            super(specName, indexField);
+            this.parts = parts;
+            this.transMap = transMap;
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            ValueCollector fieldVals = collect(context, parts, transMap);
+            try
+            {
+                addValues(doc, fieldVals);
+            }
+            finally
+            {
+                fieldVals.release();
+            }
+        }
+    }
+
+
+    /**
+     * all the values of a field specification, translated;  the record is
+     *  deleted if there are none
+     */
+    static final class DeleteRecordIfFieldEmpty extends FieldExtractor
+    {
+        private final FieldSpecPart parts[];
+        private final TranslationMap transMap;
+
+        DeleteRecordIfFieldEmpty(String specName, String indexField, FieldSpecPart parts[], TranslationMap transMap)
+        {
+            super(specName, indexField);
+            this.parts = parts;
+            this.transMap = transMap;
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            ValueCollector fields = collect(context, parts, transMap);
+            try
+            {
+                if (fields.size() != 0)
+                    addValues(doc, fields);
+                else  // no entries produced for field => generate no record in Solr
+                    throw new SolrMarcIndexerException(SolrMarcIndexerException.DELETE,
+                                                    "Index specification: "+ indexField +" says this record should be deleted.");
+            }
+            finally
+            {
+                fields.release();
+            }
+        }
+    }
+
+
+    /**
+     * the values of a field specification joined into one value
+     */
+    static final class Join extends FieldExtractor
+    {
+        private final FieldSpecPart parts[];
+        private final String joinChar;
+
+        Join(String specName, String indexField, FieldSpecPart parts[], String joinChar)
+        {
+            super(specName, indexField);
+            this.parts = parts;
+            this.joinChar = joinChar;
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            ValueCollector fieldVals = ValueCollector.acquire();
+            try
+            {
+                context.collectFieldList(parts, fieldVals);
+                setValue(doc, indexField, fieldVals.join(joinChar));
+            }
+            finally
+            {
+                fieldVals.release();
+            }
+        }
+    }
+
+
+    /**
+     * the era of the record, translated
+     */
+    static final class Era extends FieldExtractor
+    {
+        private final TranslationMap transMap;
+
+        Era(String specName, String indexField, TranslationMap transMap)
+        {
+            super(specName, indexField);
+            this.transMap = transMap;
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            Set<String> fieldVals = MarcUtils.getEra(context.getRecord());
+            if (transMap != null)
+                fieldVals = transMap.remap(fieldVals, true);
+            setValues(doc, indexField, fieldVals);
+        }
+    }
+
+
+    /** the values that don't require parsing specified record fields */
+    enum StdType
+    {
+        RAW, XML, JSON, JSON2, TEXT, DATE, INDEX_DATE, NONE;
+
+        static StdType forParm(String indexParm)
+        {
+            if (indexParm.equals("raw") || indexParm.equalsIgnoreCase("FullRecordAsMARC"))
+                return RAW;
+            else if (indexParm.equals("xml") || indexParm.equalsIgnoreCase("FullRecordAsXML"))
+                return XML;
+            else if (indexParm.equals("json") || indexParm.equalsIgnoreCase("FullRecordAsJSON"))
+                return JSON;
+            else if (indexParm.equals("json2") || indexParm.equalsIgnoreCase("FullRecordAsJSON2"))
+                return JSON2;
+            else if (indexParm.equalsIgnoreCase("FullRecordAsText"))
+                return TEXT;
+            else if (indexParm.equals("date") || indexParm.equalsIgnoreCase("DateOfPublication"))
+                return DATE;
+            else if (indexParm.equals("index_date") || indexParm.equalsIgnoreCase("DateRecordIndexed"))
+                return INDEX_DATE;
+            return NONE;
+        }
+    }
+
+    /**
+     * a value that doesn't require parsing specified record fields:  raw,
+     *  xml, date, index_date ...
+     */
+    static final class Std extends FieldExtractor
+    {
+        private final StdType type;
+
+        Std(String specName, String indexField, StdType type)
+        {
+            super(specName, indexField);
+            this.type = type;
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            Record record = context.getRecord();
+            String value = null;
+            switch (type)
+            {
+                case RAW:
+                    value = MarcUtils.getRecordAsBinaryStr(record, context.getRecordBytes());
+                    break;
+                case XML:
+                    value = MarcUtils.getRecordAsMarcXmlStr(record);
+                    break;
+                case JSON:
+                    value = MarcUtils.getRecordAsJsonStr(record, true);
+                    break;
+                case JSON2:
+                    value = MarcUtils.getRecordAsJsonStr(record, false);
+                    break;
+                case TEXT:
+                    value = record.toString().replaceAll("\n", "<br/>");
+                    break;
+                case DATE:
+                    value = MarcUtils.getDate(record);
+                    break;
+                case INDEX_DATE:
+                    value = indexer.getCurrentDate();
+                    break;
+                default:
+                    break;
+            }
+            setValue(doc, indexField, value);
+        }
+
+        @Override
+        boolean usesRecordBytes()
+        {
+            return type == StdType.RAW;
+        }
+    }
+
+
+    /**
+     * the values returned by a custom method of the indexer or of a mixin
+     */
+    static final class Custom extends FieldExtractor
+    {
+        /** the method, bound to the indexer or a mixin and to its arguments */
+        final CustomMethodInvoker invoker;
+        final TranslationMap transMap;
+        /** if true, the record is deleted if the method returns no values */
+        final boolean deleteIfEmpty;
+
+        Custom(SolrIndexer indexer, String specName, String indexField, String indexType, String indexParm, TranslationMap transMap)
+        {
+            super(specName, indexField);
+            Object target = indexer;
+            if (indexType.matches("custom[(][a-zA-Z0-9.]+[)]"))
+            {
+                SolrIndexerMixin mixin = indexer.getMixin(indexType.substring(7, indexType.length()-1).trim());
+                if (mixin != null)
+                    target = mixin;
+            }
+
+            String functionName;
+            String parms[];
+            int parenIx = indexParm.indexOf('(');
+            if (parenIx != -1)
+            {
+                functionName = indexParm.substring(0, parenIx);
+                String parmStr = indexParm.substring(parenIx + 1, indexParm.lastIndexOf(')'));
+                // parameters are separated by unescaped commas
+                parms = parmStr.trim().split("(?<=[^\\\\]),");
+                for (int i = 0; i < parms.length; i++)
+                    parms[i] = dequote(parms[i].trim());
+            }
+            else
+            {
+                functionName = indexParm;
+                parms = null;
+            }
+            try
+            {
+                invoker = CustomMethodInvoker.bind(target, functionName, parms);
+            }
+            catch (NoSuchMethodException e)
+            {
+                SolrIndexer.logger.error("Unable to find custom indexing function " + indexParm);
+                throw new IllegalArgumentException("Unable to find custom indexing function " + indexParm);
+            }
+            this.transMap = transMap;
+            deleteIfEmpty = indexType.equals("customDeleteRecordIfFieldEmpty");
+        }
+
+        void extract(SolrIndexer indexer, DocumentSink doc, RecordContext context)
+        {
+            try
+            {
+                indexer.handleCustom(doc, this, context);
+            }
+            catch (SolrMarcIndexerException e)
+            {
+                String recCntlNum = null;
+                try
+                {
+                    recCntlNum = context.getRecord().getControlNumber();
+                }
+                catch (NullPointerException npe) { /* ignore */ }
+
+                if (e.getLevel() == SolrMarcIndexerException.DELETE)
+                {
+                    throw new SolrMarcIndexerException(SolrMarcIndexerException.DELETE,
+                            "Record " + (recCntlNum != null ? recCntlNum : "") + " purposely not indexed because " + specName + " field is empty");
+                }
+                else
+                {
+                    SolrIndexer.logger.error("Unable to index record " + (recCntlNum != null ? recCntlNum : "") + " due to field " + specName + " -- " + e.getMessage(), e);
+                    throw(e);
+                }
+            }
+        }
+
+        /**
+         * if the first and last characters of the string are quote marks ("),
+         *  then delete them.
+         */
+        private static String dequote(String str)
+        {
+            if (str.length() >= 2 && str.charAt(0) == '"' && str.charAt(str.length()-1) == '"')
+                return str.substring(1, str.length() - 1);
+
+            return str;
+        }
+    }
+}
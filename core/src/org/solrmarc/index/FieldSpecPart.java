@@ -0,0 +1,187 @@
+package org.solrmarc.index;
+
+import java.util.*;
+
+import org.marc4j.marc.*;
+import org.solrmarc.tools.FieldSpec;
+import org.solrmarc.tools.MarcUtils;
+import org.solrmarc.tools.RecordTagIndex;
+import org.solrmarc.tools.SubfieldCodes;
+import org.solrmarc.tools.Utils;
+
+/**
+ * One of the colon separated parts of a field specification like
+ *  "100abcd:245a:008[35-37]", parsed once when the index properties are
+ *  loaded.  The values of a simple part (a control field, a control field's
+ *  character positions, or subfields of a data field) can be collected one
+ *  field at a time by TagDispatcher, so a record's fields only have to be
+ *  walked once for all of them.  Other parts (the leader, linked 880 fields,
+ *  subfield patterns, and malformed parts) are left to
+ *  MarcUtils.getFieldList, with the part parsed as a FieldSpec.  Either way the values are exactly those
+ *  MarcUtils.getFieldList gives for the part.  Parts are immutable.
+ */
+final class FieldSpecPart
+{
+    /** the part as written in the field specification */
+    final String spec;
+    /** the MARC tag of the fields the part wants; null if not simple */
+    final String tag;
+    /** index of the part's values in TagDispatcher.Values; -1 if not simple */
+    final int slot;
+    /** true if the part wants a control field (see ControlFieldSlices) */
+    final boolean controlField;
+    private final String subfields;
+    private final SubfieldCodes subfieldCodes;
+    /** the part parsed for MarcUtils.getFieldList if it isn't simple */
+    private final FieldSpec unparsed;
+    /** separator between concatenated subfields, or null */
+    private final String separator;
+    /** character positions wanted, or 0 and 0 for the whole value */
+    final int substart;
+    final int subend;
+
+    private FieldSpecPart(String spec, String tag, int slot, boolean controlField, String subfields, String separator, int substart, int subend)
+    {
+        this.spec = spec;
+        this.tag = tag;
+        this.slot = slot;
+        this.controlField = controlField;
+        this.subfields = subfields;
+        this.subfieldCodes = (subfields != null) ? SubfieldCodes.listed(subfields) : null;
+        this.unparsed = (slot < 0) ? FieldSpec.forSpec(spec) : null;
+        this.separator = separator;
+        this.substart = substart;
+        this.subend = subend;
+    }
+
+    /**
+     * a part whose values are left to MarcUtils.getFieldList
+     */
+    static FieldSpecPart unparsed(String spec)
+    {
+        return new FieldSpecPart(spec, null, -1, false, null, null, 0, 0);
+    }
+
+    /**
+     * parse a part the way MarcUtils.getFieldList does, from the part parsed
+     *  as a FieldSpec
+     * @param spec the part of the field specification
+     * @param slot the index its values will be collected at if it is simple
+     * @return the parsed part, or an unparsed part if it isn't simple
+     */
+    static FieldSpecPart parse(String spec, int slot)
+    {
+        FieldSpec.Part part = FieldSpec.forSpec(spec).getParts().get(0);
+        String tag = part.getTag();
+        // malformed parts are reported by MarcUtils.getFieldList for each record
+        if (tag == null || part.isLinked() || tag.equals("000") || part.isPattern())
+            return unparsed(spec);
+        boolean controlField = MarcUtils.isControlField(tag);
+        String subfields = part.getSubfields();
+        if (!controlField && subfields.length() == 0)
+            return unparsed(spec);
+        if (part.getSubstart() < 0 || part.getSubend() < part.getSubstart())
+            return unparsed(spec);
+        return new FieldSpecPart(spec, tag, slot, controlField, subfields, part.getSeparator(), part.getSubstart(), part.getSubend());
+    }
+
+    /**
+     * @return true if the values can be collected by TagDispatcher
+     */
+    boolean isSimple()
+    {
+        return slot >= 0;
+    }
+
+    /**
+     * add the values of this part for a record to a set, without help from
+     *  TagDispatcher
+     */
+    void addValues(Record record, Set<String> result)
+    {
+        if (!isSimple())
+        {
+            MarcUtils.getFieldList(record, unparsed, result);
+            return;
+        }
+        for (Object vf : RecordTagIndex.getFields(record, tag))
+            collect((VariableField) vf, result);
+    }
+
+    /**
+     * add the values of this part for one field with the part's tag
+     */
+    void collect(VariableField vf, Collection<String> values)
+    {
+        if (controlField)
+        {
+            String data = ((ControlField) vf).getData();
+            if (subend == 0)
+                values.add(data.trim());
+            else if (data.length() >= subend)
+                values.add(Utils.slice(data, substart, subend));
+            return;
+        }
+        DataField dfield = (DataField) vf;
+        if (subend != 0)
+            collectSubstrings(dfield, values);
+        else if (subfields.length() > 1 || separator != null)
+        {
+            // concatenate subfields using specified separator or space
+            StringBuilder buffer = new StringBuilder();
+            for (Object sfObj : dfield.getSubfields())
+            {
+                Subfield sf = (Subfield) sfObj;
+                if (subfieldCodes.contains(sf.getCode()))
+                {
+                    if (buffer.length() > 0)
+                        buffer.append(separator != null ? separator : " ");
+                    buffer.append(sf.getData().trim());
+                }
+            }
+            if (buffer.length() > 0)
+                values.add(buffer.toString());
+        }
+        else
+        {
+            // get all instances of the single subfield
+            char code = subfields.charAt(0);
+            for (Object sfObj : dfield.getSubfields())
+            {
+                Subfield sf = (Subfield) sfObj;
+                if (sf.getCode() == code)
+                    values.add(sf.getData().trim());
+            }
+        }
+    }
+
+    private void collectSubstrings(DataField dfield, Collection<String> values)
+    {
+        if (subfields.length() > 1)
+        {
+            // automatic concatenation of grouped subfields
+            StringBuilder buffer = new StringBuilder();
+            for (Object sfObj : dfield.getSubfields())
+            {
+                Subfield sf = (Subfield) sfObj;
+                if (subfieldCodes.contains(sf.getCode()) && sf.getData().length() >= subend)
+                {
+                    if (buffer.length() > 0)
+                        buffer.append(" ");
+                    buffer.append(sf.getData().substring(substart, subend));
+                }
+            }
+            values.add(buffer.toString());
+        }
+        else
+        {
+            char code = subfields.charAt(0);
+            for (Object sfObj : dfield.getSubfields())
+            {
+                Subfield sf = (Subfield) sfObj;
+                if (sf.getCode() == code && sf.getData().length() >= subend)
+                    values.add(sf.getData().substring(substart, subend));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.solrmarc.index;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Accumulates the time spent on each index specification (each Solr field of
+ *  the x_index.properties file) and each custom indexing method, with the
+ *  number of calls and the number of values produced.
+ *
+ * A profiler belongs to one SolrIndexer; since a thread safe indexer can be
+ *  shared by several indexing threads, its methods are synchronized.  The
+ *  profilers of several indexers are combined with merge() to report on.
+ */
+public class FieldSpecProfiler
+{
+    /** name of the pseudo field that times SolrIndexer.perRecordInit */
+    public static final String PER_RECORD_INIT = "(perRecordInit)";
+
+    /** name of the pseudo field that times the walk over each record's fields */
+    public static final String TAG_DISPATCH = "(tag dispatch)";
+
+    /** stats for each Solr field name */
+    private final Map<String, Stats> fieldStats = new HashMap<String, Stats>();
+    /** stats for each custom method name */
+    private final Map<String, Stats> methodStats = new HashMap<String, Stats>();
+
+    /** time, calls and values produced for one field or method */
+    public static class Stats
+    {
+        public final String name;
+        public long nanos = 0;
+        public long calls = 0;
+        public long values = 0;
+
+        Stats(String name)
+        {
+            this.name = name;
+        }
+
+        private void add(long nanos, long calls, long values)
+        {
+            this.nanos += nanos;
+            this.calls += calls;
+            this.values += values;
+        }
+    }
+
+    /**
+     * add a call of the index specification for a Solr field
+     * @param fieldName the Solr field name (key in the x_index.properties file)
+     * @param nanos time taken
+     * @param numValues number of values the call added to the document
+     */
+    public synchronized void recordField(String fieldName, long nanos, int numValues)
+    {
+        getStats(fieldStats, fieldName).add(nanos, 1, numValues);
+    }
+
+    /**
+     * add a call of a custom indexing method
+     * @param methodName name of the custom method
+     * @param nanos time taken by the method itself (not translation maps etc.)
+     */
+    public synchronized void recordCustomMethod(String methodName, long nanos)
+    {
+        getStats(methodStats, methodName).add(nanos, 1, 0);
+    }
+
+    /**
+     * add the stats of another profiler to this one
+     */
+    public synchronized void merge(FieldSpecProfiler other)
+    {
+        synchronized (other)
+        {
+            mergeStats(fieldStats, other.fieldStats);
+            mergeStats(methodStats, other.methodStats);
+        }
+    }
+
+    /**
+     * @return stats for each Solr field, most time consuming first
+     */
+    public synchronized List<Stats> getFieldStats()
+    {
+        return sortByTime(fieldStats);
+    }
+
+    /**
+     * @return stats for each custom method, most time consuming first
+     */
+    public synchronized List<Stats> getCustomMethodStats()
+    {
+        return sortByTime(methodStats);
+    }
+
+    /**
+     * @return the report as a table of the fields, then a table of the custom
+     *  methods;  each table is sorted by total time, most time consuming first
+     */
+    public String formatTable()
+    {
+        StringBuilder table = new StringBuilder();
+        appendTable(table, "Solr field", getFieldStats(), true);
+        table.append("\n");
+        appendTable(table, "custom method", getCustomMethodStats(), false);
+        return table.toString();
+    }
+
+    /**
+     * write the report as CSV:  type,name,calls,total_ms,avg_us,values
+     *  where type is "field" or "method"
+     */
+    public void writeCsv(Writer out)
+        throws IOException
+    {
+        out.write("type,name,calls,total_ms,avg_us,values\n");
+        for (Stats stats : getFieldStats())
+            writeCsvLine(out, "field", stats);
+        for (Stats stats : getCustomMethodStats())
+            writeCsvLine(out, "method", stats);
+        out.flush();
+    }
+
+
+    private static Stats getStats(Map<String, Stats> statsMap, String name)
+    {
+        Stats stats = statsMap.get(name);
+        if (stats == null)
+        {
+            stats = new Stats(name);
+            statsMap.put(name, stats);
+        }
+        return stats;
+    }
+
+    private static void mergeStats(Map<String, Stats> into, Map<String, Stats> from)
+    {
+        for (Stats stats : from.values())
+            getStats(into, stats.name).add(stats.nanos, stats.calls, stats.values);
+    }
+
+    private static List<Stats> sortByTime(Map<String, Stats> statsMap)
+    {
+        List<Stats> sorted = new ArrayList<Stats>(statsMap.values());
+        Collections.sort(sorted, new Comparator<Stats>()
+        {
+            public int compare(Stats s1, Stats s2)
+            {
+                if (s1.nanos != s2.nanos)
+                    return s1.nanos > s2.nanos ? -1 : 1;
+                return s1.name.compareTo(s2.name);
+            }
+        });
+        return sorted;
+    }
+
+    private static void appendTable(StringBuilder table, String nameHeading, List<Stats> statsList, boolean showValues)
+    {
+        long totalNanos = 0;
+        for (Stats stats : statsList)
+            totalNanos += stats.nanos;
+
+        table.append(String.format("%-40s %10s %12s %10s %7s", nameHeading, "calls", "total ms", "avg us", "%"));
+        if (showValues)
+            table.append(String.format(" %10s", "values"));
+        table.append("\n");
+        for (Stats stats : statsList)
+        {
+            table.append(String.format("%-40s %10d %12.1f %10.2f %7.2f", stats.name, stats.calls,
+                    stats.nanos / 1000000.0, avgMicros(stats), totalNanos == 0 ? 0.0 : stats.nanos * 100.0 / totalNanos));
+            if (showValues)
+                table.append(String.format(" %10d", stats.values));
+            table.append("\n");
+        }
+        table.append(String.format("%-40s %10s %12.1f", "total", "", totalNanos / 1000000.0)).append("\n");
+    }
+
+    private static void writeCsvLine(Writer out, String type, Stats stats)
+        throws IOException
+    {
+        out.write(type + "," + stats.name + "," + stats.calls + ","
+                + String.format(Locale.US, "%.3f", stats.nanos / 1000000.0) + ","
+                + String.format(Locale.US, "%.3f", avgMicros(stats)) + "," + stats.values + "\n");
+    }
+
+    private static double avgMicros(Stats stats)
+    {
+        return stats.calls == 0 ? 0.0 : stats.nanos / 1000.0 / stats.calls;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.*;
 import org.marc4j.ErrorHandler;
 import org.marc4j.marc.*;
 import org.solrmarc.tools.MarcUtils;
+import org.solrmarc.tools.RecordTagIndex;
 
 public class GetFormatMixin extends SolrIndexerMixin
 {
@@ -329,7 +330,7 @@ public class GetFormatMixin extends SolrIndexerMixin
         // so we can iterate over them both
 
         String[] formatTags = { "008", "006" };
-        List<ControlField> fieldsFormat = (List<ControlField>)record.getVariableFields(formatTags);
+        List<ControlField> fieldsFormat = (List<ControlField>)RecordTagIndex.getFields(record, formatTags);
 
         for (ControlField fieldFormat : fieldsFormat)
         {
@@ -391,9 +392,9 @@ public class GetFormatMixin extends SolrIndexerMixin
                 if (field.length() - 1 < position)
                 {
                     materialType.add(type);
-                    if (indexer != null && indexer.errors != null)
+                    if (indexer != null && indexer.getErrorHandler() != null)
                     {
-                        indexer.errors.addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
+                        indexer.getErrorHandler().addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
                     }
                     continue;
                 }
@@ -488,9 +489,9 @@ public class GetFormatMixin extends SolrIndexerMixin
                 if (field.length() - 1 < position)
                 {
                     materialType.add(type);
-                    if (indexer != null && indexer.errors != null)
+                    if (indexer != null && indexer.getErrorHandler() != null)
                     {
-                        indexer.errors.addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
+                        indexer.getErrorHandler().addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
                     }
                     continue;
                 }
@@ -577,9 +578,9 @@ public class GetFormatMixin extends SolrIndexerMixin
                 if (field.length() - 1 < position)
                 {
                     materialType.add(type);
-                    if (indexer != null && indexer.errors != null)
+                    if (indexer != null && indexer.getErrorHandler() != null)
                     {
-                        indexer.errors.addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
+                        indexer.getErrorHandler().addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
                     }
                     continue;
                 }
@@ -647,9 +648,9 @@ public class GetFormatMixin extends SolrIndexerMixin
                 if (field.length() - 1 < position)
                 {
                     materialType.add(type);
-                    if (indexer != null && indexer.errors != null)
+                    if (indexer != null && indexer.getErrorHandler() != null)
                     {
-                        indexer.errors.addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
+                        indexer.getErrorHandler().addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
                     }
                     continue;
                 }
@@ -769,10 +770,10 @@ public class GetFormatMixin extends SolrIndexerMixin
             }
             else
             {
-                if (indexer != null && indexer.errors != null)
+                if (indexer != null && indexer.getErrorHandler() != null)
                 {
                     String field = tag.equals("006") ? "006/00" : "LEADER/06";
-                    indexer.errors.addError(record.getControlNumber(), field, "n/a", ErrorHandler.MINOR_ERROR, "Unknown item profile specified in "+ field);
+                    indexer.getErrorHandler().addError(record.getControlNumber(), field, "n/a", ErrorHandler.MINOR_ERROR, "Unknown item profile specified in "+ field);
                 }
                 //throw new SolrMarcIndexerException(1, "bad profile: " + profile);
             }
@@ -782,7 +783,7 @@ public class GetFormatMixin extends SolrIndexerMixin
 
         // thesis
 
-        if (!record.getVariableFields("502").isEmpty())
+        if (!RecordTagIndex.getFields(record, "502").isEmpty())
         {
             // set the first (primary) type as thesis
 
@@ -802,7 +803,7 @@ public class GetFormatMixin extends SolrIndexerMixin
 
             // isbn
 
-            if (!record.getVariableFields("020").isEmpty())
+            if (!RecordTagIndex.getFields(record, "020").isEmpty())
             {
                 materialType.add(ContentType.Book.toString());
             }
@@ -832,7 +833,7 @@ public class GetFormatMixin extends SolrIndexerMixin
         // // Data Fields ////
         // electronic resource from title
 
-        DataField title = (DataField) record.getVariableField("245");
+        DataField title = (DataField) RecordTagIndex.getField(record, "245");
 
         if (title != null && title.getSubfield('h') != null)
         {
@@ -845,7 +846,7 @@ public class GetFormatMixin extends SolrIndexerMixin
 
         // // 007 ////
 
-        List<ControlField> fields007 = record.getVariableFields("007");
+        List<ControlField> fields007 = RecordTagIndex.getFields(record, "007");
 
         for (ControlField field007 : fields007)
         {
@@ -857,9 +858,9 @@ public class GetFormatMixin extends SolrIndexerMixin
                 (field007_02 = field007.getData().toLowerCase().charAt(2)) != ' ' && field007_02 != '|' && field007_02 != '-')
             { 
                 {
-                    if (indexer != null && indexer.errors != null)
+                    if (indexer != null && indexer.getErrorHandler() != null)
                     {
-                        indexer.errors.addError(record.getControlNumber(), "007", "n/a", ErrorHandler.MINOR_ERROR, "Malformed 007 fixed field");
+                        indexer.getErrorHandler().addError(record.getControlNumber(), "007", "n/a", ErrorHandler.MINOR_ERROR, "Malformed 007 fixed field");
                     }
                     continue;
                 }
@@ -1575,9 +1576,9 @@ public class GetFormatMixin extends SolrIndexerMixin
                     }
                     else
                     {
-                        if (indexer != null && indexer.errors != null)
+                        if (indexer != null && indexer.getErrorHandler() != null)
                         {
-                            indexer.errors.addError(record.getControlNumber(), "007", "n/a", ErrorHandler.MINOR_ERROR, "Malformed 007 fixed field (too short) "+ field007.getData());
+                            indexer.getErrorHandler().addError(record.getControlNumber(), "007", "n/a", ErrorHandler.MINOR_ERROR, "Malformed 007 fixed field (too short) "+ field007.getData());
                         }
                         String formToAdd = getVideoMediaForm(materialSpecific);
                         form.add(formToAdd);
@@ -1592,7 +1593,7 @@ public class GetFormatMixin extends SolrIndexerMixin
         // parse the form of item indicator from 008 and 006
 
         String[] formatTags = { "008", "006" };
-        List<ControlField> fieldsFormat = record.getVariableFields(formatTags);
+        List<ControlField> fieldsFormat = RecordTagIndex.getFields(record, formatTags);
 
         for (ControlField fieldFormat : fieldsFormat)
         {
@@ -1640,9 +1641,9 @@ public class GetFormatMixin extends SolrIndexerMixin
 
             if (field.length() - 1 < position)
             {
-                if (indexer != null && indexer.errors != null)
+                if (indexer != null && indexer.getErrorHandler() != null)
                 {
-                    indexer.errors.addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
+                    indexer.getErrorHandler().addError(record.getControlNumber(), tag, "n/a", ErrorHandler.MINOR_ERROR, "Fixed field "+tag+" is shorter than it ought to be");
                 }
                 continue;
             }
@@ -1764,10 +1765,10 @@ public class GetFormatMixin extends SolrIndexerMixin
         String videoMediaForm = getVideoMediaForm(materialSpecific);
         if (materialSpecific != expectedVal)
         {
-            if (indexer != null && indexer.errors != null)
+            if (indexer != null && indexer.getErrorHandler() != null)
             {
                 String errMsg = "Mismatch between form of video (007/01)" + videoMediaForm + " and type of video (007/04)" + assignedForm;
-                indexer.errors.addError(id, "007", "n/a", ErrorHandler.ERROR_TYPO, errMsg);
+                indexer.getErrorHandler().addError(id, "007", "n/a", ErrorHandler.ERROR_TYPO, errMsg);
             }
         }      
     }
@@ -2036,7 +2037,7 @@ public class GetFormatMixin extends SolrIndexerMixin
 
             boolean isFullText = false;
 
-            List<VariableField> list856 = (List<VariableField>)record.getVariableFields("856");
+            List<VariableField> list856 = (List<VariableField>)RecordTagIndex.getFields(record, "856");
 
             for (VariableField vf : list856)
             {
@@ -2074,5 +2075,13 @@ public class GetFormatMixin extends SolrIndexerMixin
 
         return temp;
     }
-}
 
+    /**
+     * the mixin keeps no per-record state
+     */
+    @Override
+    public boolean isThreadSafe()
+    {
+        return true;
+    }
+}
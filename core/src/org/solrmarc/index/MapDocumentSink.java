@@ -0,0 +1,48 @@
+package org.solrmarc.index;
+
+import java.util.*;
+
+/**
+ * A DocumentSink that puts the solr fields of a record in a map of field
+ *  names to values, as createFldNames2ValsMap returns them.
+ */
+public class MapDocumentSink implements DocumentSink
+{
+    private final Map<String, Object> fldNames2ValsMap;
+
+    public MapDocumentSink()
+    {
+        this(new HashMap<String, Object>());
+    }
+
+    /**
+     * @param fldNames2ValsMap the map the fields are put in
+     */
+    public MapDocumentSink(Map<String, Object> fldNames2ValsMap)
+    {
+        this.fldNames2ValsMap = fldNames2ValsMap;
+    }
+
+    /**
+     * @return the map of solr field names to values (a String or a Collection)
+     */
+    public Map<String, Object> getMap()
+    {
+        return fldNames2ValsMap;
+    }
+
+    public void setField(String fieldName, Object value)
+    {
+        fldNames2ValsMap.put(fieldName, value);
+    }
+
+    public Object getField(String fieldName)
+    {
+        return fldNames2ValsMap.get(fieldName);
+    }
+
+    public int size()
+    {
+        return fldNames2ValsMap.size();
+    }
+}
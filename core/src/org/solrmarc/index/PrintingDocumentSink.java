@@ -0,0 +1,61 @@
+package org.solrmarc.index;
+
+import java.util.*;
+
+/**
+ * A DocumentSink that passes the fields on to another sink, remembering the
+ *  order they were first set in, so the document can be printed for
+ *  debugging (verbose mode, or indexing without adding the documents to
+ *  Solr) without going through the string form of the Solr document.
+ */
+public class PrintingDocumentSink implements DocumentSink
+{
+    private final DocumentSink sink;
+    private final Set<String> fieldNames = new LinkedHashSet<String>();
+
+    /**
+     * @param sink the sink the fields are passed on to
+     */
+    public PrintingDocumentSink(DocumentSink sink)
+    {
+        this.sink = sink;
+    }
+
+    public void setField(String fieldName, Object value)
+    {
+        fieldNames.add(fieldName);
+        sink.setField(fieldName, value);
+    }
+
+    public Object getField(String fieldName)
+    {
+        return sink.getField(fieldName);
+    }
+
+    public int size()
+    {
+        return sink.size();
+    }
+
+    /**
+     * @return the document, one "field : value" line for each value of each
+     *  field, in the order the fields were first set
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        for (String fieldName : fieldNames)
+        {
+            Object value = sink.getField(fieldName);
+            if (value instanceof Collection)
+            {
+                for (Object singleValue : (Collection<?>) value)
+                    text.append(fieldName).append(" : ").append(singleValue).append('\n');
+            }
+            else if (value != null)
+                text.append(fieldName).append(" : ").append(value).append('\n');
+        }
+        return text.toString();
+    }
+}
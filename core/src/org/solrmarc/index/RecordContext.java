@@ -0,0 +1,178 @@
+package org.solrmarc.index;
+
+import java.util.*;
+
+import org.marc4j.ErrorHandler;
+import org.marc4j.marc.Record;
+import org.solrmarc.tools.RecordTagIndex;
+
+/**
+ * Everything derived from a record while it is being indexed:  the record
+ *  itself, the handler its errors are reported to, its fields by tag, and
+ *  the values of the indexer's field specifications.  Keeping this here,
+ *  rather than in instance variables of the indexer, lets one SolrIndexer,
+ *  with its translation maps, index records on many threads at once.
+ *
+ * A SolrIndexer subclass or mixin that works out per-record state in
+ *  perRecordInit keeps it in a subclass of RecordContext, created by the
+ *  indexer's newRecordContext, or with setAttribute.  Custom methods get
+ *  the context of the record they were called for with forRecord(record),
+ *  or can take a RecordContext instead of a Record as their first parameter.
+ *  A context is only used by the thread indexing its record.
+ */
+public class RecordContext
+{
+    private static final ThreadLocal<RecordContext> current = new ThreadLocal<RecordContext>();
+
+    private final Record record;
+    private final ErrorHandler errors;
+    private RecordTagIndex tagIndex = null;
+    /** the bytes the record was read from, if writing it again would give the same bytes */
+    private byte recordBytes[] = null;
+    /** the values of the indexer's field specification parts for the record */
+    TagDispatcher.Values tagValues = null;
+    /** per-record state of mixins; null until some is set */
+    private Map<Object, Object> attributes = null;
+
+    /**
+     * @param record the record to index
+     * @param errors the handler errors found while indexing the record are
+     *  reported to, or null
+     */
+    public RecordContext(Record record, ErrorHandler errors)
+    {
+        this.record = record;
+        this.errors = errors;
+    }
+
+    /**
+     * @return the record being indexed
+     */
+    public Record getRecord()
+    {
+        return record;
+    }
+
+    /**
+     * @return the handler errors found while indexing the record are
+     *  reported to, or null
+     */
+    public ErrorHandler getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * @return the bytes the record was read from, as UTF-8 binary MARC, or
+     *  null if they aren't known or writing the record again could give
+     *  different bytes
+     */
+    public byte[] getRecordBytes()
+    {
+        return recordBytes;
+    }
+
+    /**
+     * @param recordBytes the bytes the record was read from, which must be
+     *  the same as writing it as UTF-8 binary MARC would give, or null
+     */
+    public void setRecordBytes(byte recordBytes[])
+    {
+        this.recordBytes = recordBytes;
+    }
+
+    /**
+     * @return the fields of the record by tag
+     */
+    public RecordTagIndex getTagIndex()
+    {
+        if (tagIndex == null)
+            tagIndex = new RecordTagIndex(record);
+        return tagIndex;
+    }
+
+    /**
+     * @return per-record state set with setAttribute, or null
+     */
+    public Object getAttribute(Object key)
+    {
+        return (attributes != null) ? attributes.get(key) : null;
+    }
+
+    /**
+     * keep per-record state, e.g. of a mixin, with the record
+     */
+    public void setAttribute(Object key, Object value)
+    {
+        if (attributes == null)
+            attributes = new HashMap<Object, Object>();
+        attributes.put(key, value);
+    }
+
+    /**
+     * @return the values of a compiled field specification for the record,
+     *  the same as MarcUtils.getFieldList gives
+     */
+    Set<String> getFieldList(FieldSpecPart parts[])
+    {
+        Set<String> result = new LinkedHashSet<String>();
+        collectFieldList(parts, result);
+        return result;
+    }
+
+    /**
+     * add the values of a compiled field specification for the record to a
+     *  set, such as a ValueCollector, in the order getFieldList gives them
+     */
+    void collectFieldList(FieldSpecPart parts[], Set<String> result)
+    {
+        if (tagValues != null)
+            tagValues.addFieldList(parts, record, result);
+        else
+        {
+            for (FieldSpecPart part : parts)
+                part.addValues(record, result);
+        }
+    }
+
+    /**
+     * @return the context of the record the calling thread is indexing, or
+     *  null if it isn't indexing one
+     */
+    public static RecordContext current()
+    {
+        return current.get();
+    }
+
+    /**
+     * @return the context of record, if the calling thread is indexing it;
+     *  otherwise null
+     */
+    public static RecordContext forRecord(Record record)
+    {
+        RecordContext context = current.get();
+        return (context != null && context.record == record) ? context : null;
+    }
+
+    /**
+     * make a context the context of the record the calling thread is
+     *  indexing, and its tag index the current one.  The tag index is built
+     *  first, so if it can't be (e.g. there is no record), the calling thread
+     *  is left as it was.
+     * @param context the context, or null when no record is being indexed
+     */
+    static void setCurrent(RecordContext context)
+    {
+        if (context == null)
+        {
+            current.remove();
+            RecordTagIndex.setCurrent(null);
+        }
+        else
+        {
+            RecordTagIndex tagIndex = context.getTagIndex();
+            current.set(context);
+            RecordTagIndex.setCurrent(tagIndex);
+        }
+    }
+}
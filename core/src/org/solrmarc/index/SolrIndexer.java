@@ -21,6 +21,7 @@ import java.io.*;
 import java.lang.reflect.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.*;
 
 import org.apache.log4j.Logger;
@@ -43,9 +44,15 @@ public class SolrIndexer
     /** map: keys are solr field names, values inform how to get solr field values */
     private Map<String, String[]> fieldMap = null;
 
+    /** the specifications of fieldMap, compiled; run in turn for each record */
+    private FieldExtractor extractors[] = new FieldExtractor[0];
+
+    /** the field specification parts of the extractors, grouped by tag */
+    private TagDispatcher dispatcher = new TagDispatcher();
+
     /** map of translation maps.  keys are names of translation maps;
      *  values are the translation maps (hence, it's a map of maps) */
-    private Map<String, Map<String, String>> transMapMap = null;
+    private Map<String, TranslationMap> transMapMap = null;
 
     /** map of custom methods.  keys are names of custom methods;
      *  values are the translation maps (hence, it's a map of maps) */
@@ -61,8 +68,18 @@ public class SolrIndexer
     /** list of path to look for property files in */
     protected String propertyFilePaths[];
 
-    /** Error Handler used for reporting errors */
-    protected ErrorHandler errors;
+    /** collects the time spent on each index specification; null unless profiling */
+    private FieldSpecProfiler profiler = null;
+
+    /** the snapshot of the configuration being loaded from or recorded while the indexer is
+     *  configured; null once it is configured, or if no snapshot is used */
+    private ConfigSnapshot configSnapshot = null;
+
+    /** where configSnapshot is written once the indexer is configured; null if it was loaded */
+    private File configSnapshotFile = null;
+
+    /** true if the indexer was configured from a snapshot */
+    private boolean configuredFromSnapshot = false;
 
     // Initialize logging category
     protected static Logger logger = Logger.getLogger(MarcImporter.class.getName());
@@ -74,7 +91,8 @@ public class SolrIndexer
     private SolrIndexer()
     {
         fieldMap = new HashMap<String, String[]>();
-        transMapMap = new HashMap<String, Map<String, String>>();
+        // translation maps named in custom method parameters are loaded while indexing
+        transMapMap = new ConcurrentHashMap<String, TranslationMap>();
         customMethodMap = new HashMap<String, Method>();
         customMixinMap = new HashMap<String, SolrIndexerMixin>();
         indexDate = new Date();
@@ -87,21 +105,118 @@ public class SolrIndexer
      * @param propertyDirs - array of directories holding properties files
      */
     public SolrIndexer(String indexingPropsFile, String propertyDirs[])
+    {
+        this(indexingPropsFile, propertyDirs, null);
+    }
+
+    /**
+     * Constructor that configures the indexer from a snapshot of its fully resolved
+     * configuration, if the snapshot is there and all the files it was made from are
+     * unchanged.  Otherwise the indexer is configured from the properties files, and the
+     * snapshot is written when finishConfiguration is called.
+     * @param indexingPropsFile the x_index.properties file mapping solr
+     *  field names to values in the marc records
+     * @param propertyDirs - array of directories holding properties files
+     * @param snapshotFile - the configuration snapshot, or null to not use one
+     */
+    public SolrIndexer(String indexingPropsFile, String propertyDirs[], File snapshotFile)
     {
         this();
         propertyFilePaths = propertyDirs;
+        if (snapshotFile != null)
+        {
+            configSnapshot = ConfigSnapshot.load(snapshotFile, getClass().getName(), indexingPropsFile, propertyDirs);
+            if (configSnapshot != null)
+            {
+                configuredFromSnapshot = true;
+                fieldMap.putAll(configSnapshot.fieldMap);
+                for (Map.Entry<String, Map<String, String>> transMap : configSnapshot.transMaps.entrySet())
+                    transMapMap.put(transMap.getKey(), new TranslationMap(transMap.getValue()));
+                verifyCustomMethodsAndTransMaps();
+                compileFieldMap();
+                return;
+            }
+            configSnapshot = ConfigSnapshot.record(getClass().getName(), indexingPropsFile, propertyDirs);
+            configSnapshotFile = snapshotFile;
+        }
         if (indexingPropsFile != null)
         {
             String indexingPropsFiles[] = indexingPropsFile.split("[;,]");
             for (String indexProps : indexingPropsFiles)
             {
                 indexProps = indexProps.trim();
-                Properties indexingProps = PropertiesUtils.loadProperties(propertyFilePaths, indexProps);
+                Properties indexingProps = loadConfigProperties(indexProps);
                 fillMapFromProperties(indexingProps);
             }
         }
     }
 
+    /**
+     * Called once the indexer, including any sub-class, is configured:  writes the
+     * configuration snapshot, if one is being recorded.
+     */
+    public void finishConfiguration()
+    {
+        if (configSnapshot != null && configSnapshotFile != null)
+        {
+            configSnapshot.fieldMap.putAll(fieldMap);
+            for (Map.Entry<String, TranslationMap> transMap : transMapMap.entrySet())
+                configSnapshot.transMaps.put(transMap.getKey(), transMap.getValue());
+            configSnapshot.write(configSnapshotFile);
+        }
+        configSnapshot = null;
+        configSnapshotFile = null;
+    }
+
+    /**
+     * @return true if the indexer was configured from a configuration snapshot rather than
+     * the properties files
+     */
+    public boolean isConfiguredFromSnapshot()
+    {
+        return configuredFromSnapshot;
+    }
+
+    /**
+     * load a properties file from the property file paths, noting it in the configuration
+     * snapshot being recorded
+     */
+    private Properties loadConfigProperties(String fileName)
+    {
+        if (configSnapshot == null)
+            return PropertiesUtils.loadProperties(propertyFilePaths, fileName);
+        Properties props = new Properties();
+        try
+        {
+            props.load(new ByteArrayInputStream(configSnapshot.readSource(propertyFilePaths, fileName)));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException("Fatal error: Unable to find specified properties file: " + fileName);
+        }
+        return props;
+    }
+
+    /**
+     * Load a list of values, one per line, from a file in the property file paths, for
+     * sub-classes to call while they are configured.  The list is kept in the configuration
+     * snapshot, if one is used.
+     * @param listFilename the name of the file containing the list
+     * @return the values in the file
+     */
+    protected Set<String> loadPropertiesSet(String listFilename)
+    {
+        if (configSnapshot == null)
+            return PropertiesUtils.loadPropertiesSet(propertyFilePaths, listFilename);
+        Set<String> values = configSnapshot.propertySets.get(listFilename);
+        if (configuredFromSnapshot && values != null)
+            return new LinkedHashSet<String>(values);
+        byte contents[] = configSnapshot.readSource(propertyFilePaths, listFilename);
+        values = PropertiesUtils.loadPropertiesSet(new ByteArrayInputStream(contents), listFilename);
+        configSnapshot.propertySets.put(listFilename, new LinkedHashSet<String>(values));
+        return values;
+    }
+
     /* A constructor that takes an INDEXER Properties object, and a search
      * path (possibly empty). This is used by SolrMarc tests, may not
      * work as you might expect right in actual program use, not sure.
@@ -321,6 +436,35 @@ public class SolrIndexer
 
         // verify that fieldMap is valid
         verifyCustomMethodsAndTransMaps();
+
+        compileFieldMap();
+    }
+
+    /**
+     * compile the specifications in fieldMap into extractors, so the
+     *  specifications aren't interpreted again for each record
+     */
+    private void compileFieldMap()
+    {
+        List<FieldExtractor> compiled = new ArrayList<FieldExtractor>(fieldMap.size());
+        TagDispatcher compiledDispatcher = new TagDispatcher();
+        for (String key : fieldMap.keySet())
+        {
+            FieldExtractor extractor = FieldExtractor.compile(this, compiledDispatcher, key, fieldMap.get(key));
+            if (extractor != null)
+                compiled.add(extractor);
+        }
+        extractors = compiled.toArray(new FieldExtractor[compiled.size()]);
+        dispatcher = compiledDispatcher;
+    }
+
+    /**
+     * @return the instance of the mixin class used by this indexer, or null
+     *  if it isn't used
+     */
+    SolrIndexerMixin getMixin(String className)
+    {
+        return customMixinMap.get(className);
     }
 
     /**
@@ -438,7 +582,7 @@ public class SolrIndexer
                 {
                     parmClasses[i + 1] = String.class;
                 }
-                method = classToLookIn.getMethod(functionName, parmClasses);
+                method = getCustomMethod(classToLookIn, functionName, parmClasses);
                 if (customMethodMap.containsKey(functionName))
                     customMethodMap.put(functionName, null);
                 else
@@ -446,7 +590,7 @@ public class SolrIndexer
             }
             else
             {
-                method = classToLookIn.getMethod(indexParm, new Class[] { Record.class });
+                method = getCustomMethod(classToLookIn, indexParm, new Class<?>[] { Record.class });
                 if (customMethodMap.containsKey(indexParm))
                     customMethodMap.put(indexParm, null);
                 else
@@ -498,6 +642,26 @@ public class SolrIndexer
         return(this.loadTranslationMap(null, translationMapSpec));
     }
 
+    /**
+     * find a custom method taking a Record and the parameter classes after it, or else one
+     *  taking a RecordContext instead of the Record
+     * @param parmClasses the classes of the parameters, starting with Record.class
+     */
+    private static Method getCustomMethod(Class<?> classToLookIn, String functionName, Class<?> parmClasses[])
+            throws NoSuchMethodException
+    {
+        try
+        {
+            return classToLookIn.getMethod(functionName, parmClasses);
+        }
+        catch (NoSuchMethodException e)
+        {
+            Class<?> contextParmClasses[] = parmClasses.clone();
+            contextParmClasses[0] = RecordContext.class;
+            return classToLookIn.getMethod(functionName, contextParmClasses);
+        }
+    }
+
     /**
      * load the translation map into transMapMap
      * @param indexProps _index.properties as Properties object
@@ -506,7 +670,7 @@ public class SolrIndexer
      *   properties ...
      * @return the name of the translation map
      */
-    protected String loadTranslationMap(Properties indexProps, String translationMapSpec)
+    protected synchronized String loadTranslationMap(Properties indexProps, String translationMapSpec)
     {
         if (translationMapSpec.length() == 0)
             return null;
@@ -559,7 +723,7 @@ public class SolrIndexer
     private void loadTranslationMapValues(String transMapName, String mapName, String mapKeyPrefix)
     {
         Properties props = null;
-        props = PropertiesUtils.loadProperties(propertyFilePaths, transMapName);
+        props = loadConfigProperties(transMapName);
         logger.debug("Loading Custom Map: " + transMapName);
         loadTranslationMapValues(props, mapName, mapKeyPrefix);
     }
@@ -573,6 +737,11 @@ public class SolrIndexer
      */
     private void loadTranslationMapValues(Properties transProps, String mapName, String mapKeyPrefix)
     {
+        // fill a copy, so threads indexing records never see a partly loaded map
+        Map<String, String> valueMap = new LinkedHashMap<String, String>();
+        if (transMapMap.containsKey(mapName))
+            valueMap.putAll(transMapMap.get(mapName));
+        boolean found = false;
         Enumeration<?> en = transProps.propertyNames();
         while (en.hasMoreElements())
         {
@@ -587,18 +756,12 @@ public class SolrIndexer
                 if (value.equals("null"))
                     value = null;
 
-                Map<String, String> valueMap;
-                if (transMapMap.containsKey(mapName))
-                    valueMap = transMapMap.get(mapName);
-                else
-                {
-                    valueMap = new LinkedHashMap<String, String>();
-                    transMapMap.put(mapName, valueMap);
-                }
-
                 valueMap.put(mapKey, value);
+                found = true;
             }
         }
+        if (found)
+            transMapMap.put(mapName, new TranslationMap(valueMap));
     }
 
     /**
@@ -616,115 +779,226 @@ public class SolrIndexer
      */
     public Map<String, Object> createFldNames2ValsMap(Record record, ErrorHandler errors)
     {
-        this.errors = errors;
-        perRecordInitMaster(record);
-        Map<String, Object> fldNames2ValsMap = new HashMap<String, Object>();
+        return createFldNames2ValsMap(newRecordContext(record, errors));
+    }
 
-        for (String key : fieldMap.keySet())
-        {
-            String fieldVal[] = fieldMap.get(key);
-            String indexField = fieldVal[0];
-            String indexType = fieldVal[1];
-            String indexParm = fieldVal[2];
-            String mapName = fieldVal[3];
+    /**
+     * Given the context of a record, return a Map of solr fields (keys are
+     * field names, values are an Object containing the values (a Set or a
+     * String)).  All the per-record state is kept in the context, so records
+     * can be indexed on several threads at once if isThreadSafe().
+     */
+    public Map<String, Object> createFldNames2ValsMap(RecordContext context)
+    {
+        MapDocumentSink fldNames2ValsMap = new MapDocumentSink();
+        indexRecord(context, fldNames2ValsMap);
+        return fldNames2ValsMap.getMap();
+    }
 
-            if (indexType.equals("constant"))
-            {
-                if (indexParm.contains("|"))
-                {
-                    String parts[] = indexParm.split("[|]");
-                    Set<String> result = new LinkedHashSet<String>();
-                    result.addAll(Arrays.asList(parts));
-                    // if a zero length string appears, remove it
-                    result.remove("");
-                    addFieldsToMap(fldNames2ValsMap, indexField, null, result);
-                }
-                else
-                    addFieldToMap(fldNames2ValsMap, indexField, indexParm);
-            }
-            else if (indexType.equals("first"))
-                addFieldToMap(fldNames2ValsMap, indexField, getFirstFieldVal(record, mapName, indexParm));
-            else if (indexType.equals("all"))
-                addFieldsToMap(fldNames2ValsMap, indexField, mapName, MarcUtils.getFieldList(record, indexParm));
-            else if (indexType.equals("DeleteRecordIfFieldEmpty"))
+    /**
+     * Given a record, put its solr fields in a DocumentSink, such as the
+     * SolrInputDocument to be sent to Solr, rather than in a Map.
+     */
+    public void indexRecord(Record record, ErrorHandler errors, DocumentSink doc)
+    {
+        indexRecord(newRecordContext(record, errors), doc);
+    }
+
+    /**
+     * Given the context of a record, put its solr fields in a DocumentSink.
+     * All the per-record state is kept in the context, so records can be
+     * indexed on several threads at once if isThreadSafe().
+     */
+    public void indexRecord(RecordContext context, DocumentSink doc)
+    {
+        RecordContext outerContext = RecordContext.current();
+        try
+        {
+            RecordContext.setCurrent(context);
+            if (profiler == null)
+                perRecordInitMaster(context);
+            else
             {
-                Set<String> fields = MarcUtils.getFieldList(record, indexParm);
-                if (mapName != null && findTranslationMap(mapName) != null)
-                    fields = Utils.remap(fields, findTranslationMap(mapName), true);
-
-                if (fields.size() != 0)
-                    addFieldsToMap(fldNames2ValsMap, indexField, null, fields);
-                else  // no entries produced for field => generate no record in Solr
-                    throw new SolrMarcIndexerException(SolrMarcIndexerException.DELETE,
-                                                    "Index specification: "+ indexField +" says this record should be deleted.");
+                long start = System.nanoTime();
+                perRecordInitMaster(context);
+                profiler.recordField(FieldSpecProfiler.PER_RECORD_INIT, System.nanoTime() - start, 0);
             }
-            else if (indexType.startsWith("join"))
+
+            // visit the record's fields once for all the field specifications
+            if (dispatcher.isEmpty())
+                context.tagValues = null;
+            else if (profiler == null)
+                context.tagValues = dispatcher.collect(context.getTagIndex());
+            else
             {
-                String joinChar = " ";
-                if (indexType.contains("(") && indexType.endsWith(")"))
-                    joinChar = indexType.replace("join(", "").replace(")", "");
-                addFieldToMap(fldNames2ValsMap, indexField, MarcUtils.getFieldVals(record, indexParm, joinChar));
+                long start = System.nanoTime();
+                context.tagValues = dispatcher.collect(context.getTagIndex());
+                profiler.recordField(FieldSpecProfiler.TAG_DISPATCH, System.nanoTime() - start, 0);
             }
-            else if (indexType.equals("std"))
+
+            for (FieldExtractor extractor : extractors)
             {
-                if (indexParm.equals("era"))
-                    addFieldsToMap(fldNames2ValsMap, indexField, mapName, MarcUtils.getEra(record));
+                if (profiler == null)
+                    extractor.extract(this, doc, context);
                 else
-                    addFieldToMap(fldNames2ValsMap, indexField, getStd(record, indexParm));
+                    addFieldValuesProfiled(doc, extractor, context);
             }
-            else if (indexType.startsWith("custom"))
+        }
+        finally
+        {
+            try
             {
-                try {
-                    handleCustom(fldNames2ValsMap, indexType, indexField, mapName, record, indexParm);
-                }
-                catch(SolrMarcIndexerException e)
+                if (context.tagValues != null)
                 {
-                    String recCntlNum = null;
-                    try {
-                        recCntlNum = record.getControlNumber();
-                    }
-                    catch (NullPointerException npe) { /* ignore */ }
-
-                    if (e.getLevel() == SolrMarcIndexerException.DELETE)
-                    {
-                        throw new SolrMarcIndexerException(SolrMarcIndexerException.DELETE,
-                                "Record " + (recCntlNum != null ? recCntlNum : "") + " purposely not indexed because " + key + " field is empty");
-//                      logger.error("Record " + (recCntlNum != null ? recCntlNum : "") + " not indexed because " + key + " field is empty -- " + e.getMessage(), e);
-                    }
-                    else
-                    {
-                        logger.error("Unable to index record " + (recCntlNum != null ? recCntlNum : "") + " due to field " + key + " -- " + e.getMessage(), e);
-                        throw(e);
-                    }
+                    dispatcher.release(context.tagValues);
+                    context.tagValues = null;
                 }
             }
+            finally
+            {
+                // the outer context was current, so its tag index is built
+                RecordContext.setCurrent(outerContext);
+            }
         }
-        this.errors = null;
-        return fldNames2ValsMap;
+    }
+
+    /**
+     * Create the context of a record about to be indexed.  A sub-class keeping per-record state for its
+     * custom methods overrides this to return a sub-class of RecordContext to keep the state in.
+     *
+     * @param record -  The MARC record about to be indexed.
+     * @param errors -  The handler errors found while indexing the record are reported to, or null.
+     */
+    protected RecordContext newRecordContext(Record record, ErrorHandler errors)
+    {
+        return new RecordContext(record, errors);
+    }
+
+    /**
+     * Create the context of a record about to be indexed, given the bytes it was read from, so a
+     * FullRecordAsMARC field can store them rather than writing the record again.
+     *
+     * @param record -  The MARC record about to be indexed.
+     * @param errors -  The handler errors found while indexing the record are reported to, or null.
+     * @param recordBytes -  The bytes the record was read from, the same as writing it as UTF-8 binary
+     *                       MARC would give (see MarcRecordBytesReader), or null.
+     */
+    public RecordContext createRecordContext(Record record, ErrorHandler errors, byte recordBytes[])
+    {
+        RecordContext context = newRecordContext(record, errors);
+        context.setRecordBytes(recordBytes);
+        return context;
+    }
+
+    /**
+     * @return true if the indexer stores whole records as binary MARC, so it can use the bytes they
+     *         were read from (see createRecordContext)
+     */
+    public boolean usesRecordBytes()
+    {
+        for (FieldExtractor extractor : extractors)
+        {
+            if (extractor.usesRecordBytes())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * A SolrIndexer keeps its per-record state in the RecordContext of each record, so it can index
+     * records on several threads at once.  Sub-classes and mixins that still keep per-record state in
+     * instance variables can't;  they can say they can once they keep it in the RecordContext.
+     *
+     * @return true if createFldNames2ValsMap can be called on several threads at once
+     */
+    public boolean isThreadSafe()
+    {
+        return getClass() == SolrIndexer.class && mixinsAreThreadSafe();
+    }
+
+    /**
+     * @return true if all the mixins of the indexer keep their per-record state in the RecordContext
+     */
+    protected final boolean mixinsAreThreadSafe()
+    {
+        for (SolrIndexerMixin mixin : customMixinMap.values())
+        {
+            if (!mixin.isThreadSafe())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * run an extractor, recording the time taken and the number of values
+     *  added with the profiler
+     */
+    private void addFieldValuesProfiled(DocumentSink doc, FieldExtractor extractor, RecordContext context)
+    {
+        String indexField = extractor.indexField;
+        int numFieldsBefore = doc.size();
+        Object valsBefore = doc.getField(indexField);
+        int numValsBefore = countValues(valsBefore);
+        long start = System.nanoTime();
+        try
+        {
+            extractor.extract(this, doc, context);
+        }
+        finally
+        {
+            long nanos = System.nanoTime() - start;
+            Object valsAfter = doc.getField(indexField);
+            int numValues = countValues(valsAfter) - numValsBefore;
+            // custom methods returning a Map add fields other than indexField
+            numValues += doc.size() - numFieldsBefore - (valsBefore == null && valsAfter != null ? 1 : 0);
+            profiler.recordField(extractor.specName, nanos, numValues);
+        }
+    }
+
+    /**
+     * @return the number of values in a value of a DocumentSink (a String or
+     *  a Collection)
+     */
+    private static int countValues(Object fieldVals)
+    {
+        if (fieldVals == null)
+            return 0;
+        if (fieldVals instanceof Collection)
+            return ((Collection<?>) fieldVals).size();
+        return 1;
     }
 
     /**
      * This routine CANNOT be overridden in a sub-class.  Its is called to perform some processing that needs
      * to be done once for each record, and which may be needed by several indexing specifications.  Basically all
      * this method does is call the override-able method perRecordInit for the SolrIndexer class, and the perRecordInit
-     * methods of any SolrIndexerMixin that are in use.
+     * methods of any SolrIndexerMixin that are in use.  The fields of the record by tag are available to them, and to
+     * custom methods, through the context or RecordTagIndex.forRecord(record).
      *
-     * @param record -  The MARC record that is being indexed.
+     * @param context -  The context of the MARC record that is being indexed.
      */
-    private final void perRecordInitMaster(Record record)
+    private final void perRecordInitMaster(RecordContext context)
     {
-        perRecordInit(record);
-        for (String key : customMixinMap.keySet())
-        {
-            SolrIndexerMixin mixin = customMixinMap.get(key);
-            mixin.perRecordInit(record);
-        }
+        perRecordInit(context);
+        for (SolrIndexerMixin mixin : customMixinMap.values())
+            mixin.perRecordInit(context);
     }
 
     /**
      * This routine can be overridden in a sub-class to perform some processing that needs to be done once
      * for each record, and which may be needed by several indexing specifications, especially custom methods.
-     * The default version does nothing.
+     * Anything it works out should be kept in the context (see newRecordContext), not in instance variables.
+     * The default version calls perRecordInit(Record).
+     *
+     * @param context -  The context of the MARC record that is being indexed.
+     */
+    protected void perRecordInit(RecordContext context)
+    {
+        perRecordInit(context.getRecord());
+    }
+
+    /**
+     * The version of perRecordInit that only gets the record.  The default version does nothing.
      *
      * @param record -  The MARC record that is being indexed.
      */
@@ -734,97 +1008,41 @@ public class SolrIndexer
 
     /**
      * Calling a custom method defined in a user-supplied custom subclass of SolrIndexer,
-     * do the processing indicated by a custom function, putting the solr field
-     * name and value into the indexMap parameter
+     * or in a mixin, do the processing indicated by a custom function, putting the solr field
+     * name and value into the doc parameter
      *
-     * @param indexMap - The map contain the solr index record that is being constructed for this MARC record.
-     * @param indexType - if set to "customDeleteRecordIfFieldEmpty", then the
-     *                    solr record should be deleted if no value
-     *                    is generated by this custom indexing method.
-     * @param indexField - The name of the field to be added to the solr index record.  Note that
-     *                     in that case of a custom index method that returns a Map, the keys of the map
-     *                     define the names of the fields to be added, and this value is then simply a dummy.
-     * @param mapName - The name (or file and name) of a translation map to use to convert
-     *                  the data in the specified fields of the MARC record to the desired values
-     *                  to be included in the Solr index record.  (If mapName is null, the values
-     *                  in the record will be returned as-is.)
-     * @param record -  The MARC record that is being indexed.
-     * @param indexParm - contains the name of the custom method to invoke, as well as the
-     *                    additional parameters to pass to that method.
+     * @param doc - The solr index record that is being constructed for this MARC record.
+     * @param custom - The compiled custom specification: the method to invoke, bound to the object to invoke
+     *                 it on and the additional parameters to pass to it, the name of the field to be added to the solr
+     *                 index record, the translation map to use, and whether the solr record should be deleted
+     *                 if no value is generated.  Note that in the case of a custom index method that returns
+     *                 a Map, the keys of the map define the names of the fields to be added.
+     * @param context -  The context of the MARC record that is being indexed.
      */
-    private void handleCustom(Map<String, Object> indexMap, String indexType, String indexField,
-    							String mapName, Record record, String indexParm)
+    void handleCustom(DocumentSink doc, FieldExtractor.Custom custom, RecordContext context)
     		throws SolrMarcIndexerException
     {
         Object retval = null;
         Class<?> returnType = null;
+        String indexField = custom.indexField;
 
         // grab the record id in case we want to use it in an exception message
         String recCntlNum = null;
         try {
-        	recCntlNum = record.getControlNumber();
+        	recCntlNum = context.getRecord().getControlNumber();
         }
         catch (NullPointerException npe) { /* ignore as this is for error msgs only*/ }
 
-        String className = null;
-        Class<?> classThatContainsMethod = this.getClass();
-        Object objectThatContainsMethod = this;
         try
         {
-            if (indexType.matches("custom[(][a-zA-Z0-9.]+[)]"))
-            {
-                className = indexType.substring(7, indexType.length()-1).trim();
-                if (customMixinMap.containsKey(className))
-                {
-                    objectThatContainsMethod = customMixinMap.get(className);
-                    classThatContainsMethod = objectThatContainsMethod.getClass();
-                }
-            }
-
-            Method method;
-            if (indexParm.indexOf("(") != -1)
-            {
-                String functionName = indexParm.substring(0, indexParm.indexOf('('));
-                String parmStr = indexParm.substring(indexParm.indexOf('(')+1, indexParm.lastIndexOf(')'));
-                // parameters are separated by unescaped commas
-                String parms[] = parmStr.trim().split("(?<=[^\\\\]),");
-                int numparms = parms.length;
-                Class parmClasses[] = new Class[numparms + 1];
-                parmClasses[0] = Record.class;
-                Object objParms[] = new Object[numparms + 1];
-                objParms[0] = record;
-                for (int i = 0; i < numparms; i++)
-                {
-                    parmClasses[i + 1] = String.class;
-                    objParms[i + 1] = dequote(parms[i].trim());
-                }
-             // NRD 2010-06-03  can't do this because have functionName with two signatures!  (getAllAlphaSubfields)
-//              method = customMethodMap.get(functionName);
-                method = getClass().getMethod(functionName, parmClasses);
-                if (method == null)
-                    method = classThatContainsMethod.getMethod(functionName, parmClasses);
-                returnType = method.getReturnType();
-                retval = method.invoke(objectThatContainsMethod, objParms);
-            }
-            else
-            {
-                method = customMethodMap.get(indexParm);
-                if (method == null)
-                    method = classThatContainsMethod.getMethod(indexParm, new Class[]{Record.class});
-                returnType = method.getReturnType();
-                retval = method.invoke(objectThatContainsMethod, new Object[] { record });
-            }
+            returnType = custom.invoker.getReturnType();
+            retval = invokeCustomMethod(custom.invoker, context);
         }
         catch (SecurityException e)
         {
             // e.printStackTrace();
             logger.error("Error while indexing " + indexField + " for record " + (recCntlNum != null ? recCntlNum : "") + " -- " + e.getCause());
         }
-        catch (NoSuchMethodException e)
-        {
-            // e.printStackTrace();
-            logger.error("Error while indexing " + indexField + " for record " + (recCntlNum != null ? recCntlNum : "") + " -- " + e.getCause());
-        }
         catch (IllegalArgumentException e)
         {
             // e.printStackTrace();
@@ -844,26 +1062,38 @@ public class SolrIndexer
             logger.error("Error while indexing " + indexField + " for record " + (recCntlNum != null ? recCntlNum : "") + " -- " + e.getCause());
         }
 
-        boolean deleteIfEmpty = false;
-        if (indexType.equals("customDeleteRecordIfFieldEmpty"))
-            deleteIfEmpty = true;
-
-        boolean stopOrDelete = finishCustomMethod(indexMap, indexField, mapName, returnType, retval, deleteIfEmpty);
+        boolean stopOrDelete = finishCustomMethod(doc, indexField, custom.transMap, returnType, retval, custom.deleteIfEmpty);
 
         if (stopOrDelete == true)
         	throw new SolrMarcIndexerException(SolrMarcIndexerException.DELETE);
     }
 
+    /**
+     * invoke a custom indexing method, recording the time it takes with the
+     *  profiler if there is one
+     */
+    private Object invokeCustomMethod(CustomMethodInvoker invoker, RecordContext context)
+            throws IllegalAccessException, InvocationTargetException
+    {
+        if (profiler == null)
+            return invoker.invoke(context);
+
+        long start = System.nanoTime();
+        Object retval = invoker.invoke(context);
+        profiler.recordCustomMethod(invoker.profileName, System.nanoTime() - start);
+        return retval;
+    }
+
     /**
      * Finish up the processing for a custom indexing function
-     * @param indexMap - The map contain the solr index record that is being constructed for this MARC record.
+     * @param doc - The solr index record that is being constructed for this MARC record.
      * @param indexField - The name of the field to be added to the solr index record.  Note that
      *                     in that case of a custom index method that returns a Map, the keys of the map
      *                     define the names of the fields to be added, and this value is then simply a dummy.
-     * @param mapName - The name (or file and name) of a translation map to use to convert
-     *                  the data in the specified fields of the MARC record to the desired values
-     *                  to be included in the Solr index record.  (If mapName is null, the values
-     *                  in the record will be returned as-is.)
+     * @param transMap - The translation map to use to convert the data in the specified fields
+     *                   of the MARC record to the desired values to be included in the Solr
+     *                   index record.  (If transMap is null, the values in the record will be
+     *                   returned as-is.)
      * @param returnType - The Class of the return type of the custom indexing function or the
      *                     custom BeanShell script method, the valid expected types are String, Set<String>, or Map<String, Object>
      * @param retval - The value that was returned from the custom indexing function or the
@@ -872,7 +1102,7 @@ public class SolrIndexer
      *                        was generated.
      * @return returns true if the indexing process should stop and the solr record should be deleted.
      */
-    private boolean finishCustomMethod(Map<String, Object> indexMap, String indexField, String mapName,
+    private boolean finishCustomMethod(DocumentSink doc, String indexField, TranslationMap transMap,
                                          Class<?> returnType, Object retval, boolean deleteIfEmpty)
     {
         if (returnType == null || retval == null)
@@ -881,70 +1111,28 @@ public class SolrIndexer
         {
             if (deleteIfEmpty && ((Map<String, String>) retval).size() == 0)
             	return (true);
-            indexMap.putAll((Map<String, String>) retval);
+            for (Map.Entry<String, String> field : ((Map<String, String>) retval).entrySet())
+                doc.setField(field.getKey(), field.getValue());
         }
         else if (returnType.isAssignableFrom(Set.class))
         {
             Set<String> fields = (Set<String>) retval;
-            if (mapName != null && findTranslationMap(mapName) != null)
-                fields = Utils.remap(fields, findTranslationMap(mapName), true);
+            if (transMap != null)
+                fields = transMap.remap(fields, true);
             if (deleteIfEmpty && fields.size()== 0)
             	return (true);
-            addFieldsToMap(indexMap, indexField, null, fields);
+            FieldExtractor.setValues(doc, indexField, fields);
         }
         else if (returnType.isAssignableFrom(String.class))
         {
             String field = (String) retval;
-            if (mapName != null && findTranslationMap(mapName) != null)
-                field = Utils.remap(field, findTranslationMap(mapName), true);
-            addFieldToMap(indexMap, indexField, null, field);
+            if (transMap != null)
+                field = transMap.remap(field, true);
+            FieldExtractor.setValue(doc, indexField, field);
         }
         return false;
     }
 
-    /**
-     * if the first and last characters of the string are quote marks ("), then
-     * delete them.
-     */
-    private String dequote(String str)
-    {
-        if (str.length() >= 2 && str.charAt(0) == '"' && str.charAt(str.length()-1) == '"')
-            return str.substring(1, str.length() - 1);
-
-        return str;
-    }
-
-    /**
-     * get values that don't require parsing specified record fields:
-     *   raw, xml, date, index_date ...
-     * @param indexParm - what type of value to return
-     */
-    private String getStd(Record record, String indexParm)
-    {
-        if (indexParm.equals("raw")
-                || indexParm.equalsIgnoreCase("FullRecordAsMARC"))
-            return MarcUtils.getRecordAsBinaryStr(record);
-        else if (indexParm.equals("xml")
-                || indexParm.equalsIgnoreCase("FullRecordAsXML"))
-            return MarcUtils.getRecordAsMarcXmlStr(record);
-        else if (indexParm.equals("json")
-                || indexParm.equalsIgnoreCase("FullRecordAsJSON"))
-            return MarcUtils.getRecordAsJsonStr(record, true);
-        else if (indexParm.equals("json2")
-                || indexParm.equalsIgnoreCase("FullRecordAsJSON2"))
-            return MarcUtils.getRecordAsJsonStr(record, false);
-        else if (indexParm.equals("xml")
-                || indexParm.equalsIgnoreCase("FullRecordAsText"))
-            return (record.toString().replaceAll("\n", "<br/>"));
-        else if (indexParm.equals("date")
-                || indexParm.equalsIgnoreCase("DateOfPublication"))
-            return MarcUtils.getDate(record);
-        else if (indexParm.equals("index_date")
-                || indexParm.equalsIgnoreCase("DateRecordIndexed"))
-            return getCurrentDate();
-        return null;
-    }
-
     /**
      * Add a field-value pair to the fldNames2ValsMap representation of a solr doc.
      *  The value will be "translated" per the translation map indicated.
@@ -955,8 +1143,9 @@ public class SolrIndexer
      */
     protected void addFieldToMap(Map<String, Object> fldNames2ValsMap, String ixFldName, String transMapName, String fieldVal)
     {
-        if (transMapName != null && findTranslationMap(transMapName) != null)
-            fieldVal = Utils.remap(fieldVal, findTranslationMap(transMapName), true);
+        TranslationMap transMap = (transMapName != null) ? getTranslationMap(transMapName) : null;
+        if (transMap != null)
+            fieldVal = transMap.remap(fieldVal, true);
 
         if (fieldVal != null && fieldVal.length() > 0)
             fldNames2ValsMap.put(ixFldName, fieldVal);
@@ -984,8 +1173,9 @@ public class SolrIndexer
      */
     protected void addFieldsToMap(Map<String, Object> fldNames2ValsMap, String ixFldName, String transMapName, Set<String> fieldVals)
     {
-        if (transMapName != null && findTranslationMap(transMapName) != null)
-            fieldVals = Utils.remap(fieldVals, findTranslationMap(transMapName), true);
+        TranslationMap transMap = (transMapName != null) ? getTranslationMap(transMapName) : null;
+        if (transMap != null)
+            fieldVals = transMap.remap(fieldVals, true);
 
         if (!fieldVals.isEmpty())
         {
@@ -1090,7 +1280,9 @@ public class SolrIndexer
          // to findMap, to pass to remap. Code in rest of this class
          // should be refactored to make this a lot more reasonable.
          String internalMapName = loadTranslationMap(mapName);
-         results = Utils.remap(results, findTranslationMap(internalMapName), true);
+         TranslationMap transMap = (internalMapName != null) ? getTranslationMap(internalMapName) : null;
+         if (transMap != null)
+             results = transMap.remap(results, true);
        }
 
        //removeTrailingPunct?
@@ -1122,16 +1314,17 @@ public class SolrIndexer
     public String getFirstFieldVal(Record record, String mapName, String tagStr)
     {
         Set<String> result = MarcUtils.getFieldList(record, tagStr);
-        if (mapName != null && findTranslationMap(mapName) != null)
+        TranslationMap transMap = (mapName != null) ? getTranslationMap(mapName) : null;
+        if (transMap != null)
         {
-            result = Utils.remap(result, findTranslationMap(mapName), false);
-            if (findTranslationMap(mapName).containsKey(""))
+            result = transMap.remap(result, false);
+            if (transMap.containsKey(""))
             {
-                result.add(findTranslationMap(mapName).get(""));
+                result.add(transMap.get(""));
             }
-            if (findTranslationMap(mapName).containsKey("__DEFAULT"))
+            if (transMap.containsKey("__DEFAULT"))
             {
-                result.add(findTranslationMap(mapName).get("__DEFAULT"));
+                result.add(transMap.get("__DEFAULT"));
             }
         }
         Iterator<String> iter = result.iterator();
@@ -1154,9 +1347,19 @@ public class SolrIndexer
     /**
      * Get the appropriate Map object from populated transMapMap
      * @param mapName the name of the translation map to find
-     * @return populated Map object
+     * @return populated Map object, a TranslationMap
      */
     public Map<String, String> findTranslationMap(String mapName)
+    {
+        return getTranslationMap(mapName);
+    }
+
+    /**
+     * Get the appropriate translation map from populated transMapMap
+     * @param mapName the name of the translation map to find
+     * @return the translation map, or null if there is none by that name
+     */
+    public TranslationMap getTranslationMap(String mapName)
     {
         if (mapName.startsWith("pattern_map:"))
             mapName = mapName.substring("pattern_map:".length());
@@ -1202,6 +1405,7 @@ public class SolrIndexer
                     longest = item;
                 }
             }
+            ErrorHandler errors = getErrorHandler();
             if (flagExtraEntries.equalsIgnoreCase("true") && errors != null)
             {
                 for (String item : set)
@@ -1498,10 +1702,42 @@ public class SolrIndexer
 		return MarcUtils.getAllSearchableFields(record, lowerBoundStr, upperBoundStr);
 	}
 
+	/**
+	 * getAllSearchableFields, with the text cut to at most maxCharsStr
+	 *  characters, so a huge record doesn't make a huge field, e.g.
+	 *  custom, getAllSearchableFields(100, 900, 100000)
+	 */
+	public static String getAllSearchableFields(final Record record, String lowerBoundStr, String upperBoundStr, String maxCharsStr)
+	{
+		return MarcUtils.getAllSearchableFields(record, lowerBoundStr, upperBoundStr, maxCharsStr);
+	}
+
+
+    /**
+     * Time each index specification and custom method with the given profiler
+     * @param profiler - profiler only used by this indexer, or null to stop profiling
+     */
+    public void setProfiler(FieldSpecProfiler profiler)
+    {
+        this.profiler = profiler;
+    }
 
+    /**
+     * @return the profiler timing this indexer, or null if it isn't being profiled
+     */
+    public FieldSpecProfiler getProfiler()
+    {
+        return profiler;
+    }
+
+    /**
+     * @return the handler errors found while indexing the record the calling thread is indexing are
+     *  reported to, or null
+     */
     public ErrorHandler getErrorHandler()
     {
-        return errors;
+        RecordContext context = RecordContext.current();
+        return (context != null) ? context.getErrors() : null;
     }
 
 }
@@ -16,6 +16,25 @@ public abstract class SolrIndexerMixin
         
     }
     
+    /**
+     * called before each record is indexed;  per-record state belongs in
+     *  the context (see RecordContext.setAttribute), not in instance
+     *  variables.  The default version calls perRecordInit(Record).
+     */
+    public void perRecordInit(RecordContext context)
+    {
+        perRecordInit(context.getRecord());
+    }
+    
+    /**
+     * @return true if the mixin keeps no per-record state in instance
+     *  variables, so its indexer can index records on several threads at once
+     */
+    public boolean isThreadSafe()
+    {
+        return false;
+    }
+    
     public final void setMainIndexer(SolrIndexer mainIndexer)
     {
         indexer = mainIndexer;
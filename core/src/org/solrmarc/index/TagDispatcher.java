@@ -0,0 +1,207 @@
+package org.solrmarc.index;
+
+import java.util.*;
+
+import org.marc4j.marc.*;
+import org.solrmarc.tools.RecordTagIndex;
+
+/**
+ * Groups the field specification parts of all the index specifications of
+ *  an indexer by MARC tag, so the values of every simple part can be
+ *  collected in a single pass over a record's fields:  each field with a
+ *  tag some part wants, found with the record's RecordTagIndex, is handed
+ *  to those parts, and tags the record doesn't have are skipped.
+ *  MarcUtils.getFieldList instead scans all the record's fields once for
+ *  each part of each specification.
+ *  Parts that are the same in several specifications are collected once,
+ *  and the parts wanting a control field are collected together by a
+ *  ControlFieldSlices, so each character position range is cut once for
+ *  all the parts wanting it.
+ *  The parts are added while the index properties are compiled; after that
+ *  the dispatcher isn't changed and can be used from any thread.  Each
+ *  thread reuses the lists its values are collected in from one record to
+ *  the next.
+ */
+final class TagDispatcher
+{
+    /** the simple parts, by slot */
+    private final List<FieldSpecPart> slotParts = new ArrayList<FieldSpecPart>();
+    /** all the parts compiled, by their spec, so each is only parsed once */
+    private final Map<String, FieldSpecPart> partsBySpec = new HashMap<String, FieldSpecPart>();
+    /** the simple parts wanting each numeric tag */
+    private final FieldSpecPart partsByTagNum[][] = new FieldSpecPart[1000][];
+    /** the parts wanting each numeric control field tag, grouped by character positions */
+    private final ControlFieldSlices slicesByTagNum[] = new ControlFieldSlices[1000];
+    /** the numeric tags some part wants, in the order first wanted */
+    private int wantedTagNums[] = new int[0];
+    /** the simple parts wanting each tag that isn't numeric */
+    private final Map<String, FieldSpecPart[]> partsByTag = new HashMap<String, FieldSpecPart[]>();
+    /** the values released by each thread, to be collected into again */
+    private final ThreadLocal<Values> spareValues = new ThreadLocal<Values>();
+
+    /**
+     * parse a field specification into its parts, adding the simple ones to
+     *  those collected for each record
+     * @param tagStr the field specification, e.g. "100abcd:245a:008[35-37]"
+     */
+    FieldSpecPart[] compile(String tagStr)
+    {
+        String specs[] = tagStr.split(":");
+        FieldSpecPart parts[] = new FieldSpecPart[specs.length];
+        for (int i = 0; i < specs.length; i++)
+        {
+            FieldSpecPart part = partsBySpec.get(specs[i]);
+            if (part == null)
+            {
+                part = FieldSpecPart.parse(specs[i], slotParts.size());
+                if (part.isSimple())
+                {
+                    slotParts.add(part);
+                    addByTag(part);
+                }
+                partsBySpec.put(specs[i], part);
+            }
+            parts[i] = part;
+        }
+        return parts;
+    }
+
+    private void addByTag(FieldSpecPart part)
+    {
+        int tagNum = RecordTagIndex.tagNum(part.tag);
+        FieldSpecPart tagParts[] = (tagNum >= 0) ? partsByTagNum[tagNum] : partsByTag.get(part.tag);
+        if (tagParts == null)
+        {
+            tagParts = new FieldSpecPart[] { part };
+            if (tagNum >= 0)
+            {
+                wantedTagNums = Arrays.copyOf(wantedTagNums, wantedTagNums.length + 1);
+                wantedTagNums[wantedTagNums.length - 1] = tagNum;
+            }
+        }
+        else
+        {
+            tagParts = Arrays.copyOf(tagParts, tagParts.length + 1);
+            tagParts[tagParts.length - 1] = part;
+        }
+        if (tagNum >= 0)
+        {
+            partsByTagNum[tagNum] = tagParts;
+            if (part.controlField)
+                slicesByTagNum[tagNum] = new ControlFieldSlices(tagParts);
+        }
+        else
+            partsByTag.put(part.tag, tagParts);
+    }
+
+    /**
+     * @return true if there are no simple parts to collect
+     */
+    boolean isEmpty()
+    {
+        return slotParts.isEmpty();
+    }
+
+    /**
+     * collect the values of all the simple parts from the fields of a
+     *  record, visiting each wanted field once
+     * @param tagIndex the fields of the record, by tag
+     * @return the values, to be given back with release() once the record
+     *  is indexed
+     */
+    Values collect(RecordTagIndex tagIndex)
+    {
+        // the calling thread's lists from its last record, already emptied;
+        //  a record indexed while another is (by a custom method) gets new ones
+        Values result = spareValues.get();
+        if (result != null)
+            spareValues.remove();
+        else
+            result = new Values(TagDispatcher.<String>newValueArray(slotParts.size()));
+        for (int tagNum : wantedTagNums)
+        {
+            if (!tagIndex.hasTag(tagNum))
+                continue;
+            if (slicesByTagNum[tagNum] != null)
+                slicesByTagNum[tagNum].collect(tagIndex.getFields(tagNum), result.values);
+            else
+                collect(tagIndex.getFields(tagNum), partsByTagNum[tagNum], result.values);
+        }
+        for (Map.Entry<String, FieldSpecPart[]> entry : partsByTag.entrySet())
+            collect(tagIndex.getFields(entry.getKey()), entry.getValue(), result.values);
+        return result;
+    }
+
+    /**
+     * give back values returned by collect() that are no longer used, so the
+     *  calling thread can collect the next record's values into their lists
+     */
+    void release(Values released)
+    {
+        for (List<String> slotValues : released.values)
+        {
+            if (slotValues != null)
+                slotValues.clear();
+        }
+        spareValues.set(released);
+    }
+
+    private static void collect(List<?> fields, FieldSpecPart tagParts[], List<String> values[])
+    {
+        for (Object vf : fields)
+        {
+            for (FieldSpecPart part : tagParts)
+            {
+                if (values[part.slot] == null)
+                    values[part.slot] = new ArrayList<String>(2);
+                part.collect((VariableField) vf, values[part.slot]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T>[] newValueArray(int size)
+    {
+        return (List<T>[]) new List<?>[size];
+    }
+
+    /**
+     * the values of the simple parts for one record, in the order of the
+     *  record's fields
+     */
+    static final class Values
+    {
+        private final List<String> values[];
+
+        private Values(List<String> values[])
+        {
+            this.values = values;
+        }
+
+        /**
+         * @return the values of a compiled field specification, the same as
+         *  MarcUtils.getFieldList gives
+         */
+        Set<String> getFieldList(FieldSpecPart parts[], Record record)
+        {
+            Set<String> result = new LinkedHashSet<String>();
+            addFieldList(parts, record, result);
+            return result;
+        }
+
+        /**
+         * add the values of a compiled field specification to a set, such as
+         *  a ValueCollector
+         */
+        void addFieldList(FieldSpecPart parts[], Record record, Set<String> result)
+        {
+            for (FieldSpecPart part : parts)
+            {
+                if (!part.isSimple())
+                    part.addValues(record, result);
+                else if (values[part.slot] != null)
+                    result.addAll(values[part.slot]);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.solrmarc.marc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time and allocation spent in each stage of MarcImporter when it runs in
+ *  benchmark mode (solrmarc.benchmark):  reading records, mapping them to
+ *  Solr fields, and building the Solr documents, which are then discarded.
+ *  The stages are measured on the thread that runs them, so the numbers are
+ *  the same whether they run on one thread or several.  All the methods can
+ *  be called from any thread.
+ */
+public class BenchmarkStats
+{
+    public static final int READ = 0;
+    public static final int MAP = 1;
+    public static final int BUILD = 2;
+    private static final String STAGE_NAMES[] = { "read", "map", "build" };
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final boolean allocationSupported = isAllocationSupported();
+
+    private final AtomicLong records[] = new AtomicLong[STAGE_NAMES.length];
+    private final AtomicLong nanos[] = new AtomicLong[STAGE_NAMES.length];
+    private final AtomicLong allocated[] = new AtomicLong[STAGE_NAMES.length];
+    /** size of the records read, from their leaders */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public BenchmarkStats()
+    {
+        for (int i = 0; i < STAGE_NAMES.length; i++)
+        {
+            records[i] = new AtomicLong();
+            nanos[i] = new AtomicLong();
+            allocated[i] = new AtomicLong();
+        }
+    }
+
+    private static boolean isAllocationSupported()
+    {
+        try
+        {
+            if (threadBean instanceof com.sun.management.ThreadMXBean)
+            {
+                com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+                return sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled();
+            }
+        }
+        catch (Throwable t)
+        {
+            // not a HotSpot JVM
+        }
+        return false;
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread; 0 if the JVM
+     *  can't tell
+     */
+    public static long threadAllocatedBytes()
+    {
+        if (!allocationSupported)
+            return 0;
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * count a record through a stage
+     * @param stage READ, MAP or BUILD
+     * @param stageNanos time the stage took
+     * @param allocatedBytes bytes the current thread allocated in the stage
+     */
+    public void recordStage(int stage, long stageNanos, long allocatedBytes)
+    {
+        records[stage].incrementAndGet();
+        nanos[stage].addAndGet(stageNanos);
+        if (allocatedBytes > 0)
+            allocated[stage].addAndGet(allocatedBytes);
+    }
+
+    /**
+     * count the size of a record read
+     */
+    public void recordBytesRead(long numBytes)
+    {
+        if (numBytes > 0)
+            bytesRead.addAndGet(numBytes);
+    }
+
+    public long getRecords(int stage)
+    {
+        return records[stage].get();
+    }
+
+    public long getNanos(int stage)
+    {
+        return nanos[stage].get();
+    }
+
+    public long getAllocatedBytes(int stage)
+    {
+        return allocated[stage].get();
+    }
+
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    /**
+     * @param elapsedMillis wall clock time of the whole import
+     * @return a table of throughput, input bytes per second and allocation per
+     *  record, overall and for each stage by itself
+     */
+    public String formatReport(long elapsedMillis)
+    {
+        long numRead = getRecords(READ);
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Benchmark: %d records, %.1f MB read in %.2f sec: %.1f records/sec, %.2f MB/sec%n",
+                numRead, getBytesRead() / (1024.0 * 1024.0), elapsedMillis / 1000.0,
+                perSecond(numRead, elapsedMillis * 1000000L), perSecond(getBytesRead(), elapsedMillis * 1000000L) / (1024 * 1024)));
+        report.append(String.format(Locale.US, "%-6s %10s %10s %12s %10s %14s%n", "stage", "records", "sec", "records/sec", "MB/sec", "bytes/record"));
+        long totalNanos = 0;
+        long totalAllocated = 0;
+        for (int i = 0; i < STAGE_NAMES.length; i++)
+        {
+            appendStage(report, STAGE_NAMES[i], getRecords(i), getNanos(i), getAllocatedBytes(i));
+            totalNanos += getNanos(i);
+            totalAllocated += getAllocatedBytes(i);
+        }
+        appendStage(report, "total", numRead, totalNanos, totalAllocated);
+        if (!allocationSupported)
+            report.append(String.format("(this JVM can't measure allocation)%n"));
+        return report.toString();
+    }
+
+    /**
+     * MB/sec is of the records read, as if the stage ran by itself
+     */
+    private void appendStage(StringBuilder report, String name, long numRecords, long stageNanos, long allocatedBytes)
+    {
+        report.append(String.format(Locale.US, "%-6s %10d %10.2f %12.1f %10.2f %14d%n", name, numRecords, stageNanos / 1000000000.0,
+                perSecond(numRecords, stageNanos), perSecond(getBytesRead(), stageNanos) / (1024 * 1024),
+                numRecords == 0 ? 0 : allocatedBytes / numRecords));
+    }
+
+    private static double perSecond(long count, long elapsedNanos)
+    {
+        if (elapsedNanos <= 0)
+            return 0.0;
+        return count * 1000000000.0 / elapsedNanos;
+    }
+}
@@ -0,0 +1,117 @@
+package org.solrmarc.marc;
+
+import java.io.IOException;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+import org.solrmarc.solr.SolrProxy;
+
+/**
+ * Decides when MarcImporter commits to Solr while it is indexing, so partial
+ *  results become visible during a long load:
+ *  - a hard commit every hardCommitDocs documents or hardCommitBytes
+ *    (approximate) bytes of documents written
+ *  - a soft commit every softCommitSeconds, on a timer
+ *  - commitWithin for each update, left to Solr
+ *  The commit at the end of the load is still controlled by
+ *  solr.commit_at_end and solr.optimize_at_end.
+ */
+public class CommitScheduler
+{
+    protected static Logger logger = Logger.getLogger(CommitScheduler.class.getName());
+
+    /** hard commit after this many documents; 0 for never */
+    private final int hardCommitDocs;
+    /** hard commit after this many bytes of documents; 0 for never */
+    private final long hardCommitBytes;
+    /** seconds between soft commits; 0 for none */
+    private final int softCommitSeconds;
+    /** milliseconds within which Solr should commit each update; 0 for none */
+    private final int commitWithinMs;
+
+    private int docsSinceCommit = 0;
+    private long bytesSinceCommit = 0;
+    private Timer softCommitTimer = null;
+
+    public CommitScheduler(int hardCommitDocs, long hardCommitBytes, int softCommitSeconds, int commitWithinMs)
+    {
+        this.hardCommitDocs = Math.max(0, hardCommitDocs);
+        this.hardCommitBytes = Math.max(0, hardCommitBytes);
+        this.softCommitSeconds = Math.max(0, softCommitSeconds);
+        this.commitWithinMs = Math.max(0, commitWithinMs);
+    }
+
+    /**
+     * @return true if the size of the documents written is needed to decide
+     *  when to commit
+     */
+    public boolean countsBytes()
+    {
+        return hardCommitBytes > 0;
+    }
+
+    /**
+     * note that a document was written to Solr
+     * @param numBytes approximate size of the document, if countsBytes()
+     * @return true if it is time for a hard commit
+     */
+    public synchronized boolean docWritten(long numBytes)
+    {
+        docsSinceCommit++;
+        bytesSinceCommit += numBytes;
+        if ((hardCommitDocs > 0 && docsSinceCommit >= hardCommitDocs)
+                || (hardCommitBytes > 0 && bytesSinceCommit >= hardCommitBytes))
+        {
+            docsSinceCommit = 0;
+            bytesSinceCommit = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * apply commitWithin to the proxy and start the soft commit timer
+     */
+    public synchronized void start(final SolrProxy solrProxy)
+    {
+        stop();
+        if (commitWithinMs > 0)
+            solrProxy.setCommitWithin(commitWithinMs);
+        if (softCommitSeconds == 0)
+            return;
+        softCommitTimer = new Timer("SolrMarc-soft-commit", true);
+        softCommitTimer.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    solrProxy.softCommit();
+                    logger.debug("Soft commit done");
+                }
+                catch (IOException ioe)
+                {
+                    logger.error("Soft commit failed -- " + ioe.getMessage());
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Soft commit failed -- " + e.getMessage());
+                }
+            }
+        }, softCommitSeconds * 1000L, softCommitSeconds * 1000L);
+    }
+
+    /**
+     * stop the soft commit timer
+     */
+    public synchronized void stop()
+    {
+        if (softCommitTimer != null)
+        {
+            softCommitTimer.cancel();
+            softCommitTimer = null;
+        }
+    }
+}
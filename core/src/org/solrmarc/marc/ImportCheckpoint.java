@@ -0,0 +1,190 @@
+package org.solrmarc.marc;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * How far an import of a marc file has got:  the records up to and including
+ *  record number recordCount have been indexed (or skipped) and committed to
+ *  Solr.  MarcImporter saves a checkpoint after each commit so an interrupted
+ *  import can resume where it left off.
+ *
+ * Byte offsets are -1 when they aren't known (e.g. for MARCXML, or records
+ *  combined or filtered by the reader);  an import can then only resume by
+ *  re-reading, but not re-indexing, the records already done.
+ */
+public class ImportCheckpoint
+{
+    /** absolute path of the marc file being imported */
+    public final String inputFile;
+    /** number of records, from the start of the file, done */
+    public final int recordCount;
+    /** byte offset in inputFile of the record after the last one done */
+    public final long offset;
+    /** byte offset in inputFile of the last record done */
+    public final long lastRecordOffset;
+    /** control number of the last record done, to check the offset against */
+    public final String lastControlNumber;
+
+    public ImportCheckpoint(String inputFile, int recordCount, long offset, long lastRecordOffset, String lastControlNumber)
+    {
+        this.inputFile = inputFile;
+        this.recordCount = recordCount;
+        this.offset = offset;
+        this.lastRecordOffset = lastRecordOffset;
+        this.lastControlNumber = lastControlNumber;
+    }
+
+    /**
+     * @return true if the import can seek to offset instead of re-reading
+     */
+    public boolean hasOffset()
+    {
+        return offset >= 0 && lastRecordOffset >= 0 && lastControlNumber != null;
+    }
+
+    /**
+     * read a checkpoint saved by save()
+     * @return the checkpoint, or null if fileName doesn't exist
+     * @throws IOException if the file can't be read or isn't a checkpoint
+     */
+    public static ImportCheckpoint load(String fileName)
+        throws IOException
+    {
+        File file = new File(fileName);
+        if (!file.exists())
+            return null;
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            props.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        String inputFile = props.getProperty("input.file");
+        if (inputFile == null)
+            throw new IOException("No input.file in checkpoint " + fileName);
+        try
+        {
+            return new ImportCheckpoint(inputFile,
+                                        Integer.parseInt(props.getProperty("record.count", "0")),
+                                        Long.parseLong(props.getProperty("offset", "-1")),
+                                        Long.parseLong(props.getProperty("last.record.offset", "-1")),
+                                        props.getProperty("last.control.number"));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Invalid number in checkpoint " + fileName + " -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * write the checkpoint to fileName, replacing it only once the new
+     *  checkpoint is completely written
+     */
+    public void save(String fileName)
+        throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty("input.file", inputFile);
+        props.setProperty("record.count", String.valueOf(recordCount));
+        props.setProperty("offset", String.valueOf(offset));
+        props.setProperty("last.record.offset", String.valueOf(lastRecordOffset));
+        if (lastControlNumber != null)
+            props.setProperty("last.control.number", lastControlNumber);
+
+        File file = new File(fileName).getAbsoluteFile();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmpFile);
+        try
+        {
+            props.store(out, "SolrMarc import checkpoint");
+        }
+        finally
+        {
+            out.close();
+        }
+        // renameTo won't replace an existing file on some platforms
+        if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file)))
+            throw new IOException("Unable to replace checkpoint " + fileName);
+    }
+
+    @Override
+    public String toString()
+    {
+        return inputFile + " after record " + recordCount + (lastControlNumber != null ? " (" + lastControlNumber + ")" : "")
+                + (offset >= 0 ? " at byte " + offset : "");
+    }
+
+
+    /**
+     * Tracks the last record of an import such that it and all the records
+     *  before it are done.  Records can be done out of order when they are
+     *  indexed on several threads.
+     */
+    static class Tracker
+    {
+        private int lastRecNum;
+        private long lastStartOffset;
+        private long lastEndOffset;
+        private String lastCntlNum;
+        /** records done after a record that isn't done yet */
+        private final SortedMap<Integer, Object[]> doneOutOfOrder = new TreeMap<Integer, Object[]>();
+
+        /**
+         * @param start checkpoint the import starts from, or null to start
+         *  from the beginning of the file
+         */
+        Tracker(ImportCheckpoint start)
+        {
+            if (start == null)
+            {
+                lastRecNum = 0;
+                lastStartOffset = -1;
+                lastEndOffset = 0;
+                lastCntlNum = null;
+            }
+            else
+            {
+                lastRecNum = start.recordCount;
+                lastStartOffset = start.lastRecordOffset;
+                lastEndOffset = start.offset;
+                lastCntlNum = start.lastControlNumber;
+            }
+        }
+
+        /**
+         * note that a record has been indexed or skipped
+         * @param recNum the number of the record in the file, from 1
+         * @param startOffset byte offset of the record, or -1 if unknown
+         * @param endOffset byte offset after the record, or -1 if unknown
+         * @param cntlNum control number of the record
+         */
+        synchronized void recordDone(int recNum, long startOffset, long endOffset, String cntlNum)
+        {
+            if (recNum <= lastRecNum)
+                return;
+            doneOutOfOrder.put(recNum, new Object[] { startOffset, endOffset, cntlNum });
+            while (!doneOutOfOrder.isEmpty() && doneOutOfOrder.firstKey() == lastRecNum + 1)
+            {
+                Object done[] = doneOutOfOrder.remove(doneOutOfOrder.firstKey());
+                lastRecNum++;
+                lastStartOffset = (Long) done[0];
+                lastEndOffset = (Long) done[1];
+                lastCntlNum = (String) done[2];
+            }
+        }
+
+        /**
+         * @return a checkpoint at the last record such that it and all the
+         *  records before it are done
+         */
+        synchronized ImportCheckpoint getCheckpoint(String inputFile)
+        {
+            return new ImportCheckpoint(inputFile, lastRecNum, lastEndOffset, lastStartOffset, lastCntlNum);
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package org.solrmarc.marc;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.log4j.Logger;
+import org.solrmarc.tools.SolrMarcIndexerException;
+
+/**
+ * Counters, throughput and latency histograms for the read, index and write
+ *  stages of MarcImporter, with error counts and the depth of the queues
+ *  between the stages.  All the methods can be called from any thread.
+ *
+ * The metrics can be watched over JMX (see IndexingMetricsMBean) and written
+ *  to a CSV file at a fixed interval while indexing runs.
+ */
+public class IndexingMetrics implements IndexingMetricsMBean
+{
+    protected static Logger logger = Logger.getLogger(IndexingMetrics.class.getName());
+
+    private volatile long startNanos = System.nanoTime();
+
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram indexLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final AtomicLong recordsDeleted = new AtomicLong();
+
+    private final AtomicLong readErrors = new AtomicLong();
+    private final AtomicLong ignoredRecords = new AtomicLong();
+    private final AtomicLong deletedRecords = new AtomicLong();
+    private final AtomicLong exitErrors = new AtomicLong();
+    private final AtomicLong solrRejectedRecords = new AtomicLong();
+    private final AtomicLong otherErrors = new AtomicLong();
+
+    /** queues of the multi-threaded pipeline, while it runs */
+    private volatile BlockingQueue<?> recordQueue = null;
+    private volatile BlockingQueue<?> docQueue = null;
+
+    private final AllocationSampler allocationSampler = new AllocationSampler();
+    /** allocationSampler total as of start() */
+    private volatile long allocatedAtStart = allocationSampler.sample();
+
+    /** dumps the metrics to a file, while indexing runs */
+    private Timer dumpTimer = null;
+
+    /**
+     * reset the time the rates are measured from
+     */
+    public void start()
+    {
+        startNanos = System.nanoTime();
+        allocatedAtStart = allocationSampler.sample();
+    }
+
+    public void recordRead(long nanos)
+    {
+        readLatency.record(nanos);
+    }
+
+    public void recordIndexed(long nanos)
+    {
+        indexLatency.record(nanos);
+    }
+
+    public void recordWritten(long nanos)
+    {
+        writeLatency.record(nanos);
+    }
+
+    public void recordsDeleted(int numDeleted)
+    {
+        recordsDeleted.addAndGet(numDeleted);
+    }
+
+    public void readError()
+    {
+        readErrors.incrementAndGet();
+    }
+
+    /**
+     * count a record the indexer flagged with a SolrMarcIndexerException
+     * @param level the level of the exception
+     */
+    public void indexerException(int level)
+    {
+        if (level == SolrMarcIndexerException.IGNORE)
+            ignoredRecords.incrementAndGet();
+        else if (level == SolrMarcIndexerException.DELETE)
+            deletedRecords.incrementAndGet();
+        else if (level == SolrMarcIndexerException.EXIT)
+            exitErrors.incrementAndGet();
+    }
+
+    public void solrRejected()
+    {
+        solrRejectedRecords.incrementAndGet();
+    }
+
+    public void otherError()
+    {
+        otherErrors.incrementAndGet();
+    }
+
+    /**
+     * report the depth of the queues of the multi-threaded pipeline;  null
+     *  when the pipeline isn't running
+     */
+    public void setQueues(BlockingQueue<?> recordQueue, BlockingQueue<?> docQueue)
+    {
+        this.recordQueue = recordQueue;
+        this.docQueue = docQueue;
+    }
+
+    public long getElapsedSeconds()
+    {
+        return (System.nanoTime() - startNanos) / 1000000000L;
+    }
+
+    public long getRecordsRead()
+    {
+        return readLatency.getCount();
+    }
+
+    public long getRecordsIndexed()
+    {
+        return indexLatency.getCount();
+    }
+
+    public long getRecordsWritten()
+    {
+        return writeLatency.getCount();
+    }
+
+    public long getRecordsDeleted()
+    {
+        return recordsDeleted.get();
+    }
+
+    public double getReadRate()
+    {
+        return rate(getRecordsRead());
+    }
+
+    public double getIndexRate()
+    {
+        return rate(getRecordsIndexed());
+    }
+
+    public double getWriteRate()
+    {
+        return rate(getRecordsWritten());
+    }
+
+    public double getReadLatencyMeanMicros()
+    {
+        return readLatency.getMeanMicros();
+    }
+
+    public long getReadLatencyP50Micros()
+    {
+        return readLatency.getPercentileMicros(0.50);
+    }
+
+    public long getReadLatencyP99Micros()
+    {
+        return readLatency.getPercentileMicros(0.99);
+    }
+
+    public long getReadLatencyMaxMicros()
+    {
+        return readLatency.getMaxMicros();
+    }
+
+    public double getIndexLatencyMeanMicros()
+    {
+        return indexLatency.getMeanMicros();
+    }
+
+    public long getIndexLatencyP50Micros()
+    {
+        return indexLatency.getPercentileMicros(0.50);
+    }
+
+    public long getIndexLatencyP99Micros()
+    {
+        return indexLatency.getPercentileMicros(0.99);
+    }
+
+    public long getIndexLatencyMaxMicros()
+    {
+        return indexLatency.getMaxMicros();
+    }
+
+    public double getWriteLatencyMeanMicros()
+    {
+        return writeLatency.getMeanMicros();
+    }
+
+    public long getWriteLatencyP50Micros()
+    {
+        return writeLatency.getPercentileMicros(0.50);
+    }
+
+    public long getWriteLatencyP99Micros()
+    {
+        return writeLatency.getPercentileMicros(0.99);
+    }
+
+    public long getWriteLatencyMaxMicros()
+    {
+        return writeLatency.getMaxMicros();
+    }
+
+    public long getReadErrors()
+    {
+        return readErrors.get();
+    }
+
+    public long getIgnoredRecords()
+    {
+        return ignoredRecords.get();
+    }
+
+    public long getDeletedRecords()
+    {
+        return deletedRecords.get();
+    }
+
+    public long getExitErrors()
+    {
+        return exitErrors.get();
+    }
+
+    public long getSolrRejectedRecords()
+    {
+        return solrRejectedRecords.get();
+    }
+
+    public long getOtherErrors()
+    {
+        return otherErrors.get();
+    }
+
+    public int getRecordQueueDepth()
+    {
+        BlockingQueue<?> queue = recordQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    public int getDocQueueDepth()
+    {
+        BlockingQueue<?> queue = docQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    public long getAllocatedMegabytes()
+    {
+        return (allocationSampler.sample() - allocatedAtStart) / (1024 * 1024);
+    }
+
+    public double getAllocationRateMegabytesPerSec()
+    {
+        return rate(allocationSampler.sample() - allocatedAtStart) / (1024 * 1024);
+    }
+
+    /**
+     * @return count per second since start()
+     */
+    private double rate(long count)
+    {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (elapsedNanos <= 0)
+            return 0.0;
+        return count * 1000000000.0 / elapsedNanos;
+    }
+
+    /**
+     * Append a line of the metrics to a CSV file every intervalSeconds, until
+     *  stopDumping() is called.  A header line is written first if the file is
+     *  empty.
+     */
+    public synchronized void startDumping(final String fileName, long intervalSeconds)
+    {
+        stopDumping();
+        final File dumpFile = new File(fileName);
+        dumpTimer = new Timer("SolrMarc-metrics", true);
+        dumpTimer.scheduleAtFixedRate(new TimerTask()
+        {
+            private long lastNanos = System.nanoTime();
+            private long lastRead = getRecordsRead();
+            private long lastIndexed = getRecordsIndexed();
+            private long lastWritten = getRecordsWritten();
+            private long lastAllocated = allocationSampler.sample();
+
+            @Override
+            public void run()
+            {
+                long nowNanos = System.nanoTime();
+                long read = getRecordsRead();
+                long indexed = getRecordsIndexed();
+                long written = getRecordsWritten();
+                long allocated = allocationSampler.sample();
+                double seconds = (nowNanos - lastNanos) / 1000000000.0;
+                if (seconds <= 0)
+                    return;
+                appendLine(dumpFile, formatCsvLine((read - lastRead) / seconds, (indexed - lastIndexed) / seconds,
+                        (written - lastWritten) / seconds, (allocated - lastAllocated) / seconds / (1024 * 1024)));
+                lastNanos = nowNanos;
+                lastRead = read;
+                lastIndexed = indexed;
+                lastWritten = written;
+                lastAllocated = allocated;
+            }
+        }, intervalSeconds * 1000, intervalSeconds * 1000);
+    }
+
+    /**
+     * stop writing the metrics to a file
+     */
+    public synchronized void stopDumping()
+    {
+        if (dumpTimer != null)
+        {
+            dumpTimer.cancel();
+            dumpTimer = null;
+        }
+    }
+
+    static final String CSV_HEADER = "time,elapsed_s,read,indexed,written,deleted,read_per_s,index_per_s,write_per_s,"
+            + "read_mean_us,read_p50_us,read_p99_us,index_mean_us,index_p50_us,index_p99_us,write_mean_us,write_p50_us,write_p99_us,"
+            + "read_errors,ignored,deleted_by_indexer,exit_errors,solr_rejected,other_errors,record_queue,doc_queue,alloc_mb_per_s";
+
+    /**
+     * @return a line of the CSV dump, with the rates given for the last interval
+     */
+    String formatCsvLine(double readRate, double indexRate, double writeRate, double allocMbRate)
+    {
+        StringBuilder line = new StringBuilder();
+        line.append(new java.text.SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date())).append(',');
+        line.append(getElapsedSeconds()).append(',');
+        line.append(getRecordsRead()).append(',').append(getRecordsIndexed()).append(',');
+        line.append(getRecordsWritten()).append(',').append(getRecordsDeleted()).append(',');
+        line.append(format(readRate)).append(',').append(format(indexRate)).append(',').append(format(writeRate)).append(',');
+        appendLatency(line, readLatency);
+        appendLatency(line, indexLatency);
+        appendLatency(line, writeLatency);
+        line.append(getReadErrors()).append(',').append(getIgnoredRecords()).append(',');
+        line.append(getDeletedRecords()).append(',').append(getExitErrors()).append(',');
+        line.append(getSolrRejectedRecords()).append(',').append(getOtherErrors()).append(',');
+        line.append(getRecordQueueDepth()).append(',').append(getDocQueueDepth()).append(',');
+        line.append(format(allocMbRate));
+        return line.toString();
+    }
+
+    private static void appendLatency(StringBuilder line, LatencyHistogram latency)
+    {
+        line.append(format(latency.getMeanMicros())).append(',');
+        line.append(latency.getPercentileMicros(0.50)).append(',');
+        line.append(latency.getPercentileMicros(0.99)).append(',');
+    }
+
+    private static String format(double value)
+    {
+        return String.format(Locale.US, "%.1f", value);
+    }
+
+    private static void appendLine(File dumpFile, String line)
+    {
+        Writer out = null;
+        try
+        {
+            boolean writeHeader = !dumpFile.exists() || dumpFile.length() == 0;
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(dumpFile, true), "UTF-8"));
+            if (writeHeader)
+                out.write(CSV_HEADER + "\n");
+            out.write(line + "\n");
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to write indexing metrics to " + dumpFile.getPath() + " -- " + e.getMessage());
+        }
+        finally
+        {
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    // nothing more to do
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Counts latencies in buckets of powers of 2 microseconds, so percentiles
+     *  are approximate (the upper bound of the bucket)
+     */
+    static class LatencyHistogram
+    {
+        private static final int NUM_BUCKETS = 48;
+        /** bucket i counts latencies of less than 2^i microseconds */
+        private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos)
+        {
+            if (nanos < 0)
+                nanos = 0;
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            buckets.incrementAndGet(Math.min(bucket, NUM_BUCKETS - 1));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+                max = maxNanos.get();
+        }
+
+        long getCount()
+        {
+            return count.get();
+        }
+
+        double getMeanMicros()
+        {
+            long n = count.get();
+            return n == 0 ? 0.0 : totalNanos.get() / 1000.0 / n;
+        }
+
+        long getMaxMicros()
+        {
+            return maxNanos.get() / 1000;
+        }
+
+        /**
+         * @return the upper bound, in microseconds, of the bucket holding the
+         *  given fraction of the latencies
+         */
+        long getPercentileMicros(double fraction)
+        {
+            long n = count.get();
+            if (n == 0)
+                return 0;
+            long wanted = (long) Math.ceil(n * fraction);
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++)
+            {
+                seen += buckets.get(i);
+                if (seen >= wanted)
+                    return 1L << i;
+            }
+            return 1L << (NUM_BUCKETS - 1);
+        }
+    }
+
+
+    /**
+     * Totals the bytes allocated by the threads of the JVM, where the JVM can
+     *  measure it.  Only allocations between samples of the same thread are
+     *  counted: threads that end lose their allocations since the last sample,
+     *  and the first value of a new thread (which can be garbage while the
+     *  thread starts) is only used as a baseline.
+     */
+    static class AllocationSampler
+    {
+        private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        private final boolean supported;
+        /** bytes allocated by each thread, as of the last sample */
+        private Map<Long, Long> lastAllocated = new HashMap<Long, Long>();
+        private long totalAllocated = 0;
+
+        AllocationSampler()
+        {
+            boolean isSupported = false;
+            try
+            {
+                if (threadBean instanceof com.sun.management.ThreadMXBean)
+                {
+                    com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+                    isSupported = sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled();
+                }
+            }
+            catch (Throwable t)
+            {
+                // not a HotSpot JVM
+            }
+            supported = isSupported;
+        }
+
+        /**
+         * @return total bytes allocated since the first sample; 0 if the JVM
+         *  can't tell
+         */
+        synchronized long sample()
+        {
+            if (!supported)
+                return 0;
+            long ids[] = threadBean.getAllThreadIds();
+            long allocated[] = ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(ids);
+            Map<Long, Long> nowAllocated = new HashMap<Long, Long>();
+            for (int i = 0; i < ids.length; i++)
+            {
+                if (allocated[i] < 0)
+                    continue;
+                Long last = lastAllocated.get(ids[i]);
+                if (last != null && allocated[i] > last.longValue())
+                    totalAllocated += allocated[i] - last.longValue();
+                nowAllocated.put(ids[i], allocated[i]);
+            }
+            lastAllocated = nowAllocated;
+            return totalAllocated;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.solrmarc.marc;
+
+/**
+ * JMX view of the IndexingMetrics of a running MarcImporter.  Rates are per
+ *  second since indexing started; latencies are in microseconds, and the
+ *  percentiles are the upper bounds of power-of-2 buckets.
+ */
+public interface IndexingMetricsMBean
+{
+    public long getElapsedSeconds();
+
+    public long getRecordsRead();
+    public long getRecordsIndexed();
+    public long getRecordsWritten();
+    public long getRecordsDeleted();
+
+    public double getReadRate();
+    public double getIndexRate();
+    public double getWriteRate();
+
+    public double getReadLatencyMeanMicros();
+    public long getReadLatencyP50Micros();
+    public long getReadLatencyP99Micros();
+    public long getReadLatencyMaxMicros();
+    public double getIndexLatencyMeanMicros();
+    public long getIndexLatencyP50Micros();
+    public long getIndexLatencyP99Micros();
+    public long getIndexLatencyMaxMicros();
+    public double getWriteLatencyMeanMicros();
+    public long getWriteLatencyP50Micros();
+    public long getWriteLatencyP99Micros();
+    public long getWriteLatencyMaxMicros();
+
+    public long getReadErrors();
+    public long getIgnoredRecords();
+    public long getDeletedRecords();
+    public long getExitErrors();
+    public long getSolrRejectedRecords();
+    public long getOtherErrors();
+
+    public int getRecordQueueDepth();
+    public int getDocQueueDepth();
+
+    public long getAllocatedMegabytes();
+    public double getAllocationRateMegabytesPerSec();
+}
@@ -18,6 +18,8 @@ public abstract class MarcHandler {
 
 	protected SolrIndexer indexer;
 	protected MarcReader reader;
+	/** the reader, when it keeps the bytes each record was read from for the indexer to store */
+	protected MarcRecordBytesReader recordBytesReader = null;
 	protected boolean verbose = false;
 	protected ErrorHandler errors = null;
 	protected boolean includeErrors = false;
@@ -36,13 +38,24 @@ public abstract class MarcHandler {
 	protected boolean showConfig = false;
 	protected boolean showInputFile = false;
 	protected String unicodeNormalize = null;
+	/** the marc files to read, when marc.path names more than one file;
+	 *  null otherwise.  Only used by handlers that can read more than one. */
+	protected List<String> marcFileList = null;
+	/** the marc file the reader reads, when reading a file */
+	protected String marcFileName = null;
+	/** number of bytes at the start of the marc file to skip, when resuming an
+	 *  import part way through a file of binary marc records */
+	protected long marcFileOffset = 0;
 
 	private String solrmarcPath;
 	private String siteSpecificPath;
     protected String homeDir = ".";
 
     /** The name of the _index.properties file */
-	private String indexPropsFname;
+	protected String indexPropsFname;
+	/** snapshot of the resolved indexing configuration, loaded instead of the
+	 *  properties files when they are unchanged;  null to not use one */
+	protected File configSnapshotFile = null;
     private final static String TRANS_MAP_DIR = "translation_maps";
 
     // Initialize logging category
@@ -91,6 +104,7 @@ public abstract class MarcHandler {
     	// set the System properties for marc data sources and
     	//   solr.commit_at_end;  put rest in addnlArgs list
         List<String> addnlArgList = new ArrayList<String>();
+        List<String> marcFileArgs = new ArrayList<String>();
         if (args.length > 0)
         {
             for (String arg : args)
@@ -102,12 +116,12 @@ public abstract class MarcHandler {
                     configPropsFname = arg;
                 else if (lc_arg.endsWith(".mrc") || lc_arg.endsWith(".marc"))
                 {
-                    System.setProperty("marc.path", arg);
+                    marcFileArgs.add(arg);
                     System.setProperty("marc.source", "FILE");
                 }
                 else if (lc_arg.endsWith(".json") )
                 {
-                    System.setProperty("marc.path", arg);
+                    marcFileArgs.add(arg);
                     System.setProperty("marc.source", "FILE");
                 }
                 else if (arg.equals("NONE"))
@@ -115,7 +129,7 @@ public abstract class MarcHandler {
                     System.setProperty("marc.source", "NONE");
                 else if (lc_arg.endsWith(".xml"))
                 {
-                    System.setProperty("marc.path", arg);
+                    marcFileArgs.add(arg);
                     System.setProperty("marc.source", "FILE");
                 }
                 else if (lc_arg.endsWith(".del"))
@@ -132,6 +146,18 @@ public abstract class MarcHandler {
             }
         }
         addnlArgs = addnlArgList.toArray(new String[0]);
+        // more than one marc file can be given (e.g. expanded from a shell glob)
+        if (marcFileArgs.size() > 0)
+        {
+            StringBuilder marcPath = new StringBuilder();
+            for (String marcFileArg : marcFileArgs)
+            {
+                if (marcPath.length() > 0)
+                    marcPath.append(',');
+                marcPath.append(marcFileArg);
+            }
+            System.setProperty("marc.path", marcPath.toString());
+        }
 
         initLocal();
         if (configPropsFname != null)
@@ -143,8 +169,9 @@ public abstract class MarcHandler {
         //  Load the custom Indexer (or the standard one)
         //  note the values of class vars indexerName and indexerProps
         //  are initialized from the values in the config properties file,
-        //  loaded in the call to loadProperties above.
-        if (indexerClassName != null)
+        //  loaded in the call to loadProperties above, which loads the
+        //  indexer itself before opening the reader.
+        if (indexerClassName != null && indexer == null)
             loadIndexer(indexerClassName, indexPropsFname);
 
         processAdditionalArgs();
@@ -199,6 +226,14 @@ public abstract class MarcHandler {
         // _index.properties file
         indexPropsFname = PropertiesUtils.getProperty(configProps, "solrmarc.indexing.properties");
 
+        String snapshotName = PropertiesUtils.getProperty(configProps, "solrmarc.config.snapshot");
+        if (snapshotName != null && snapshotName.trim().length() > 0)
+        {
+            configSnapshotFile = new File(snapshotName.trim());
+            if (!configSnapshotFile.isAbsolute())
+                configSnapshotFile = new File(homeDir, snapshotName.trim());
+        }
+
         combineConsecutiveRecordsFields = PropertiesUtils.getProperty(configProps, "marc.combine_records");
         if (combineConsecutiveRecordsFields != null && combineConsecutiveRecordsFields.length() == 0)
             combineConsecutiveRecordsFields = null;
@@ -229,7 +264,12 @@ public abstract class MarcHandler {
         else  // no override, tell solrmarc to use the default.
         	System.setProperty("org.marc4j.marc.MarcFactory", "org.marc4j.marc.impl.MarcFactoryImpl");
 
+        // the reader depends on the indexer (keepsRecordBytes), so load it first
+        if (indexerClassName != null)
+            loadIndexer(indexerClassName, indexPropsFname);
+
         reader = null;
+        marcFileList = null;
 
         String marcRecsFname = PropertiesUtils.getProperty(configProps, "marc.path");
         String source = PropertiesUtils.getProperty(configProps, "marc.source", "STDIN").trim();
@@ -238,9 +278,100 @@ public abstract class MarcHandler {
         if (marcRecsFname != null)
         	marcRecsFname = marcRecsFname.trim();
 
+        if (source.equals("FILE"))
+        {
+            List<String> marcFiles = expandMarcPath(marcRecsFname);
+            if (marcFiles.size() > 1 && handlesMultipleFiles())
+            {
+                // the handler creates a reader per file
+                marcFileList = marcFiles;
+                if (showInputFile)
+                    logger.info("Reading " + marcFiles.size() + " MARC data files");
+                return;
+            }
+            if (marcFiles.size() > 1)
+                logger.warn("More than one MARC data file specified; only reading " + marcFiles.get(0));
+            if (marcFiles.size() > 0)
+                marcRecsFname = marcFiles.get(0);
+        }
+
         loadReader(source, marcRecsFname);
 	}
 
+    /**
+     * handlesMultipleFiles - subclasses that can read the files in
+     *  marcFileList return true;  others only read the first file named.
+     */
+    protected boolean handlesMultipleFiles()
+    {
+        return false;
+    }
+
+    /**
+     * Expand the value of marc.path into the list of files to read.  The value
+     *  may be a comma separated list;  each entry may be a file, a directory
+     *  (all the .mrc, .marc, .xml and .json files in it) or a file name
+     *  pattern using * and ? (e.g. /data/sirsi/uni_*.marc).  Directory and
+     *  pattern entries are sorted by name.
+     * @param marcPath value of the marc.path property
+     * @return the files named, in order
+     */
+    public static List<String> expandMarcPath(String marcPath)
+    {
+        List<String> marcFiles = new ArrayList<String>();
+        if (marcPath == null)
+            return marcFiles;
+        for (String entry : marcPath.split(","))
+        {
+            entry = entry.trim();
+            if (entry.length() == 0)
+                continue;
+            File entryFile = new File(entry);
+            String entryName = entryFile.getName();
+            if (entryFile.isDirectory())
+                addMatchingFiles(entryFile, ".*[.](mrc|marc|xml|json)", marcFiles);
+            else if (entryName.contains("*") || entryName.contains("?"))
+            {
+                File dir = entryFile.getParentFile();
+                if (dir == null)
+                    dir = new File(".");
+                StringBuilder regex = new StringBuilder();
+                for (String part : entryName.split("((?<=[*?])|(?=[*?]))"))
+                {
+                    if (part.equals("*"))
+                        regex.append(".*");
+                    else if (part.equals("?"))
+                        regex.append(".");
+                    else if (part.length() > 0)
+                        regex.append(java.util.regex.Pattern.quote(part));
+                }
+                int numBefore = marcFiles.size();
+                addMatchingFiles(dir, regex.toString(), marcFiles);
+                if (marcFiles.size() == numBefore)
+                    logger.warn("No MARC data files match " + entry);
+            }
+            else
+                marcFiles.add(entry);
+        }
+        return marcFiles;
+    }
+
+    /**
+     * add the paths of the files in dir whose names match regex, sorted by name
+     */
+    private static void addMatchingFiles(File dir, String regex, List<String> marcFiles)
+    {
+        File files[] = dir.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files);
+        for (File file : files)
+        {
+            if (file.isFile() && file.getName().matches(regex))
+                marcFiles.add(file.getPath());
+        }
+    }
+
     /**
      * loadLocalProperties - local init for subclasses of MarcHandler
      */
@@ -355,6 +486,7 @@ public abstract class MarcHandler {
     public void loadReader(String source, String marcRecsFilename)
     		throws FileNotFoundException
 	{
+        recordBytesReader = null;
 
         if (source.equals("FILE") || source.equals("STDIN"))
         {
@@ -379,6 +511,9 @@ public abstract class MarcHandler {
                         else
                             logger.debug("Attempting to open data file: "+ new File(marcRecsFilename).getAbsolutePath());
     					marcRecsInputStream = new FileInputStream(marcRecsFilename);
+    					marcFileName = marcRecsFilename;
+    					if (marcFileOffset > 0)
+    					    seekMarcFile((FileInputStream) marcRecsInputStream, recFormat);
             		}
 
 				}
@@ -422,6 +557,13 @@ public abstract class MarcHandler {
                 reader = new MarcUnprettyXmlReader(marcRecsInputStream);
             else if (recFormat == RecordFormat.JSON)
                 reader = new MarcJsonReader(marcRecsInputStream);
+            else if (keepsRecordBytes())
+            {
+                if (permissiveReader)
+                    errors = new ErrorHandler();
+                recordBytesReader = new MarcRecordBytesReader(marcRecsInputStream, permissiveReader ? errors : null, to_utf_8, defaultEncoding);
+                reader = recordBytesReader;
+            }
             else if (permissiveReader)
             {
                 errors = new ErrorHandler();
@@ -472,6 +614,44 @@ public abstract class MarcHandler {
         return;
 	}
 
+    /**
+     * @return true if the indexer stores records as binary MARC and the records the reader gives
+     *  are the records read, not combined, filtered or translated, so the bytes each was read from
+     *  can be stored rather than writing the record again
+     */
+    private boolean keepsRecordBytes()
+    {
+        if (indexer == null || !indexer.usesRecordBytes())
+            return false;
+        if (combineConsecutiveRecordsFields != null || (to_utf_8 && unicodeNormalize != null))
+            return false;
+        if (PropertiesUtils.getProperty(configProps, "marc.include_if_present") != null
+                || PropertiesUtils.getProperty(configProps, "marc.include_if_missing") != null
+                || PropertiesUtils.getProperty(configProps, "marc.delete_subfields") != null)
+            return false;
+        // records read in another encoding than they say they're in would be written differently
+        return defaultEncoding == null || defaultEncoding.equals("BESTGUESS") || defaultEncoding.startsWith("UTF");
+    }
+
+    /**
+     * start reading the marc file at marcFileOffset instead of at the start
+     */
+    private void seekMarcFile(FileInputStream marcRecsInputStream, RecordFormat recFormat)
+    {
+        if (recFormat != RecordFormat.MARC21)
+            throw new IllegalArgumentException("Can only start reading part way through a file of binary MARC records: " + marcFileName);
+        try
+        {
+            marcRecsInputStream.getChannel().position(marcFileOffset);
+            logger.info("Starting to read " + marcFileName + " at byte " + marcFileOffset);
+        }
+        catch (IOException e)
+        {
+            logger.fatal("Fatal error: Unable to read MARC data file " + marcFileName + " from byte " + marcFileOffset);
+            throw new IllegalArgumentException("Fatal error: Unable to read MARC data file " + marcFileName + " from byte " + marcFileOffset, e);
+        }
+    }
+
     /**
      * add path and path/TRANS_MAP_DIR to propertySearchPath; add path to propertySearchSet
      * @param pathToAdd
@@ -531,6 +711,17 @@ public abstract class MarcHandler {
 	 * Load the Custom Indexer routine
 	 */
 	public void loadIndexer(String indexerName, String indexPropsFname)
+	{
+	    indexer = createIndexer(indexerName, indexPropsFname);
+	}
+
+	/**
+	 * Create a new instance of the Custom Indexer, configured from the given
+	 *  index properties file.  Code indexing records on several threads can
+	 *  share one instance if it is thread safe (SolrIndexer.isThreadSafe);
+	 *  otherwise it needs one per thread.
+	 */
+	protected SolrIndexer createIndexer(String indexerName, String indexPropsFname)
 	{
 	    // Setup the SolrMarc Indexer
         Class<?> indexerClass = null;
@@ -555,14 +746,33 @@ public abstract class MarcHandler {
         }
 	    try
 	    {
-	        Constructor<?> constructor = indexerClass.getConstructor(new Class[]{String.class, String[].class});
 	        String configFilePath = PropertiesUtils.getProperty(configProps, "config.file.dir");
 	        String propertySearchPath[] = makePropertySearchPath(solrmarcPath, siteSpecificPath, configFilePath, homeDir);
 
-	        Object instance = constructor.newInstance(indexPropsFname, propertySearchPath);
+	        Object instance = null;
+	        if (configSnapshotFile != null)
+	        {
+	            try
+	            {
+	                Constructor<?> constructor = indexerClass.getConstructor(new Class<?>[]{String.class, String[].class, File.class});
+	                instance = constructor.newInstance(indexPropsFname, propertySearchPath, configSnapshotFile);
+	            }
+	            catch (NoSuchMethodException e)
+	            {
+	                logger.warn("Custom Indexer " + indexerName + " can't be configured from a snapshot; ignoring solrmarc.config.snapshot");
+	            }
+	        }
+	        if (instance == null)
+	        {
+	            Constructor<?> constructor = indexerClass.getConstructor(new Class[]{String.class, String[].class});
+	            instance = constructor.newInstance(indexPropsFname, propertySearchPath);
+	        }
 
 	        if (instance instanceof SolrIndexer)
-	            indexer = (SolrIndexer)instance;
+	        {
+	            ((SolrIndexer)instance).finishConfiguration();
+	            return (SolrIndexer)instance;
+	        }
 	        else
 	        {
 	            logger.fatal("Error: Custom Indexer " + indexerName + " must be subclass of SolrIndexer. ");
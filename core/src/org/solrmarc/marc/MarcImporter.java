@@ -17,14 +17,26 @@ package org.solrmarc.marc;
  */
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import javax.management.*;
+
 import org.apache.log4j.*;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
 import org.marc4j.ErrorHandler;
 import org.marc4j.marc.Record;
+import org.solrmarc.index.DocumentSink;
+import org.solrmarc.index.FieldSpecProfiler;
+import org.solrmarc.index.PrintingDocumentSink;
+import org.solrmarc.index.SolrIndexer;
 import org.solrmarc.solr.*;
 import org.solrmarc.tools.*;
 
@@ -46,11 +58,16 @@ public class MarcImporter extends MarcHandler
     /** Specification of how to modify the entries in the delete record file before passing the id onto Solr.
      * Based on syntax of String.replaceAll().  So to prepend a 'u' specify the following:  "(.*)->u$1" */
     private String deleteRecordIDMapper = null;
+    /** the pattern and replacement parts of deleteRecordIDMapper, compiled once */
+    private Pattern deleteRecordIDPattern = null;
+    private String deleteRecordIDReplace = null;
+    /** maximum number of ids sent to Solr in one delete request */
+    private int deleteBatchSize = 1000;
     private String solrHostURL;
     private String solrHostUpdateURL;
     protected boolean commitAtEnd = true;
     protected boolean optimizeAtEnd = false;
-    protected boolean shuttingDown = false;
+    protected volatile boolean shuttingDown = false;
     protected boolean isShutDown = false;
     protected boolean justIndexDontAdd = false;
     private int recsReadCounter = 0;
@@ -59,6 +76,65 @@ public class MarcImporter extends MarcHandler
     private int recsDeletedCounter = 0;
     private boolean useBinaryRequestHandler = false;
     private boolean useStreamingServer = false;
+    /** number of threads mapping records to Solr fields; 1 indexes on the reading thread */
+    private int numIndexingThreads = 1;
+    /** capacity of each of the queues between the indexing pipeline stages */
+    private int indexingQueueSize = 1000;
+    /** maximum number of documents sent to Solr in one request; 1 sends each document as it is indexed */
+    private int updateBatchSize = 1;
+    /** approximate maximum size, in characters, of the documents sent to Solr in one request; 0 for no limit */
+    private long updateBatchBytes = 0;
+    /** documents waiting to be sent to Solr; only used by the thread writing to Solr */
+    private List<RecordToIndex> docBuffer = new ArrayList<RecordToIndex>();
+    private long docBufferBytes = 0;
+    /** number of update requests that can wait to be sent by the streaming proxy */
+    private int updateQueueSize = SolrCoreLoader.DEFAULT_UPDATE_QUEUE_SIZE;
+    /** number of threads sending updates for the streaming proxy */
+    private int updateThreads = SolrCoreLoader.DEFAULT_UPDATE_THREADS;
+    /** documents sent in the background that Solr rejected */
+    private final AtomicInteger recsRejectedCounter = new AtomicInteger(0);
+    /** records of the documents most recently sent in the background, for error messages */
+    private SentDocMap sentDocs = null;
+    private int sentDocsToRemember = 10000;
+    /** the exception that stopped the indexing pipeline, if any */
+    private volatile RuntimeException pipelineHaltCause = null;
+    /** number of marc files indexed at once, when more than one file is given */
+    private int numFileThreads = 1;
+    /** the importer indexing all the files, when this one indexes a single file of them */
+    private MarcImporter parentImporter = null;
+    /** if true, time each index specification and report at the end */
+    private boolean profileFields = false;
+    /** file the index specification timings are written to, as CSV */
+    private String profileFieldsCsvFile = null;
+    /** the profilers of all the indexers created, when profiling */
+    private final List<FieldSpecProfiler> fieldProfilers = new ArrayList<FieldSpecProfiler>();
+    /** throughput, latency and error counts, shared by the importers of each file */
+    private IndexingMetrics metrics = new IndexingMetrics();
+    /** if true, the metrics can be watched over JMX while indexing */
+    private boolean metricsJmx = true;
+    /** file the metrics are written to while indexing; null for none */
+    private String metricsFile = null;
+    /** seconds between writes of the metrics to metricsFile */
+    private int metricsInterval = 60;
+    /** file to save import checkpoints in; null to not save them */
+    private String checkpointFile = null;
+    /** number of records written to Solr between checkpoints (each one a commit) */
+    private int checkpointInterval = 100000;
+    /** if true, start from the checkpoint in checkpointFile, if it is for the same marc file */
+    private boolean resumeFromCheckpoint = false;
+    /** the checkpoint the reader was positioned after, for importRecords to continue from */
+    private ImportCheckpoint resumeCheckpoint = null;
+    /** tracks the records done, when saving checkpoints */
+    private ImportCheckpoint.Tracker checkpointTracker = null;
+    private int recsSinceCheckpoint = 0;
+    /** byte offset of the next record in the marc file; -1 if it can't be known */
+    private long readOffset = -1;
+    /** decides when to commit while indexing; null to only commit at the end */
+    private CommitScheduler commitScheduler = null;
+    /** if true, documents are built and then discarded instead of sent to Solr */
+    private boolean benchmark = false;
+    /** time and allocation of each stage, in benchmark mode; shared by the importers of each file */
+    private BenchmarkStats benchmarkStats = null;
     // Initialize logging category
     protected static Logger logger = Logger.getLogger(MarcImporter.class.getName());
 
@@ -82,222 +158,1488 @@ public class MarcImporter extends MarcHandler
     }
 
     /**
-     * Main loop in the MarcImporter class the handles all of
-     * importing and deleting of records.
+     * Constructs an instance to index one of the files given to parent.  It
+     *  shares parent's configuration and SolrProxy, and stops when parent does.
+     * @param parent the importer indexing all the files
+     * @param fileIndexer an indexer not used by any other thread
+     */
+    private MarcImporter(MarcImporter parent, SolrIndexer fileIndexer)
+    {
+        parentImporter = parent;
+        configProps = parent.configProps;
+        homeDir = parent.homeDir;
+        indexerClassName = parent.indexerClassName;
+        indexPropsFname = parent.indexPropsFname;
+        indexer = fileIndexer;
+        verbose = parent.verbose;
+        includeErrors = parent.includeErrors;
+        permissiveReader = parent.permissiveReader;
+        defaultEncoding = parent.defaultEncoding;
+        to_utf_8 = parent.to_utf_8;
+        combineConsecutiveRecordsFields = parent.combineConsecutiveRecordsFields;
+        useStanfordCombiningReader = parent.useStanfordCombiningReader;
+        unicodeNormalize = parent.unicodeNormalize;
+        showInputFile = parent.showInputFile;
+        solrProxy = parent.solrProxy;
+        justIndexDontAdd = parent.justIndexDontAdd;
+        updateBatchSize = parent.updateBatchSize;
+        updateBatchBytes = parent.updateBatchBytes;
+        metrics = parent.metrics;
+        commitScheduler = parent.commitScheduler;
+        benchmark = parent.benchmark;
+        benchmarkStats = parent.benchmarkStats;
+        // the files are indexed in parallel instead of the records of each file
+        numIndexingThreads = 1;
+    }
+
+    @Override
+    protected boolean handlesMultipleFiles()
+    {
+        return true;
+    }
+
+    /**
+     * Main loop in the MarcImporter class the handles all of
+     * importing and deleting of records.
+     */
+    @Override
+    public int handleAll()
+    	throws IOException
+    {
+        Runtime.getRuntime().addShutdownHook(new MyShutdownThread(this));
+
+        Date start = new Date();
+        metrics.start();
+        ObjectName metricsName = registerMetrics();
+        if (metricsFile != null)
+            metrics.startDumping(metricsFile, metricsInterval);
+        if (commitScheduler != null && solrProxy != null)
+            commitScheduler.start(solrProxy);
+
+        int numImported = 0;
+        int numDeleted = 0;
+        boolean importCompleted = false;
+        try
+        {
+            if (marcFileList != null)
+                numImported = importFiles(marcFileList);
+            else
+                numImported = importRecords();
+            importCompleted = !shuttingDown;
+            numDeleted = deleteRecords();
+        }
+        catch (Exception e)
+        {
+            logger.info("Exception occurred while Indexing: "+ e.getMessage());
+            logger.info("Setting Solr closed flag");
+            isShutDown = true;
+        }
+
+        logger.info(" Adding " + recsIndexedCounter + " of " + recsReadCounter + " documents to index");
+        logger.info(" Deleting " + recsDeletedCounter + " documents from index");
+
+        if (commitScheduler != null)
+            commitScheduler.stop();
+
+        if (!isShutDown)
+        	finish();
+
+        // a checkpoint is only needed to resume an import that didn't finish
+        if (importCompleted && checkpointFile != null && new File(checkpointFile).delete())
+            logger.info("Import complete; removed checkpoint " + checkpointFile);
+
+        // documents sent in the background can still be rejected after importRecords returns
+        int numRejected = recsRejectedCounter.get();
+        if (numRejected > 0)
+        {
+            logger.info(" " + numRejected + " documents were rejected by Solr after they were sent");
+            numImported -= numRejected;
+        }
+
+        if (!justIndexDontAdd)
+        	sendCommitToSolrUrl();
+
+        Date end = new Date();
+        long totalTime = end.getTime() - start.getTime();
+
+        logger.info("Finished indexing in " + DateUtils.calcTime(totalTime));
+        //System.out.println("Finished in " + Utils.calcTime(totalTime) );
+
+        // calculate the time taken
+        float indexingRate = totalTime > 0 ? numImported * 1000f / totalTime : 0f;
+
+        logger.info("Indexed " + numImported + " at a rate of about " + indexingRate + " per sec");
+        logger.info("Deleted " + numDeleted + " records");
+
+        if (profileFields)
+            reportFieldProfile();
+
+        if (benchmarkStats != null)
+            reportBenchmark(totalTime);
+
+        metrics.stopDumping();
+        unregisterMetrics(metricsName);
+
+        return(shuttingDown ? 1 : 0);
+    }
+
+
+	/**
+     * Iterate over the marc records in the file and add them to the index
+     * @return Number of records indexed
+     */
+    public int importRecords()
+    {
+        // keep track of record counts; when resuming, records are numbered
+        //  from the start of the file
+        ImportCheckpoint start = resumeCheckpoint;
+        resumeCheckpoint = null;
+        recsReadCounter = (start != null) ? start.recordCount : 0;
+        recsIndexedCounter = 0;
+        if (marcFileName != null && canSeekInMarcFile(marcFileName))
+            readOffset = (start != null) ? start.offset : 0;
+        else
+            readOffset = -1;
+        checkpointTracker = (checkpointFile != null && marcFileName != null) ? new ImportCheckpoint.Tracker(start) : null;
+        recsSinceCheckpoint = 0;
+
+        docBuffer.clear();
+        docBufferBytes = 0;
+        pipelineHaltCause = null;
+        recsRejectedCounter.set(0);
+        watchForUpdateErrors();
+
+        if (numIndexingThreads > 1 && indexerClassName != null)
+            return importRecordsConcurrently();
+
+        while (reader != null && reader.hasNext())
+        {
+            if (stopRequested())
+            	break;
+
+            // read next record
+            Record record = null;
+            try
+            {
+                long readAlloc = allocationMark();
+                long readStart = System.nanoTime();
+                record = reader.next();
+                long readNanos = System.nanoTime() - readStart;
+                metrics.recordRead(readNanos);
+                if (benchmarkStats != null)
+                    benchmarkRead(record, readNanos, readAlloc);
+                recsReadCounter++;
+            }
+            catch (Exception e)
+            {
+                if (handleReadException(e, record))
+                    continue;
+                else
+                    break;
+            }
+
+            // index the record
+            RecordToIndex rec = new RecordToIndex(record, recsReadCounter, errors);
+            trackReadOffset(rec);
+            keepRecordBytes(rec);
+            if (indexRecord(indexer, rec))
+                writeRecord(rec);
+		} // while reader
+
+        flushDocBuffer();
+
+        // an update sent in the background failed
+        if (pipelineHaltCause != null)
+            throw pipelineHaltCause;
+
+        return recsIndexedCounter;
+    }
+
+    /**
+     * Index each of the given marc files, numFileThreads files at a time.  All
+     *  the files share this importer's SolrProxy; each file being indexed gets
+     *  its own reader and indexer.  A failure that would halt indexing of one
+     *  file halts indexing of all of them.
+     * @param marcFiles paths of the files to index
+     * @return Number of records indexed
+     */
+    public int importFiles(List<String> marcFiles)
+    {
+        recsReadCounter = 0;
+        recsIndexedCounter = 0;
+        pipelineHaltCause = null;
+        recsRejectedCounter.set(0);
+        watchForUpdateErrors();
+
+        if (checkpointFile != null)
+            logger.warn("Checkpoints are not saved when indexing more than one file");
+        int numThreads = Math.min(numFileThreads, marcFiles.size());
+        logger.info("Indexing " + marcFiles.size() + " files, " + numThreads + " at a time");
+        // indexers are reused by later files once a file is done
+        BlockingQueue<SolrIndexer> idleIndexers = new LinkedBlockingQueue<SolrIndexer>();
+        if (indexer != null)
+            idleIndexers.add(indexer);
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            for (String marcFile : marcFiles)
+                fileExecutor.execute(new FileImporter(marcFile, idleIndexers));
+            fileExecutor.shutdown();
+            while (!fileExecutor.awaitTermination(1, TimeUnit.SECONDS))
+                ;
+        }
+        catch (InterruptedException ie)
+        {
+            haltPipeline(new SolrMarcRuntimeException("Interrupted while indexing", ie));
+            fileExecutor.shutdownNow();
+        }
+
+        if (pipelineHaltCause != null)
+            throw pipelineHaltCause;
+
+        return recsIndexedCounter;
+    }
+
+    /**
+     * @return throughput, latency and error counts of the indexing
+     */
+    public IndexingMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @return time and allocation of each stage, in benchmark mode; null otherwise
+     */
+    public BenchmarkStats getBenchmarkStats()
+    {
+        return benchmarkStats;
+    }
+
+    /**
+     * make the metrics visible over JMX, as org.solrmarc:type=IndexingMetrics
+     * @return the name registered, or null if they weren't registered
+     */
+    private ObjectName registerMetrics()
+    {
+        if (!metricsJmx)
+            return null;
+        try
+        {
+            ObjectName name = new ObjectName("org.solrmarc:type=IndexingMetrics");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        }
+        catch (JMException e)
+        {
+            logger.warn("Unable to register indexing metrics with JMX -- " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void unregisterMetrics(ObjectName name)
+    {
+        if (name == null)
+            return;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        catch (JMException e)
+        {
+            logger.debug("Unable to unregister indexing metrics from JMX -- " + e.getMessage());
+        }
+    }
+
+    /**
+     * create an indexer, giving it a profiler of its own if the index
+     *  specifications are being profiled
+     */
+    @Override
+    protected SolrIndexer createIndexer(String indexerName, String indexPropsFname)
+    {
+        SolrIndexer newIndexer = super.createIndexer(indexerName, indexPropsFname);
+        if (profileFields && newIndexer != null)
+        {
+            FieldSpecProfiler profiler = new FieldSpecProfiler();
+            newIndexer.setProfiler(profiler);
+            synchronized (fieldProfilers)
+            {
+                fieldProfilers.add(profiler);
+            }
+        }
+        return newIndexer;
+    }
+
+    /**
+     * log the time spent on each index specification and custom method by all
+     *  the indexers, most time consuming first, and write it to
+     *  profileFieldsCsvFile
+     */
+    private void reportFieldProfile()
+    {
+        FieldSpecProfiler total = new FieldSpecProfiler();
+        synchronized (fieldProfilers)
+        {
+            for (FieldSpecProfiler profiler : fieldProfilers)
+                total.merge(profiler);
+        }
+        logger.info("Time spent on each index specification:\n" + total.formatTable());
+
+        Writer csvOut = null;
+        try
+        {
+            csvOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(profileFieldsCsvFile), "UTF-8"));
+            total.writeCsv(csvOut);
+            logger.info("Wrote index specification timings to " + profileFieldsCsvFile);
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to write index specification timings to " + profileFieldsCsvFile + " -- " + e.getMessage());
+        }
+        finally
+        {
+            if (csvOut != null)
+            {
+                try
+                {
+                    csvOut.close();
+                }
+                catch (IOException e)
+                {
+                    // nothing more to do
+                }
+            }
+        }
+    }
+
+    /**
+     * print the time and allocation of each stage, in benchmark mode
+     * @param totalTime milliseconds the import took
+     */
+    private void reportBenchmark(long totalTime)
+    {
+        String report = benchmarkStats.formatReport(totalTime);
+        System.out.print(report);
+        logger.info("\n" + report);
+    }
+
+    /**
+     * indexer constructors can update static state, so only create one at a time
+     */
+    private synchronized SolrIndexer createFileIndexer()
+    {
+        return createIndexer(indexerClassName, indexPropsFname);
+    }
+
+    /**
+     * add the record counts from indexing one file to the totals
+     */
+    private synchronized void addFileCounts(MarcImporter fileImporter)
+    {
+        recsReadCounter += fileImporter.recsReadCounter;
+        recsIndexedCounter += fileImporter.recsIndexedCounter;
+    }
+
+    /**
+     * Indexes one of the files given to importFiles
+     */
+    private class FileImporter implements Runnable
+    {
+        private final String marcFile;
+        private final BlockingQueue<SolrIndexer> idleIndexers;
+
+        FileImporter(String marcFile, BlockingQueue<SolrIndexer> idleIndexers)
+        {
+            this.marcFile = marcFile;
+            this.idleIndexers = idleIndexers;
+        }
+
+        public void run()
+        {
+            if (stopRequested())
+                return;
+            SolrIndexer fileIndexer = null;
+            MarcImporter fileImporter = null;
+            try
+            {
+                fileIndexer = idleIndexers.poll();
+                if (fileIndexer == null && indexerClassName != null)
+                    fileIndexer = createFileIndexer();
+                fileImporter = new MarcImporter(MarcImporter.this, fileIndexer);
+                fileImporter.loadReader("FILE", marcFile);
+                fileImporter.importRecords();
+            }
+            catch (FileNotFoundException e)
+            {
+                logger.fatal("Fatal error: Unable to open MARC data file: " + marcFile);
+                haltPipeline(new IllegalArgumentException("Fatal error: Unable to open MARC data file: " + marcFile, e));
+            }
+            catch (RuntimeException e)
+            {
+                haltPipeline(e);
+            }
+            finally
+            {
+                if (fileImporter != null)
+                    addFileCounts(fileImporter);
+                if (fileIndexer != null)
+                    idleIndexers.add(fileIndexer);
+            }
+        }
+    }
+
+    /**
+     * @return true if indexing should stop: the importer is shutting down, or
+     *  a failure has halted indexing here or in the importer this one
+     *  indexes a file for
+     */
+    private boolean stopRequested()
+    {
+        return shuttingDown || pipelineHaltCause != null
+                || (parentImporter != null && parentImporter.stopRequested());
+    }
+
+    /**
+     * Map a record to Solr fields, storing the result in rec:  as the Solr
+     *  document itself if the SolrProxy takes documents, otherwise as a map.
+     * @param recIndexer the indexer to use; not shared with other threads
+     * @param rec the record to map
+     * @return true if rec should be passed on to writeRecord, false if the
+     *  record was skipped
+     * @throws SolrMarcIndexerException if the record was flagged with level EXIT
+     */
+    private boolean indexRecord(SolrIndexer recIndexer, RecordToIndex rec)
+    {
+        long startAlloc = allocationMark();
+        long start = System.nanoTime();
+        try
+        {
+            if (solrProxy instanceof SolrInputDocumentProxy)
+                buildSolrDoc(recIndexer, rec);
+            else
+                rec.fields2ValuesMap = recIndexer.createFldNames2ValsMap(recIndexer.createRecordContext(rec.record, rec.errors, rec.recordBytes));
+            return true;
+        }
+        catch (SolrMarcIndexerException smie)
+        {
+            if (smie.getLevel() == SolrMarcIndexerException.DELETE && rec.recCntlNum != null)
+            {
+                // the writer owns the connection to Solr, so let it do the delete
+                metrics.indexerException(SolrMarcIndexerException.DELETE);
+                rec.deleteId = rec.recCntlNum;
+                return true;
+            }
+            handleIndexingException(smie, rec.recCntlNum, rec.recNum);
+        }
+        catch (Exception e)
+        {
+            handleIndexingException(e, rec.recCntlNum, rec.recNum);
+        }
+        finally
+        {
+            long nanos = System.nanoTime() - start;
+            metrics.recordIndexed(nanos);
+            if (benchmarkStats != null)
+                benchmarkStats.recordStage(BenchmarkStats.MAP, nanos, BenchmarkStats.threadAllocatedBytes() - startAlloc);
+        }
+        // skipped records are done as far as checkpoints are concerned
+        recordDone(rec);
+        return false;
+    }
+
+    /**
+     * Index a record straight into the SolrInputDocument to be sent to Solr,
+     *  rather than into a map to be copied into one.  The record's errors are
+     *  added, and the document is printed if it is to be shown, here in the
+     *  indexing worker rather than when it is written.
+     */
+    private void buildSolrDoc(SolrIndexer recIndexer, RecordToIndex rec)
+    {
+        SolrInputDocumentSink inputDoc = new SolrInputDocumentSink();
+        PrintingDocumentSink printer = (verbose || justIndexDontAdd) ? new PrintingDocumentSink(inputDoc) : null;
+        DocumentSink doc = (printer != null) ? printer : inputDoc;
+        recIndexer.indexRecord(recIndexer.createRecordContext(rec.record, rec.errors, rec.recordBytes), doc);
+        if (doc.size() == 0)
+            return;
+        if (rec.errors != null && includeErrors && rec.errors.hasErrors())
+            doc.setField("marc_error", rec.errors.getErrors());
+        rec.solrDoc = inputDoc.getDocument();
+        if (printer != null)
+            rec.docStr = printer.toString();
+    }
+
+    /**
+     * Send a mapped record to Solr:  delete it, add it, or buffer it to be
+     *  added with the next batch.
+     * @throws SolrRuntimeException if the index can't be written
+     */
+    private void writeRecord(RecordToIndex rec)
+    {
+        long startAlloc = allocationMark();
+        long start = System.nanoTime();
+        try
+        {
+            sendRecord(rec);
+        }
+        finally
+        {
+            long nanos = System.nanoTime() - start;
+            metrics.recordWritten(nanos);
+            if (benchmarkStats != null)
+                benchmarkStats.recordStage(BenchmarkStats.BUILD, nanos, BenchmarkStats.threadAllocatedBytes() - startAlloc);
+        }
+        recordDone(rec);
+
+        boolean commitDue = false;
+        if (commitScheduler != null)
+        {
+            long docBytes = 0;
+            if (commitScheduler.countsBytes() && rec.deleteId == null)
+                docBytes = estimateDocSize(rec);
+            commitDue = commitScheduler.docWritten(docBytes);
+        }
+        if (checkpointTracker != null && ++recsSinceCheckpoint >= checkpointInterval)
+            commitDue = true;
+        if (commitDue)
+        {
+            recsSinceCheckpoint = 0;
+            hardCommit();
+        }
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, in benchmark
+     *  mode; 0 otherwise
+     */
+    private long allocationMark()
+    {
+        return benchmarkStats != null ? BenchmarkStats.threadAllocatedBytes() : 0;
+    }
+
+    /**
+     * count a record read in benchmark mode;  its size is taken from the leader
+     */
+    private void benchmarkRead(Record record, long nanos, long startAlloc)
+    {
+        benchmarkStats.recordStage(BenchmarkStats.READ, nanos, BenchmarkStats.threadAllocatedBytes() - startAlloc);
+        try
+        {
+            benchmarkStats.recordBytesRead(record.getLeader().getRecordLength());
+        }
+        catch (RuntimeException e)
+        {
+            // no usable leader; the record isn't counted in the bytes read
+        }
+    }
+
+    /**
+     * note that a record has been written or skipped, for checkpoints
+     */
+    private void recordDone(RecordToIndex rec)
+    {
+        if (checkpointTracker != null)
+            checkpointTracker.recordDone(rec.recNum, rec.startOffset, rec.endOffset, rec.recCntlNum);
+    }
+
+    /**
+     * set the byte offsets of a record just read, if they can be known
+     */
+    private void trackReadOffset(RecordToIndex rec)
+    {
+        if (readOffset < 0)
+            return;
+        int recordLength = 0;
+        try
+        {
+            recordLength = rec.record.getLeader().getRecordLength();
+        }
+        catch (NullPointerException npe) { /* no leader */ }
+        if (recordLength <= 0)
+        {
+            // can't tell where the following records are
+            readOffset = -1;
+            return;
+        }
+        rec.startOffset = readOffset;
+        readOffset += recordLength;
+        rec.endOffset = readOffset;
+    }
+
+    /**
+     * keep the bytes a record just read was read from with it, if the reader
+     *  keeps them for the indexer to store
+     */
+    private void keepRecordBytes(RecordToIndex rec)
+    {
+        if (recordBytesReader != null)
+            rec.recordBytes = recordBytesReader.getRecordBytes();
+    }
+
+    /**
+     * @return true if the byte offset of each record in marcFile can be
+     *  worked out from the lengths of the records read: it is a file of
+     *  binary marc records, and the reader doesn't combine or drop records
+     */
+    private boolean canSeekInMarcFile(String marcFile)
+    {
+        String lcMarcFile = marcFile.toLowerCase();
+        return !lcMarcFile.endsWith(".xml") && !lcMarcFile.endsWith(".json")
+                && combineConsecutiveRecordsFields == null
+                && PropertiesUtils.getProperty(configProps, "marc.include_if_present") == null
+                && PropertiesUtils.getProperty(configProps, "marc.include_if_missing") == null;
+    }
+
+    /**
+     * send the buffered documents to Solr and commit;  if saving checkpoints,
+     *  save one of the records done, so an interrupted import can resume from
+     *  here
+     */
+    private void hardCommit()
+    {
+        flushDocBuffer();
+        try
+        {
+            logger.info("Committing after record " + recsReadCounter + " read");
+            solrProxy.commit(false);
+        }
+        catch (IOException ioe)
+        {
+            logger.error("Commit while indexing failed -- " + ioe.getMessage());
+            return;
+        }
+        if (checkpointTracker != null)
+            saveCheckpoint();
+    }
+
+    /**
+     * save a checkpoint of the records done; they must be committed to Solr
+     */
+    private void saveCheckpoint()
+    {
+        ImportCheckpoint checkpoint = checkpointTracker.getCheckpoint(new File(marcFileName).getAbsolutePath());
+        try
+        {
+            checkpoint.save(checkpointFile);
+            logger.info("Saved checkpoint: " + checkpoint);
+        }
+        catch (IOException ioe)
+        {
+            logger.error("Unable to save checkpoint to " + checkpointFile + " -- " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Open the reader; when resuming from a checkpoint for the same file,
+     *  position the reader after the last record done, seeking to it if its
+     *  byte offset is known.
+     */
+    @Override
+    public void loadReader(String source, String marcRecsFilename)
+            throws FileNotFoundException
+    {
+        resumeCheckpoint = null;
+        ImportCheckpoint checkpoint = null;
+        if (resumeFromCheckpoint && checkpointFile != null && "FILE".equals(source) && marcRecsFilename != null)
+            checkpoint = loadCheckpoint(marcRecsFilename);
+        if (checkpoint == null || checkpoint.recordCount == 0)
+        {
+            super.loadReader(source, marcRecsFilename);
+            return;
+        }
+
+        if (checkpoint.hasOffset() && canSeekInMarcFile(marcRecsFilename))
+        {
+            marcFileOffset = checkpoint.lastRecordOffset;
+            try
+            {
+                super.loadReader(source, marcRecsFilename);
+            }
+            finally
+            {
+                marcFileOffset = 0;
+            }
+            if (isLastRecordDone(checkpoint))
+            {
+                logger.info("Resuming import of " + checkpoint);
+                resumeCheckpoint = checkpoint;
+                return;
+            }
+            logger.warn("Record at byte " + checkpoint.lastRecordOffset + " isn't " + checkpoint.lastControlNumber
+                    + "; re-reading the records done instead");
+        }
+
+        // re-read, but don't index, the records done
+        super.loadReader(source, marcRecsFilename);
+        long offset = canSeekInMarcFile(marcRecsFilename) ? 0 : -1;
+        long lastRecordOffset = -1;
+        int numSkipped = 0;
+        while (numSkipped < checkpoint.recordCount && reader.hasNext())
+        {
+            try
+            {
+                Record record = reader.next();
+                numSkipped++;
+                int recordLength = record.getLeader().getRecordLength();
+                lastRecordOffset = offset;
+                offset = (offset >= 0 && recordLength > 0) ? offset + recordLength : -1;
+            }
+            catch (Exception e)
+            {
+                // the import would have skipped it too
+                offset = -1;
+            }
+        }
+        resumeCheckpoint = new ImportCheckpoint(checkpoint.inputFile, numSkipped, offset, offset >= 0 ? lastRecordOffset : -1, checkpoint.lastControlNumber);
+        logger.info("Resuming import of " + resumeCheckpoint);
+    }
+
+    /**
+     * @return the checkpoint in checkpointFile if it is for marcRecsFilename;
+     *  otherwise null
+     */
+    private ImportCheckpoint loadCheckpoint(String marcRecsFilename)
+    {
+        ImportCheckpoint checkpoint = null;
+        try
+        {
+            checkpoint = ImportCheckpoint.load(checkpointFile);
+        }
+        catch (IOException ioe)
+        {
+            logger.error("Unable to read checkpoint " + checkpointFile + "; starting from the beginning -- " + ioe.getMessage());
+            return null;
+        }
+        if (checkpoint == null)
+            logger.info("No checkpoint " + checkpointFile + "; starting from the beginning");
+        else if (!checkpoint.inputFile.equals(new File(marcRecsFilename).getAbsolutePath()))
+        {
+            logger.warn("Checkpoint " + checkpointFile + " is for " + checkpoint.inputFile + "; starting from the beginning");
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * read the record the reader was positioned at, and check it is the last
+     *  record done
+     */
+    private boolean isLastRecordDone(ImportCheckpoint checkpoint)
+    {
+        try
+        {
+            if (reader == null || !reader.hasNext())
+                return false;
+            Record record = reader.next();
+            return checkpoint.lastControlNumber.equals(record.getControlNumber())
+                    && checkpoint.lastRecordOffset + record.getLeader().getRecordLength() == checkpoint.offset;
+        }
+        catch (Exception e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * writeRecord, without the timing
+     */
+    private void sendRecord(RecordToIndex rec)
+    {
+        if (rec.deleteId == null && useDocBuffer())
+        {
+            // errors are attributed to their records when the buffer is sent
+            bufferDoc(rec);
+            return;
+        }
+        // keep adds and deletes of the same id in order
+        flushDocBuffer();
+
+        try
+        {
+            if (rec.deleteId != null)
+            {
+                solrProxy.delete(rec.deleteId, true, true);
+                logger.info("Deleted record " + rec.recCntlNum + " (record count " + rec.recNum + ")");
+            }
+            else
+            {
+                rememberSentDoc(rec);
+                String docStr = (rec.fields2ValuesMap != null) ? addToIndex(rec.fields2ValuesMap, rec.errors) : addSolrDocToIndex(rec);
+                showIndexedRecord(rec.record, docStr);
+                recsIndexedCounter++;
+                logger.info("Added record " + rec.recNum + " read from file: " + rec.recCntlNum);
+            }
+        }
+        catch (Exception e)
+        {
+            handleIndexingException(e, rec.recCntlNum, rec.recNum);
+        }
+    }
+
+    /**
+     * documents are batched only when they are actually sent to Solr, and
+     *  not printed one at a time;  in benchmark mode each document is built
+     *  as it is written, so its cost is measured with its record
+     */
+    private boolean useDocBuffer()
+    {
+        return (updateBatchSize > 1 && !justIndexDontAdd && !verbose && !benchmark);
+    }
+
+    /**
+     * add a mapped record to the buffer of documents waiting to be sent to
+     *  Solr, and send the buffer if it has reached its maximum number of
+     *  documents or bytes
+     */
+    private void bufferDoc(RecordToIndex rec)
+    {
+        if (rec.fields2ValuesMap != null ? rec.fields2ValuesMap.size() == 0 : rec.solrDoc == null)
+        {
+            // nothing to send, same as addToIndex
+            recsIndexedCounter++;
+            return;
+        }
+        if (rec.fields2ValuesMap != null && rec.errors != null && includeErrors && rec.errors.hasErrors())
+            addErrorsToMap(rec.fields2ValuesMap, rec.errors);
+
+        docBuffer.add(rec);
+        docBufferBytes += estimateDocSize(rec);
+        if (docBuffer.size() >= updateBatchSize || (updateBatchBytes > 0 && docBufferBytes >= updateBatchBytes))
+            flushDocBuffer();
+    }
+
+    /**
+     * send all buffered documents to Solr
+     * @throws SolrRuntimeException if the index can't be written
+     */
+    private void flushDocBuffer()
+    {
+        if (docBuffer.isEmpty())
+            return;
+        List<RecordToIndex> batch = new ArrayList<RecordToIndex>(docBuffer);
+        docBuffer.clear();
+        docBufferBytes = 0;
+        addBatchToIndex(batch);
+    }
+
+    /**
+     * Add a batch of documents to the index with a single request.  If Solr
+     *  rejects the batch because of a problem with a document (such as
+     *  missing required fields or an unknown field), the batch is split in
+     *  half and each half retried, so only the offending documents are
+     *  skipped and each error is logged against its own record.
+     * @throws SolrRuntimeException if the index can't be written
+     */
+    private void addBatchToIndex(List<RecordToIndex> batch)
+    {
+        if (batch.size() == 1)
+        {
+            RecordToIndex rec = batch.get(0);
+            try
+            {
+                rememberSentDoc(rec);
+                if (rec.solrDoc != null)
+                    ((SolrInputDocumentProxy) solrProxy).addDoc(rec.solrDoc);
+                else
+                    solrProxy.addDoc(rec.fields2ValuesMap, false, true);
+                recsIndexedCounter++;
+                logger.info("Added record " + rec.recNum + " read from file: " + rec.recCntlNum);
+            }
+            catch (Exception e)
+            {
+                handleIndexingException(e, rec.recCntlNum, rec.recNum);
+            }
+            return;
+        }
+
+        for (RecordToIndex rec : batch)
+            rememberSentDoc(rec);
+        try
+        {
+            if (batch.get(0).solrDoc != null)
+            {
+                List<SolrInputDocument> docs = new ArrayList<SolrInputDocument>(batch.size());
+                for (RecordToIndex rec : batch)
+                    docs.add(rec.solrDoc);
+                ((SolrInputDocumentProxy) solrProxy).addSolrInputDocs(docs);
+            }
+            else
+            {
+                List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>(batch.size());
+                for (RecordToIndex rec : batch)
+                    docs.add(rec.fields2ValuesMap);
+                solrProxy.addDocs(docs);
+            }
+        }
+        catch (Exception e)
+        {
+            if (e instanceof SolrRuntimeException && !isRecordLevelSolrError(e))
+            {
+                // not the fault of any one record: halt
+                RecordToIndex first = batch.get(0);
+                handleIndexingException(e, first.recCntlNum, first.recNum);
+            }
+            logger.debug("Batch of " + batch.size() + " documents starting at record count " + batch.get(0).recNum + " failed; retrying in halves -- " + e.getMessage());
+            int half = batch.size() / 2;
+            addBatchToIndex(batch.subList(0, half));
+            addBatchToIndex(batch.subList(half, batch.size()));
+            return;
+        }
+        recsIndexedCounter += batch.size();
+        if (logger.isInfoEnabled())
+        {
+            for (RecordToIndex rec : batch)
+                logger.info("Added record " + rec.recNum + " read from file: " + rec.recCntlNum);
+        }
+    }
+
+    /**
+     * return true if the exception (or one of its causes) is Solr rejecting
+     *  a single document, rather than a failure to write to the index
+     */
+    private static boolean isRecordLevelSolrError(Throwable e)
+    {
+        for (Throwable t = e; t != null; t = t.getCause())
+        {
+            String msg = t.getMessage();
+            if (msg != null &&
+                (msg.contains("missing required fields") ||
+                 msg.contains("multiple values encountered for non multiValued field") ||
+                 msg.contains("unknown field")))
+                return true;
+            if (t.getCause() == t)
+                break;
+        }
+        return false;
+    }
+
+    /**
+     * if the SolrProxy sends updates in the background, arrange to be told
+     *  about the ones that fail
+     */
+    private void watchForUpdateErrors()
+    {
+        if (parentImporter != null)
+        {
+            // errors are reported to the importer indexing all the files
+            sentDocs = parentImporter.sentDocs;
+            return;
+        }
+        if (solrProxy instanceof ConcurrentUpdateSolrServerProxy)
+        {
+            sentDocs = new SentDocMap(sentDocsToRemember);
+            ((ConcurrentUpdateSolrServerProxy) solrProxy).setDocsToRemember(sentDocsToRemember);
+            ((ConcurrentUpdateSolrServerProxy) solrProxy).setErrorHandler(new UpdateErrorLogger());
+        }
+        else
+            sentDocs = null;
+    }
+
+    /**
+     * remember which record a document sent in the background came from, so
+     *  errors Solr reports later can be logged against the record
+     */
+    private void rememberSentDoc(RecordToIndex rec)
+    {
+        if (sentDocs == null)
+            return;
+        Object docId = null;
+        if (rec.solrDoc != null)
+            docId = rec.solrDoc.getFieldValue("id");
+        else if (rec.fields2ValuesMap != null)
+            docId = rec.fields2ValuesMap.get("id");
+        if (docId == null)
+            return;
+        synchronized (sentDocs)
+        {
+            sentDocs.put(docId.toString(), (rec.recCntlNum != null ? rec.recCntlNum : "") + " (record count " + rec.recNum + ")");
+        }
+    }
+
+    /** the most recently sent documents:  Solr unique key -> description of the record */
+    private static class SentDocMap extends LinkedHashMap<String, String>
+    {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        SentDocMap(int maxSize)
+        {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+        {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * Logs errors from updates sent to Solr in the background against the
+     *  records they came from.  A rejected document is skipped, as it would be
+     *  if it had been sent directly (the proxy resends the documents Solr
+     *  dropped with it);  any other failure halts indexing.
+     */
+    private class UpdateErrorLogger implements SolrUpdateErrorHandler
+    {
+        public void handleUpdateError(String docId, Throwable error)
+        {
+            String recDesc = null;
+            if (docId != null)
+            {
+                synchronized (sentDocs)
+                {
+                    recDesc = sentDocs.get(docId);
+                }
+                if (recDesc == null)
+                    recDesc = "with id " + docId;
+            }
+
+            if (docId != null)
+            {
+                // skip record, but keep indexing
+                recsRejectedCounter.incrementAndGet();
+                metrics.solrRejected();
+                logger.error("Unable to index record " + recDesc + " -- " + error.getMessage());
+            }
+            else
+            {
+                // stop indexing
+                logger.error("Unable to send documents to Solr -- " + error.getMessage(), error);
+                logger.fatal("******** Halting indexing! ********");
+                Exception cause = (error instanceof Exception) ? (Exception) error : new Exception(error);
+                haltPipeline(new SolrRuntimeException(error.getMessage(), cause));
+            }
+        }
+    }
+
+    /**
+     * rough size of the document that will be sent to Solr for a record, in
+     *  characters
+     */
+    private static long estimateDocSize(RecordToIndex rec)
+    {
+        if (rec.fields2ValuesMap != null)
+            return estimateDocSize(rec.fields2ValuesMap);
+        long size = 0;
+        if (rec.solrDoc != null)
+        {
+            for (SolrInputField field : rec.solrDoc)
+            {
+                for (Object val : field)
+                    size += field.getName().length() + String.valueOf(val).length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * rough size of the document that will be sent to Solr, in characters
+     */
+    private static long estimateDocSize(Map<String, Object> fields2ValuesMap)
+    {
+        long size = 0;
+        for (Map.Entry<String, Object> entry : fields2ValuesMap.entrySet())
+        {
+            Object value = entry.getValue();
+            if (value instanceof Collection)
+            {
+                for (Object val : (Collection<?>) value)
+                    size += entry.getKey().length() + String.valueOf(val).length();
+            }
+            else
+                size += entry.getKey().length() + String.valueOf(value).length();
+        }
+        return size;
+    }
+
+    /**
+     * Log an exception thrown while reading a record, and decide whether
+     *  reading should continue.
+     * @param e the exception thrown by the reader
+     * @param record the record being read, if any
+     * @return true if reading should continue with the next record, false if
+     *  indexing should halt
+     */
+    private boolean handleReadException(Exception e, Record record)
+    {
+		String recCntlNum = null;
+		try
+		{
+			recCntlNum = record.getControlNumber();
+		}
+		catch (NullPointerException npe) { /* ignore */	}
+
+		metrics.readError();
+		// the length of the record that failed is unknown
+		readOffset = -1;
+		if (e instanceof SolrMarcRuntimeException)
+		{
+			// stop reading
+			String errmsg = "Unable to read record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ") -- " + e.getMessage();
+			logger.fatal(errmsg);
+			logger.fatal("******** Halting indexing! ********");
+			return false;
+//			throw (SolrMarcRuntimeException) e;
+		}
+		else
+		{
+			// keep reading
+			logger.error("Error reading record: " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ") -- " + e.getMessage(), e);
+			return true;
+		}
+    }
+
+    /**
+     * Log an exception thrown while indexing a record, and rethrow it if
+     *  indexing should halt.
+     * @param e the exception thrown while mapping or adding the record
+     * @param recCntlNum control number of the record, if known
+     * @param recNum position of the record in the input
+     * @throws SolrRuntimeException if the record couldn't be written to the index
+     * @throws SolrMarcIndexerException if the record was flagged with level EXIT
+     */
+    private void handleIndexingException(Exception e, String recCntlNum, int recNum)
+    {
+        Throwable cause = null;
+        if (e instanceof SolrRuntimeException)
+            cause = e.getCause();
+        if (cause != null && cause instanceof InvocationTargetException)
+            cause = ((InvocationTargetException)cause).getTargetException();
+
+        if (cause instanceof Exception && solrProxy.isSolrException((Exception)cause))
+        {
+            logger.error("Unable to index record " + (recCntlNum != null ? recCntlNum : "") + " (record count "+ recNum +  ") -- " + cause.getMessage());
+
+            if (cause.getMessage().contains("missing required fields") ||
+                cause.getMessage().contains("multiple values encountered for non multiValued field")  ||
+                cause.getMessage().contains("unknown field"))
+            {
+                // skip record, but keep indexing
+                metrics.solrRejected();
+            }
+            else if (e instanceof SolrRuntimeException)
+            {
+                // stop indexing
+                metrics.otherError();
+                logger.fatal("******** Halting indexing! ********");
+                throw (new SolrRuntimeException(cause.getMessage(), (Exception)cause));
+            }
+        }
+        else if (e instanceof SolrMarcIndexerException)
+        {
+            SolrMarcIndexerException smie = (SolrMarcIndexerException)e;
+            metrics.indexerException(smie.getLevel());
+            if (smie.getLevel() == SolrMarcIndexerException.IGNORE)
+				// skip record, but keep indexing
+   	            logger.info("Ignored record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recNum + ")");
+            else if (smie.getLevel() == SolrMarcIndexerException.DELETE)
+				// skip record, but keep indexing
+   	            logger.info("Deleted record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recNum + ")");
+            else if (smie.getLevel() == SolrMarcIndexerException.EXIT)
+            {
+				// stop indexing
+				logger.fatal("Serious Error flagged in record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recNum + ")");
+				logger.fatal("******** Halting indexing! ********");
+                throw(smie);
+            }
+        }
+        else
+        {
+			// stop indexing
+			metrics.otherError();
+			logger.error("Unable to index record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recNum + ") -- " + e.getMessage(), e);
+			// this error should (might?) only be thrown if we can't
+			// write to the index
+			// therefore, continuing to index would be pointless.
+			if (e instanceof SolrRuntimeException)
+			{
+				logger.fatal("******** Halting indexing! ********");
+				throw (SolrRuntimeException) e;
+			}
+		}
+    }
+
+    /**
+     * Staged version of importRecords:  this thread reads the records, a pool
+     *  of worker threads maps them to Solr fields, and a single writer thread
+     *  sends the documents to Solr.  The workers share the indexer if it is
+     *  thread safe (see SolrIndexer.isThreadSafe); otherwise each has its own,
+     *  since the indexer keeps per-record state in instance variables.  The stages are
+     *  connected by bounded queues, so a slow stage throttles the ones before it.
+     * Documents may reach Solr in a different order than they were read.
+     * @return Number of records indexed
      */
-    @Override
-    public int handleAll()
-    	throws IOException
+    private int importRecordsConcurrently()
     {
-        Runtime.getRuntime().addShutdownHook(new MyShutdownThread(this));
-
-        Date start = new Date();
-
-        int numImported = 0;
-        int numDeleted = 0;
-        try
-        {
-            numImported = importRecords();
-            numDeleted = deleteRecords();
-        }
-        catch (Exception e)
+        BlockingQueue<RecordToIndex> recordQueue = new ArrayBlockingQueue<RecordToIndex>(indexingQueueSize);
+        BlockingQueue<RecordToIndex> docQueue = new ArrayBlockingQueue<RecordToIndex>(indexingQueueSize);
+        metrics.setQueues(recordQueue, docQueue);
+
+        boolean shareIndexer = indexer.isThreadSafe();
+        logger.info("Indexing with " + numIndexingThreads + " indexing threads" + (shareIndexer ? " sharing one indexer" : ""));
+        Thread workers[] = new Thread[numIndexingThreads];
+        for (int i = 0; i < workers.length; i++)
         {
-            logger.info("Exception occurred while Indexing: "+ e.getMessage());
-            logger.info("Setting Solr closed flag");
-            isShutDown = true;
+            SolrIndexer workerIndexer = (i == 0 || shareIndexer) ? indexer : createIndexer(indexerClassName, indexPropsFname);
+            workers[i] = new Thread(new IndexingWorker(workerIndexer, recordQueue, docQueue), "SolrMarc-indexer-" + i);
         }
+        Thread writer = new Thread(new IndexWriter(docQueue, workers.length), "SolrMarc-writer");
+        for (Thread worker : workers)
+            worker.start();
+        writer.start();
 
-        logger.info(" Adding " + recsIndexedCounter + " of " + recsReadCounter + " documents to index");
-        logger.info(" Deleting " + recsDeletedCounter + " documents from index");
+        try
+        {
+            while (reader != null && reader.hasNext())
+            {
+                if (stopRequested())
+                    break;
 
-        if (!isShutDown)
-        	finish();
+                // read next record
+                Record record = null;
+                try
+                {
+                    long readAlloc = allocationMark();
+                    long readStart = System.nanoTime();
+                    record = reader.next();
+                    long readNanos = System.nanoTime() - readStart;
+                    metrics.recordRead(readNanos);
+                    if (benchmarkStats != null)
+                        benchmarkRead(record, readNanos, readAlloc);
+                    recsReadCounter++;
+                }
+                catch (Exception e)
+                {
+                    if (handleReadException(e, record))
+                        continue;
+                    else
+                        break;
+                }
 
-        if (!justIndexDontAdd)
-        	sendCommitToSolrUrl();
+                // the reader reuses its ErrorHandler for the next record, so
+                //  hand each record its own copy
+                ErrorHandler recErrors = null;
+                if (errors != null)
+                {
+                    recErrors = new ErrorHandler();
+                    if (errors.hasErrors())
+                        recErrors.addErrors(errors.getErrors());
+                }
 
-        Date end = new Date();
-        long totalTime = end.getTime() - start.getTime();
+                RecordToIndex rec = new RecordToIndex(record, recsReadCounter, recErrors);
+                trackReadOffset(rec);
+                keepRecordBytes(rec);
+                if (!putUnlessHalted(recordQueue, rec))
+                    break;
+            }
 
-        logger.info("Finished indexing in " + DateUtils.calcTime(totalTime));
-        //System.out.println("Finished in " + Utils.calcTime(totalTime) );
+            // one end marker per worker
+            for (int i = 0; i < workers.length; i++)
+                putUnlessHalted(recordQueue, END_OF_INPUT);
 
-        // calculate the time taken
-        float indexingRate = numImported*1000 / totalTime;
+            for (Thread worker : workers)
+                worker.join();
+            writer.join();
+        }
+        catch (InterruptedException ie)
+        {
+            haltPipeline(new SolrMarcRuntimeException("Interrupted while indexing", ie));
+        }
+        finally
+        {
+            metrics.setQueues(null, null);
+        }
 
-        logger.info("Indexed " + numImported + " at a rate of about " + indexingRate + " per sec");
-        logger.info("Deleted " + numDeleted + " records");
+        if (pipelineHaltCause != null)
+            throw pipelineHaltCause;
 
-        return(shuttingDown ? 1 : 0);
+        return recsIndexedCounter;
     }
 
+    /**
+     * record the first exception that requires indexing to stop; all stages
+     *  of the pipeline stop once this is set.
+     */
+    private synchronized void haltPipeline(RuntimeException cause)
+    {
+        if (pipelineHaltCause == null)
+            pipelineHaltCause = cause;
+    }
 
-	/**
-     * Iterate over the marc records in the file and add them to the index
-     * @return Number of records indexed
+    /**
+     * put an item on a pipeline queue, waiting for space as long as no stage
+     *  has halted indexing.
+     * @return true if the item was queued, false if indexing was halted
      */
-    public int importRecords()
+    private <T> boolean putUnlessHalted(BlockingQueue<T> queue, T item)
+        throws InterruptedException
     {
-        // keep track of record counts
-        recsReadCounter = 0;
-        recsIndexedCounter = 0;
+        while (pipelineHaltCause == null)
+        {
+            if (queue.offer(item, 100, TimeUnit.MILLISECONDS))
+                return true;
+        }
+        return false;
+    }
 
-        while (reader != null && reader.hasNext())
+    /**
+     * take an item from a pipeline queue, waiting for one as long as no stage
+     *  has halted indexing.
+     * @return the item, or null if indexing was halted
+     */
+    private <T> T takeUnlessHalted(BlockingQueue<T> queue)
+        throws InterruptedException
+    {
+        while (pipelineHaltCause == null)
         {
-            if (shuttingDown)
-            	break;
+            T item = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (item != null)
+                return item;
+        }
+        return null;
+    }
 
-            // read next record
-            Record record = null;
+    /** a record as it moves through the stages of the indexing pipeline */
+    private static class RecordToIndex
+    {
+        final Record record;
+        final int recNum;
+        final String recCntlNum;
+        final ErrorHandler errors;
+        /** byte offsets of the record, and of the record after it, in the marc file; -1 if unknown */
+        long startOffset = -1;
+        long endOffset = -1;
+        /** the bytes the record was read from, if the indexer can store them as they are */
+        byte recordBytes[] = null;
+        /** the Solr field map, set by the indexing worker */
+        Map<String, Object> fields2ValuesMap = null;
+        /** the Solr document, set by the indexing worker instead of the field
+         *  map if the SolrProxy takes documents;  null if it has no fields */
+        SolrInputDocument solrDoc = null;
+        /** the Solr document as printed, if it is to be shown */
+        String docStr = null;
+        /** set instead of the field map when the record should be deleted */
+        String deleteId = null;
+
+        RecordToIndex(Record record, int recNum, ErrorHandler errors)
+        {
+            this.record = record;
+            this.recNum = recNum;
+            this.errors = errors;
+            String cntlNum = null;
             try
             {
-                record = reader.next();
-                recsReadCounter++;
+                cntlNum = record.getControlNumber();
             }
-            catch (Exception e)
-            {
-				String recCntlNum = null;
-				try
-				{
-					recCntlNum = record.getControlNumber();
-				}
-				catch (NullPointerException npe) { /* ignore */	}
+            catch (NullPointerException npe) { /* ignore */ }
+            this.recCntlNum = cntlNum;
+        }
+    }
 
-				if (e instanceof SolrMarcRuntimeException)
-				{
-					// stop reading
-					String errmsg = "Unable to read record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ") -- " + e.getMessage();
-					logger.fatal(errmsg);
-					logger.fatal("******** Halting indexing! ********");
-					break;
-//					throw (SolrMarcRuntimeException) e;
-				}
-				else
-				{
-					// keep reading
-					logger.error("Error reading record: " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ") -- " + e.getMessage(), e);
-					continue;
-				}
-			}
+    /** marks the end of the input on the pipeline queues */
+    private static final RecordToIndex END_OF_INPUT = new RecordToIndex(null, 0, null);
 
-            String recCntlNum = null;
-            try
-            {
-            	recCntlNum = record.getControlNumber();
-            }
-            catch (NullPointerException npe) { /* ignore */ }
+    /**
+     * Indexing stage of the pipeline:  maps records to Solr field maps using
+     *  an indexer that no other thread uses.
+     */
+    private class IndexingWorker implements Runnable
+    {
+        private final SolrIndexer workerIndexer;
+        private final BlockingQueue<RecordToIndex> recordQueue;
+        private final BlockingQueue<RecordToIndex> docQueue;
 
-            // index the record
+        IndexingWorker(SolrIndexer workerIndexer, BlockingQueue<RecordToIndex> recordQueue, BlockingQueue<RecordToIndex> docQueue)
+        {
+            this.workerIndexer = workerIndexer;
+            this.recordQueue = recordQueue;
+            this.docQueue = docQueue;
+        }
+
+        public void run()
+        {
             try
             {
-                boolean added = addToIndex(record);
-                if (added)
+                RecordToIndex rec;
+                while ((rec = takeUnlessHalted(recordQueue)) != null && rec != END_OF_INPUT)
                 {
-                    recsIndexedCounter++;
-                    logger.info("Added record " + recsReadCounter + " read from file: " + recCntlNum);
+                    if (indexRecord(workerIndexer, rec) && !putUnlessHalted(docQueue, rec))
+                        return;
                 }
-                else
-                    logger.info("Deleted record " + recsReadCounter + " read from file: " + recCntlNum);
+                if (rec == END_OF_INPUT)
+                    putUnlessHalted(docQueue, END_OF_INPUT);
             }
-            catch (Exception e)
+            catch (InterruptedException ie)
             {
-                Throwable cause = null;
-                if (e instanceof SolrRuntimeException)
-                    cause = e.getCause();
-                if (cause != null && cause instanceof InvocationTargetException)
-                    cause = ((InvocationTargetException)cause).getTargetException();
-
-                if (cause instanceof Exception && solrProxy.isSolrException((Exception)cause))
-                {
-                    logger.error("Unable to index record " + (recCntlNum != null ? recCntlNum : "") + " (record count "+ recsReadCounter +  ") -- " + cause.getMessage());
-
-                    if (cause.getMessage().contains("missing required fields") ||
-                        cause.getMessage().contains("multiple values encountered for non multiValued field")  ||
-                        cause.getMessage().contains("unknown field"))
-                    {
-                        // skip record, but keep indexing
-                    }
-                    else if (e instanceof SolrRuntimeException)
-                    {
-                        // stop indexing
-	                    logger.fatal("******** Halting indexing! ********");
-                        throw (new SolrRuntimeException(cause.getMessage(), (Exception)cause));
-                    }
-                }
-                else if (e instanceof SolrMarcIndexerException)
-                {
-                    SolrMarcIndexerException smie = (SolrMarcIndexerException)e;
-                    if (smie.getLevel() == SolrMarcIndexerException.IGNORE)
-						// skip record, but keep indexing
-           	            logger.info("Ignored record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ")");
-                    else if (smie.getLevel() == SolrMarcIndexerException.DELETE)
-						// skip record, but keep indexing
-           	            logger.info("Deleted record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ")");
-                    else if (smie.getLevel() == SolrMarcIndexerException.EXIT)
-                    {
-						// stop indexing
-						logger.fatal("Serious Error flagged in record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ")");
-						logger.fatal("******** Halting indexing! ********");
-                        throw(smie);
-                    }
-                }
-                else
-                {
-					// stop indexing
-					logger.error("Unable to index record " + (recCntlNum != null ? recCntlNum : "") + " (record count " + recsReadCounter + ") -- " + e.getMessage(), e);
-					// this error should (might?) only be thrown if we can't
-					// write to the index
-					// therefore, continuing to index would be pointless.
-					if (e instanceof SolrRuntimeException)
-					{
-						logger.fatal("******** Halting indexing! ********");
-						throw (SolrRuntimeException) e;
-					}
-				}
-			} // catch basic reader exception
-		} // while reader
-
-        return recsIndexedCounter;
+                haltPipeline(new SolrMarcRuntimeException("Interrupted while indexing", ie));
+            }
+            catch (RuntimeException e)
+            {
+                haltPipeline(e);
+            }
+        }
     }
 
     /**
-     * Add a record to the index
-     * @param record marc record to add
+     * Writing stage of the pipeline:  the only thread that talks to Solr
+     *  while records are being imported.
      */
-    private boolean addToIndex(Record record) throws IOException
+    private class IndexWriter implements Runnable
     {
-        try
+        private final BlockingQueue<RecordToIndex> docQueue;
+        private final int numWorkers;
+
+        IndexWriter(BlockingQueue<RecordToIndex> docQueue, int numWorkers)
         {
-            Map<String, Object> fields2ValuesMap = getFldNames2ValsMap(record);
-            String docStr = addToIndex(fields2ValuesMap);
+            this.docQueue = docQueue;
+            this.numWorkers = numWorkers;
+        }
 
-            if (verbose || justIndexDontAdd)
+        public void run()
+        {
+            int workersDone = 0;
+            try
             {
-                if (verbose)
+                while (workersDone < numWorkers)
                 {
-                    System.out.println(record.toString());
-                    logger.info(record.toString());
+                    RecordToIndex rec = takeUnlessHalted(docQueue);
+                    if (rec == null)
+                        return;
+                    if (rec == END_OF_INPUT)
+                        workersDone++;
+                    else
+                        writeRecord(rec);
                 }
-                System.out.println(docStr);
-                logger.info(docStr);
+                flushDocBuffer();
+            }
+            catch (InterruptedException ie)
+            {
+                haltPipeline(new SolrMarcRuntimeException("Interrupted while indexing", ie));
+            }
+            catch (RuntimeException e)
+            {
+                haltPipeline(e);
             }
-            return(true);
         }
-        catch (SolrMarcIndexerException e)
+    }
+
+    /**
+     * print the record and the document created from it, if verbose or
+     *  justIndexDontAdd are set
+     */
+    private void showIndexedRecord(Record record, String docStr)
+    {
+        if (verbose || justIndexDontAdd)
         {
-            if (e.getLevel() == SolrMarcIndexerException.IGNORE)
-                throw(e);
-            else if (e.getLevel() == SolrMarcIndexerException.DELETE)
+            if (verbose)
             {
-                String id = record.getControlNumber();
-                if (id != null)
-                    solrProxy.delete(id, true, true);
-                throw(e);
+                System.out.println(record.toString());
+                logger.info(record.toString());
             }
-            else if (e.getLevel() == SolrMarcIndexerException.EXIT)
-                throw(e);
+            System.out.println(docStr);
+            logger.info(docStr);
         }
-        return(true);
     }
 
     /**
@@ -321,13 +1663,26 @@ public class MarcImporter extends MarcHandler
      */
     protected String addToIndex(Map<String, Object> fields2ValuesMap)
         throws IOException
+    {
+        return addToIndex(fields2ValuesMap, errors);
+    }
+
+    /**
+     * Add a document to the index according to the fields map;
+     *   uses justIndexDontAdd  to determine if actual index write takes place
+     * @param fields2ValuesMap marc record to add as a fields map
+     * @param recordErrors errors found while reading the record
+     * @return the document added, as a String
+     */
+    protected String addToIndex(Map<String, Object> fields2ValuesMap, ErrorHandler recordErrors)
+        throws IOException
     {
         if (fields2ValuesMap.size() == 0)
             return null;
-        if (errors != null && includeErrors)
+        if (recordErrors != null && includeErrors)
         {
-            if (errors.hasErrors())
-                addErrorsToMap(fields2ValuesMap, errors);
+            if (recordErrors.hasErrors())
+                addErrorsToMap(fields2ValuesMap, recordErrors);
         }
 
         // NOTE: exceptions are dealt with by calling class
@@ -335,14 +1690,32 @@ public class MarcImporter extends MarcHandler
     }
 
 
+    /**
+     * Add a document built by the indexing worker to the index;  uses
+     *   justIndexDontAdd to determine if actual index write takes place
+     * @return the document added, as a String, if it is to be shown
+     */
+    private String addSolrDocToIndex(RecordToIndex rec)
+        throws IOException
+    {
+        if (rec.solrDoc == null)
+            return null;
+        if (!justIndexDontAdd)
+            ((SolrInputDocumentProxy) solrProxy).addDoc(rec.solrDoc);
+        return rec.docStr;
+    }
+
     private void addErrorsToMap(Map<String, Object> map, ErrorHandler errors2)
     {
-        map.put("marc_error", errors.getErrors());
+        map.put("marc_error", errors2.getErrors());
     }
 
 
     /**
-     * Delete records from the index
+     * Delete records from the index.  The ids are read from the delete file
+     *  (or stdin) as a stream, mapped with marc.delete_record_id_mapper, and
+     *  sent to Solr in chunks of solr.delete.batch_size;  an id appearing
+     *  more than once is only deleted once.
      * @return Number of records deleted
      */
     public int deleteRecords()
@@ -353,18 +1726,6 @@ public class MarcImporter extends MarcHandler
         if (deleteRecordListFilename == null || deleteRecordListFilename.length() == 0)
             return recsDeletedCounter;
 
-        String mapPattern = null;
-        String mapReplace = null;
-        if (deleteRecordIDMapper != null)
-        {
-            String parts[] = deleteRecordIDMapper.split("->");
-            if (parts.length == 2)
-            {
-                mapPattern = parts[0];
-                mapReplace = parts[1];
-            }
-        }
-
         BufferedReader is = null;
         File delFile = null;
         try
@@ -377,32 +1738,48 @@ public class MarcImporter extends MarcHandler
                 is = new BufferedReader(new FileReader(delFile));
             }
 
+            Set<String> idsSeen = new HashSet<String>();
+            List<String> idsToDelete = new ArrayList<String>(deleteBatchSize);
             String line;
-            boolean fromCommitted = true;
-            boolean fromPending = true;
             while ((line = is.readLine()) != null)
             {
                 if (shuttingDown)
                 	break;
                 line = line.trim();
 
-                if (line.startsWith("#"))
+                if (line.startsWith("#") || line.length() == 0)
                 	continue;
 
-                if (deleteRecordIDMapper != null)
-                    line = line.replaceFirst(mapPattern, mapReplace);
+                if (deleteRecordIDPattern != null)
+                    line = deleteRecordIDPattern.matcher(line).replaceFirst(deleteRecordIDReplace);
 
                 String id = line;
                 idsToDeleteCounter++;
+                if (!idsSeen.add(id))
+                    continue;
                 if (verbose)
                 {
                     System.out.println("Deleting record with id :"+ id);
                     logger.info("Deleting record with id :"+ id);
                 }
-// FIXME:  do this with SolrJ call to delete list of ids
-                solrProxy.delete(id, fromCommitted, fromPending);
-                recsDeletedCounter++;
+                idsToDelete.add(id);
+                if (idsToDelete.size() >= deleteBatchSize)
+                {
+                    solrProxy.deleteDocs(idsToDelete);
+                    recsDeletedCounter += idsToDelete.size();
+                    metrics.recordsDeleted(idsToDelete.size());
+                    // a streaming proxy may still hold on to the list sent
+                    idsToDelete = new ArrayList<String>(deleteBatchSize);
+                }
+            }
+            if (idsToDelete.size() > 0)
+            {
+                solrProxy.deleteDocs(idsToDelete);
+                recsDeletedCounter += idsToDelete.size();
+                metrics.recordsDeleted(idsToDelete.size());
             }
+            if (idsToDeleteCounter > idsSeen.size())
+                logger.info("Skipped " + (idsToDeleteCounter - idsSeen.size()) + " duplicate ids in delete-record-id-list");
         }
         catch (FileNotFoundException fnfe)
         {
@@ -412,6 +1789,17 @@ public class MarcImporter extends MarcHandler
         {
             logger.error("Error: reading from delete-record-id-list: " + deleteRecordListFilename, ioe);
         }
+        finally
+        {
+            if (delFile != null && is != null)
+            {
+                try
+                {
+                    is.close();
+                }
+                catch (IOException ioe) { /* ignore */ }
+            }
+        }
         return recsDeletedCounter;
     }
 
@@ -426,6 +1814,8 @@ public class MarcImporter extends MarcHandler
 					logger.info("Calling commit");
 					solrProxy.commit(shuttingDown ? false : optimizeAtEnd);
 					logger.info("Done with the commit, closing Solr");
+					if (checkpointTracker != null)
+					    saveCheckpoint();
 				}
 				catch (IOException ioe)
 				{
@@ -638,7 +2028,7 @@ public class MarcImporter extends MarcHandler
             if (solrProxyIsRemote)
             {
                 logger.info(" Connecting to remote Solr server at URL " + solrHostUpdateURL);
-                solrProxy = SolrCoreLoader.loadRemoteSolrServer(solrHostUpdateURL, useBinaryRequestHandler, useStreamingServer );
+                solrProxy = SolrCoreLoader.loadRemoteSolrServer(solrHostUpdateURL, useBinaryRequestHandler, useStreamingServer, updateQueueSize, updateThreads);
             }
             else
             {
@@ -745,6 +2135,18 @@ public class MarcImporter extends MarcHandler
 
         setIndexWritingOptions();
 
+        setIndexingThreadOptions();
+
+        setUpdateBatchOptions();
+
+        setProfilingOptions();
+
+        setMetricsOptions();
+
+        setCheckpointOptions();
+
+        setCommitOptions();
+
         setSolrProxy();
 
         return;
@@ -754,17 +2156,25 @@ public class MarcImporter extends MarcHandler
     /**
      * look at properties
      *   marc.just_index_dont_add
+     *   solrmarc.benchmark
      *   solr.optimize_at_end
      *   solr.commit_at_end
      * to set instance variables
      *   justIndexDontAdd  (if true, sets others to false and log level to WARN
+     *   benchmark  (if true, documents are built and discarded, and the time
+     *      and allocation of each stage reported;  sets the others to false
+     *      and log level to WARN)
      *   optimizeAtEnd  (if true, sets commitAtEnd to true)
      *   commitAtEnd
      */
     private void setIndexWritingOptions()
     {
         justIndexDontAdd = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "marc.just_index_dont_add"));
-        if (justIndexDontAdd)
+        benchmark = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "solrmarc.benchmark"));
+        benchmarkStats = benchmark ? new BenchmarkStats() : null;
+        if (benchmark)
+            justIndexDontAdd = false;
+        if (justIndexDontAdd || benchmark)
         {
             Utils.setLog4jLogLevel(org.apache.log4j.Level.WARN);
             optimizeAtEnd = false;
@@ -781,22 +2191,178 @@ public class MarcImporter extends MarcHandler
     }
 
 
+    /**
+     * look at properties
+     *   solrmarc.indexing.threads
+     *   solrmarc.indexing.queue_size
+     *   solrmarc.indexing.file_threads
+     * to set instance variables
+     *   numIndexingThreads  (if more than 1, records are read, indexed and
+     *      written to Solr on separate threads)
+     *   indexingQueueSize
+     *   numFileThreads  (number of files indexed at once when more than one
+     *      file is given)
+     */
+    private void setIndexingThreadOptions()
+    {
+        numIndexingThreads = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solrmarc.indexing.threads", "1").trim(), 1);
+        if (numIndexingThreads < 1)
+            numIndexingThreads = 1;
+        indexingQueueSize = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solrmarc.indexing.queue_size", "1000").trim(), 1000);
+        if (indexingQueueSize < 1)
+            indexingQueueSize = 1000;
+        numFileThreads = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solrmarc.indexing.file_threads", "1").trim(), 1);
+        if (numFileThreads < 1)
+            numFileThreads = 1;
+    }
+
+
+    /**
+     * look at properties
+     *   solr.commit_every_docs
+     *   solr.commit_every_bytes
+     *   solr.soft_commit_interval
+     *   solr.commit_within
+     * to set instance variable
+     *   commitScheduler  (decides when to commit while indexing; null if
+     *      none of the properties is set, or documents aren't added to Solr)
+     */
+    private void setCommitOptions()
+    {
+        int hardCommitDocs = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solr.commit_every_docs", "0").trim(), 0);
+        long hardCommitBytes = 0;
+        String commitBytes = PropertiesUtils.getProperty(configProps, "solr.commit_every_bytes", "0").trim();
+        try
+        {
+            hardCommitBytes = Long.parseLong(commitBytes);
+        }
+        catch (NumberFormatException nfe)
+        {
+            logger.warn("Invalid value for property solr.commit_every_bytes: " + commitBytes);
+        }
+        int softCommitSeconds = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solr.soft_commit_interval", "0").trim(), 0);
+        int commitWithinMs = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solr.commit_within", "0").trim(), 0);
+
+        if (justIndexDontAdd || benchmark || (hardCommitDocs <= 0 && hardCommitBytes <= 0 && softCommitSeconds <= 0 && commitWithinMs <= 0))
+            commitScheduler = null;
+        else
+            commitScheduler = new CommitScheduler(hardCommitDocs, hardCommitBytes, softCommitSeconds, commitWithinMs);
+    }
+
+
+    /**
+     * look at properties
+     *   solrmarc.checkpoint.file
+     *   solrmarc.checkpoint.interval
+     *   solrmarc.checkpoint.resume
+     * to set instance variables
+     *   checkpointFile  (where the position of the import is saved after each
+     *      commit, so an interrupted import can be resumed)
+     *   checkpointInterval  (number of records written between commits
+     *      for checkpoints)
+     *   resumeFromCheckpoint  (if true, start after the records done
+     *      according to checkpointFile)
+     */
+    private void setCheckpointOptions()
+    {
+        checkpointFile = PropertiesUtils.getProperty(configProps, "solrmarc.checkpoint.file");
+        if (checkpointFile != null)
+            checkpointFile = checkpointFile.trim();
+        if (checkpointFile != null && (checkpointFile.length() == 0 || justIndexDontAdd || benchmark))
+            checkpointFile = null;
+        checkpointInterval = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solrmarc.checkpoint.interval", "100000").trim(), 100000);
+        if (checkpointInterval < 1)
+            checkpointInterval = 100000;
+        resumeFromCheckpoint = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "solrmarc.checkpoint.resume", "false").trim());
+    }
+
+
+    /**
+     * look at properties
+     *   solrmarc.metrics.jmx
+     *   solrmarc.metrics.file
+     *   solrmarc.metrics.interval
+     * to set instance variables
+     *   metricsJmx  (if true, the indexing metrics are registered with JMX)
+     *   metricsFile  (the metrics are appended to this file while indexing)
+     *   metricsInterval  (seconds between writes to metricsFile)
+     */
+    private void setMetricsOptions()
+    {
+        metricsJmx = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "solrmarc.metrics.jmx", "true").trim());
+        metricsFile = PropertiesUtils.getProperty(configProps, "solrmarc.metrics.file");
+        if (metricsFile != null && metricsFile.trim().length() == 0)
+            metricsFile = null;
+        if (metricsFile != null)
+            metricsFile = metricsFile.trim();
+        metricsInterval = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solrmarc.metrics.interval", "60").trim(), 60);
+        if (metricsInterval < 1)
+            metricsInterval = 60;
+    }
+
+
+    /**
+     * look at properties
+     *   solrmarc.profile.fields
+     *   solrmarc.profile.fields.csv
+     * to set instance variables
+     *   profileFields  (if true, the time spent on each index specification
+     *      is reported at the end)
+     *   profileFieldsCsvFile
+     */
+    private void setProfilingOptions()
+    {
+        profileFields = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "solrmarc.profile.fields", "false").trim());
+        profileFieldsCsvFile = PropertiesUtils.getProperty(configProps, "solrmarc.profile.fields.csv", "field_profile.csv").trim();
+    }
+
+
+    /**
+     * look at properties
+     *   solr.update.batch_size
+     *   solr.update.batch_bytes
+     * to set instance variables
+     *   updateBatchSize  (if more than 1, documents are sent to Solr in batches)
+     *   updateBatchBytes  (a batch is also sent once it is this big)
+     */
+    private void setUpdateBatchOptions()
+    {
+        updateBatchSize = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solr.update.batch_size", "1").trim(), 1);
+        if (updateBatchSize < 1)
+            updateBatchSize = 1;
+        String batchBytes = PropertiesUtils.getProperty(configProps, "solr.update.batch_bytes", "0").trim();
+        try
+        {
+            updateBatchBytes = Long.parseLong(batchBytes);
+        }
+        catch (NumberFormatException nfe)
+        {
+            logger.warn("Invalid value for property solr.update.batch_bytes: " + batchBytes);
+            updateBatchBytes = 0;
+        }
+    }
+
+
     /** read and validate setting for deleteRecordIDMapper instance variable
-     *   from  marc.delete_record_id_mapper property */
+     *   from  marc.delete_record_id_mapper property, and compile its pattern */
     private void setDeleteRecordIDMapper()
     {
+        deleteRecordIDPattern = null;
+        deleteRecordIDReplace = null;
         deleteRecordIDMapper = PropertiesUtils.getProperty(configProps, "marc.delete_record_id_mapper");
         if (deleteRecordIDMapper != null)
         {
             String parts[] = deleteRecordIDMapper.split("->");
             if (parts.length == 2)
             {
-                String mapPattern = parts[0];
-                String mapReplace = parts[1];
                 try
                 {
+                    Pattern mapPattern = Pattern.compile(parts[0]);
+                    String mapReplace = parts[1];
                     String testID = "12345";
-                    String tested = testID.replaceFirst(mapPattern, mapReplace);
+                    mapPattern.matcher(testID).replaceFirst(mapReplace);
+                    deleteRecordIDPattern = mapPattern;
+                    deleteRecordIDReplace = mapReplace;
                     logger.info("Valid Regex pattern specified in property: marc.delete_record_id_mapper");
                 }
                 catch (PatternSyntaxException pse)
@@ -804,6 +2370,12 @@ public class MarcImporter extends MarcHandler
                     deleteRecordIDMapper = null;
                     logger.warn("Invalid Regex pattern specified in property: marc.delete_record_id_mapper");
                 }
+                catch (IndexOutOfBoundsException ioobe)
+                {
+                    // replacement refers to a group the pattern doesn't have
+                    deleteRecordIDMapper = null;
+                    logger.warn("Invalid Regex pattern specified in property: marc.delete_record_id_mapper");
+                }
             }
             else
             {
@@ -811,6 +2383,10 @@ public class MarcImporter extends MarcHandler
                 logger.warn("Invalid Regex pattern specified in property: marc.delete_record_id_mapper");
             }
         }
+
+        deleteBatchSize = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solr.delete.batch_size", "1000").trim(), 1000);
+        if (deleteBatchSize < 1)
+            deleteBatchSize = 1;
     }
 
     /**
@@ -822,7 +2398,13 @@ public class MarcImporter extends MarcHandler
         boolean useSolrServerProxy = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "solrmarc.use_solr_server_proxy", "true"));
         useBinaryRequestHandler = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "solrmarc.use_binary_request_handler", "true"));
         useStreamingServer = Boolean.parseBoolean(PropertiesUtils.getProperty(configProps, "solrmarc.use_streaming_proxy", "false"));
-        if (useSolrServerProxy || useStreamingServer)
+        updateQueueSize = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solr.update.queue_size", String.valueOf(SolrCoreLoader.DEFAULT_UPDATE_QUEUE_SIZE)).trim(), SolrCoreLoader.DEFAULT_UPDATE_QUEUE_SIZE);
+        updateThreads = Utils.parseIntNoNFE(PropertiesUtils.getProperty(configProps, "solr.update.threads", String.valueOf(SolrCoreLoader.DEFAULT_UPDATE_THREADS)).trim(), SolrCoreLoader.DEFAULT_UPDATE_THREADS);
+        // enough to cover everything that can be queued, or in flight, at once
+        sentDocsToRemember = Math.max(10000, (updateQueueSize + updateThreads) * updateBatchSize);
+        if (benchmark)
+            solrProxy = new NullSolrProxy();  // documents are built and discarded
+        else if (useSolrServerProxy || useStreamingServer)
             solrProxy = getSolrServerProxy();
         else
             solrProxy = getSolrProxy();  // embedded solr server
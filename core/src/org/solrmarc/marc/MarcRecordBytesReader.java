@@ -0,0 +1,216 @@
+package org.solrmarc.marc;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.log4j.Logger;
+import org.marc4j.ErrorHandler;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.Record;
+
+/**
+ * Reads binary MARC records with a MarcPermissiveStreamReader, keeping the
+ *  bytes each record was read from, so a record stored as binary MARC
+ *  (FullRecordAsMARC) can be stored as it was read rather than written out
+ *  again.  The bytes are only kept for a record they are the same as writing
+ *  it again would give:  a UTF-8 record read without errors.  Once the
+ *  records can't be told apart by the lengths in their leaders (e.g. the
+ *  reader has skipped bytes between records), no more bytes are kept.
+ */
+public class MarcRecordBytesReader implements MarcReader
+{
+    // Initialize logging category
+    static Logger logger = Logger.getLogger(MarcRecordBytesReader.class.getName());
+
+    private static final byte RECORD_TERMINATOR = 0x1D;
+
+    private final RecordingInputStream input;
+    private final MarcReader reader;
+    private final ErrorHandler errors;
+    private byte recordBytes[] = null;
+
+    /**
+     * @param in the binary MARC records
+     * @param errors the handler the permissive reader reports the errors in
+     *  each record to, or null to read the records strictly
+     * @param to_utf_8 convert records to UTF-8
+     * @param defaultEncoding the encoding of records that don't say
+     */
+    public MarcRecordBytesReader(InputStream in, ErrorHandler errors, boolean to_utf_8, String defaultEncoding)
+    {
+        this.input = new RecordingInputStream(in);
+        this.errors = errors;
+        if (errors != null)
+            reader = new MarcPermissiveStreamReader(input, errors, to_utf_8, defaultEncoding);
+        else
+            reader = new MarcPermissiveStreamReader(input, false, to_utf_8, defaultEncoding);
+    }
+
+    public boolean hasNext()
+    {
+        return reader.hasNext();
+    }
+
+    public Record next()
+    {
+        recordBytes = null;
+        Record record;
+        try
+        {
+            record = reader.next();
+        }
+        catch (RuntimeException e)
+        {
+            // no telling how much of the record was read
+            input.stopKeeping();
+            throw e;
+        }
+        byte bytes[] = input.takeRecord();
+        if (bytes != null && isAsRead(record, bytes))
+            recordBytes = bytes;
+        return record;
+    }
+
+    /**
+     * @return the bytes the record last returned by next was read from, or
+     *  null if writing the record again could give different bytes
+     */
+    public byte[] getRecordBytes()
+    {
+        return recordBytes;
+    }
+
+    /**
+     * @return true if writing record as UTF-8 binary MARC gives the bytes it
+     *  was read from:  they are UTF-8, and the reader had nothing to fix
+     */
+    private boolean isAsRead(Record record, byte bytes[])
+    {
+        if (bytes[9] != 'a' || (errors != null && errors.hasErrors()))
+            return false;
+        Leader leader = record.getLeader();
+        return leader != null && leader.getCharCodingScheme() == 'a' && leader.getRecordLength() == bytes.length;
+    }
+
+    /**
+     * Keeps the bytes read through it until they are taken a record at a
+     *  time.  The reader reads ahead of the record it returns, so the bytes
+     *  of the records after it are kept too.
+     */
+    private static final class RecordingInputStream extends FilterInputStream
+    {
+        private byte kept[] = new byte[16384];
+        /** where the bytes of the next record start in kept */
+        private int start = 0;
+        /** the number of bytes in kept */
+        private int end = 0;
+        private boolean keeping = true;
+
+        RecordingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = in.read();
+            if (b >= 0 && keeping)
+            {
+                ensureRoom(1);
+                kept[end++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException
+        {
+            int numRead = in.read(b, off, len);
+            if (numRead > 0 && keeping)
+            {
+                ensureRoom(numRead);
+                System.arraycopy(b, off, kept, end, numRead);
+                end += numRead;
+            }
+            return numRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            stopKeeping();
+            return in.skip(n);
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        /**
+         * @return the bytes of the next record, as long as its leader's
+         *  length ends it at a record terminator;  otherwise null, and no
+         *  more bytes are kept
+         */
+        byte[] takeRecord()
+        {
+            if (!keeping)
+                return null;
+            int length = (end - start >= 5) ? parseLength(kept, start) : -1;
+            if (length < 24 || end - start < length || kept[start + length - 1] != RECORD_TERMINATOR)
+            {
+                logger.debug("Lost track of where the records start; not keeping the bytes of the rest of the records");
+                stopKeeping();
+                return null;
+            }
+            byte bytes[] = new byte[length];
+            System.arraycopy(kept, start, bytes, 0, length);
+            start += length;
+            if (start == end)
+                start = end = 0;
+            return bytes;
+        }
+
+        void stopKeeping()
+        {
+            keeping = false;
+            kept = null;
+            start = end = 0;
+        }
+
+        private void ensureRoom(int numBytes)
+        {
+            if (end + numBytes <= kept.length)
+                return;
+            int numKept = end - start;
+            byte room[] = kept;
+            if (numKept + numBytes > kept.length)
+                room = new byte[Math.max(kept.length * 2, numKept + numBytes)];
+            System.arraycopy(kept, start, room, 0, numKept);
+            kept = room;
+            start = 0;
+            end = numKept;
+        }
+
+        /**
+         * @return the record length at the start of a leader, or -1 if it
+         *  isn't five digits
+         */
+        private static int parseLength(byte bytes[], int offset)
+        {
+            int length = 0;
+            for (int i = offset; i < offset + 5; i++)
+            {
+                if (bytes[i] < '0' || bytes[i] > '9')
+                    return -1;
+                length = length * 10 + (bytes[i] - '0');
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package org.solrmarc.solr;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.ResponseParser;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.client.solrj.request.RequestWriter;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * A SolrServerProxy whose adds are queued and sent to Solr by a pool of
+ *  background threads, using SolrJ's ConcurrentUpdateSolrServer.
+ * Since an add returns before Solr has seen the document, errors are reported
+ *  to a SolrUpdateErrorHandler;  when Solr names the rejected document in its
+ *  message (e.g. "[doc=a123] unknown field ..."), its unique key is passed on.
+ *
+ * SolrJ sends many queued documents in one request, and Solr stops reading
+ *  the request at the document it rejects, so the documents after it in the
+ *  request are never added.  The proxy remembers the documents it has queued
+ *  (by their "id" field) until blockUntilFinished has seen them sent, and
+ *  when Solr rejects one, resends the ones queued after it directly.  If the
+ *  rejected document is no longer remembered, the documents lost with it
+ *  can't be found, and the error is reported as one that isn't tied to a
+ *  single document.
+ */
+public class ConcurrentUpdateSolrServerProxy extends SolrServerProxy
+{
+    protected static Logger logger = Logger.getLogger(ConcurrentUpdateSolrServerProxy.class.getName());
+
+    /** how Solr identifies the document in an error message */
+    private static final Pattern DOC_ID_PATTERN = Pattern.compile("\\[doc=([^\\]]+)\\]");
+    /** the field documents are remembered by */
+    private static final String ID_FIELD = "id";
+    /** default number of queued documents remembered to be resent */
+    public static final int DEFAULT_DOCS_TO_REMEMBER = 10000;
+    /** most documents resent to Solr in one request */
+    private static final int RESEND_BATCH_SIZE = 500;
+
+    private volatile SolrUpdateErrorHandler errorHandler = null;
+
+    /** the documents queued and not yet known to be sent, oldest first, by id */
+    private final LinkedHashMap<String, QueuedDoc> queuedDocs = new LinkedHashMap<String, QueuedDoc>();
+    private int docsToRemember = DEFAULT_DOCS_TO_REMEMBER;
+    /** number of documents queued so far */
+    private long queuedCount = 0;
+    /** the number of the first document of each update still being queued */
+    private final List<Long> beingQueued = new ArrayList<Long>();
+
+    /**
+     * @param solrUrl URL of the Solr server (without /update)
+     * @param queueSize number of update requests that can wait to be sent
+     * @param threadCount number of threads sending updates to Solr
+     */
+    public ConcurrentUpdateSolrServerProxy(String solrUrl, int queueSize, int threadCount)
+    {
+        super(null);
+        solrJSolrServer = new ErrorReportingSolrServer(solrUrl, queueSize, threadCount, this);
+    }
+
+    /**
+     * set the object told about errors from updates sent in the background.
+     *  If none is set, the errors are logged.
+     */
+    public void setErrorHandler(SolrUpdateErrorHandler errorHandler)
+    {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * set the number of queued documents remembered so they can be resent if
+     *  Solr rejects a document sent before them.  It should cover every
+     *  document that can be queued or being sent at once.
+     */
+    public void setDocsToRemember(int docsToRemember)
+    {
+        synchronized (queuedDocs)
+        {
+            this.docsToRemember = Math.max(1, docsToRemember);
+        }
+    }
+
+    /**
+     * wait until all queued updates have been sent to Solr
+     */
+    public void blockUntilFinished()
+    {
+        ((ConcurrentUpdateSolrServer) solrJSolrServer).blockUntilFinished();
+    }
+
+    /**
+     * send any queued updates, then stop the background threads
+     */
+    public void close()
+    {
+        ConcurrentUpdateSolrServer server = (ConcurrentUpdateSolrServer) solrJSolrServer;
+        server.blockUntilFinished();
+        server.shutdown();
+    }
+
+    /**
+     * remember the documents of an update about to be queued, and forget the
+     *  ones it deletes
+     * @return the number of the update's first document;  pass it to
+     *  doneQueueing once the update is queued
+     */
+    long queueing(UpdateRequest update)
+    {
+        synchronized (queuedDocs)
+        {
+            long firstNum = queuedCount + 1;
+            beingQueued.add(firstNum);
+            if (update.getDeleteById() != null)
+            {
+                for (String id : update.getDeleteById())
+                    queuedDocs.remove(id);
+            }
+            if (update.getDocuments() == null)
+                return firstNum;
+            for (SolrInputDocument doc : update.getDocuments())
+            {
+                Object id = doc.getFieldValue(ID_FIELD);
+                if (id == null)
+                    continue;
+                // keep the documents in the order they were last queued
+                queuedDocs.remove(id.toString());
+                queuedDocs.put(id.toString(), new QueuedDoc(doc, ++queuedCount));
+                if (queuedDocs.size() > docsToRemember)
+                {
+                    Iterator<QueuedDoc> oldest = queuedDocs.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+            return firstNum;
+        }
+    }
+
+    void doneQueueing(long firstNum)
+    {
+        synchronized (queuedDocs)
+        {
+            beingQueued.remove(Long.valueOf(firstNum));
+        }
+    }
+
+    /**
+     * @return the number of the last document that is in the queue, or has
+     *  been taken from it to be sent;  documents after it may still be being
+     *  queued
+     */
+    long getLastQueued()
+    {
+        synchronized (queuedDocs)
+        {
+            long lastQueued = queuedCount;
+            for (long firstNum : beingQueued)
+                lastQueued = Math.min(lastQueued, firstNum - 1);
+            return lastQueued;
+        }
+    }
+
+    /**
+     * forget the documents that have been sent
+     * @param sentCount the number of the last document known to be sent
+     */
+    void sent(long sentCount)
+    {
+        synchronized (queuedDocs)
+        {
+            Iterator<QueuedDoc> iter = queuedDocs.values().iterator();
+            while (iter.hasNext() && iter.next().queuedNum <= sentCount)
+                iter.remove();
+        }
+    }
+
+    /**
+     * @return the documents queued after the document with the given id, in
+     *  the order they were queued, or null if that document isn't remembered
+     */
+    List<SolrInputDocument> getDocsQueuedAfter(String docId)
+    {
+        synchronized (queuedDocs)
+        {
+            QueuedDoc rejected = queuedDocs.get(docId);
+            if (rejected == null)
+                return null;
+            List<SolrInputDocument> after = new ArrayList<SolrInputDocument>();
+            for (QueuedDoc queued : queuedDocs.values())
+            {
+                if (queued.queuedNum > rejected.queuedNum)
+                    after.add(queued.doc);
+            }
+            return after;
+        }
+    }
+
+    /**
+     * called from a background thread when an update fails.  When Solr names
+     *  the document it rejected, the documents queued after it are resent
+     *  before this returns, so blockUntilFinished waits for them too.
+     */
+    void reportError(Throwable error)
+    {
+        String docId = getDocId(error);
+        if (docId == null)
+        {
+            handleUpdateError(null, error);
+            return;
+        }
+        List<SolrInputDocument> lost = getDocsQueuedAfter(docId);
+        if (lost == null)
+        {
+            handleUpdateError(null, new SolrRuntimeException("Solr rejected document " + docId + ", and the documents sent after it can't be found to resend",
+                                                             (error instanceof Exception) ? (Exception) error : new Exception(error)));
+            return;
+        }
+        if (markRejected(docId))
+            handleUpdateError(docId, error);
+        resend(lost);
+    }
+
+    /**
+     * A document can be rejected both when it is resent and when it is sent
+     *  from the queue;  it is only reported once.
+     * @return true if the document with the given id hasn't been reported as
+     *  rejected since it was queued
+     */
+    private boolean markRejected(String docId)
+    {
+        synchronized (queuedDocs)
+        {
+            QueuedDoc queued = queuedDocs.get(docId);
+            if (queued == null)
+                return true;
+            boolean first = !queued.rejected;
+            queued.rejected = true;
+            return first;
+        }
+    }
+
+    /**
+     * send documents directly, a batch at a time.  When Solr rejects one of
+     *  them, the rest of its batch are sent again after it.
+     */
+    private void resend(List<SolrInputDocument> docs)
+    {
+        ErrorReportingSolrServer server = (ErrorReportingSolrServer) solrJSolrServer;
+        int start = 0;
+        while (start < docs.size())
+        {
+            List<SolrInputDocument> batch = docs.subList(start, Math.min(start + RESEND_BATCH_SIZE, docs.size()));
+            try
+            {
+                server.resend(batch, commitWithinMs);
+                start += batch.size();
+            }
+            catch (Exception e)
+            {
+                int rejected = indexOf(batch, getDocId(e));
+                if (rejected < 0)
+                {
+                    // not the fault of one document
+                    handleUpdateError(null, e);
+                    return;
+                }
+                if (markRejected(getDocId(e)))
+                    handleUpdateError(getDocId(e), e);
+                start += rejected + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the position in docs of the document with the given id, or -1
+     */
+    private static int indexOf(List<SolrInputDocument> docs, String docId)
+    {
+        if (docId == null)
+            return -1;
+        for (int i = 0; i < docs.size(); i++)
+        {
+            Object id = docs.get(i).getFieldValue(ID_FIELD);
+            if (id != null && docId.equals(id.toString()))
+                return i;
+        }
+        return -1;
+    }
+
+    private void handleUpdateError(String docId, Throwable error)
+    {
+        SolrUpdateErrorHandler handler = errorHandler;
+        if (handler != null)
+            handler.handleUpdateError(docId, error);
+        else
+            logger.error("Error sending update to Solr" + (docId != null ? " for document " + docId : "") + " -- " + error.getMessage(), error);
+    }
+
+    /**
+     * return the unique key of the document named in the error message (or
+     *  the message of one of its causes), or null if there isn't one
+     */
+    static String getDocId(Throwable error)
+    {
+        for (Throwable t = error; t != null; t = t.getCause())
+        {
+            if (t.getMessage() != null)
+            {
+                Matcher matcher = DOC_ID_PATTERN.matcher(t.getMessage());
+                if (matcher.find())
+                    return matcher.group(1);
+            }
+            if (t.getCause() == t)
+                break;
+        }
+        return null;
+    }
+
+
+    /** a document queued to be sent, and how many had been queued by then */
+    private static class QueuedDoc
+    {
+        final SolrInputDocument doc;
+        final long queuedNum;
+        boolean rejected = false;
+
+        QueuedDoc(SolrInputDocument doc, long queuedNum)
+        {
+            this.doc = doc;
+            this.queuedNum = queuedNum;
+        }
+    }
+
+    /**
+     * ConcurrentUpdateSolrServer that hands its errors to the proxy instead of
+     *  only logging them, tells it which documents are queued and sent, and
+     *  can resend documents directly
+     */
+    private static class ErrorReportingSolrServer extends ConcurrentUpdateSolrServer
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final ConcurrentUpdateSolrServerProxy proxy;
+        /** sends the documents that are resent, with the same writer and parser */
+        private final HttpSolrServer resendServer;
+
+        ErrorReportingSolrServer(String solrUrl, int queueSize, int threadCount, ConcurrentUpdateSolrServerProxy proxy)
+        {
+            super(solrUrl, queueSize, threadCount);
+            this.proxy = proxy;
+            resendServer = new HttpSolrServer(solrUrl);
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException
+        {
+            if (!(request instanceof UpdateRequest))
+                return super.request(request);
+            long firstNum = proxy.queueing((UpdateRequest) request);
+            try
+            {
+                return super.request(request);
+            }
+            finally
+            {
+                proxy.doneQueueing(firstNum);
+            }
+        }
+
+        @Override
+        public synchronized void blockUntilFinished()
+        {
+            long lastQueued = proxy.getLastQueued();
+            super.blockUntilFinished();
+            proxy.sent(lastQueued);
+        }
+
+        @Override
+        public void handleError(Throwable ex)
+        {
+            proxy.reportError(ex);
+        }
+
+        void resend(List<SolrInputDocument> docs, int commitWithinMs) throws SolrServerException, IOException
+        {
+            if (commitWithinMs > 0)
+                resendServer.add(docs, commitWithinMs);
+            else
+                resendServer.add(docs);
+        }
+
+        @Override
+        public void setParser(ResponseParser parser)
+        {
+            super.setParser(parser);
+            resendServer.setParser(parser);
+        }
+
+        @Override
+        public void setRequestWriter(RequestWriter requestWriter)
+        {
+            super.setRequestWriter(requestWriter);
+            resendServer.setRequestWriter(requestWriter);
+        }
+
+        @Override
+        public void shutdown()
+        {
+            super.shutdown();
+            resendServer.shutdown();
+        }
+
+        @Override
+        public void shutdownNow()
+        {
+            super.shutdownNow();
+            resendServer.shutdown();
+        }
+    }
+
+}
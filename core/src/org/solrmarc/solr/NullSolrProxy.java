@@ -0,0 +1,122 @@
+package org.solrmarc.solr;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.solrmarc.index.PrintingDocumentSink;
+
+/**
+ * A SolrProxy that builds the SolrInputDocument for each document added, as
+ *  SolrServerProxy does, and then discards it, as it does documents already
+ *  built.  Used to benchmark reading and
+ *  mapping records without the cost of Solr, or of printing the documents.
+ */
+public class NullSolrProxy implements SolrInputDocumentProxy
+{
+    /** documents built and discarded */
+    private final AtomicLong numDocs = new AtomicLong();
+    /** fields of the documents built, so building them can't be optimized away */
+    private final AtomicLong numFields = new AtomicLong();
+
+    /**
+     * build the document and discard it
+     * @return a string representation of the document when verbose is true
+     */
+    public String addDoc(Map<String, Object> fldNames2ValsMap, boolean verbose, boolean addDocToIndex) throws IOException
+    {
+        SolrInputDocumentSink inputDoc = new SolrInputDocumentSink();
+        PrintingDocumentSink printer = verbose ? new PrintingDocumentSink(inputDoc) : null;
+        for (Map.Entry<String, Object> field : fldNames2ValsMap.entrySet())
+        {
+            if (printer != null)
+                printer.setField(field.getKey(), field.getValue());
+            else
+                inputDoc.setField(field.getKey(), field.getValue());
+        }
+        discard(inputDoc.getDocument());
+        return (printer != null) ? printer.toString() : null;
+    }
+
+    /**
+     * discard a document already built
+     */
+    public void addDoc(SolrInputDocument inputDoc) throws IOException
+    {
+        discard(inputDoc);
+    }
+
+    /**
+     * build the documents and discard them
+     */
+    public void addDocs(Collection<Map<String, Object>> fldNames2ValsMaps) throws IOException
+    {
+        for (Map<String, Object> fldNames2ValsMap : fldNames2ValsMaps)
+            addDoc(fldNames2ValsMap, false, true);
+    }
+
+    /**
+     * discard documents already built
+     */
+    public void addSolrInputDocs(Collection<SolrInputDocument> inputDocs) throws IOException
+    {
+        for (SolrInputDocument inputDoc : inputDocs)
+            discard(inputDoc);
+    }
+
+    private void discard(SolrInputDocument inputDoc)
+    {
+        numDocs.incrementAndGet();
+        numFields.addAndGet(inputDoc.size());
+    }
+
+    /**
+     * @return the number of documents built and discarded
+     */
+    public long getNumDocs()
+    {
+        return numDocs.get();
+    }
+
+    /**
+     * @return the number of fields in the documents built and discarded
+     */
+    public long getNumFields()
+    {
+        return numFields.get();
+    }
+
+    public void delete(String id, boolean fromCommitted, boolean fromPending) throws IOException
+    {
+    }
+
+    public void deleteDocs(List<String> ids) throws IOException
+    {
+    }
+
+    public void deleteAllDocs() throws IOException
+    {
+    }
+
+    public void commit(boolean optimize) throws IOException
+    {
+    }
+
+    public void softCommit() throws IOException
+    {
+    }
+
+    public void setCommitWithin(int commitWithinMs)
+    {
+    }
+
+    public void close()
+    {
+    }
+
+    public boolean isSolrException(Exception e)
+    {
+        return false;
+    }
+}
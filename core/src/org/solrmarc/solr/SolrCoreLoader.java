@@ -157,16 +157,44 @@ public class SolrCoreLoader
         return null;
     }
 
+    /** default number of update requests waiting to be sent by a streaming proxy */
+    public static final int DEFAULT_UPDATE_QUEUE_SIZE = 100;
+    /** default number of threads sending updates for a streaming proxy */
+    public static final int DEFAULT_UPDATE_THREADS = 2;
+
     public static SolrProxy loadRemoteSolrServer(String solrHostUpdateURL, boolean useBinaryRequestHandler, boolean useStreamingServer)
+    {
+        return loadRemoteSolrServer(solrHostUpdateURL, useBinaryRequestHandler, useStreamingServer, DEFAULT_UPDATE_QUEUE_SIZE, DEFAULT_UPDATE_THREADS);
+    }
+
+    /**
+     * create a SolrProxy for a remote Solr server
+     * @param solrHostUpdateURL URL of the Solr server, with or without /update
+     * @param useBinaryRequestHandler false to send updates as XML
+     * @param useStreamingServer true to send updates from background threads,
+     *   using a ConcurrentUpdateSolrServerProxy
+     * @param updateQueueSize number of update requests that can wait to be
+     *   sent (streaming only)
+     * @param updateThreads number of threads sending updates (streaming only)
+     */
+    public static SolrProxy loadRemoteSolrServer(String solrHostUpdateURL, boolean useBinaryRequestHandler, boolean useStreamingServer,
+                                                 int updateQueueSize, int updateThreads)
     {
         SolrProxy solrProxy = null;
         String urlString = solrHostUpdateURL.replaceAll("[/\\\\]update$", "");
-        HttpSolrServer httpSolrServer;
-// possibly replaced by ConcurrentUpdateSolrServer;  possibly same bug of swallowing errors
-//            if (useStreamingServer)
-//                httpSolrServer = new StreamingUpdateSolrServer(urlString, 100, 2);
-//            else
-            httpSolrServer = new HttpSolrServer(urlString);
+        if (useStreamingServer)
+        {
+            ConcurrentUpdateSolrServerProxy streamingProxy = new ConcurrentUpdateSolrServerProxy(urlString, updateQueueSize, updateThreads);
+            ConcurrentUpdateSolrServer concurrentSolrServer = (ConcurrentUpdateSolrServer) streamingProxy.getSolrServer();
+            if (!useBinaryRequestHandler)
+            {
+                concurrentSolrServer.setRequestWriter(new RequestWriter());
+                concurrentSolrServer.setParser(new XMLResponseParser());
+            }
+            return(streamingProxy);
+        }
+
+        HttpSolrServer httpSolrServer = new HttpSolrServer(urlString);
 
         // binary response parser is used by default in Solr 4
 //        if (useBinaryRequestHandler)
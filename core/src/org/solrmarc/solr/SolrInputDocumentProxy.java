@@ -0,0 +1,26 @@
+package org.solrmarc.solr;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * A SolrProxy that can also be given documents already built as
+ *  SolrInputDocuments, e.g. by indexing records into a SolrInputDocumentSink,
+ *  rather than maps of field names and values to be copied into documents.
+ */
+public interface SolrInputDocumentProxy extends SolrProxy
+{
+    /**
+     * add a document to the index
+     * @param inputDoc - the document to add
+     */
+    public abstract void addDoc(SolrInputDocument inputDoc) throws IOException;
+
+    /**
+     * add documents to the index in a single request
+     * @param inputDocs - the documents to add
+     */
+    public abstract void addSolrInputDocs(Collection<SolrInputDocument> inputDocs) throws IOException;
+}
@@ -0,0 +1,54 @@
+package org.solrmarc.solr;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.SolrInputField;
+import org.solrmarc.index.DocumentSink;
+
+/**
+ * A DocumentSink that writes the solr fields of a record straight into a
+ *  SolrInputDocument, so the document sent to Solr is built without first
+ *  building a map of the fields and then copying it.  A field with several
+ *  values keeps the Collection it is given as its value, which SolrJ sends
+ *  as it would the values added one at a time.
+ */
+public class SolrInputDocumentSink implements DocumentSink
+{
+    private final SolrInputDocument inputDoc;
+
+    public SolrInputDocumentSink()
+    {
+        this(new SolrInputDocument());
+    }
+
+    /**
+     * @param inputDoc the document the fields are written to
+     */
+    public SolrInputDocumentSink(SolrInputDocument inputDoc)
+    {
+        this.inputDoc = inputDoc;
+    }
+
+    /**
+     * @return the document the fields were written to
+     */
+    public SolrInputDocument getDocument()
+    {
+        return inputDoc;
+    }
+
+    public void setField(String fieldName, Object value)
+    {
+        inputDoc.setField(fieldName, value, 1.0f);
+    }
+
+    public Object getField(String fieldName)
+    {
+        SolrInputField field = inputDoc.getField(fieldName);
+        return (field != null) ? field.getValue() : null;
+    }
+
+    public int size()
+    {
+        return inputDoc.size();
+    }
+}
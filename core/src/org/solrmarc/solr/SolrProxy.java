@@ -1,6 +1,8 @@
 package org.solrmarc.solr;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public interface SolrProxy
@@ -19,12 +21,25 @@ public interface SolrProxy
      */
     public abstract String addDoc(Map<String, Object> fields2ValuesMap, boolean verbose, boolean addDocToIndex) throws IOException;
 
+    /**
+     * given a collection of maps of field names and values, create a Document
+     *  for each and add them all to the index in a single request
+     * @param fields2ValuesMaps - one map of field names and values per document
+     */
+    public abstract void addDocs(Collection<Map<String, Object>> fields2ValuesMaps) throws IOException;
+
     /**
      * delete doc from the index
      * @param id the unique identifier of the document to be deleted
      */
     public abstract void delete(String id, boolean fromCommitted, boolean fromPending) throws IOException;
 
+    /**
+     * delete docs from the index in a single request
+     * @param ids the unique identifiers of the documents to be deleted
+     */
+    public abstract void deleteDocs(List<String> ids) throws IOException;
+
     /**
      * delete all docs from the index
      * Warning: be very sure you want to call this
@@ -36,6 +51,19 @@ public interface SolrProxy
      */
     public abstract void commit(boolean optimize) throws IOException;
 
+    /**
+     * make the changes to the index visible to searches, without the cost
+     *  (or the durability) of a hard commit
+     */
+    public abstract void softCommit() throws IOException;
+
+    /**
+     * ask Solr to commit each document added or deleted from now on within
+     *  the given time
+     * @param commitWithinMs - milliseconds; 0 or less to leave commits to commit()
+     */
+    public abstract void setCommitWithin(int commitWithinMs);
+
     /**
      * close the solrCore
      */
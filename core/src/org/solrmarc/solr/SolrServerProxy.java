@@ -6,15 +6,17 @@ import java.util.*;
 import org.apache.solr.client.solrj.SolrServer;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.common.SolrInputDocument;
-import org.solrmarc.tools.SolrUtils;
+import org.solrmarc.index.PrintingDocumentSink;
 
 /**
  * An implementation of SolrProxy utilizing a SolrServer from SolrJ.
  * @author Bob Haschart, with modifications by Naomi Dushay
  */
-public class SolrServerProxy implements SolrProxy
+public class SolrServerProxy implements SolrInputDocumentProxy
 {
     SolrServer solrJSolrServer;
+    /** milliseconds within which Solr should commit each update; 0 for none */
+    int commitWithinMs = 0;
 
     public SolrServerProxy(SolrServer solrJSolrServer)
     {
@@ -30,23 +32,75 @@ public class SolrServerProxy implements SolrProxy
      */
     public String addDoc(Map<String, Object> fldNames2ValsMap, boolean verbose, boolean addDocToIndex) throws IOException
     {
-        SolrInputDocument inputDoc = SolrUtils.createSolrInputDoc(fldNames2ValsMap);
+        SolrInputDocumentSink inputDoc = new SolrInputDocumentSink();
+        PrintingDocumentSink printer = (verbose || !addDocToIndex) ? new PrintingDocumentSink(inputDoc) : null;
+        for (Map.Entry<String, Object> field : fldNames2ValsMap.entrySet())
+        {
+            if (printer != null)
+                printer.setField(field.getKey(), field.getValue());
+            else
+                inputDoc.setField(field.getKey(), field.getValue());
+        }
         if (addDocToIndex)
+            addDoc(inputDoc.getDocument());
+
+        return (printer != null) ? printer.toString() : null;
+    }
+
+    /**
+     * add a document to the index
+     * @param inputDoc the document to add
+     */
+    public void addDoc(SolrInputDocument inputDoc) throws IOException
+    {
+        try
+        {
+            if (commitWithinMs > 0)
+                solrJSolrServer.add(inputDoc, commitWithinMs);
+            else
+                solrJSolrServer.add(inputDoc);
+        }
+        catch (SolrServerException e)
         {
-            try
-            {
-				solrJSolrServer.add(inputDoc);
-            }
-            catch (SolrServerException e)
-            {
-                throw(new SolrRuntimeException("SolrServerException", e));
-            }
+            throw(new SolrRuntimeException("SolrServerException", e));
         }
+    }
 
-        if (verbose || !addDocToIndex)
-            return inputDoc.toString().replaceAll("> ", "> \n");
-        else
-            return(null);
+    /**
+     * given a collection of maps of field names and values, create a Document
+     *  for each and add them all to the index in a single request
+     * @param fldNames2ValsMaps one map per document; keys are Solr field names, values are String or Collection objects containing values for Solr field
+     */
+    public void addDocs(Collection<Map<String, Object>> fldNames2ValsMaps) throws IOException
+    {
+        List<SolrInputDocument> inputDocs = new ArrayList<SolrInputDocument>(fldNames2ValsMaps.size());
+        for (Map<String, Object> fldNames2ValsMap : fldNames2ValsMaps)
+        {
+            SolrInputDocumentSink inputDoc = new SolrInputDocumentSink();
+            for (Map.Entry<String, Object> field : fldNames2ValsMap.entrySet())
+                inputDoc.setField(field.getKey(), field.getValue());
+            inputDocs.add(inputDoc.getDocument());
+        }
+        addSolrInputDocs(inputDocs);
+    }
+
+    /**
+     * add documents to the index in a single request
+     * @param inputDocs the documents to add
+     */
+    public void addSolrInputDocs(Collection<SolrInputDocument> inputDocs) throws IOException
+    {
+        try
+        {
+            if (commitWithinMs > 0)
+                solrJSolrServer.add(inputDocs, commitWithinMs);
+            else
+                solrJSolrServer.add(inputDocs);
+        }
+        catch (SolrServerException e)
+        {
+            throw(new SolrRuntimeException("SolrServerException", e));
+        }
     }
 
     /**
@@ -80,6 +134,32 @@ public class SolrServerProxy implements SolrProxy
         }
     }
 
+    /**
+     * make the changes to the index visible to searches, without the cost
+     *  (or the durability) of a hard commit
+     */
+    public void softCommit() throws IOException
+    {
+        try
+        {
+            solrJSolrServer.commit(false, false, true);
+        }
+        catch (SolrServerException e)
+        {
+            throw(new SolrRuntimeException("SolrServerException", e));
+        }
+    }
+
+    /**
+     * ask Solr to commit each document added or deleted from now on within
+     *  the given time
+     * @param commitWithinMs - milliseconds; 0 or less to leave commits to commit()
+     */
+    public void setCommitWithin(int commitWithinMs)
+    {
+        this.commitWithinMs = commitWithinMs;
+    }
+
     /**
      * delete doc from the index
      * @param id the unique identifier of the document to be deleted
@@ -88,7 +168,29 @@ public class SolrServerProxy implements SolrProxy
     {
         try
         {
-            solrJSolrServer.deleteById(id);
+            if (commitWithinMs > 0)
+                solrJSolrServer.deleteById(id, commitWithinMs);
+            else
+                solrJSolrServer.deleteById(id);
+        }
+        catch (SolrServerException e)
+        {
+            throw(new SolrRuntimeException("SolrServerException", e));
+        }
+    }
+
+    /**
+     * delete docs from the index in a single request
+     * @param ids the unique identifiers of the documents to be deleted
+     */
+    public void deleteDocs(List<String> ids) throws IOException
+    {
+        try
+        {
+            if (commitWithinMs > 0)
+                solrJSolrServer.deleteById(ids, commitWithinMs);
+            else
+                solrJSolrServer.deleteById(ids);
         }
         catch (SolrServerException e)
         {
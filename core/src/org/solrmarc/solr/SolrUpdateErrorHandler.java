@@ -0,0 +1,16 @@
+package org.solrmarc.solr;
+
+/**
+ * Receives errors from updates that are sent to Solr in the background,
+ *  after the call that added the documents has already returned.
+ */
+public interface SolrUpdateErrorHandler
+{
+    /**
+     * called when Solr reports an error for an update sent in the background
+     * @param docId the unique key of the document Solr rejected, or null if
+     *  the error can't be tied to a single document
+     * @param error the error reported
+     */
+    public abstract void handleUpdateError(String docId, Throwable error);
+}
@@ -0,0 +1,187 @@
+package org.solrmarc.tools;
+
+import java.util.*;
+
+import org.marc4j.marc.*;
+
+/**
+ * Builds the text of all the subfields of the data fields of a record with
+ *  the tags wanted, for an "all fields" search field, in one pass over the
+ *  record's fields.  MarcUtils.getAllSearchableFields and the all fields
+ *  methods of custom indexers share it.
+ *
+ * The tags wanted are looked up by number in a table made when the builder
+ *  is, so a field's tag is checked without Integer.parseInt;  a tag that
+ *  isn't three digits is left to wantsOtherTag, which a custom indexer can
+ *  override to keep its own rule for them.  The text is built in a
+ *  buffer kept for the calling thread and sized from the record's length,
+ *  and can be capped at a number of characters, so a huge record doesn't
+ *  grow the buffer without bound.  A buffer grown bigger than
+ *  MAX_KEPT_SIZE isn't kept.  Builders are immutable once made and can be
+ *  used from any thread.
+ */
+public class AllFieldsText
+{
+    /** no cap on the characters of the text */
+    public static final int NO_CAP = -1;
+    private static final int INITIAL_SIZE = 5000;
+    /** a buffer grown bigger than this by a huge record isn't kept */
+    private static final int MAX_KEPT_SIZE = 1 << 20;
+
+    private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>()
+    {
+        @Override
+        protected StringBuilder initialValue()
+        {
+            return new StringBuilder(INITIAL_SIZE);
+        }
+    };
+
+    /** the lowest tag wanted and one more than the highest, as numbers */
+    private final int lowerBound;
+    private final int upperBound;
+    /** whether each tag from 000 to 999 is wanted */
+    private final boolean wanted[] = new boolean[1000];
+    private final boolean lettersOnly;
+    private final boolean trimmed;
+    private final int maxChars;
+
+    /**
+     * @param lowerBound the lowest tag wanted, e.g. 100
+     * @param upperBound one more than the highest tag wanted, e.g. 900
+     * @param keptTags tags outside the range that are wanted too, e.g. "024"
+     * @param lettersOnly only subfields with a letter as their code, and
+     *  some data, are wanted;  otherwise every subfield is
+     * @param trimmed a space follows each subfield and the text is trimmed,
+     *  as custom indexers have built it;  otherwise the subfields are
+     *  separated by a space, as getAllSearchableFields has built it
+     * @param maxChars the most characters of text wanted, or NO_CAP
+     */
+    public AllFieldsText(int lowerBound, int upperBound, String keptTags[], boolean lettersOnly, boolean trimmed, int maxChars)
+    {
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        for (int tagNum = Math.max(lowerBound, 0); tagNum < Math.min(upperBound, wanted.length); tagNum++)
+            wanted[tagNum] = true;
+        for (String tag : keptTags)
+        {
+            int tagNum = RecordTagIndex.tagNum(tag);
+            if (tagNum >= 0)
+                wanted[tagNum] = true;
+        }
+        this.lettersOnly = lettersOnly;
+        this.trimmed = trimmed;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * every subfield of the fields from lowerBound up to, but not including,
+     *  upperBound, separated by a space
+     */
+    public AllFieldsText(int lowerBound, int upperBound, int maxChars)
+    {
+        this(lowerBound, upperBound, new String[0], false, false, maxChars);
+    }
+
+    /**
+     * @return true if the fields with a tag that isn't three digits are
+     *  wanted;  by default, if the tag is a number in the range
+     */
+    protected boolean wantsOtherTag(String tag)
+    {
+        int tagNum = Utils.parseIntNoNFE(tag, -1);
+        return tagNum >= lowerBound && tagNum < upperBound;
+    }
+
+    /**
+     * @return the text of the subfields of the fields wanted, in the order of
+     *  the record
+     */
+    @SuppressWarnings("unchecked")
+    public String build(Record record)
+    {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        Leader leader = record.getLeader();
+        int sizeWanted = (leader != null) ? leader.getRecordLength() : INITIAL_SIZE;
+        if (maxChars != NO_CAP)
+            sizeWanted = Math.min(sizeWanted, maxChars + 1);
+        buffer.ensureCapacity(Math.min(sizeWanted, MAX_KEPT_SIZE));
+
+        List<DataField> fields = record.getDataFields();
+        for (DataField field : fields)
+        {
+            int tagNum = RecordTagIndex.tagNum(field.getTag());
+            if (tagNum >= 0 ? !wanted[tagNum] : !wantsOtherTag(field.getTag()))
+                continue;
+            if (!append(field, buffer))
+                break;
+        }
+        return takeText(buffer);
+    }
+
+    /**
+     * add the subfields of a field to the text
+     * @return false once the text has as many characters as are wanted
+     */
+    private boolean append(DataField field, StringBuilder buffer)
+    {
+        List<?> subfields = field.getSubfields();
+        for (Object sub : subfields)
+        {
+            Subfield subfield = (Subfield) sub;
+            String data = subfield.getData();
+            if (lettersOnly && (subfield.getCode() == '\u0000' || !Character.isLetter(subfield.getCode()) || data == null || data.length() == 0))
+                continue;
+            if (trimmed)
+                buffer.append(data).append(' ');
+            else
+            {
+                if (buffer.length() > 0)
+                    buffer.append(' ');
+                buffer.append(data);
+            }
+            if (maxChars != NO_CAP && buffer.length() > maxChars && buffer.length() - leadingSpace(buffer) > maxChars)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of characters trimming the text removes from its
+     *  start, as String.trim does
+     */
+    private int leadingSpace(StringBuilder buffer)
+    {
+        int start = 0;
+        if (trimmed)
+        {
+            while (start < buffer.length() && buffer.charAt(start) <= ' ')
+                start++;
+        }
+        return start;
+    }
+
+    private String takeText(StringBuilder buffer)
+    {
+        int start = leadingSpace(buffer);
+        int end = buffer.length();
+        if (maxChars != NO_CAP && end - start > maxChars)
+        {
+            end = start + maxChars;
+            // don't split a surrogate pair
+            if (end > start && Character.isHighSurrogate(buffer.charAt(end - 1)))
+                end--;
+        }
+        if (trimmed)
+        {
+            while (end > start && buffer.charAt(end - 1) <= ' ')
+                end--;
+        }
+        String text = buffer.substring(start, end);
+        buffer.setLength(0);
+        if (buffer.capacity() > MAX_KEPT_SIZE)
+            buffers.remove();
+        return text;
+    }
+}
@@ -0,0 +1,346 @@
+package org.solrmarc.tools;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A field specification such as "100abcd:245a:008[35-37]:LNK245ab", as
+ *  MarcUtils.getFieldList, getAllSubfields, getLinkedField,
+ *  getAllAlphaSubfields and getAllAlphaExcept take it, parsed once.  Those
+ *  helpers have overloads taking a FieldSpec, and the ones taking the
+ *  specification as a string get it from forSpec, so the string is only
+ *  split, its brackets read and its subfield patterns compiled the first
+ *  time it is used.  The subfields wanted are kept as SubfieldCodes.
+ *
+ * A part the helpers would fail on, or report as invalid, is kept as it is
+ *  written, and the helpers handle it as they always have, for each record.
+ *  FieldSpecs are immutable.
+ */
+public final class FieldSpec
+{
+    /** specifications built on the fly by custom code are only cached up to this many */
+    private static final int MAX_CACHED = 4096;
+    private static final ConcurrentMap<String, FieldSpec> cache = new ConcurrentHashMap<String, FieldSpec>();
+
+    private final String spec;
+    private final List<Part> parts;
+
+    private FieldSpec(String spec)
+    {
+        this.spec = spec;
+        String partSpecs[] = spec.split(":");
+        Part parsed[] = new Part[partSpecs.length];
+        for (int i = 0; i < partSpecs.length; i++)
+            parsed[i] = new Part(partSpecs[i]);
+        this.parts = Collections.unmodifiableList(Arrays.asList(parsed));
+    }
+
+    /**
+     * @param spec the colon separated field specification
+     * @return the specification parsed, the same FieldSpec each time it is
+     *  asked for
+     */
+    public static FieldSpec forSpec(String spec)
+    {
+        FieldSpec fieldSpec = cache.get(spec);
+        if (fieldSpec == null)
+        {
+            fieldSpec = new FieldSpec(spec);
+            if (cache.size() < MAX_CACHED)
+            {
+                FieldSpec cached = cache.putIfAbsent(spec, fieldSpec);
+                if (cached != null)
+                    fieldSpec = cached;
+            }
+        }
+        return fieldSpec;
+    }
+
+    /**
+     * @return the specification as written
+     */
+    public String getSpec()
+    {
+        return spec;
+    }
+
+    /**
+     * @return the colon separated parts of the specification
+     */
+    public List<Part> getParts()
+    {
+        return parts;
+    }
+
+    @Override
+    public String toString()
+    {
+        return spec;
+    }
+
+    /**
+     * One of the colon separated parts of a field specification, parsed as
+     *  each of the MarcUtils helpers reads it.
+     */
+    public static final class Part
+    {
+        /** the part as written */
+        final String spec;
+        /** the first three characters;  null if the part is shorter */
+        final String tag;
+        /** the tag as a number, or -1 if it isn't three digits */
+        final int tagNumber;
+        /** everything after the tag */
+        final String subfieldSpec;
+        /** subfieldSpec as a list of codes, as getAllAlphaExcept reads it */
+        final SubfieldCodes subfieldSpecCodes;
+        /** subfieldSpec as a pattern ("." if empty), as getAllSubfields reads it;  null if it isn't one */
+        final SubfieldCodes subfieldSpecMatches;
+
+        /** the subfields, without any quoted separator, as getFieldList and getLinkedField read them */
+        final String subfields;
+        final String separator;
+        /** the subfields as getLinkedField reads them:  a pattern if they contain a bracket;  null if malformed */
+        final SubfieldCodes subfieldCodes;
+
+        /** true if getFieldList reads the part without failing or reporting it */
+        final boolean wellFormed;
+        /** the tag of the fields getFieldList wants (the linked tag of LNK parts) */
+        final String fieldTag;
+        final boolean controlField;
+        final boolean linked;
+        /** true if the brackets hold a subfield pattern rather than character positions */
+        final boolean pattern;
+        /** the subfields as getFieldList matches a pattern part against them */
+        final SubfieldCodes patternCodes;
+        /** character positions wanted, or 0 and 0 for the whole value */
+        final int substart;
+        final int subend;
+        /** the subfields the character positions are taken from */
+        final String positionSubfields;
+        final SubfieldCodes positionCodes;
+
+        Part(String spec)
+        {
+            this.spec = spec;
+            String tag = null;
+            int tagNumber = -1;
+            String subfieldSpec = "";
+            SubfieldCodes subfieldSpecCodes = null;
+            SubfieldCodes subfieldSpecMatches = null;
+            String subfields = null;
+            String separator = null;
+            SubfieldCodes subfieldCodes = null;
+            boolean wellFormed = false;
+            String fieldTag = null;
+            boolean controlField = false;
+            boolean linked = false;
+            boolean pattern = false;
+            SubfieldCodes patternCodes = null;
+            int substart = 0;
+            int subend = 0;
+            String positionSubfields = null;
+            SubfieldCodes positionCodes = null;
+            if (spec.length() >= 3)
+            {
+                tag = spec.substring(0, 3);
+                tagNumber = RecordTagIndex.tagNum(tag);
+                subfieldSpec = spec.substring(3);
+                subfieldSpecCodes = SubfieldCodes.listed(subfieldSpec);
+                try
+                {
+                    subfieldSpecMatches = SubfieldCodes.matching(subfieldSpec.length() == 0 ? "." : subfieldSpec);
+                }
+                catch (PatternSyntaxException e)
+                {
+                    // getAllSubfields fails on it
+                }
+
+                int quote = subfieldSpec.indexOf('\'');
+                if (quote == -1)
+                    subfields = subfieldSpec;
+                else if (quote < subfieldSpec.length() - 1)
+                {
+                    separator = subfieldSpec.substring(quote + 1, subfieldSpec.length() - 1);
+                    subfields = subfieldSpec.substring(0, quote);
+                }
+                try
+                {
+                    if (subfields != null)
+                        subfieldCodes = (subfields.indexOf('[') != -1) ? SubfieldCodes.matching(subfields) : SubfieldCodes.listed(subfields);
+                }
+                catch (PatternSyntaxException e)
+                {
+                    // getLinkedField fails on it
+                }
+
+                try
+                {
+                    fieldTag = tag;
+                    if (tag.equals("LNK"))
+                    {
+                        fieldTag = spec.substring(3, 6);
+                        linked = true;
+                    }
+                    controlField = MarcUtils.isControlField(fieldTag);
+                    int bracket = spec.indexOf('[');
+                    if (bracket != -1)
+                    {
+                        String sub[] = spec.substring(bracket + 1).split("[\\]\\[\\-, ]+");
+                        try
+                        {
+                            // if bracket expression is digits, expression is treated as character positions
+                            substart = Integer.parseInt(sub[0]);
+                            subend = (sub.length > 1) ? Integer.parseInt(sub[1]) + 1 : substart + 1;
+                            positionSubfields = subfieldSpec.substring(0, bracket - 3);
+                            positionCodes = SubfieldCodes.listed(positionSubfields);
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            // a pattern such as [a-z]
+                            substart = subend = 0;
+                            pattern = true;
+                        }
+                    }
+                    if (subend != 0)
+                        wellFormed = fieldTag.equals("000") || controlField || positionSubfields.length() > 0;
+                    else if (subfieldCodes == null)
+                        wellFormed = false;
+                    else if (pattern && !linked)
+                    {
+                        patternCodes = SubfieldCodes.matching(subfields.length() == 0 ? "." : subfields);
+                        wellFormed = true;
+                    }
+                    else
+                        wellFormed = linked || pattern || fieldTag.equals("000") || controlField
+                                || subfields.length() > 0 || separator != null;
+                }
+                catch (RuntimeException e)
+                {
+                    // malformed;  getFieldList reports it for each record
+                    wellFormed = false;
+                }
+            }
+            this.tag = tag;
+            this.tagNumber = tagNumber;
+            this.subfieldSpec = subfieldSpec;
+            this.subfieldSpecCodes = subfieldSpecCodes;
+            this.subfieldSpecMatches = subfieldSpecMatches;
+            this.subfields = subfields;
+            this.separator = separator;
+            this.subfieldCodes = subfieldCodes;
+            this.wellFormed = wellFormed;
+            this.fieldTag = fieldTag;
+            this.controlField = controlField;
+            this.linked = linked;
+            this.pattern = pattern;
+            this.patternCodes = patternCodes;
+            this.substart = substart;
+            this.subend = subend;
+            this.positionSubfields = positionSubfields;
+            this.positionCodes = positionCodes;
+        }
+
+        /**
+         * @return the part as written
+         */
+        public String getSpec()
+        {
+            return spec;
+        }
+
+        /**
+         * @return the tag of the fields the part wants (the linked tag of an
+         *  LNK part), or null if the part is malformed
+         */
+        public String getTag()
+        {
+            return wellFormed ? fieldTag : null;
+        }
+
+        /**
+         * @return true if the part wants 880 fields linked to its tag
+         */
+        public boolean isLinked()
+        {
+            return linked;
+        }
+
+        /**
+         * @return true if the brackets of the part hold a subfield pattern
+         *  such as [a-z] rather than character positions
+         */
+        public boolean isPattern()
+        {
+            return pattern;
+        }
+
+        /**
+         * @return the subfields getFieldList takes values from, as written:
+         *  those before the brackets of a part with character positions,
+         *  otherwise those before any quoted separator;  null if the part is
+         *  malformed
+         */
+        public String getSubfields()
+        {
+            if (!wellFormed)
+                return null;
+            return (subend != 0) ? positionSubfields : subfields;
+        }
+
+        /**
+         * @return the separator quoted in the part, or null
+         */
+        public String getSeparator()
+        {
+            return separator;
+        }
+
+        /**
+         * @return true if the part wants character positions of its values
+         */
+        public boolean hasPositions()
+        {
+            return subend != 0;
+        }
+
+        /**
+         * @return the first character position wanted
+         */
+        public int getSubstart()
+        {
+            return substart;
+        }
+
+        /**
+         * @return one after the last character position wanted, or 0
+         */
+        public int getSubend()
+        {
+            return subend;
+        }
+
+        /**
+         * @return true if getFieldList wants subfield code of a field with the
+         *  part's tag
+         */
+        public boolean wantsSubfield(char code)
+        {
+            if (!wellFormed)
+                return false;
+            if (subend != 0)
+                return positionCodes != null && positionCodes.contains(code);
+            if (pattern && !linked)
+                return patternCodes.contains(code);
+            return subfieldCodes.contains(code);
+        }
+
+        @Override
+        public String toString()
+        {
+            return spec;
+        }
+    }
+}
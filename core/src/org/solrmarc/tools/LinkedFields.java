@@ -0,0 +1,141 @@
+package org.solrmarc.tools;
+
+import java.util.*;
+
+import org.marc4j.marc.*;
+
+/**
+ * The 880 fields of a MARC record by the tag of the field each is linked to,
+ *  built with one pass over the 880s, so the linked field helpers of
+ *  MarcUtils (getLinkedField, getLinkedFieldValue, getLinkedVariableFields,
+ *  getVernacularFields, and LNK parts of getFieldList) find the 880s linked
+ *  to a tag without scanning all of them again for each tag asked for.
+ *
+ * An 880 is linked to the tag in the first three characters of its first
+ *  subfield 6 (e.g. "245-01/$1"), as the helpers have always read it.
+ *  getVernacularFields reads the subfield trimmed, and only if the tag is
+ *  followed by a '-', so the 880s are kept by that tag too.  The table of a
+ *  record being indexed is built the first time it is asked for and kept
+ *  with the record's RecordTagIndex (see RecordTagIndex.getLinkedFields);
+ *  otherwise it is built for each call.  Tables are not changed once built.
+ */
+public final class LinkedFields
+{
+    @SuppressWarnings("rawtypes")
+    private static final List NO_FIELDS = Collections.emptyList();
+
+    /** the 880s with a subfield 6, in the order of the record */
+    private final List<DataField> linked = new ArrayList<DataField>();
+    /** the subfield 6 of each of them */
+    private final List<String> links = new ArrayList<String>();
+    /** the 880s by the first three characters of their subfield 6 */
+    private final Map<String, List<DataField>> byTag = new HashMap<String, List<DataField>>();
+    /** the 880s by the tag getVernacularFields reads from their subfield 6 */
+    private final Map<String, List<DataField>> byVernacularTag = new HashMap<String, List<DataField>>();
+
+    /**
+     * @param fields880 the 880 fields of a record, in order
+     */
+    public LinkedFields(List<?> fields880)
+    {
+        for (Object vf : fields880)
+        {
+            DataField df = (DataField) vf;
+            Subfield sub6 = df.getSubfield('6');
+            if (sub6 == null || sub6.getData() == null)
+                continue;
+            String link = sub6.getData();
+            linked.add(df);
+            links.add(link);
+            if (link.length() >= 3)
+                add(byTag, link.substring(0, 3), df);
+            String trimmed = link.trim();
+            if (trimmed.indexOf('-') == 3)
+                add(byVernacularTag, trimmed.substring(0, 3), df);
+        }
+    }
+
+    private static void add(Map<String, List<DataField>> fieldsByTag, String tag, DataField df)
+    {
+        List<DataField> fields = fieldsByTag.get(tag);
+        if (fields == null)
+        {
+            fields = new ArrayList<DataField>(2);
+            fieldsByTag.put(tag, fields);
+        }
+        fields.add(df);
+    }
+
+    /**
+     * @return true if the record has an 880 with a subfield 6
+     */
+    public boolean hasLinks()
+    {
+        return !linked.isEmpty();
+    }
+
+    /**
+     * @param tag the tag of the linked field, e.g. "245";  any other prefix
+     *  of the subfield 6 is looked for among all the 880s
+     * @return the 880s whose subfield 6 starts with tag, in the order of the
+     *  record;  the list must not be changed
+     */
+    @SuppressWarnings("unchecked")
+    public List<DataField> getFields(String tag)
+    {
+        if (tag.length() == 3)
+        {
+            List<DataField> fields = byTag.get(tag);
+            return (fields != null) ? fields : NO_FIELDS;
+        }
+        List<DataField> fields = new ArrayList<DataField>();
+        for (int i = 0; i < linked.size(); i++)
+        {
+            if (links.get(i).startsWith(tag))
+                fields.add(linked.get(i));
+        }
+        return fields;
+    }
+
+    /**
+     * @param tags the tags of the linked fields
+     * @return the 880s linked to any of the tags, each once, in the order of
+     *  the record
+     */
+    public List<VariableField> getFields(Collection<String> tags)
+    {
+        List<VariableField> result = new ArrayList<VariableField>();
+        Set<String> wanted = new HashSet<String>();
+        for (String tag : tags)
+        {
+            if (tag.length() == 3 && byTag.containsKey(tag))
+                wanted.add(tag);
+        }
+        if (wanted.size() == 1)
+            result.addAll(byTag.get(wanted.iterator().next()));
+        else if (wanted.size() > 1)
+        {
+            // keep the order of the record
+            for (int i = 0; i < linked.size(); i++)
+            {
+                String link = links.get(i);
+                if (link.length() >= 3 && wanted.contains(link.substring(0, 3)))
+                    result.add(linked.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param tag the tag of the linked field, e.g. "245"
+     * @return the 880s whose trimmed subfield 6 is the tag followed by a '-',
+     *  as getVernacularFields has always matched them, in the order of the
+     *  record;  the list must not be changed
+     */
+    @SuppressWarnings("unchecked")
+    public List<DataField> getVernacularFields(String tag)
+    {
+        List<DataField> fields = byVernacularTag.get(tag);
+        return (fields != null) ? fields : NO_FIELDS;
+    }
+}
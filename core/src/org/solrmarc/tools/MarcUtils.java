@@ -5,14 +5,19 @@ import org.marc4j.*;
 import org.marc4j.marc.*;
 
 import java.io.ByteArrayOutputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.*;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 public class MarcUtils {
 
     static Logger logger = Logger.getLogger(MarcUtils.class.getName());
+
+    /** the builders getAllSearchableFields has made, by their bounds and cap */
+    private static final ConcurrentMap<String, AllFieldsText> allFieldsTexts = new ConcurrentHashMap<String, AllFieldsText>();
+    private static final int MAX_ALL_FIELDS_TEXTS = 64;
     /**
      * Default Constructor,  private, so it can't be instantiated by other objects
      */
@@ -47,7 +52,7 @@ public class MarcUtils {
                 continue;
             }
 
-            result.addAll(record.getVariableFields(tag));
+            result.addAll(RecordTagIndex.getFields(record, tag));
         }
         return result;
     }
@@ -96,7 +101,9 @@ public class MarcUtils {
         for (DataField field : fields)
         {
             // This will ignore any "code" fields and only use textual fields
-            int tag = Utils.parseIntNoNFE(field.getTag(), -1);
+            int tag = RecordTagIndex.tagNum(field.getTag());
+            if (tag < 0)
+                tag = Utils.parseIntNoNFE(field.getTag(), -1);
             if ((tag >= lowerBound) && (tag <= upperBound))
             	resultList.add(field);
          }
@@ -118,25 +125,54 @@ public class MarcUtils {
 	 * @return a set of strings, where each string is the concatenated values of
 	 *         all the alphabetic subfields.
 	 */
-	@SuppressWarnings("unchecked")
 	public static Set<String> getAllAlphaExcept(final Record record, String fieldSpec)
 	{
 	    Set<String> resultSet = new LinkedHashSet<String>();
-	    String[] fldTags = fieldSpec.split(":");
-	    for (int i = 0; i < fldTags.length; i++)
+	    getAllAlphaExcept(record, fieldSpec, resultSet);
+	    return resultSet;
+	}
+
+	/**
+	 * Add the values getAllAlphaExcept(record, fieldSpec) gives to a set,
+	 *  such as a ValueCollector
+	 */
+	public static void getAllAlphaExcept(final Record record, String fieldSpec, Set<String> resultSet)
+	{
+	    getAllAlphaExcept(record, FieldSpec.forSpec(fieldSpec), resultSet);
+	}
+
+	/**
+	 * getAllAlphaExcept for a field specification already parsed
+	 */
+	public static Set<String> getAllAlphaExcept(final Record record, FieldSpec fieldSpec)
+	{
+	    Set<String> resultSet = new LinkedHashSet<String>();
+	    getAllAlphaExcept(record, fieldSpec, resultSet);
+	    return resultSet;
+	}
+
+	/**
+	 * Add the values getAllAlphaExcept(record, fieldSpec) gives to a set,
+	 *  such as a ValueCollector
+	 */
+	@SuppressWarnings("unchecked")
+	public static void getAllAlphaExcept(final Record record, FieldSpec fieldSpec, Set<String> resultSet)
+	{
+	    StringBuilder buffer = new StringBuilder(500);
+	    for (FieldSpec.Part part : fieldSpec.getParts())
 	    {
-	        String fldTag = fldTags[i].substring(0, 3);
-	        if (fldTag.length() < 3 || Integer.parseInt(fldTag) < 10)
+	        String fldTag = (part.tag != null) ? part.tag : part.spec.substring(0, 3);
+	        if ((part.tagNumber >= 0 ? part.tagNumber : Integer.parseInt(fldTag)) < 10)
 	        {
 	            System.err.println("Invalid marc field specified for getAllAlphaExcept: " + fldTag);
 	            continue;
 	        }
 
-	        String tabooSubfldTags = fldTags[i].substring(3);
-	        List<VariableField> varFlds = record.getVariableFields(fldTag);
+	        SubfieldCodes tabooSubfldTags = part.subfieldSpecCodes;
+	        List<VariableField> varFlds = RecordTagIndex.getFields(record, fldTag);
 	        for (VariableField vf : varFlds)
 	        {
-	            StringBuilder buffer = new StringBuilder(500);
+	            buffer.setLength(0);
 	            DataField df = (DataField) vf;
 	            if (df != null)
 	            {
@@ -144,19 +180,18 @@ public class MarcUtils {
 	                for (Subfield sf : subfields)
 	                {
 	                    if (Character.isLetter(sf.getCode())
-	                            && tabooSubfldTags.indexOf(sf.getCode()) == -1)
+	                            && !tabooSubfldTags.contains(sf.getCode()))
+	                    {
 	                        if (buffer.length() > 0)
-	                            buffer.append(' ' + sf.getData().trim());
-	                        else
-	                            buffer.append(sf.getData().trim());
+	                            buffer.append(' ');
+	                        buffer.append(sf.getData().trim());
+	                    }
 	                }
 	                if (buffer.length() > 0)
 	                    resultSet.add(buffer.toString());
 	            }
 	        }
 	    }
-
-	    return resultSet;
 	}
 
 
@@ -177,28 +212,33 @@ public class MarcUtils {
 	 */
 	public static String getAllSearchableFields(final Record record, String lowerBoundStr, String upperBoundStr)
 	{
-	    StringBuilder buffer = new StringBuilder("");
+	    return getAllSearchableFields(record, lowerBoundStr, upperBoundStr, null);
+	}
+
+	/**
+	 * getAllSearchableFields, with the text cut to at most maxCharsStr
+	 *  characters, so a huge record doesn't make a huge field
+	 * @param maxCharsStr the most characters wanted;  no cap if null or if it
+	 *            doesn't parse as an integer
+	 */
+	public static String getAllSearchableFields(final Record record, String lowerBoundStr, String upperBoundStr, String maxCharsStr)
+	{
 	    int lowerBound = Utils.parseIntNoNFE(lowerBoundStr, 100);
 	    int upperBound = Utils.parseIntNoNFE(upperBoundStr, 900);
-
-	    List<DataField> fields = record.getDataFields();
-	    for (DataField field : fields)
+	    int maxChars = (maxCharsStr != null) ? Utils.parseIntNoNFE(maxCharsStr, AllFieldsText.NO_CAP) : AllFieldsText.NO_CAP;
+	    if (maxChars < 0)
+	        maxChars = AllFieldsText.NO_CAP;
+
+	    // This will ignore any "code" fields and only use textual fields
+	    String key = lowerBound + "-" + upperBound + ":" + maxChars;
+	    AllFieldsText allFieldsText = allFieldsTexts.get(key);
+	    if (allFieldsText == null)
 	    {
-	        // This will ignore any "code" fields and only use textual fields
-	        int tag = Utils.parseIntNoNFE(field.getTag(), -1);
-	        if ((tag >= lowerBound) && (tag < upperBound))
-	        {
-	            // Loop through subfields
-	            List<Subfield> subfields = field.getSubfields();
-	            for (Subfield subfield : subfields)
-	            {
-	                if (buffer.length() > 0)
-	                    buffer.append(" ");
-	                buffer.append(subfield.getData());
-	            }
-	        }
+	        allFieldsText = new AllFieldsText(lowerBound, upperBound, maxChars);
+	        if (allFieldsTexts.size() < MAX_ALL_FIELDS_TEXTS)
+	            allFieldsTexts.put(key, allFieldsText);
 	    }
-	    return buffer.toString();
+	    return allFieldsText.build(record);
 	}
 
 
@@ -216,20 +256,7 @@ public class MarcUtils {
 	 */
 	public static List<VariableField> getLinkedVariableFields(final Record record, String fieldSpec)
 	{
-	    List<VariableField> result = new ArrayList<VariableField>();
-
-	    List<String> desiredTags = Arrays.asList(fieldSpec.split(":"));
-
-	    List<VariableField> linkedFlds = getVariableFields(record, "880");
-	    for (VariableField lnkFld : linkedFlds)
-	    {
-			DataField df = (DataField) lnkFld;
-			Subfield sub6 = df.getSubfield('6');
-			if (sub6 != null && sub6.getData().length() >= 3 && desiredTags.contains(sub6.getData().substring(0, 3)))
-				result.add(lnkFld);
-	    }
-
-	    return result;
+	    return RecordTagIndex.getLinkedFields(record).getFields(Arrays.asList(fieldSpec.split(":")));
 	}
 
 
@@ -254,41 +281,46 @@ public class MarcUtils {
 	 */
 	public static Set<String> getLinkedField(final Record record, String fieldSpec)
 	{
-	    Set<String> set = getFieldList(record, "8806");
-	    if (set.isEmpty())
-	        return set;
+	    return getLinkedField(record, FieldSpec.forSpec(fieldSpec));
+	}
 
+	/**
+	 * getLinkedField for a field specification already parsed
+	 */
+	public static Set<String> getLinkedField(final Record record, FieldSpec fieldSpec)
+	{
 	    Set<String> result = new LinkedHashSet<String>();
+	    LinkedFields linkedFields = RecordTagIndex.getLinkedFields(record);
+	    if (!linkedFields.hasLinks())
+	        return result;
 
-	    String[] tags = fieldSpec.split(":");
-	    for (int i = 0; i < tags.length; i++)
+	    for (FieldSpec.Part part : fieldSpec.getParts())
 	    {
 	        // Check to ensure tag length is at least 3 characters
-	        if (tags[i].length() < 3)
+	        if (part.tag == null)
 	        {
-	            System.err.println("Invalid tag specified: " + tags[i]);
+	            System.err.println("Invalid tag specified: " + part.spec);
 	            continue;
 	        }
 
-	        // Get Field Tag
-	        String tag = tags[i].substring(0, 3);
-
-	        // Process Subfields
-	        String desiredSubFlds = tags[i].substring(3);
-
-	        String separator = null;
-	        if (desiredSubFlds.indexOf('\'') != -1)
+	        if (part.subfieldCodes != null)
+	            addLinkedFieldValues(linkedFields, part.tag, part.subfieldCodes, part.separator, result);
+	        else
 	        {
-	            separator = desiredSubFlds.substring(desiredSubFlds.indexOf('\'') + 1, desiredSubFlds.length() - 1);
-	            desiredSubFlds = desiredSubFlds.substring(0, desiredSubFlds.indexOf('\''));
+	            // a malformed separator or pattern fails as it always has
+	            String desiredSubFlds = part.subfieldSpec;
+	            String separator = null;
+	            if (desiredSubFlds.indexOf('\'') != -1)
+	            {
+	                separator = desiredSubFlds.substring(desiredSubFlds.indexOf('\'') + 1, desiredSubFlds.length() - 1);
+	                desiredSubFlds = desiredSubFlds.substring(0, desiredSubFlds.indexOf('\''));
+	            }
+	            result.addAll(getLinkedFieldValue(record, part.tag, desiredSubFlds, separator));
 	        }
-
-	        result.addAll(getLinkedFieldValue(record, tag, desiredSubFlds, separator));
 	    }
 	    return result;
 	}
 
-
 	/**
 	 * Given a tag for a field, and a list (or regex) of one or more subfields
 	 * get any linked 880 fields and include the appropriate subfields as a String value
@@ -310,51 +342,40 @@ public class MarcUtils {
 	public static Set<String> getLinkedFieldValue(final Record record, String tag, String subflds, String subFldSep)
 	{
 	    // assume brackets expression is a pattern such as [a-z]
+	    SubfieldCodes codes = (subflds.indexOf('[') != -1) ? SubfieldCodes.matching(subflds) : SubfieldCodes.listed(subflds);
 	    Set<String> result = new LinkedHashSet<String>();
-	    boolean havePattern = false;
-	    Pattern subfieldPattern = null;
-	    if (subflds.indexOf('[') != -1)
-	    {
-	        havePattern = true;
-	        subfieldPattern = Pattern.compile(subflds);
-	    }
-	    List<VariableField> fields = record.getVariableFields("880");
-	    for (VariableField vf : fields)
+	    addLinkedFieldValues(RecordTagIndex.getLinkedFields(record), tag, codes, subFldSep, result);
+	    return(result);
+	}
+
+	/**
+	 * Add the values getLinkedFieldValue gives to a set, given the subfields
+	 *  wanted as SubfieldCodes
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addLinkedFieldValues(LinkedFields linkedFields, String tag, SubfieldCodes codes, String subFldSep, Set<String> result)
+	{
+	    StringBuilder buf = null;
+	    for (DataField df : linkedFields.getFields(tag))
 	    {
-	        DataField df = (DataField) vf;
-	        Subfield link = df.getSubfield('6');
-	        if (link != null && link.getData().startsWith(tag))
+	        if (buf == null)
+	            buf = new StringBuilder();
+	        else
+	            buf.setLength(0);
+	        List<Subfield> subList = df.getSubfields();
+	        for (Subfield subF : subList)
 	        {
-	            List<Subfield> subList = df.getSubfields();
-	            StringBuilder buf = new StringBuilder("");
-	            for (Subfield subF : subList)
+	            if (codes.contains(subF.getCode()))
 	            {
-	                boolean addIt = false;
-	                if (havePattern)
-	                {
-	                    // matcher needs a string, hence concat with empty string
-	                    Matcher matcher = subfieldPattern.matcher("" + subF.getCode());
-	                    if (matcher.matches())
-	                        addIt = true;
-	                }
-	                else
-	                	// a list a subfields
-	                    if (subflds.indexOf(subF.getCode()) != -1)
-	                        addIt = true;
-
-	                if (addIt)
-	                {
-	                    if (buf.length() > 0)
-	                        buf.append(subFldSep != null ? subFldSep : " ");
-	                    buf.append(subF.getData().trim());
-	                }
+	                if (buf.length() > 0)
+	                    buf.append(subFldSep != null ? subFldSep : " ");
+	                buf.append(subF.getData().trim());
 	            }
-	            if (buf.length() > 0)
-//	                result.add(Utils.cleanData(buf.toString()));
-	            	result.add(buf.toString());
 	        }
+	        if (buf.length() > 0)
+//	            result.add(Utils.cleanData(buf.toString()));
+	            result.add(buf.toString());
 	    }
-	    return(result);
 	}
 
 
@@ -426,29 +447,14 @@ public class MarcUtils {
 	 *  in the 880 subfield 6 linkage
 	 * @param marcField - which field to be matched by 880 fields
 	 */
-	@SuppressWarnings("unchecked")
 	public static Set<VariableField> getVernacularFields(final Record record, String marcField)
 	{
 		if (marcField.length() != 3)
 	        System.err.println("marc field tag must be three characters: " + marcField);
 
-		Set<VariableField> resultSet = new LinkedHashSet<VariableField>();
-
-		List<VariableField> list880s = record.getVariableFields("880");
-		if (list880s == null || list880s.size() == 0)
-			return resultSet;
-
 		// we know which 880s we're looking for by matching the marc field and
 		// subfield 6 (linkage info) in the 880
-		for (VariableField vf : list880s)
-		{
-			DataField df880 = (DataField) vf;
-			String sub6 = MarcUtils.getSubfieldTrimmed(df880, '6');
-			int dashIx = sub6.indexOf('-');
-			if ((dashIx == 3) && marcField.equals(sub6.substring(0, 3)))
-				resultSet.add(df880);
-		}
-		return (resultSet);
+		return new LinkedHashSet<VariableField>(RecordTagIndex.getLinkedFields(record).getVernacularFields(marcField));
 	}
 
 
@@ -501,31 +507,38 @@ public class MarcUtils {
      * subfield data from the field, place it in a single string (individual
      * subfield data separated by spaces) and add the string to the result set.
      */
-    @SuppressWarnings("unchecked")
     public static Set<String> getAllSubfields(final Record record, String[] tags)
     {
         Set<String> result = new LinkedHashSet<String>();
+        getAllSubfields(record, tags, result);
+        return result;
+    }
 
-        List<VariableField> varFlds = record.getVariableFields(tags);
+    /**
+     * Add the values getAllSubfields(record, tags) gives to a set, such as a
+     * ValueCollector
+     */
+    @SuppressWarnings("unchecked")
+    public static void getAllSubfields(final Record record, String[] tags, Set<String> result)
+    {
+        StringBuilder buffer = new StringBuilder(500);
+        List<VariableField> varFlds = RecordTagIndex.getFields(record, tags);
         for (VariableField vf : varFlds)
         {
-            StringBuilder buffer = new StringBuilder(500);
+            buffer.setLength(0);
             DataField df = (DataField) vf;
             if (df != null) {
                 List<Subfield> subfields = df.getSubfields();
                 for (Subfield sf : subfields)
                 {
                     if (buffer.length() > 0)
-                        buffer.append(" " + sf.getData());
-                    else
-                        buffer.append(sf.getData());
+                        buffer.append(' ');
+                    buffer.append(sf.getData());
                 }
             }
             if (buffer.length() > 0)
                 result.add(buffer.toString());
         }
-
-        return result;
     }
 
     /**
@@ -541,47 +554,81 @@ public class MarcUtils {
 	public static Set<String> getAllSubfields(final Record record, String fieldSpec, String separator)
 	{
 	    Set<String> result = new LinkedHashSet<String>();
+	    getAllSubfields(record, fieldSpec, separator, result);
+	    return result;
+	}
+
+	/**
+	 * Add the values getAllSubfields(record, fieldSpec, separator) gives to a
+	 * set, such as a ValueCollector
+	 */
+	public static void getAllSubfields(final Record record, String fieldSpec, String separator, Set<String> result)
+	{
+	    getAllSubfields(record, FieldSpec.forSpec(fieldSpec), separator, result);
+	}
+
+	/**
+	 * getAllSubfields for a field specification already parsed
+	 */
+	public static Set<String> getAllSubfields(final Record record, FieldSpec fieldSpec, String separator)
+	{
+	    Set<String> result = new LinkedHashSet<String>();
+	    getAllSubfields(record, fieldSpec, separator, result);
+	    return result;
+	}
 
-	    String[] fldTags = fieldSpec.split(":");
-	    for (int i = 0; i < fldTags.length; i++)
+	/**
+	 * Add the values getAllSubfields(record, fieldSpec, separator) gives to a
+	 * set, such as a ValueCollector
+	 */
+	public static void getAllSubfields(final Record record, FieldSpec fieldSpec, String separator, Set<String> result)
+	{
+	    for (FieldSpec.Part part : fieldSpec.getParts())
 	    {
 	        // Check to ensure tag length is at least 3 characters
-	        if (fldTags[i].length() < 3)
+	        if (part.tag == null)
 	        {
-	            System.err.println("Invalid tag specified: " + fldTags[i]);
+	            System.err.println("Invalid tag specified: " + part.spec);
 	            continue;
 	        }
 
-	        String fldTag = fldTags[i].substring(0, 3);
-
-	        String subfldTags = fldTags[i].substring(3);
+	        if (part.subfieldSpecMatches != null)
+	            addMatchingSubfields(record, part.tag, part.subfieldSpecMatches, separator, result);
+	        else if (!RecordTagIndex.getFields(record, part.tag).isEmpty())
+	            // a malformed pattern fails as it always has
+	            Pattern.compile(part.subfieldSpec);
+	    }
+	}
 
-	        List<VariableField> marcFieldList = record.getVariableFields(fldTag);
-	        if (!marcFieldList.isEmpty())
+	/**
+	 * Add the values getAllSubfields gives for one tag to a set, given the
+	 * subfields wanted as SubfieldCodes
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addMatchingSubfields(final Record record, String fldTag, SubfieldCodes codes, String separator, Set<String> result)
+	{
+	    StringBuilder buffer = null;
+	    List<VariableField> marcFieldList = RecordTagIndex.getFields(record, fldTag);
+	    for (VariableField vf : marcFieldList)
+	    {
+	        DataField marcField = (DataField) vf;
+	        if (buffer == null)
+	            buffer = new StringBuilder();
+	        else
+	            buffer.setLength(0);
+	        List<Subfield> subfields = marcField.getSubfields();
+	        for (Subfield subfield : subfields)
 	        {
-	            Pattern subfieldPattern = Pattern.compile(subfldTags.length() == 0 ? "." : subfldTags);
-	            for (VariableField vf : marcFieldList)
+	            if (codes.contains(subfield.getCode()))
 	            {
-	                DataField marcField = (DataField) vf;
-	                StringBuilder buffer = new StringBuilder("");
-	                List<Subfield> subfields = marcField.getSubfields();
-	                for (Subfield subfield : subfields)
-	                {
-	                    Matcher matcher = subfieldPattern.matcher("" + subfield.getCode());
-	                    if (matcher.matches())
-	                    {
-	                        if (buffer.length() > 0)
-	                            buffer.append(separator != null ? separator : " ");
-	                        buffer.append(subfield.getData().trim());
-	                    }
-	                }
 	                if (buffer.length() > 0)
-	                    result.add(Utils.cleanData(buffer.toString()));
+	                    buffer.append(separator != null ? separator : " ");
+	                buffer.append(subfield.getData().trim());
 	            }
 	        }
+	        if (buffer.length() > 0)
+	            result.add(Utils.cleanData(buffer.toString()));
 	    }
-
-	    return result;
 	}
 
 
@@ -629,24 +676,46 @@ public class MarcUtils {
 	 *          of all the desired subfield values from a single instance of the
 	 *          fldTag
 	 */
-	@SuppressWarnings("unchecked")
 	public static Set<String> getSubfieldDataAsSet(Record record, String fldTag, String subfldsStr, String separator)
 	{
 	    Set<String> resultSet = new LinkedHashSet<String>();
+	    getSubfieldDataAsSet(record, fldTag, subfldsStr, separator, resultSet);
+	    return resultSet;
+	}
 
+	/**
+	 * Add the values getSubfieldDataAsSet(record, fldTag, subfldsStr, separator)
+	 *  gives to a set, such as a ValueCollector
+	 */
+	public static void getSubfieldDataAsSet(Record record, String fldTag, String subfldsStr, String separator, Set<String> resultSet)
+	{
+	    boolean controlField = isControlField(fldTag) || subfldsStr == null;
+	    SubfieldCodes codes = (subfldsStr != null) ? SubfieldCodes.listed(subfldsStr) : null;
+	    addSubfieldData(record, fldTag, controlField, subfldsStr, codes, separator, resultSet);
+	}
+
+	/**
+	 * Add the values getSubfieldDataAsSet gives to a set, given the subfields
+	 *  wanted as SubfieldCodes as well
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addSubfieldData(Record record, String fldTag, boolean controlField, String subfldsStr, SubfieldCodes codes, String separator, Set<String> resultSet)
+	{
 	    // Process Leader
 	    if (fldTag.equals("000"))
 	    {
 	        resultSet.add(record.getLeader().marshal());
-	        return resultSet;
+	        return;
 	    }
 
+	    StringBuilder buffer = null;
+
 	    // Loop through Data and Control Fields
 	    // int iTag = new Integer(fldTag).intValue();
-	    List<VariableField> varFlds = record.getVariableFields(fldTag);
+	    List<VariableField> varFlds = RecordTagIndex.getFields(record, fldTag);
 	    for (VariableField vf : varFlds)
 	    {
-	        if (!isControlField(fldTag) && subfldsStr != null)
+	        if (!controlField)
 	        {
 	            // DataField
 	            DataField dfield = (DataField) vf;
@@ -654,11 +723,14 @@ public class MarcUtils {
 	            if (subfldsStr.length() > 1 || separator != null)
 	            {
 	                // concatenate subfields using specified separator or space
-	                StringBuilder buffer = new StringBuilder("");
+	                if (buffer == null)
+	                    buffer = new StringBuilder();
+	                else
+	                    buffer.setLength(0);
 	                List<Subfield> subFlds = dfield.getSubfields();
 	                for (Subfield sf : subFlds)
 	                {
-	                    if (subfldsStr.indexOf(sf.getCode()) != -1)
+	                    if (codes.contains(sf.getCode()))
 	                    {
 	                        if (buffer.length() > 0)
 	                            buffer.append(separator != null ? separator : " ");
@@ -681,7 +753,6 @@ public class MarcUtils {
 	            resultSet.add(((ControlField) vf).getData().trim());
 
 	    }
-	    return resultSet;
 	}
 
 
@@ -695,34 +766,59 @@ public class MarcUtils {
 	 * @param endIx - the ending index of the substring of the subfield value
 	 * @return the result set of strings
 	 */
-	@SuppressWarnings("unchecked")
 	protected static Set<String> getSubfieldDataAsSet(Record record, String fldTag, String subfield, int beginIx, int endIx)
 	{
 	    Set<String> resultSet = new LinkedHashSet<String>();
+	    getSubfieldDataAsSet(record, fldTag, subfield, beginIx, endIx, resultSet);
+	    return resultSet;
+	}
+
+	/**
+	 * Add the values getSubfieldDataAsSet(record, fldTag, subfield, beginIx, endIx)
+	 *  gives to a set, such as a ValueCollector
+	 */
+	protected static void getSubfieldDataAsSet(Record record, String fldTag, String subfield, int beginIx, int endIx, Set<String> resultSet)
+	{
+	    boolean controlField = isControlField(fldTag) || subfield == null;
+	    SubfieldCodes codes = (subfield != null) ? SubfieldCodes.listed(subfield) : null;
+	    addSubstrings(record, fldTag, controlField, subfield, codes, beginIx, endIx, resultSet);
+	}
 
+	/**
+	 * Add the values getSubfieldDataAsSet(record, fldTag, subfield, beginIx, endIx)
+	 *  gives to a set, given the subfields wanted as SubfieldCodes as well
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addSubstrings(Record record, String fldTag, boolean controlField, String subfield, SubfieldCodes codes, int beginIx, int endIx, Set<String> resultSet)
+	{
 	    // Process Leader
 	    if (fldTag.equals("000"))
 	    {
-	        resultSet.add(record.getLeader().marshal().substring(beginIx, endIx));
-	        return resultSet;
+	        resultSet.add(Utils.slice(record.getLeader().marshal(), beginIx, endIx));
+	        return;
 	    }
 
+	    StringBuilder buffer = null;
+
 	    // Loop through Data and Control Fields
-	    List<VariableField> varFlds = record.getVariableFields(fldTag);
+	    List<VariableField> varFlds = RecordTagIndex.getFields(record, fldTag);
 	    for (VariableField vf : varFlds)
 	    {
-	        if (!isControlField(fldTag) && subfield != null)
+	        if (!controlField)
 	        {
 	            // Data Field
 	            DataField dfield = (DataField) vf;
 	            if (subfield.length() > 1)
 	            {
 	                // automatic concatenation of grouped subfields
-	                StringBuilder buffer = new StringBuilder("");
+	                if (buffer == null)
+	                    buffer = new StringBuilder();
+	                else
+	                    buffer.setLength(0);
 	                List<Subfield> subFlds = dfield.getSubfields();
 	                for (Subfield sf : subFlds)
 	                {
-	                    if (subfield.indexOf(sf.getCode()) != -1 &&
+	                    if (codes.contains(sf.getCode()) &&
 	                            sf.getData().length() >= endIx)
 	                    {
 	                        if (buffer.length() > 0)
@@ -747,10 +843,9 @@ public class MarcUtils {
 	        {
 	            String cfldData = ((ControlField) vf).getData();
 	            if (cfldData.length() >= endIx)
-	                resultSet.add(cfldData.substring(beginIx, endIx));
+	                resultSet.add(Utils.slice(cfldData, beginIx, endIx));
 	        }
 	    }
-	    return resultSet;
 	}
 
 
@@ -877,25 +972,53 @@ public class MarcUtils {
 	 * @return a set of strings, where each string is the concatenated values of
 	 *         all the alphabetic subfields.
 	 */
-	@SuppressWarnings("unchecked")
 	public static Set<String> getAllAlphaSubfields(final Record record, String fieldSpec)
 	{
 	    Set<String> resultSet = new LinkedHashSet<String>();
+	    getAllAlphaSubfields(record, fieldSpec, resultSet);
+	    return resultSet;
+	}
+
+	/**
+	 * Add the values getAllAlphaSubfields(record, fieldSpec) gives to a set,
+	 *  such as a ValueCollector
+	 */
+	public static void getAllAlphaSubfields(final Record record, String fieldSpec, Set<String> resultSet)
+	{
+	    getAllAlphaSubfields(record, FieldSpec.forSpec(fieldSpec), resultSet);
+	}
+
+	/**
+	 * getAllAlphaSubfields for a field specification already parsed
+	 */
+	public static Set<String> getAllAlphaSubfields(final Record record, FieldSpec fieldSpec)
+	{
+	    Set<String> resultSet = new LinkedHashSet<String>();
+	    getAllAlphaSubfields(record, fieldSpec, resultSet);
+	    return resultSet;
+	}
 
-	    String[] fldTags = fieldSpec.split(":");
-	    for (int i = 0; i < fldTags.length; i++)
+	/**
+	 * Add the values getAllAlphaSubfields(record, fieldSpec) gives to a set,
+	 *  such as a ValueCollector
+	 */
+	@SuppressWarnings("unchecked")
+	public static void getAllAlphaSubfields(final Record record, FieldSpec fieldSpec, Set<String> resultSet)
+	{
+	    StringBuilder buffer = new StringBuilder(500);
+	    for (FieldSpec.Part part : fieldSpec.getParts())
 	    {
-	        String fldTag = fldTags[i];
-	        if (fldTag.length() < 3 || Integer.parseInt(fldTag) < 10)
+	        String fldTag = part.spec;
+	        if (fldTag.length() < 3 || (fldTag.length() == 3 && part.tagNumber >= 0 ? part.tagNumber : Integer.parseInt(fldTag)) < 10)
 	        {
 	            System.err.println("Invalid marc field specified for getAllAlphaSubfields: " + fldTag);
 	            continue;
 	        }
 
-	        List<VariableField> varFlds = record.getVariableFields(fldTag);
+	        List<VariableField> varFlds = RecordTagIndex.getFields(record, fldTag);
 	        for (VariableField vf : varFlds)
 	        {
-	            StringBuilder buffer = new StringBuilder(500);
+	            buffer.setLength(0);
 	            DataField df = (DataField) vf;
 	            if (df != null)
 	            {
@@ -903,18 +1026,17 @@ public class MarcUtils {
 	                for (Subfield sf : subfields)
 	                {
 	                    if (Character.isLetter(sf.getCode()))
+	                    {
 	                        if (buffer.length() > 0)
-	                            buffer.append(" " + sf.getData().trim());
-	                        else
-	                            buffer.append(sf.getData().trim());
+	                            buffer.append(' ');
+	                        buffer.append(sf.getData().trim());
+	                    }
 	                }
 	            }
 	            if (buffer.length() > 0)
 	                resultSet.add(buffer.toString());
 	        }
 	    }
-
-	    return resultSet;
 	}
 
 
@@ -1014,7 +1136,7 @@ public class MarcUtils {
 		if (tag != null && tag.length() >= 3)
 		{
 		    String fieldTag = tag.substring(0,3);
-		    List<VariableField> vfList = record.getVariableFields(fieldTag);
+		    List<VariableField> vfList = RecordTagIndex.getFields(record, fieldTag);
 		    for (VariableField vf : vfList)
 		    {
 		        if (vf instanceof ControlField)
@@ -1279,70 +1401,116 @@ public class MarcUtils {
 	 */
 	public static Set<String> getFieldList(Record record, String tagStr)
 	{
-	    String[] tags = tagStr.split(":");
 	    Set<String> result = new LinkedHashSet<String>();
-	    for (int i = 0; i < tags.length; i++)
+	    getFieldList(record, tagStr, result);
+	    return result;
+	}
+
+	/**
+	 * Add the values getFieldList(record, tagStr) gives to a set, such as a
+	 *  ValueCollector, rather than to a new set
+	 */
+	public static void getFieldList(Record record, String tagStr, Set<String> result)
+	{
+	    getFieldList(record, FieldSpec.forSpec(tagStr), result);
+	}
+
+	/**
+	 * getFieldList for a field specification already parsed
+	 */
+	public static Set<String> getFieldList(Record record, FieldSpec fieldSpec)
+	{
+	    Set<String> result = new LinkedHashSet<String>();
+	    getFieldList(record, fieldSpec, result);
+	    return result;
+	}
+
+	/**
+	 * Add the values getFieldList(record, fieldSpec) gives to a set, such as a
+	 *  ValueCollector
+	 */
+	public static void getFieldList(Record record, FieldSpec fieldSpec, Set<String> result)
+	{
+	    for (FieldSpec.Part part : fieldSpec.getParts())
 	    {
 	        // Check to ensure tag length is at least 3 characters
-	        if (tags[i].length() < 3)
+	        if (part.tag == null)
 	        {
-	            System.err.println("Invalid tag specified: " + tags[i]);
+	            System.err.println("Invalid tag specified: " + part.spec);
 	            continue;
 	        }
 
-	        // Get Field Tag
-	        String tag = tags[i].substring(0, 3);
-	        boolean linkedField = false;
-	        if (tag.equals("LNK"))
+	        if (!part.wellFormed)
+	            getFieldListPart(record, part.spec, result);
+	        else if (part.subend != 0)
+	            addSubstrings(record, part.fieldTag, part.controlField, part.positionSubfields, part.positionCodes, part.substart, part.subend, result);
+	        else if (part.linked)
+	            addLinkedFieldValues(RecordTagIndex.getLinkedFields(record), part.fieldTag, part.subfieldCodes, part.separator, result);
+	        else if (part.pattern)
+	            addMatchingSubfields(record, part.fieldTag, part.patternCodes, part.separator, result);
+	        else
+	            addSubfieldData(record, part.fieldTag, part.controlField, part.subfields, part.subfieldCodes, part.separator, result);
+	    }
+	}
+
+	/**
+	 * Add the values of one part of a field specification that FieldSpec
+	 *  couldn't parse, parsing it the way getFieldList always has, so it fails
+	 *  or is reported the same way
+	 */
+	private static void getFieldListPart(Record record, String tagSpec, Set<String> result)
+	{
+	    // Get Field Tag
+	    String tag = tagSpec.substring(0, 3);
+	    boolean linkedField = false;
+	    if (tag.equals("LNK"))
+	    {
+	        tag = tagSpec.substring(3, 6);
+	        linkedField = true;
+	    }
+	    // Process Subfields
+	    String subfield = tagSpec.substring(3);
+	    boolean havePattern = false;
+	    int subend = 0;
+	    // brackets indicate parsing for individual characters or as pattern
+	    int bracket = tagSpec.indexOf('[');
+	    if (bracket != -1)
+	    {
+	        String sub[] = tagSpec.substring(bracket + 1).split("[\\]\\[\\-, ]+");
+	        try
 	        {
-	            tag = tags[i].substring(3, 6);
-	            linkedField = true;
+	            // if bracket expression is digits, expression is treated as character positions
+	            int substart = Integer.parseInt(sub[0]);
+	            subend = (sub.length > 1) ? Integer.parseInt(sub[1]) + 1 : substart + 1;
+	            String subfieldWObracket = subfield.substring(0, bracket-3);
+	            getSubfieldDataAsSet(record, tag, subfieldWObracket, substart, subend, result);
 	        }
-	        // Process Subfields
-	        String subfield = tags[i].substring(3);
-	        boolean havePattern = false;
-	        int subend = 0;
-	        // brackets indicate parsing for individual characters or as pattern
-	        int bracket = tags[i].indexOf('[');
-	        if (bracket != -1)
+	        catch (NumberFormatException e)
 	        {
-	            String sub[] = tags[i].substring(bracket + 1).split("[\\]\\[\\-, ]+");
-	            try
-	            {
-	                // if bracket expression is digits, expression is treated as character positions
-	                int substart = Integer.parseInt(sub[0]);
-	                subend = (sub.length > 1) ? Integer.parseInt(sub[1]) + 1 : substart + 1;
-	                String subfieldWObracket = subfield.substring(0, bracket-3);
-	                result.addAll(getSubfieldDataAsSet(record, tag, subfieldWObracket, substart, subend));
-	            }
-	            catch (NumberFormatException e)
-	            {
-	                // assume brackets expression is a pattern such as [a-z]
-	                havePattern = true;
-	            }
+	            // assume brackets expression is a pattern such as [a-z]
+	            havePattern = true;
 	        }
-	        if (subend == 0) // don't want specific characters.
+	    }
+	    if (subend == 0) // don't want specific characters.
+	    {
+	        String separator = null;
+	        if (subfield.indexOf('\'') != -1)
 	        {
-	            String separator = null;
-	            if (subfield.indexOf('\'') != -1)
-	            {
-	                separator = subfield.substring(subfield.indexOf('\'') + 1, subfield.length() - 1);
-	                subfield = subfield.substring(0, subfield.indexOf('\''));
-	            }
+	            separator = subfield.substring(subfield.indexOf('\'') + 1, subfield.length() - 1);
+	            subfield = subfield.substring(0, subfield.indexOf('\''));
+	        }
 
-	            if (havePattern)
-	                if (linkedField)
-	                    result.addAll(getLinkedFieldValue(record, tag, subfield, separator));
-	                else
-	                    result.addAll(getAllSubfields(record, tag + subfield, separator));
-	            else if (linkedField)
+	        if (havePattern)
+	            if (linkedField)
 	                result.addAll(getLinkedFieldValue(record, tag, subfield, separator));
 	            else
-	                result.addAll(getSubfieldDataAsSet(record, tag, subfield, separator));
-	        }
+	                getAllSubfields(record, tag + subfield, separator, result);
+	        else if (linkedField)
+	            result.addAll(getLinkedFieldValue(record, tag, subfield, separator));
+	        else
+	            getSubfieldDataAsSet(record, tag, subfield, separator, result);
 	    }
-	    return result;
-	}
+}
 
 
 	/**
@@ -1358,8 +1526,16 @@ public class MarcUtils {
 	 */
 	public static String getFieldVals(Record record, String tagStr, String separator)
 	{
-	    Set<String> result = getFieldList(record, tagStr);
-	    return org.solrmarc.tools.Utils.join(result, separator);
+	    ValueCollector result = ValueCollector.acquire();
+	    try
+	    {
+	        getFieldList(record, tagStr, result);
+	        return result.join(separator);
+	    }
+	    finally
+	    {
+	        result.release();
+	    }
 	}
 
 
@@ -1374,12 +1550,16 @@ public class MarcUtils {
 	 */
 	public static String getFirstFieldVal(Record record, String tagStr)
 	{
-	    Set<String> result = getFieldList(record, tagStr);
-	    Iterator<String> iter = result.iterator();
-	    if (iter.hasNext())
-	        return iter.next();
-	    else
-	        return null;
+	    ValueCollector result = ValueCollector.acquire();
+	    try
+	    {
+	        getFieldList(record, tagStr, result);
+	        return result.first();
+	    }
+	    finally
+	    {
+	        result.release();
+	    }
 	}
 
 
@@ -1393,7 +1573,7 @@ public class MarcUtils {
 	 */
 	public static String getTitle(Record record)
 	{
-	    DataField titleField = (DataField) record.getVariableField("245");
+	    DataField titleField = (DataField) RecordTagIndex.getField(record, "245");
 	    if ( titleField == null)
 	      return "";
 
@@ -1422,7 +1602,7 @@ public class MarcUtils {
 	 */
 	public static String getSortableTitle(Record record)
 	{
-	    DataField titleField = (DataField) record.getVariableField("245");
+	    DataField titleField = (DataField) RecordTagIndex.getField(record, "245");
 	    if (titleField == null)
 	        return "";
 
@@ -1454,17 +1634,17 @@ public class MarcUtils {
 	{
 	    StringBuilder resultBuf = new StringBuilder();
 
-	    DataField df = (DataField) record.getVariableField("100");
+	    DataField df = (DataField) RecordTagIndex.getField(record, "100");
 	    // main entry personal name
 	    if (df != null)
 	        resultBuf.append(getAlphaSubfldsAsSortStr(df, false));
 
-	    df = (DataField) record.getVariableField("110");
+	    df = (DataField) RecordTagIndex.getField(record, "110");
 	    // main entry corporate name
 	    if (df != null)
 	        resultBuf.append(getAlphaSubfldsAsSortStr(df, false));
 
-	    df = (DataField) record.getVariableField("111");
+	    df = (DataField) RecordTagIndex.getField(record, "111");
 	    // main entry meeting name
 	    if (df != null)
 	        resultBuf.append(getAlphaSubfldsAsSortStr(df, false));
@@ -1477,12 +1657,12 @@ public class MarcUtils {
 	    }
 
 	    // uniform title, main entry
-	    df = (DataField) record.getVariableField("240");
+	    df = (DataField) RecordTagIndex.getField(record, "240");
 	    if (df != null)
 	        resultBuf.append(getAlphaSubfldsAsSortStr(df, false));
 
 	    // 245 (required) title statement
-	    df = (DataField) record.getVariableField("245");
+	    df = (DataField) RecordTagIndex.getField(record, "245");
 	    if (df != null)
 	        resultBuf.append(getAlphaSubfldsAsSortStr(df, true));
 
@@ -1527,7 +1707,7 @@ public class MarcUtils {
     {
         Set<String> resultSet = new LinkedHashSet<String>();
 
-        List<VariableField> list856 = record.getVariableFields("856");
+        List<VariableField> list856 = RecordTagIndex.getFields(record, "856");
         for (VariableField vf : list856)
         {
             DataField df = (DataField) vf;
@@ -1565,7 +1745,7 @@ public class MarcUtils {
 	{
 	    Set<String> resultSet = new LinkedHashSet<String>();
 
-	    List<VariableField> list856 = record.getVariableFields("856");
+	    List<VariableField> list856 = RecordTagIndex.getFields(record, "856");
 	    for (VariableField vf : list856)
 	    {
 	        DataField df = (DataField) vf;
@@ -1618,22 +1798,26 @@ public class MarcUtils {
      */
     public static String getRecordAsBinaryStr(Record record)
     {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        MarcWriter writer = new MarcStreamWriter(out, "UTF-8", true);
-        writer.write(record);
-        writer.close();
+        RecordBuffer out = RecordBuffer.forThread();
+        out.binaryWriter.write(record);
+        return out.takeString();
+    }
 
-        String result = null;
-        try
-        {
-            result = out.toString("UTF-8");
-        }
-        catch (UnsupportedEncodingException e)
-        {
-            // e.printStackTrace();
-            logger.error(e.getCause());
-        }
-        return result;
+    /**
+     * Return a binary string representation of the marc Record object, made
+     * from the bytes it was read from when they are known, rather than by
+     * writing the record again
+     * @param record marc record object to be written
+     * @param recordBytes the bytes the record was read from, the same as
+     *        writing it as UTF-8 binary marc would give, or null
+     * @return string containing binary (UTF-8 encoded) representation of marc
+     *         record object.
+     */
+    public static String getRecordAsBinaryStr(Record record, byte recordBytes[])
+    {
+        if (recordBytes == null)
+            return getRecordAsBinaryStr(record);
+        return new String(recordBytes, RecordBuffer.UTF_8);
     }
 
     /**
@@ -1644,22 +1828,12 @@ public class MarcUtils {
      */
     public static String getRecordAsJsonStr(Record record, boolean MARCinJSON)
     {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        MarcWriter writer = new MarcJsonWriter(out, (MARCinJSON) ? MarcJsonWriter.MARC_IN_JSON : MarcJsonWriter.MARC_JSON);
-        writer.write(record);
-        writer.close();
-
-        String result = null;
-        try
-        {
-            result = out.toString("UTF-8");
-        }
-        catch (UnsupportedEncodingException e)
-        {
-            // e.printStackTrace();
-            logger.error(e.getCause());
-        }
-        return result;
+        RecordBuffer out = RecordBuffer.forThread();
+        if (MARCinJSON)
+            out.marcInJsonWriter.write(record);
+        else
+            out.marcJsonWriter.write(record);
+        return out.takeString();
     }
 
     /**
@@ -1669,24 +1843,68 @@ public class MarcUtils {
      */
     public static String getRecordAsMarcXmlStr(Record record)
     {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordBuffer out = RecordBuffer.forThread();
         // TODO: see if this works better
         // MarcWriter writer = new MarcXmlWriter(out, false);
+        // a MarcXmlWriter writes a whole document, so one is needed per record
         MarcWriter writer = new MarcXmlWriter(out, "UTF-8");
         writer.write(record);
         writer.close();
+        return out.takeString();
+    }
+
+    /**
+     * The buffer a thread writes records to, to return them as strings, and
+     * the writers that can write one record after another to it.  They are
+     * kept for the thread and reused for each record.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream
+    {
+        static final Charset UTF_8 = Charset.forName("UTF-8");
+        private static final int INITIAL_SIZE = 8192;
+        /** a buffer grown bigger than this by a huge record isn't kept */
+        private static final int MAX_KEPT_SIZE = 1 << 20;
 
-        String tmp = null;
-        try
+        private static final ThreadLocal<RecordBuffer> buffers = new ThreadLocal<RecordBuffer>()
         {
-            tmp = out.toString("UTF-8");
+            @Override
+            protected RecordBuffer initialValue()
+            {
+                return new RecordBuffer();
+            }
+        };
+
+        final MarcWriter binaryWriter = new MarcStreamWriter(this, "UTF-8", true);
+        final MarcWriter marcInJsonWriter = new MarcJsonWriter(this, MarcJsonWriter.MARC_IN_JSON);
+        final MarcWriter marcJsonWriter = new MarcJsonWriter(this, MarcJsonWriter.MARC_JSON);
+
+        private RecordBuffer()
+        {
+            super(INITIAL_SIZE);
         }
-        catch (UnsupportedEncodingException e)
+
+        /**
+         * @return the calling thread's buffer, emptied of anything a record
+         *         that failed to be written left in it
+         */
+        static RecordBuffer forThread()
+        {
+            RecordBuffer buffer = buffers.get();
+            buffer.reset();
+            return buffer;
+        }
+
+        /**
+         * @return what was written to the buffer, as UTF-8
+         */
+        String takeString()
         {
-            // e.printStackTrace();
-            logger.error(e.getCause());
+            String result = new String(buf, 0, count, UTF_8);
+            reset();
+            if (buf.length > MAX_KEPT_SIZE)
+                buf = new byte[INITIAL_SIZE];
+            return result;
         }
-        return tmp;
     }
 
 }
@@ -203,8 +203,19 @@ public class PropertiesUtils {
 	 * @return a List of the values read from the file
 	 */
 	public static Set<String> loadPropertiesSet(String[] possiblePaths, String listFilename)   {
-		Set<String> result = new LinkedHashSet<String>();
 	    InputStream propFileIS = getPropertyFileInputStream(possiblePaths, listFilename);
+	    return loadPropertiesSet(propFileIS, listFilename);
+	}
+
+	/**
+	 * load list contained in a stream, as loadPropertiesSet(String[], String)
+	 * does
+	 * @param propFileIS the contents of the list file
+	 * @param listFilename the name of the file, for error messages
+	 * @return a List of the values read from the file
+	 */
+	public static Set<String> loadPropertiesSet(InputStream propFileIS, String listFilename)   {
+		Set<String> result = new LinkedHashSet<String>();
 	    BufferedReader propFileBR = new BufferedReader(new InputStreamReader(propFileIS));
 	    String line;
 	    try
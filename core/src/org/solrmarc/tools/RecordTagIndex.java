@@ -0,0 +1,299 @@
+package org.solrmarc.tools;
+
+import java.util.*;
+
+import org.marc4j.marc.*;
+
+/**
+ * The fields of a MARC record grouped by tag, so finding the fields with a
+ *  tag doesn't scan all the fields of the record as
+ *  Record.getVariableFields(tag) does.  A bitmap over the tags 000 to 999
+ *  tells which tags the record has, so looking for an absent tag costs
+ *  nothing.
+ *
+ * SolrIndexer builds the index of each record once, before the record's
+ *  perRecordInit methods are called, and makes it the current index of the
+ *  indexing thread until the record is indexed.  Custom methods (and the
+ *  MarcUtils methods they call) get it with forRecord(record), or use the
+ *  static getFields and getField methods, which fall back to the record
+ *  itself when the record isn't being indexed.  The record must not be
+ *  changed while it is being indexed.  The index also keeps the record's
+ *  LinkedFields, built the first time they are asked for.
+ */
+public final class RecordTagIndex
+{
+    private static final ThreadLocal<RecordTagIndex> current = new ThreadLocal<RecordTagIndex>();
+
+    @SuppressWarnings("rawtypes")
+    private static final List NO_FIELDS = Collections.emptyList();
+
+    private final Record record;
+    /** bit n is set if the record has a field with tag n */
+    private final long present[] = new long[16];
+    /** number of bits set in the words of present before each word */
+    private final int rankBase[] = new int[16];
+    /** the fields of each tag present, in the order of the bits */
+    @SuppressWarnings("rawtypes")
+    private final List fieldsByRank[];
+    /** fields with tags that aren't 3 digits; null if there are none */
+    @SuppressWarnings("rawtypes")
+    private Map<String, List> fieldsByOtherTag = null;
+    /** the 880s by the tag each is linked to;  null until asked for */
+    private LinkedFields linkedFields = null;
+
+    /**
+     * index the fields of a record
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public RecordTagIndex(Record record)
+    {
+        this.record = record;
+        List allFields = record.getVariableFields();
+        int tagNums[] = new int[allFields.size()];
+        for (int i = 0; i < tagNums.length; i++)
+        {
+            tagNums[i] = tagNum(((VariableField) allFields.get(i)).getTag());
+            if (tagNums[i] >= 0)
+                present[tagNums[i] >> 6] |= 1L << (tagNums[i] & 63);
+        }
+        int numTags = 0;
+        for (int i = 0; i < present.length; i++)
+        {
+            rankBase[i] = numTags;
+            numTags += Long.bitCount(present[i]);
+        }
+        fieldsByRank = new List[numTags];
+        for (int i = 0; i < tagNums.length; i++)
+        {
+            VariableField field = (VariableField) allFields.get(i);
+            List fields;
+            if (tagNums[i] >= 0)
+            {
+                int rank = rank(tagNums[i]);
+                if (fieldsByRank[rank] == null)
+                    fieldsByRank[rank] = new ArrayList(2);
+                fields = fieldsByRank[rank];
+            }
+            else
+            {
+                if (fieldsByOtherTag == null)
+                    fieldsByOtherTag = new HashMap<String, List>();
+                fields = fieldsByOtherTag.get(field.getTag());
+                if (fields == null)
+                {
+                    fields = new ArrayList(2);
+                    fieldsByOtherTag.put(field.getTag(), fields);
+                }
+            }
+            fields.add(field);
+        }
+        for (int i = 0; i < fieldsByRank.length; i++)
+            fieldsByRank[i] = Collections.unmodifiableList(fieldsByRank[i]);
+        if (fieldsByOtherTag != null)
+        {
+            for (Map.Entry<String, List> entry : fieldsByOtherTag.entrySet())
+                entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+    }
+
+    /**
+     * @return the tag as a number from 0 to 999, or -1 if it isn't 3 digits
+     */
+    public static int tagNum(String tag)
+    {
+        if (tag == null || tag.length() != 3)
+            return -1;
+        int num = 0;
+        for (int i = 0; i < 3; i++)
+        {
+            char c = tag.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            num = num * 10 + (c - '0');
+        }
+        return num;
+    }
+
+    private int rank(int tagNum)
+    {
+        int word = tagNum >> 6;
+        long below = present[word] & ((1L << (tagNum & 63)) - 1);
+        return rankBase[word] + Long.bitCount(below);
+    }
+
+    /**
+     * make an index the current index of the calling thread, or clear it
+     * @param index the index of the record about to be indexed, or null
+     *  once it has been indexed
+     */
+    public static void setCurrent(RecordTagIndex index)
+    {
+        if (index == null)
+            current.remove();
+        else
+            current.set(index);
+    }
+
+    /**
+     * @return the current index of the calling thread, if it is for record;
+     *  otherwise a new index of record
+     */
+    public static RecordTagIndex forRecord(Record record)
+    {
+        RecordTagIndex index = current.get();
+        if (index != null && index.record == record)
+            return index;
+        return new RecordTagIndex(record);
+    }
+
+    /**
+     * @return the current index of the calling thread if it is for record,
+     *  or null
+     */
+    private static RecordTagIndex currentFor(Record record)
+    {
+        RecordTagIndex index = current.get();
+        return (index != null && index.record == record) ? index : null;
+    }
+
+    /**
+     * the fields of a record with a tag, found with the record's current
+     *  index if there is one, and otherwise with record.getVariableFields(tag)
+     * @return the fields, which must not be changed
+     */
+    @SuppressWarnings("rawtypes")
+    public static List getFields(Record record, String tag)
+    {
+        RecordTagIndex index = currentFor(record);
+        return (index != null) ? index.getFields(tag) : record.getVariableFields(tag);
+    }
+
+    /**
+     * the fields of a record with any of the tags, found with the record's
+     *  current index if there is one, and otherwise with
+     *  record.getVariableFields(tags)
+     * @return the fields, which must not be changed
+     */
+    @SuppressWarnings("rawtypes")
+    public static List getFields(Record record, String tags[])
+    {
+        RecordTagIndex index = currentFor(record);
+        return (index != null) ? index.getFields(tags) : record.getVariableFields(tags);
+    }
+
+    /**
+     * the first field of a record with a tag, found with the record's current
+     *  index if there is one, and otherwise with record.getVariableField(tag)
+     * @return the field, or null if there is none
+     */
+    public static VariableField getField(Record record, String tag)
+    {
+        RecordTagIndex index = currentFor(record);
+        return (index != null) ? index.getField(tag) : record.getVariableField(tag);
+    }
+
+    /**
+     * the 880 fields of a record by the tag each is linked to, kept with the
+     *  record's current index if there is one, and otherwise built from
+     *  record.getVariableFields("880")
+     */
+    public static LinkedFields getLinkedFields(Record record)
+    {
+        RecordTagIndex index = currentFor(record);
+        return (index != null) ? index.getLinkedFields() : new LinkedFields(record.getVariableFields("880"));
+    }
+
+    /**
+     * @return the record indexed
+     */
+    public Record getRecord()
+    {
+        return record;
+    }
+
+    /**
+     * @return true if the record has a field with the tag, a number from 0
+     *  to 999
+     */
+    public boolean hasTag(int tagNum)
+    {
+        return (present[tagNum >> 6] & (1L << (tagNum & 63))) != 0;
+    }
+
+    /**
+     * @return true if the record has a field with the tag
+     */
+    public boolean hasTag(String tag)
+    {
+        int tagNum = tagNum(tag);
+        if (tagNum >= 0)
+            return hasTag(tagNum);
+        return fieldsByOtherTag != null && fieldsByOtherTag.containsKey(tag);
+    }
+
+    /**
+     * @return the fields with a tag, a number from 0 to 999, in the order of
+     *  the record; the list can't be changed
+     */
+    @SuppressWarnings("rawtypes")
+    public List getFields(int tagNum)
+    {
+        if (!hasTag(tagNum))
+            return NO_FIELDS;
+        return fieldsByRank[rank(tagNum)];
+    }
+
+    /**
+     * @return the fields with a tag, in the order of the record, like
+     *  Record.getVariableFields(tag); the list can't be changed
+     */
+    @SuppressWarnings("rawtypes")
+    public List getFields(String tag)
+    {
+        int tagNum = tagNum(tag);
+        if (tagNum >= 0)
+            return getFields(tagNum);
+        List fields = (fieldsByOtherTag != null) ? fieldsByOtherTag.get(tag) : null;
+        return (fields != null) ? fields : NO_FIELDS;
+    }
+
+    /**
+     * @return the fields with any of the tags, in the order of the record,
+     *  like Record.getVariableFields(tags)
+     */
+    @SuppressWarnings("rawtypes")
+    public List getFields(String tags[])
+    {
+        List found = null;
+        for (String tag : tags)
+        {
+            if (!hasTag(tag))
+                continue;
+            if (found != null)
+                // more than one of the tags:  keep the order of the record
+                return record.getVariableFields(tags);
+            found = getFields(tag);
+        }
+        return (found != null) ? found : NO_FIELDS;
+    }
+
+    /**
+     * @return the 880 fields of the record by the tag each is linked to
+     */
+    public LinkedFields getLinkedFields()
+    {
+        if (linkedFields == null)
+            linkedFields = new LinkedFields(getFields(880));
+        return linkedFields;
+    }
+
+    /**
+     * @return the first field with a tag, like Record.getVariableField(tag),
+     *  or null if there is none
+     */
+    public VariableField getField(String tag)
+    {
+        List<?> fields = getFields(tag);
+        return fields.isEmpty() ? null : (VariableField) fields.get(0);
+    }
+}
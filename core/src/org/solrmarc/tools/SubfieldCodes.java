@@ -0,0 +1,86 @@
+package org.solrmarc.tools;
+
+import java.util.regex.Pattern;
+
+/**
+ * A set of subfield codes, kept as a 128 bit mask of the ASCII codes, so
+ *  whether a subfield is wanted takes a couple of bit operations rather than
+ *  an indexOf or a regular expression match for each subfield.  Codes
+ *  outside ASCII, which MARC doesn't use but a record might have, are looked
+ *  for the way the codes were given.  SubfieldCodes are immutable.
+ */
+public final class SubfieldCodes
+{
+    /** codes 0-63 */
+    private final long low;
+    /** codes 64-127 */
+    private final long high;
+    /** the codes as listed, for codes outside ASCII;  null if matched by a pattern */
+    private final String listed;
+    private final Pattern pattern;
+
+    private SubfieldCodes(long low, long high, String listed, Pattern pattern)
+    {
+        this.low = low;
+        this.high = high;
+        this.listed = listed;
+        this.pattern = pattern;
+    }
+
+    /**
+     * @param codes the codes wanted, e.g. "abcd"
+     * @return the codes in the string, the same as codes.indexOf(code) != -1
+     */
+    public static SubfieldCodes listed(String codes)
+    {
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < codes.length(); i++)
+        {
+            char code = codes.charAt(i);
+            if (code < 64)
+                low |= 1L << code;
+            else if (code < 128)
+                high |= 1L << (code - 64);
+        }
+        return new SubfieldCodes(low, high, codes, null);
+    }
+
+    /**
+     * @param regex a regular expression a wanted code matches, e.g. "[a-z]"
+     * @return the codes matching the expression, the same as
+     *  Pattern.compile(regex).matcher("" + code).matches()
+     * @throws java.util.regex.PatternSyntaxException if regex isn't valid
+     */
+    public static SubfieldCodes matching(String regex)
+    {
+        Pattern pattern = Pattern.compile(regex);
+        long low = 0;
+        long high = 0;
+        for (char code = 0; code < 128; code++)
+        {
+            if (pattern.matcher(String.valueOf(code)).matches())
+            {
+                if (code < 64)
+                    low |= 1L << code;
+                else
+                    high |= 1L << (code - 64);
+            }
+        }
+        return new SubfieldCodes(low, high, null, pattern);
+    }
+
+    /**
+     * @return true if code is one of the codes
+     */
+    public boolean contains(char code)
+    {
+        if (code < 64)
+            return (low & (1L << code)) != 0;
+        if (code < 128)
+            return (high & (1L << (code - 64))) != 0;
+        if (listed != null)
+            return listed.indexOf(code) != -1;
+        return pattern.matcher(String.valueOf(code)).matches();
+    }
+}
@@ -0,0 +1,202 @@
+package org.solrmarc.tools;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A translation map, prepared once when it is loaded so that mapping a value
+ *  doesn't have to look through the map's keys for what kind of map it is:
+ *  the values for exact keys are in a hash table, the "pattern_n" entries
+ *  of a pattern map are compiled into Patterns with their replacements, and
+ *  whether the map has "displayRawIfMissing", "__DEFAULT" or an empty key is
+ *  worked out in advance.  The remap methods give exactly what Utils.remap
+ *  gives for the same entries in a plain Map.
+ *
+ * A TranslationMap can't be changed, so it can be shared by the threads
+ *  indexing records.
+ */
+public final class TranslationMap extends AbstractMap<String, String>
+{
+    /** all the entries, including the pattern_n ones */
+    private final Map<String, String> entries;
+    /** the compiled patterns of a pattern map, in order;  empty if not a pattern map */
+    private final Pattern patterns[];
+    /** the replacement for each pattern */
+    private final String replacements[];
+    /** true if a replacement refers to a group of its pattern, e.g. $1 */
+    private final boolean replacesGroups[];
+    private final boolean displayRawIfMissing;
+    private final boolean hasDefault;
+    private final String defaultValue;
+    private final boolean hasEmptyKey;
+    private final String emptyKeyValue;
+
+    /**
+     * @param entries the keys and values of the map;  values may be null
+     * @throws IllegalArgumentException if a pattern of a pattern map isn't a
+     *  valid regular expression
+     */
+    public TranslationMap(Map<String, String> entries)
+    {
+        this.entries = Collections.unmodifiableMap(new LinkedHashMap<String, String>(entries));
+        List<Pattern> patternList = new ArrayList<Pattern>();
+        List<String> replacementList = new ArrayList<String>();
+        if (entries.containsKey("pattern_0"))
+        {
+            // the same pattern_n entries Utils.remap looks for
+            for (int i = 0; i < entries.size(); i++)
+            {
+                String patternStr = entries.get("pattern_" + i);
+                if (patternStr == null)
+                    continue;
+                String parts[] = patternStr.split("=>");
+                try
+                {
+                    patternList.add(Pattern.compile(parts[0]));
+                }
+                catch (PatternSyntaxException e)
+                {
+                    throw new IllegalArgumentException("Invalid pattern in translation map entry pattern_" + i + ": " + patternStr, e);
+                }
+                replacementList.add(parts.length > 1 ? parts[1] : "");
+            }
+        }
+        patterns = patternList.toArray(new Pattern[patternList.size()]);
+        replacements = replacementList.toArray(new String[replacementList.size()]);
+        replacesGroups = new boolean[replacements.length];
+        for (int i = 0; i < replacements.length; i++)
+            replacesGroups[i] = replacements[i].contains("$");
+        displayRawIfMissing = entries.containsKey("displayRawIfMissing");
+        hasDefault = entries.containsKey("__DEFAULT");
+        defaultValue = entries.get("__DEFAULT");
+        hasEmptyKey = entries.containsKey("");
+        emptyKeyValue = entries.get("");
+    }
+
+    /**
+     * @return true if the map has pattern_n entries
+     */
+    public boolean isPatternMap()
+    {
+        return patterns.length > 0;
+    }
+
+    /**
+     * Remap a field value, as Utils.remap(String, Map, boolean) does
+     * @param fieldVal - the raw value to be mapped
+     * @param allowDefault - if "displayRawIfMissing" is not a key in the map,
+     *   and this is to true, then if the map contains "__DEFAULT" as a key,
+     *   the value of "__DEFAULT" in the map is used.
+     * @return the new value, or null if there is none
+     */
+    public String remap(String fieldVal, boolean allowDefault)
+    {
+        String result = null;
+        for (int i = 0; i < patterns.length; i++)
+        {
+            if (patterns[i].matcher(fieldVal).find())
+            {
+                String newVal = replacements[i];
+                if (replacesGroups[i])
+                {
+                    newVal = patterns[i].matcher(fieldVal).replaceAll(replacements[i]);
+                    fieldVal = newVal;
+                }
+                result = newVal;
+            }
+        }
+        if (entries.containsKey(fieldVal))
+            result = entries.get(fieldVal);
+        else if (displayRawIfMissing)
+            result = fieldVal;
+        else if (allowDefault && hasDefault)
+            result = defaultValue;
+        else if (allowDefault && hasEmptyKey)
+            result = emptyKeyValue;
+
+        if (result == null || result.length() == 0)
+            return null;
+        return result;
+    }
+
+    /**
+     * Remap a set of field values, as Utils.remap(Set, Map, boolean) does
+     * @param set - set of raw values to be mapped
+     * @param allowDefault - if "displayRawIfMissing" is not a key in the map,
+     *   and this is to true, then if the map contains "__DEFAULT" as a key,
+     *   the value of "__DEFAULT" in the map is used.
+     * @return the mapped values
+     */
+    public Set<String> remap(Set<String> set, boolean allowDefault)
+    {
+        Set<String> result = new LinkedHashSet<String>();
+        remap(set, allowDefault, result);
+        return result;
+    }
+
+    /**
+     * Remap a set of field values, as remap(Set, boolean) does, adding the
+     *  mapped values to a set such as a ValueCollector
+     * @param set - the raw values to be mapped
+     * @param allowDefault - as for remap(Set, boolean)
+     * @param result - the set the mapped values are added to
+     */
+    public void remap(Collection<String> set, boolean allowDefault, Set<String> result)
+    {
+        for (String val : set)
+        {
+            if (patterns.length > 0)
+            {
+                String tmpResult = null;
+                for (int i = 0; i < patterns.length; i++)
+                {
+                    if (patterns[i].matcher(val).find())
+                    {
+                        String newVal = replacements[i];
+                        if (replacesGroups[i])
+                        {
+                            newVal = patterns[i].matcher(val).replaceAll(replacements[i]);
+                            val = newVal;
+                        }
+                        else
+                            result.add(newVal);
+                        tmpResult = newVal;
+                    }
+                }
+                if (tmpResult != null)
+                    result.add(tmpResult);
+            }
+            else
+            {
+                String mappedVal = remap(val, allowDefault);
+                if (mappedVal != null)
+                    result.add(mappedVal);
+            }
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public String get(Object key)
+    {
+        return entries.get(key);
+    }
+
+    @Override
+    public int size()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet()
+    {
+        return entries.entrySet();
+    }
+}
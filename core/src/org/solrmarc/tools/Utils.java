@@ -18,6 +18,8 @@ package org.solrmarc.tools;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.*;
 
 import org.apache.log4j.*;
@@ -38,6 +40,21 @@ public final class Utils {
      */
     private Utils(){ }
 
+    /** the one character strings of the Latin-1 characters, shared by slice */
+    private static final String oneCharStrings[] = new String[256];
+    static
+    {
+        for (char c = 0; c < oneCharStrings.length; c++)
+            oneCharStrings[c] = String.valueOf(c);
+    }
+
+    /** regular expressions built by the methods taking them are only cached up to this many */
+    private static final int MAX_CACHED_PATTERNS = 256;
+    /** removeTrailingChar's patterns, by the regular expression given it */
+    private static final ConcurrentMap<String, Pattern> trailingCharPatterns = new ConcurrentHashMap<String, Pattern>();
+    /** removeTrailingPeriod's patterns, by the regular expression given it */
+    private static final ConcurrentMap<String, Pattern> trailingPeriodPatterns = new ConcurrentHashMap<String, Pattern>();
+
     /**
      * return an int for the passed string, catching NumberFormatException
      *  and ignoring it
@@ -60,6 +77,23 @@ public final class Utils {
     }
 
 
+    /**
+     * the same as value.substring(beginIx, endIx), but a single character, as
+     *  most codes at fixed positions of control fields are, is given as a
+     *  shared String rather than a new one
+     */
+    public static String slice(String value, int beginIx, int endIx)
+    {
+        if (endIx == beginIx + 1 && beginIx >= 0 && endIx <= value.length())
+        {
+            char c = value.charAt(beginIx);
+            if (c < oneCharStrings.length)
+                return oneCharStrings[c];
+        }
+        return value.substring(beginIx, endIx);
+    }
+
+
     /**
      * Takes an InputStream, reads the entire contents into a String
      * @param stream - the stream to read in.
@@ -97,18 +131,11 @@ public final class Utils {
             prevResult = currResult;
             currResult = currResult.trim();
 
-            currResult = currResult.replaceAll(" *([,/;:])$", "");
+            currResult = removeTrailingPunctuation(currResult);
 
             // trailing period removed in certain circumstances
-            if (currResult.endsWith("."))
-            {
-                if (currResult.matches(".*\\w\\w\\.$"))
-                    currResult = currResult.substring(0, currResult.length()-1);
-                else if (currResult.matches(".*\\p{L}\\p{L}\\.$"))
-                    currResult = currResult.substring(0, currResult.length()-1);
-                else if (currResult.matches(".*\\w\\p{InCombiningDiacriticalMarks}?\\w\\p{InCombiningDiacriticalMarks}?\\.$"))
-                    currResult = currResult.substring(0, currResult.length()-1);
-            }
+            if (currResult.endsWith(".") && isRemovablePeriod(currResult))
+                currResult = currResult.substring(0, currResult.length()-1);
 
             currResult = removeOuterBrackets(currResult);
 
@@ -120,6 +147,115 @@ public final class Utils {
         return currResult;
     }
 
+    /**
+     * the same as str.replaceAll(" *([,/;:])$", ""), scanning back from the
+     *  end of str:  the last comma, slash, semicolon or colon and the spaces
+     *  before it, if it ends str or only a line terminator follows it (as '$'
+     *  allows)
+     */
+    private static String removeTrailingPunctuation(String str)
+    {
+        int end = str.length();
+        if (end > 0 && isLineTerminator(str.charAt(end - 1)))
+        {
+            // '$' matches before a final "\r\n" as one terminator
+            if (str.charAt(end - 1) == '\n' && end > 1 && str.charAt(end - 2) == '\r')
+                end--;
+            end--;
+        }
+        if (end == 0 || ",/;:".indexOf(str.charAt(end - 1)) == -1)
+            return str;
+        int start = end - 1;
+        while (start > 0 && str.charAt(start - 1) == ' ')
+            start--;
+        return (end == str.length()) ? str.substring(0, start) : str.substring(0, start) + str.substring(end);
+    }
+
+    /**
+     * the same as str matching ".*\\w\\w\\.$", ".*\\p{L}\\p{L}\\.$" or
+     *  ".*\\w\\p{InCombiningDiacriticalMarks}?\\w\\p{InCombiningDiacriticalMarks}?\\.$",
+     *  scanning back from the period at its end:  two letters, or two word
+     *  characters each with an optional combining diacritical mark, before
+     *  the period, and no line terminator (which '.' doesn't match) before
+     *  them
+     */
+    private static boolean isRemovablePeriod(String str)
+    {
+        int period = str.length() - 1;
+
+        // two word characters, each optionally followed by a combining mark
+        int start = period;
+        for (int numWordChars = 0; numWordChars < 2 && start >= 0; numWordChars++)
+        {
+            if (start > 0 && isCombiningDiacriticalMark(str.charAt(start - 1)))
+                start--;
+            start = (start > 0 && isWordChar(str.charAt(start - 1))) ? start - 1 : -1;
+        }
+        if (start >= 0 && !hasLineTerminator(str, start))
+            return true;
+
+        // two letters, as code points
+        start = period;
+        for (int numLetters = 0; numLetters < 2 && start >= 0; numLetters++)
+        {
+            if (start == 0)
+                start = -1;
+            else
+            {
+                int codePoint = str.codePointBefore(start);
+                start = Character.isLetter(codePoint) ? start - Character.charCount(codePoint) : -1;
+            }
+        }
+        return start >= 0 && !hasLineTerminator(str, start);
+    }
+
+    /** \w:  [a-zA-Z_0-9] */
+    private static boolean isWordChar(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /** \p{InCombiningDiacriticalMarks} */
+    private static boolean isCombiningDiacriticalMark(char c)
+    {
+        return c >= '\u0300' && c <= '\u036F';
+    }
+
+    /** a line terminator, which '.' doesn't match and '$' may precede */
+    private static boolean isLineTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * @return true if the first end characters of str have a line terminator
+     */
+    private static boolean hasLineTerminator(String str, int end)
+    {
+        for (int i = 0; i < end; i++)
+        {
+            if (isLineTerminator(str.charAt(i)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the regular expression compiled, from the cache if it has been
+     *  compiled before
+     */
+    private static Pattern compiled(ConcurrentMap<String, Pattern> cache, String key, String regex)
+    {
+        Pattern pattern = cache.get(key);
+        if (pattern == null)
+        {
+            pattern = Pattern.compile(regex);
+            if (cache.size() < MAX_CACHED_PATTERNS)
+                cache.put(key, pattern);
+        }
+        return pattern;
+    }
+
     /**
      * Call cleanData on an entire set of Strings has a side effect
      * of deleting entries that are identical when they are cleaned.
@@ -219,7 +355,8 @@ public final class Utils {
         if (origStr == null)
             return origStr;
            // get rid of reg ex specified chars at the end of the string
-        return origStr.trim().replaceAll(charsToReplaceRegEx + "$", "");
+        Pattern pattern = compiled(trailingCharPatterns, charsToReplaceRegEx, charsToReplaceRegEx + "$");
+        return pattern.matcher(origStr.trim()).replaceAll("");
     }
 
     /**
@@ -240,7 +377,7 @@ public final class Utils {
         if (origStr == null)
             return origStr;
         String result = origStr.trim();
-        if (result.endsWith(".") && result.matches(".*" + precedingCharsRegEx + "\\.$"))
+        if (result.endsWith(".") && compiled(trailingPeriodPatterns, precedingCharsRegEx, ".*" + precedingCharsRegEx + "\\.$").matcher(result).matches())
             result = result.substring(0, result.length() - 1).trim();
 
         return result;
@@ -326,6 +463,8 @@ public final class Utils {
      */
     public static String remap(String fieldVal, Map<String, String> map, boolean allowDefault)
     {
+        if (map instanceof TranslationMap)
+            return ((TranslationMap) map).remap(fieldVal, allowDefault);
         String result = null;
 
         if (map.keySet().contains("pattern_0"))
@@ -385,6 +524,8 @@ public final class Utils {
     public static Set<String> remap(Set<String> set, Map<String, String> map, boolean allowDefault)
     {
         if (map == null)  return(set);
+        if (map instanceof TranslationMap)
+            return ((TranslationMap) map).remap(set, allowDefault);
         Iterator<String> iter = set.iterator();
         Set<String> result = new LinkedHashSet<String>();
 
@@ -0,0 +1,241 @@
+package org.solrmarc.tools;
+
+import java.util.*;
+
+/**
+ * A reusable, insertion ordered set of field values, for collecting the
+ *  values of an index specification without allocating a new
+ *  LinkedHashSet (and an entry object per value) for every specification of
+ *  every record.  It behaves like a LinkedHashSet of Strings:  values are
+ *  kept in the order first added and added only once.  Small sets are
+ *  searched for duplicates directly;  larger ones are indexed by a HashSet
+ *  that is kept for the next use.  A collector also holds a StringBuilder
+ *  for building values.
+ *
+ * Collectors are pooled per thread, so each indexing worker reuses its own:
+ *  get one with acquire() and give it back with release() when its values
+ *  have been used, typically in a finally block.  Values that outlive the
+ *  collector, such as those put in a Solr document, are copied out with
+ *  toFieldValue() or toSet().  A collector must only be used by the thread
+ *  that acquired it.
+ */
+public final class ValueCollector extends AbstractSet<String>
+{
+    /** collectors kept for reuse by each thread */
+    private static final ThreadLocal<ArrayDeque<ValueCollector>> pool = new ThreadLocal<ArrayDeque<ValueCollector>>()
+    {
+        @Override
+        protected ArrayDeque<ValueCollector> initialValue()
+        {
+            return new ArrayDeque<ValueCollector>();
+        }
+    };
+
+    /** most collectors kept in a thread's pool */
+    private static final int MAX_POOLED = 16;
+    /** sets larger than this are indexed by a HashSet to find duplicates */
+    private static final int LINEAR_SEARCH_MAX = 12;
+    /** values longer than this aren't kept in the builder between uses */
+    private static final int MAX_KEPT_BUILDER = 8192;
+
+    private String values[] = new String[8];
+    private int size = 0;
+    /** index of the values, once there are more than LINEAR_SEARCH_MAX;  null until first needed */
+    private HashSet<String> index = null;
+    private boolean indexed = false;
+    private StringBuilder builder = new StringBuilder(256);
+    /** true while the collector is in a pool */
+    private boolean pooled = false;
+
+    /**
+     * a collector that isn't pooled;  most code should use acquire()
+     */
+    public ValueCollector()
+    {
+    }
+
+    /**
+     * @return an empty collector from the calling thread's pool
+     */
+    public static ValueCollector acquire()
+    {
+        ValueCollector collector = pool.get().pollFirst();
+        if (collector == null)
+            return new ValueCollector();
+        collector.pooled = false;
+        return collector;
+    }
+
+    /**
+     * empty the collector and give it back to the calling thread's pool;  it
+     *  must not be used after this
+     */
+    public void release()
+    {
+        if (pooled)
+            return;
+        clear();
+        if (builder.capacity() > MAX_KEPT_BUILDER)
+            builder = new StringBuilder(256);
+        ArrayDeque<ValueCollector> collectors = pool.get();
+        if (collectors.size() < MAX_POOLED)
+        {
+            pooled = true;
+            collectors.addFirst(this);
+        }
+    }
+
+    /**
+     * @return the collector's StringBuilder, emptied, for building a value
+     *  to add
+     */
+    public StringBuilder builder()
+    {
+        builder.setLength(0);
+        return builder;
+    }
+
+    @Override
+    public boolean add(String value)
+    {
+        if (contains(value))
+            return false;
+        if (size == values.length)
+            values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+        if (indexed)
+            index.add(value);
+        else if (size > LINEAR_SEARCH_MAX)
+        {
+            if (index == null)
+                index = new HashSet<String>();
+            for (int i = 0; i < size; i++)
+                index.add(values[i]);
+            indexed = true;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object value)
+    {
+        if (indexed)
+            return index.contains(value);
+        for (int i = 0; i < size; i++)
+        {
+            if (value == null ? values[i] == null : value.equals(values[i]))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return the value added i-th
+     */
+    public String get(int i)
+    {
+        if (i >= size)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        return values[i];
+    }
+
+    /**
+     * @return the first value added, or null if there is none
+     */
+    public String first()
+    {
+        return (size > 0) ? values[0] : null;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        if (indexed)
+        {
+            index.clear();
+            indexed = false;
+        }
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+        return new Iterator<String>()
+        {
+            private int next = 0;
+
+            public boolean hasNext()
+            {
+                return next < size;
+            }
+
+            public String next()
+            {
+                if (next >= size)
+                    throw new NoSuchElementException();
+                return values[next++];
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the values, in order
+     */
+    public Set<String> toSet()
+    {
+        Set<String> set = new LinkedHashSet<String>(Math.max(4, size * 4 / 3 + 1));
+        for (int i = 0; i < size; i++)
+            set.add(values[i]);
+        return set;
+    }
+
+    /**
+     * @return the values as a Solr document holds them, as
+     *  SolrIndexer.addFieldsToMap puts them:  null if there are none, the
+     *  value itself if there is one, and otherwise a copy of the values
+     */
+    public Object toFieldValue()
+    {
+        if (size == 0)
+            return null;
+        if (size == 1)
+            return values[0];
+        return toSet();
+    }
+
+    /**
+     * @return the values joined with a separator, as Utils.join does
+     */
+    public String join(String separator)
+    {
+        if (size == 1)
+            return values[0];
+        StringBuilder result = builder();
+        for (int i = 0; i < size; i++)
+        {
+            if (i > 0)
+                result.append(separator);
+            result.append(values[i]);
+        }
+        return result.toString();
+    }
+}
@@ -8,21 +8,35 @@ import org.solrmarc.tools.*;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
+        AllFieldsTextTest.class,
         CallNumberUnitTests.class,
+        CleanDataTest.class,
         CombineMultBibsMhldsReaderTest.class,
         CommandLineUtilTests.class,
+        CommitSchedulerTest.class,
+        ConfigSnapshotTest.class,
         DateUtilsTests.class,
+        FieldSpecTest.class,
         GetFormatMixinTest.class,
         HathiJsonReaderTest.class,
+        LinkedFieldsTest.class,
 //        IndexSmokeTest.class, // duplicated in RemoteServerTest
         MergeSummaryHoldingsTests.class,
         MarcCombiningReaderTests.class,
+        MarcImporterCheckpointTest.class,
+        MarcImporterDeleteTest.class,
+        MarcImporterPipelineTest.class,
+        MarcRecordBytesReaderTest.class,
         RecordReaderTest.class,
+        RecordTagIndexTest.class,
         RemoteServerTest.class,
+        SolrIndexerSpecTest.class,
         SolrUpdateTest.class,
         SolrUtilTests.class,
         StringNaturalCompareTest.class,
-        UtilUnitTests.class
+        TranslationMapTest.class,
+        UtilUnitTests.class,
+        ValueCollectorTest.class
         })
 
 public class AllTests
@@ -0,0 +1,103 @@
+package org.solrmarc.marc;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+import org.solrmarc.AbstractCoreTest;
+import org.solrmarc.testUtils.MemorySolrProxy;
+
+/**
+ * tests for committing to Solr while indexing
+ */
+public class CommitSchedulerTest extends AbstractCoreTest
+{
+    private static final String TEST_FILE = "med_bibs-20sample.mrc";
+
+@Before
+    public final void setup()
+    {
+        System.setProperty("marc.source", "FILE");
+        // the proxy created by init is replaced by an in-memory one
+        System.setProperty("solr.hosturl", "http://localhost:8983/solr");
+    }
+
+@After
+    public final void tearDown()
+    {
+        System.clearProperty("solr.hosturl");
+        System.clearProperty("solr.commit_every_docs");
+        System.clearProperty("solr.commit_every_bytes");
+        System.clearProperty("solr.update.batch_size");
+    }
+
+    /**
+     * a hard commit should be done every so many documents
+     */
+@Test
+    public void testHardCommitEveryDocs()
+            throws FileNotFoundException
+    {
+        System.setProperty("solr.commit_every_docs", "7");
+        System.setProperty("solr.update.batch_size", "5");
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed", 20, importTestFile(proxy));
+        assertEquals("wrong number of commits", 2, proxy.numCommits);
+    }
+
+    /**
+     * a hard commit should be done every so many bytes of documents
+     */
+@Test
+    public void testHardCommitEveryBytes()
+            throws FileNotFoundException
+    {
+        System.setProperty("solr.commit_every_bytes", "1");
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed", 20, importTestFile(proxy));
+        assertEquals("every document is bigger than the limit", 20, proxy.numCommits);
+    }
+
+    /**
+     * without commit properties, nothing should be committed while indexing
+     */
+@Test
+    public void testNoCommitsByDefault()
+            throws FileNotFoundException
+    {
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed", 20, importTestFile(proxy));
+        assertEquals("wrong number of commits", 0, proxy.numCommits);
+    }
+
+    /**
+     * commitWithin should be passed to the proxy, and soft commits done on
+     *  the timer until the scheduler stops
+     */
+@Test
+    public void testSoftCommitsAndCommitWithin()
+            throws InterruptedException
+    {
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        CommitScheduler scheduler = new CommitScheduler(0, 0, 1, 5000);
+        scheduler.start(proxy);
+        assertEquals("commitWithin not set", 5000, proxy.commitWithinMs);
+        Thread.sleep(1500);
+        scheduler.stop();
+        int numSoftCommits = proxy.numSoftCommits;
+        assertTrue("soft commit should have been done", numSoftCommits >= 1);
+        Thread.sleep(1200);
+        assertEquals("soft commits should stop with the scheduler", numSoftCommits, proxy.numSoftCommits);
+    }
+
+
+    private int importTestFile(MemorySolrProxy proxy)
+            throws FileNotFoundException
+    {
+        MarcImporter importer = new MarcImporter();
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), testDataParentPath + File.separator + TEST_FILE });
+        importer.solrProxy = proxy;
+        return importer.importRecords();
+    }
+}
@@ -0,0 +1,164 @@
+package org.solrmarc.marc;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.solrmarc.AbstractCoreTest;
+import org.solrmarc.testUtils.MemorySolrProxy;
+
+/**
+ * tests for saving import checkpoints and resuming an import from one
+ */
+public class MarcImporterCheckpointTest extends AbstractCoreTest
+{
+    private static final String TEST_FILE = "med_bibs-20sample.mrc";
+    private File checkpointFile = null;
+
+@Before
+    public final void setup()
+            throws IOException
+    {
+        System.setProperty("marc.source", "FILE");
+        // the proxy created by init is replaced by an in-memory one
+        System.setProperty("solr.hosturl", "http://localhost:8983/solr");
+        checkpointFile = File.createTempFile("MarcImporterCheckpointTest", ".properties");
+        checkpointFile.delete();
+        System.setProperty("solrmarc.checkpoint.file", checkpointFile.getPath());
+        System.setProperty("solrmarc.checkpoint.interval", "8");
+    }
+
+@After
+    public final void tearDown()
+    {
+        System.clearProperty("solr.hosturl");
+        System.clearProperty("solrmarc.checkpoint.file");
+        System.clearProperty("solrmarc.checkpoint.interval");
+        System.clearProperty("solrmarc.checkpoint.resume");
+        System.clearProperty("solrmarc.indexing.threads");
+        System.clearProperty("solr.commit_at_end");
+        if (checkpointFile != null)
+            checkpointFile.delete();
+    }
+
+    /**
+     * a checkpoint should be saved, after a commit, every interval records
+     */
+@Test
+    public void testCheckpointSavedAfterCommits()
+            throws IOException
+    {
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed", 20, importTestFile(proxy, TEST_FILE));
+        assertEquals("wrong number of checkpoint commits", 2, proxy.numCommits);
+
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile.getPath());
+        assertNotNull("checkpoint should be saved", checkpoint);
+        assertEquals("wrong input file", new File(testDataParentPath, TEST_FILE).getAbsolutePath(), checkpoint.inputFile);
+        assertEquals("wrong number of records done", 16, checkpoint.recordCount);
+        assertTrue("offset should be known for binary marc", checkpoint.hasOffset());
+        assertTrue(checkpoint.lastRecordOffset < checkpoint.offset);
+    }
+
+    /**
+     * resuming should seek past the records done and index only the rest
+     */
+@Test
+    public void testResumeIndexesOnlyRemainingRecords()
+            throws IOException
+    {
+        MemorySolrProxy allProxy = new MemorySolrProxy(false);
+        importTestFile(allProxy, TEST_FILE);
+
+        System.setProperty("solrmarc.checkpoint.resume", "true");
+        MemorySolrProxy resumedProxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed on resume", 4, importTestFile(resumedProxy, TEST_FILE));
+        assertResumedDocsAreLast(allProxy, resumedProxy, 4);
+    }
+
+    /**
+     * if the record at the checkpointed offset isn't the last record done, the
+     *  records done should be re-read instead
+     */
+@Test
+    public void testResumeWithBadOffsetRereads()
+            throws IOException
+    {
+        MemorySolrProxy allProxy = new MemorySolrProxy(false);
+        importTestFile(allProxy, TEST_FILE);
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile.getPath());
+        new ImportCheckpoint(checkpoint.inputFile, checkpoint.recordCount, checkpoint.offset, 0, checkpoint.lastControlNumber).save(checkpointFile.getPath());
+
+        System.setProperty("solrmarc.checkpoint.resume", "true");
+        MemorySolrProxy resumedProxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed on resume", 4, importTestFile(resumedProxy, TEST_FILE));
+        assertResumedDocsAreLast(allProxy, resumedProxy, 4);
+    }
+
+    /**
+     * a checkpoint for another file should be ignored
+     */
+@Test
+    public void testCheckpointForOtherFileIgnored()
+            throws IOException
+    {
+        new ImportCheckpoint(new File("other.mrc").getAbsolutePath(), 16, 1000, 900, "123").save(checkpointFile.getPath());
+        System.setProperty("solrmarc.checkpoint.resume", "true");
+        assertEquals("wrong number of records indexed", 20, importTestFile(new MemorySolrProxy(false), TEST_FILE));
+    }
+
+    /**
+     * with several indexing threads, records finish out of order; the final
+     *  checkpoint should still cover every record
+     */
+@Test
+    public void testThreadedImportCheckpointsAllRecords()
+            throws IOException
+    {
+        System.setProperty("solrmarc.indexing.threads", "4");
+        System.setProperty("solrmarc.checkpoint.interval", "3");
+        System.setProperty("solr.commit_at_end", "true");
+        MarcImporter importer = new MarcImporter();
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), testDataParentPath + File.separator + TEST_FILE });
+        importer.solrProxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed", 20, importer.importRecords());
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile.getPath());
+        assertTrue("checkpoint can't include records not written", checkpoint.recordCount <= 18);
+
+        importer.finish();
+        checkpoint = ImportCheckpoint.load(checkpointFile.getPath());
+        assertEquals("final checkpoint should include every record", 20, checkpoint.recordCount);
+    }
+
+
+    /**
+     * the documents added when resuming should be the last ones of the file
+     */
+    private void assertResumedDocsAreLast(MemorySolrProxy allProxy, MemorySolrProxy resumedProxy, int numResumed)
+    {
+        assertEquals("wrong number of documents added on resume", numResumed, resumedProxy.docs.size());
+        for (String id : resumedProxy.docs.keySet())
+            assertEquals("resumed document differs", allProxy.docs.get(id), resumedProxy.docs.get(id));
+        ImportCheckpoint checkpoint = null;
+        try
+        {
+            checkpoint = ImportCheckpoint.load(checkpointFile.getPath());
+        }
+        catch (IOException e)
+        {
+            fail(e.getMessage());
+        }
+        assertFalse("last record done before resuming shouldn't be added again", resumedProxy.docs.containsKey(checkpoint.lastControlNumber));
+    }
+
+    private int importTestFile(MemorySolrProxy proxy, String testFile)
+            throws FileNotFoundException
+    {
+        MarcImporter importer = new MarcImporter();
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), testDataParentPath + File.separator + testFile });
+        importer.solrProxy = proxy;
+        return importer.importRecords();
+    }
+}
@@ -0,0 +1,91 @@
+package org.solrmarc.marc;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.solrmarc.AbstractCoreTest;
+import org.solrmarc.testUtils.MemorySolrProxy;
+
+/**
+ * tests for deleting the records listed in marc.ids_to_delete
+ */
+public class MarcImporterDeleteTest extends AbstractCoreTest
+{
+    private File delFile = null;
+
+@Before
+    public final void setup()
+            throws IOException
+    {
+        System.setProperty("marc.source", "FILE");
+        // the proxy created by init is replaced by an in-memory one
+        System.setProperty("solr.hosturl", "http://localhost:8983/solr");
+        delFile = File.createTempFile("MarcImporterDeleteTest", ".del");
+        PrintWriter out = new PrintWriter(new FileWriter(delFile));
+        out.println("# ids to delete");
+        out.println("123");
+        out.println("456x");
+        out.println("");
+        out.println("u123");
+        out.println("789");
+        out.println("012");
+        out.close();
+    }
+
+@After
+    public final void tearDown()
+    {
+        System.clearProperty("solr.hosturl");
+        System.clearProperty("solr.delete.batch_size");
+        System.clearProperty("marc.delete_record_id_mapper");
+        if (delFile != null)
+            delFile.delete();
+    }
+
+    /**
+     * ids should be mapped, de-duplicated and sent in chunks
+     */
+@Test
+    public void testDeletesMappedDedupedAndChunked()
+            throws FileNotFoundException
+    {
+        System.setProperty("solr.delete.batch_size", "2");
+        System.setProperty("marc.delete_record_id_mapper", "u?([0-9]*).*->u$1");
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        int numDeleted = deleteFromTestFile(proxy);
+
+        assertEquals("wrong number of records deleted", 4, numDeleted);
+        assertEquals("wrong ids deleted", Arrays.asList("u123", "u456", "u789", "u012"), proxy.deletedIds);
+        assertEquals("wrong number of delete requests", 2, proxy.numDeleteRequests);
+    }
+
+    /**
+     * without a mapper, ids are deleted as they appear in the file
+     */
+@Test
+    public void testDeletesWithoutMapper()
+            throws FileNotFoundException
+    {
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        int numDeleted = deleteFromTestFile(proxy);
+
+        assertEquals("wrong number of records deleted", 5, numDeleted);
+        assertEquals("wrong ids deleted", Arrays.asList("123", "456x", "u123", "789", "012"), proxy.deletedIds);
+        assertEquals("wrong number of delete requests", 1, proxy.numDeleteRequests);
+    }
+
+
+    private int deleteFromTestFile(MemorySolrProxy proxy)
+            throws FileNotFoundException
+    {
+        MarcImporter importer = new MarcImporter();
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file") });
+        importer.solrProxy = proxy;
+        importer.setDeleteRecordListFilename(delFile.getAbsolutePath());
+        return importer.deleteRecords();
+    }
+
+}
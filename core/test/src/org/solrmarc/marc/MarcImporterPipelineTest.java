@@ -0,0 +1,306 @@
+package org.solrmarc.marc;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.solrmarc.AbstractCoreTest;
+import org.marc4j.ErrorHandler;
+import org.marc4j.marc.Record;
+import org.solrmarc.index.FieldSpecProfiler;
+import org.solrmarc.index.RecordContext;
+import org.solrmarc.index.SolrIndexer;
+import org.solrmarc.solr.*;
+import org.solrmarc.testUtils.MemorySolrProxy;
+
+/**
+ * tests for the multi-threaded reader -> indexer -> writer pipeline in
+ *  MarcImporter, using a SolrProxy that keeps the documents in memory.
+ */
+public class MarcImporterPipelineTest extends AbstractCoreTest
+{
+    private static final String TEST_FILE = "med_bibs-20sample.mrc";
+
+@Before
+    public final void setup()
+    {
+        System.setProperty("marc.source", "FILE");
+        // the proxy created by init is replaced by an in-memory one
+        System.setProperty("solr.hosturl", "http://localhost:8983/solr");
+    }
+
+@After
+    public final void tearDown()
+    {
+        System.clearProperty("solr.hosturl");
+        System.clearProperty("solrmarc.indexing.threads");
+        System.clearProperty("solrmarc.indexing.queue_size");
+        System.clearProperty("solr.update.batch_size");
+        System.clearProperty("solrmarc.indexing.file_threads");
+        System.clearProperty("marc.path");
+        System.clearProperty("solr.commit_at_end");
+        System.clearProperty("solrmarc.profile.fields");
+        System.clearProperty("solrmarc.benchmark");
+        System.clearProperty("marc.default_encoding");
+        System.clearProperty("solrmarc.indexing.class");
+    }
+
+    /**
+     * the multi-threaded pipeline should add the same documents as the
+     *  single threaded loop
+     */
+@Test
+    public void testThreadedImportAddsSameDocs()
+            throws FileNotFoundException
+    {
+        MemorySolrProxy singleProxy = new MemorySolrProxy(false);
+        int numSingle = importTestFile(singleProxy, 1);
+        assertEquals("wrong number of records indexed", 20, numSingle);
+
+        System.setProperty("solrmarc.indexing.queue_size", "2");
+        MemorySolrProxy threadedProxy = new MemorySolrProxy(false);
+        int numThreaded = importTestFile(threadedProxy, 4);
+        assertEquals("wrong number of records indexed", numSingle, numThreaded);
+        assertEquals("threaded import added different documents", singleProxy.docs, threadedProxy.docs);
+    }
+
+    /**
+     * a SolrRuntimeException from the writer should halt the pipeline, as it
+     *  does the single threaded loop
+     */
+@Test
+    public void testSolrFailureHaltsThreadedImport()
+            throws FileNotFoundException
+    {
+        try
+        {
+            importTestFile(new MemorySolrProxy(true), 4);
+            fail("SolrRuntimeException should have halted indexing");
+        }
+        catch (SolrRuntimeException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * batched adds should send fewer requests, and a document Solr rejects
+     *  should be the only one skipped
+     */
+@Test
+    public void testBatchedAddsSkipOnlyRejectedDoc()
+            throws FileNotFoundException
+    {
+        System.setProperty("solr.update.batch_size", "8");
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        proxy.rejectId = "5680658";
+        int numIndexed = importTestFile(proxy, 1);
+        assertEquals("wrong number of records indexed", 19, numIndexed);
+        assertEquals("wrong number of documents added", 19, proxy.docs.size());
+        assertFalse("rejected document was added", proxy.docs.containsKey(proxy.rejectId));
+        // 3 batches, plus 2 halves, 2 quarters and 2 single docs to find the bad one
+        assertEquals("wrong number of add requests", 9, proxy.numAddRequests);
+    }
+
+    /**
+     * several files indexed at once should add the same documents as the
+     *  files indexed one after another, and the counts should cover them all
+     */
+@Test
+    public void testFilesImportedConcurrently()
+            throws FileNotFoundException
+    {
+        String files[] = new String[] { TEST_FILE, "selectedRecs.mrc", "formatRecs.mrc" };
+        MemorySolrProxy separateProxy = new MemorySolrProxy(false);
+        int numSeparate = 0;
+        for (String file : files)
+        {
+            MarcImporter importer = new MarcImporter();
+            importer.init(new String[] { getRequiredSystemProperty("test.config.file"), testDataParentPath + File.separator + file });
+            importer.solrProxy = separateProxy;
+            numSeparate += importer.importRecords();
+        }
+
+        System.setProperty("solrmarc.indexing.file_threads", "2");
+        System.setProperty("solr.commit_at_end", "true");
+        MemorySolrProxy concurrentProxy = new MemorySolrProxy(false);
+        MarcImporter importer = new MarcImporter();
+        String args[] = new String[files.length + 1];
+        args[0] = getRequiredSystemProperty("test.config.file");
+        for (int i = 0; i < files.length; i++)
+            args[i + 1] = testDataParentPath + File.separator + files[i];
+        importer.init(args);
+        assertEquals("wrong number of files to index", files.length, importer.marcFileList.size());
+        importer.solrProxy = concurrentProxy;
+        int numConcurrent = importer.importFiles(importer.marcFileList);
+        importer.finish();
+
+        assertEquals("wrong number of records indexed", numSeparate, numConcurrent);
+        assertEquals("concurrent import added different documents", separateProxy.docs, concurrentProxy.docs);
+        assertEquals("all the files should be committed once", 1, concurrentProxy.numCommits);
+    }
+
+    /**
+     * file name patterns in marc.path should expand to the matching files
+     */
+@Test
+    public void testMarcPathPatternExpands()
+    {
+        List<String> marcFiles = MarcHandler.expandMarcPath(testDataParentPath + File.separator + "rec6024816*.mrc, " + testDataParentPath + File.separator + TEST_FILE);
+        assertEquals("wrong number of files", 4, marcFiles.size());
+        assertTrue("files matching a pattern should be sorted", marcFiles.get(0).endsWith("rec6024816-8.mrc"));
+        assertTrue(marcFiles.get(1).endsWith("rec6024816.mrc"));
+        assertTrue(marcFiles.get(2).endsWith("rec6024816and8.mrc"));
+        assertTrue(marcFiles.get(3).endsWith(TEST_FILE));
+    }
+
+    /**
+     * profiling should count every call of each index specification and the
+     *  values it produced
+     */
+@Test
+    public void testFieldProfileCountsEachSpec()
+            throws IOException
+    {
+        System.setProperty("solrmarc.profile.fields", "true");
+        System.setProperty("solrmarc.indexing.threads", "1");
+        MarcImporter importer = new MarcImporter();
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), testDataParentPath + File.separator + TEST_FILE });
+        importer.solrProxy = new MemorySolrProxy(false);
+        assertEquals("wrong number of records indexed", 20, importer.importRecords());
+
+        FieldSpecProfiler profiler = importer.indexer.getProfiler();
+        assertNotNull("indexer should be profiled", profiler);
+        Map<String, FieldSpecProfiler.Stats> statsByField = new HashMap<String, FieldSpecProfiler.Stats>();
+        for (FieldSpecProfiler.Stats stats : profiler.getFieldStats())
+            statsByField.put(stats.name, stats);
+        assertEquals("wrong number of calls for id", 20, statsByField.get("id").calls);
+        assertEquals("wrong number of values for id", 20, statsByField.get("id").values);
+        assertEquals("wrong number of calls for perRecordInit", 20, statsByField.get(FieldSpecProfiler.PER_RECORD_INIT).calls);
+        assertEquals("wrong number of walks over the records' fields", 20, statsByField.get(FieldSpecProfiler.TAG_DISPATCH).calls);
+
+        StringWriter csv = new StringWriter();
+        profiler.writeCsv(csv);
+        assertTrue("CSV should have a line for id", csv.toString().contains("\nfield,id,20,"));
+    }
+
+    /**
+     * the metrics should count each stage of the pipeline, and the documents
+     *  Solr rejected
+     */
+@Test
+    public void testMetricsCountStages()
+            throws FileNotFoundException
+    {
+        System.setProperty("solrmarc.indexing.threads", "3");
+        MarcImporter importer = new MarcImporter();
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), testDataParentPath + File.separator + TEST_FILE });
+        MemorySolrProxy proxy = new MemorySolrProxy(false);
+        proxy.rejectId = "5680658";
+        importer.solrProxy = proxy;
+        assertEquals("wrong number of records indexed", 19, importer.importRecords());
+
+        IndexingMetrics metrics = importer.getMetrics();
+        assertEquals("wrong number of records read", 20, metrics.getRecordsRead());
+        assertEquals("wrong number of records indexed", 20, metrics.getRecordsIndexed());
+        assertEquals("wrong number of records written", 20, metrics.getRecordsWritten());
+        assertEquals("wrong number of rejected records", 1, metrics.getSolrRejectedRecords());
+        assertEquals("queues should be gone once the pipeline is done", 0, metrics.getRecordQueueDepth());
+        assertTrue("median latency should be no more than the 99th percentile",
+                metrics.getIndexLatencyP50Micros() <= metrics.getIndexLatencyP99Micros());
+
+        String csvLine = metrics.formatCsvLine(1.0, 1.0, 1.0, 0.0);
+        assertEquals("CSV line doesn't match the header", IndexingMetrics.CSV_HEADER.split(",").length, csvLine.split(",").length);
+    }
+
+    /**
+     * in benchmark mode, documents should be built and discarded, and each
+     *  stage counted
+     */
+@Test
+    public void testBenchmarkDiscardsDocs()
+            throws FileNotFoundException
+    {
+        System.setProperty("solrmarc.benchmark", "true");
+        System.setProperty("solr.update.batch_size", "5");
+        MarcImporter importer = new MarcImporter();
+        File marcFile = new File(testDataParentPath, TEST_FILE);
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), marcFile.getPath() });
+        assertTrue("documents should go to the discarding proxy", importer.solrProxy instanceof NullSolrProxy);
+        NullSolrProxy proxy = (NullSolrProxy) importer.solrProxy;
+        assertEquals("wrong number of records indexed", 20, importer.importRecords());
+        assertEquals("wrong number of documents built", 20, proxy.getNumDocs());
+        assertTrue("documents should have fields", proxy.getNumFields() > 20);
+
+        BenchmarkStats stats = importer.getBenchmarkStats();
+        assertEquals("wrong number of records read", 20, stats.getRecords(BenchmarkStats.READ));
+        assertEquals("wrong number of records mapped", 20, stats.getRecords(BenchmarkStats.MAP));
+        assertEquals("wrong number of documents built", 20, stats.getRecords(BenchmarkStats.BUILD));
+        assertEquals("bytes read should add up to the file", marcFile.length(), stats.getBytesRead());
+        assertTrue("mapping should take some time", stats.getNanos(BenchmarkStats.MAP) > 0);
+        assertTrue("report should have a line per stage", stats.formatReport(1000).contains("build"));
+    }
+
+    /**
+     * the indexer is loaded before the reader is opened, so a single file
+     *  read for an indexer that stores whole records should keep the bytes
+     *  of each record for it
+     */
+@Test
+    public void testRecordBytesKeptForSingleFile()
+            throws FileNotFoundException
+    {
+        System.setProperty("marc.default_encoding", "UTF8");
+        System.setProperty("solrmarc.indexing.class", RecordBytesIndexer.class.getName());
+        System.setProperty("solrmarc.indexing.threads", "1");
+        MarcImporter importer = new MarcImporter();
+        File marcFile = new File(testDataParentPath, TEST_FILE);
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), marcFile.getPath() });
+        assertNotNull("record bytes should be kept for marc_display", importer.recordBytesReader);
+
+        importer.solrProxy = new MemorySolrProxy(false);
+        RecordBytesIndexer.numRecords = 0;
+        RecordBytesIndexer.numBytes = 0;
+        assertEquals("wrong number of records indexed", 20, importer.importRecords());
+        assertEquals("every record should be given its bytes", 20, RecordBytesIndexer.numRecords);
+        assertEquals("record bytes should add up to the file", marcFile.length(), RecordBytesIndexer.numBytes);
+    }
+
+    /**
+     * counts the records it is given the bytes of
+     */
+    public static class RecordBytesIndexer extends SolrIndexer
+    {
+        static int numRecords;
+        static long numBytes;
+
+        public RecordBytesIndexer(String indexingPropsFile, String propertyDirs[])
+        {
+            super(indexingPropsFile, propertyDirs);
+        }
+
+        @Override
+        public RecordContext createRecordContext(Record record, ErrorHandler errors, byte recordBytes[])
+        {
+            if (recordBytes != null)
+            {
+                numRecords++;
+                numBytes += recordBytes.length;
+            }
+            return super.createRecordContext(record, errors, recordBytes);
+        }
+    }
+
+    private int importTestFile(SolrProxy proxy, int numThreads)
+            throws FileNotFoundException
+    {
+        System.setProperty("solrmarc.indexing.threads", String.valueOf(numThreads));
+        MarcImporter importer = new MarcImporter();
+        importer.init(new String[] { getRequiredSystemProperty("test.config.file"), testDataParentPath + File.separator + TEST_FILE });
+        importer.solrProxy = proxy;
+        return importer.importRecords();
+    }
+
+}
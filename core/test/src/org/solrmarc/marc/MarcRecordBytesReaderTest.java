@@ -0,0 +1,132 @@
+package org.solrmarc.marc;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.marc4j.ErrorHandler;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.marc.Record;
+import org.solrmarc.tools.MarcUtils;
+
+/**
+ * tests that the bytes MarcRecordBytesReader keeps for a record are the same
+ *  as writing the record again as binary MARC would give, and that it reads
+ *  the same records as a MarcPermissiveStreamReader
+ */
+public class MarcRecordBytesReaderTest
+{
+    private String testDataPath;
+
+    @Before
+    public void setUp()
+    {
+        if (System.getProperty("solrmarc.path") == null)
+            System.setProperty("solrmarc.path", "core");
+        testDataPath = System.getProperty("solrmarc.path") + File.separator + "test" + File.separator + "data";
+    }
+
+    /**
+     * UTF-8 records, MARC-8 records and records with errors
+     */
+    @Test
+    public void testBytesSameAsWritingAgain() throws IOException
+    {
+        int numWithBytes = 0;
+        for (String fileName : new String[] { "med_bibs-20sample.mrc", "url_test_recs.mrc", "formatRecs.mrc", "nonlatinscripts.mrc", "WPUbadrecords.mrc" })
+        {
+            byte fileBytes[] = readFile(fileName);
+            List<Record> expected = readRecords(new MarcPermissiveStreamReader(new ByteArrayInputStream(fileBytes), new ErrorHandler(), false, "BESTGUESS"));
+            MarcRecordBytesReader reader = new MarcRecordBytesReader(new ByteArrayInputStream(fileBytes), new ErrorHandler(), false, "BESTGUESS");
+            int i = 0;
+            while (reader.hasNext())
+            {
+                Record record = reader.next();
+                assertEquals(fileName, expected.get(i++).toString(), record.toString());
+                byte recordBytes[] = reader.getRecordBytes();
+                if (recordBytes == null)
+                    continue;
+                numWithBytes++;
+                String written = MarcUtils.getRecordAsBinaryStr(record);
+                assertEquals(fileName + " " + record.getControlNumber(), written, new String(recordBytes, "UTF-8"));
+                assertEquals(written, MarcUtils.getRecordAsBinaryStr(record, recordBytes));
+            }
+            assertEquals(fileName, expected.size(), i);
+        }
+        assertTrue(numWithBytes >= 20);
+    }
+
+    /**
+     * every record of a file of UTF-8 records is kept
+     */
+    @Test
+    public void testUtf8RecordsKept() throws IOException
+    {
+        MarcRecordBytesReader reader = new MarcRecordBytesReader(new ByteArrayInputStream(readFile("med_bibs-20sample.mrc")), null, false, "BESTGUESS");
+        int numRecords = 0;
+        while (reader.hasNext())
+        {
+            reader.next();
+            assertNotNull(reader.getRecordBytes());
+            numRecords++;
+        }
+        assertEquals(20, numRecords);
+    }
+
+    /**
+     * once there are bytes between records, the records are still read but
+     *  their bytes aren't kept
+     */
+    @Test
+    public void testBytesBetweenRecords() throws IOException
+    {
+        byte fileBytes[] = readFile("med_bibs-20sample.mrc");
+        List<Record> expected = readRecords(new MarcPermissiveStreamReader(new ByteArrayInputStream(fileBytes), new ErrorHandler(), false, "BESTGUESS"));
+        int firstLength = expected.get(0).getLeader().getRecordLength();
+        ByteArrayOutputStream withGap = new ByteArrayOutputStream();
+        withGap.write(fileBytes, 0, firstLength);
+        withGap.write('\n');
+        withGap.write(fileBytes, firstLength, fileBytes.length - firstLength);
+
+        MarcRecordBytesReader reader = new MarcRecordBytesReader(new ByteArrayInputStream(withGap.toByteArray()), new ErrorHandler(), false, "BESTGUESS");
+        List<Record> records = new ArrayList<Record>();
+        while (reader.hasNext())
+        {
+            records.add(reader.next());
+            if (records.size() == 1)
+                assertNotNull(reader.getRecordBytes());
+            else
+                assertNull(reader.getRecordBytes());
+        }
+        assertEquals(expected.size(), records.size());
+    }
+
+    private List<Record> readRecords(MarcReader reader)
+    {
+        List<Record> records = new ArrayList<Record>();
+        while (reader.hasNext())
+            records.add(reader.next());
+        return records;
+    }
+
+    private byte[] readFile(String fileName) throws IOException
+    {
+        InputStream in = new FileInputStream(new File(testDataPath, fileName));
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte buffer[] = new byte[8192];
+            int numRead;
+            while ((numRead = in.read(buffer)) > 0)
+                out.write(buffer, 0, numRead);
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
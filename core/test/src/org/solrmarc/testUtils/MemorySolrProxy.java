@@ -0,0 +1,97 @@
+package org.solrmarc.testUtils;
+
+import java.util.*;
+
+import org.solrmarc.solr.*;
+
+/**
+ * SolrProxy that keeps the added documents in a map keyed by id, so
+ * MarcImporter can be tested without a running Solr.  It can be shared by
+ * threads.
+ */
+public class MemorySolrProxy implements SolrProxy
+{
+    public final Map<String, Map<String, Object>> docs = new HashMap<String, Map<String, Object>>();
+    public final boolean failOnAdd;
+    /** id of a document rejected as if it were missing a required field */
+    public String rejectId = null;
+    public int numAddRequests = 0;
+    public int numDeleteRequests = 0;
+    public int numCommits = 0;
+    public int numSoftCommits = 0;
+    public int commitWithinMs = 0;
+    /** ids deleted, in the order they were deleted */
+    public final List<String> deletedIds = new ArrayList<String>();
+
+    public MemorySolrProxy(boolean failOnAdd)
+    {
+        this.failOnAdd = failOnAdd;
+    }
+
+    public boolean isSolrException(Exception e)
+    {
+        return e.getMessage() != null && e.getMessage().contains("missing required fields");
+    }
+
+    public synchronized String addDoc(Map<String, Object> fields2ValuesMap, boolean verbose, boolean addDocToIndex)
+    {
+        numAddRequests++;
+        if (failOnAdd)
+            throw new SolrRuntimeException("unable to reach Solr");
+        if (fields2ValuesMap.get("id").toString().equals(rejectId))
+            throw new SolrRuntimeException("SolrServerException", new Exception("[doc=" + rejectId + "] missing required fields: title"));
+        docs.put(fields2ValuesMap.get("id").toString(), fields2ValuesMap);
+        return fields2ValuesMap.toString();
+    }
+
+    public synchronized void addDocs(Collection<Map<String, Object>> fields2ValuesMaps)
+    {
+        numAddRequests++;
+        for (Map<String, Object> fields2ValuesMap : fields2ValuesMaps)
+            if (fields2ValuesMap.get("id").toString().equals(rejectId))
+                throw new SolrRuntimeException("SolrServerException", new Exception("[doc=" + rejectId + "] missing required fields: title"));
+        for (Map<String, Object> fields2ValuesMap : fields2ValuesMaps)
+            docs.put(fields2ValuesMap.get("id").toString(), fields2ValuesMap);
+    }
+
+    public synchronized void delete(String id, boolean fromCommitted, boolean fromPending)
+    {
+        numDeleteRequests++;
+        deletedIds.add(id);
+        docs.remove(id);
+    }
+
+    public synchronized void deleteDocs(List<String> ids)
+    {
+        numDeleteRequests++;
+        for (String id : ids)
+        {
+            deletedIds.add(id);
+            docs.remove(id);
+        }
+    }
+
+    public synchronized void deleteAllDocs()
+    {
+        docs.clear();
+    }
+
+    public synchronized void commit(boolean optimize)
+    {
+        numCommits++;
+    }
+
+    public synchronized void softCommit()
+    {
+        numSoftCommits++;
+    }
+
+    public synchronized void setCommitWithin(int commitWithinMs)
+    {
+        this.commitWithinMs = commitWithinMs;
+    }
+
+    public void close()
+    {
+    }
+}
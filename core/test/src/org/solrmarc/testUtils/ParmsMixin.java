@@ -0,0 +1,36 @@
+package org.solrmarc.testUtils;
+
+import java.util.*;
+
+import org.marc4j.marc.Record;
+import org.solrmarc.index.RecordContext;
+import org.solrmarc.index.SolrIndexerMixin;
+import org.solrmarc.tools.MarcUtils;
+
+/**
+ * a mixin with overloaded custom methods that take parameters, for testing
+ *  how custom specifications are bound to mixins
+ */
+public class ParmsMixin extends SolrIndexerMixin
+{
+    public Set<String> getPrefixed(final Record record, String fieldSpec)
+    {
+        return getPrefixed(record, fieldSpec, "mixin:");
+    }
+
+    public Set<String> getPrefixed(final Record record, String fieldSpec, String prefix)
+    {
+        Set<String> result = new LinkedHashSet<String>();
+        for (String value : MarcUtils.getFieldList(record, fieldSpec))
+            result.add(prefix + value);
+        return result;
+    }
+
+    /**
+     * a custom method taking the context of the record instead of the record
+     */
+    public String getFieldCount(final RecordContext context, String tag)
+    {
+        return String.valueOf(context.getTagIndex().getFields(tag).size());
+    }
+}
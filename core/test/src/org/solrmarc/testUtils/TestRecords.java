@@ -0,0 +1,58 @@
+package org.solrmarc.testUtils;
+
+import org.marc4j.marc.*;
+
+/**
+ * Builds the small MARC records unit tests index:  a record with a leader
+ *  and an 001, and the fields given.  The subfields of a data field are each
+ *  given as their code followed by their data, e.g. "aThe title".
+ */
+public class TestRecords
+{
+    public static final String LEADER = "00000cam a2200000 a 4500";
+    /** the 001 of a record unless another is given */
+    public static final String ID = "a123";
+
+    private static final MarcFactory factory = MarcFactory.newInstance();
+
+    /**
+     * @return a record with an 001 of ID and the fields given, in order
+     */
+    public static Record newRecord(VariableField... fields)
+    {
+        return newRecord(ID, fields);
+    }
+
+    /**
+     * @return a record with the 001 given and the fields given, in order
+     */
+    public static Record newRecord(String id, VariableField... fields)
+    {
+        Record record = factory.newRecord(LEADER);
+        record.addVariableField(factory.newControlField("001", id));
+        for (VariableField field : fields)
+            record.addVariableField(field);
+        return record;
+    }
+
+    public static ControlField controlField(String tag, String data)
+    {
+        return factory.newControlField(tag, data);
+    }
+
+    /**
+     * @return a data field with blank indicators
+     */
+    public static DataField dataField(String tag, String... subfields)
+    {
+        return dataField(tag, ' ', ' ', subfields);
+    }
+
+    public static DataField dataField(String tag, char ind1, char ind2, String... subfields)
+    {
+        DataField field = factory.newDataField(tag, ind1, ind2);
+        for (String subfield : subfields)
+            field.addSubfield(factory.newSubfield(subfield.charAt(0), subfield.substring(1)));
+        return field;
+    }
+}
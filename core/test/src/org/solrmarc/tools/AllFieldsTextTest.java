@@ -0,0 +1,77 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+import static org.solrmarc.testUtils.TestRecords.*;
+
+import org.junit.*;
+import org.marc4j.marc.*;
+
+/**
+ * tests that AllFieldsText builds the all fields text as
+ *  getAllSearchableFields and custom indexers have built it, and that the
+ *  cap cuts it
+ */
+public class AllFieldsTextTest
+{
+    /**
+     * every subfield of the fields in the range, separated by a space
+     */
+    @Test
+    public void testSearchableFields()
+    {
+        Record record = createRecord();
+        assertEquals("The title remainder 880-01 Cats Local", MarcUtils.getAllSearchableFields(record, "100", "1000"));
+        assertEquals("The title remainder 880-01 Cats", MarcUtils.getAllSearchableFields(record, "x", "y"));
+        assertEquals("0123456789 The title remainder 880-01", MarcUtils.getAllSearchableFields(record, "0", "600"));
+        assertEquals("Local", MarcUtils.getAllSearchableFields(record, "900", "1000"));
+    }
+
+    /**
+     * a space after each subfield, trimmed, only alphabetic subfields, and
+     *  tags that aren't three digits by the builder's own rule
+     */
+    @Test
+    public void testTrimmedLettersOnly()
+    {
+        Record record = createRecord();
+        record.addVariableField(dataField("1AB", "a Odd tag "));
+        AllFieldsText text = new AllFieldsText(200, 900, new String[] { "020" }, true, true, AllFieldsText.NO_CAP);
+        assertEquals("0123456789 The title remainder Cats", text.build(record));
+        text = new AllFieldsText(200, 900, new String[0], false, true, AllFieldsText.NO_CAP)
+        {
+            @Override
+            protected boolean wantsOtherTag(String tag)
+            {
+                return !tag.startsWith("0");
+            }
+        };
+        assertEquals("The title remainder 880-01 Cats  Odd tag", text.build(record));
+    }
+
+    /**
+     * capped text is the start of the whole text, without half a surrogate
+     *  pair
+     */
+    @Test
+    public void testCap()
+    {
+        Record record = createRecord();
+        assertEquals("The t", MarcUtils.getAllSearchableFields(record, "100", "900", "5"));
+        assertEquals("The title remainder 880-01 Cats", MarcUtils.getAllSearchableFields(record, "100", "900", "100"));
+        assertEquals("The title remainder 880-01 Cats", MarcUtils.getAllSearchableFields(record, "100", "900", "none"));
+        assertEquals("The", new AllFieldsText(100, 900, new String[0], false, true, 4).build(record));
+
+        record.addVariableField(dataField("500", "a\ud83d\ude00\ud83d\ude00"));
+        String full = MarcUtils.getAllSearchableFields(record, "500", "501");
+        assertEquals(4, full.length());
+        assertEquals(full.substring(0, 2), MarcUtils.getAllSearchableFields(record, "500", "501", "3"));
+    }
+
+    private Record createRecord()
+    {
+        return newRecord(dataField("020", "a0123456789"),
+                         dataField("245", "aThe title", "bremainder", "6880-01"),
+                         dataField("650", "aCats"),
+                         dataField("999", "aLocal"));
+    }
+}
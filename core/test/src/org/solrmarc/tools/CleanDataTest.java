@@ -0,0 +1,200 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.*;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.marc.*;
+
+/**
+ * differential tests of Utils.cleanData and the trailing punctuation
+ *  methods against the regular expressions they used to run for each value
+ */
+public class CleanDataTest
+{
+    /** characters the regular expressions treat differently */
+    private static final String ALPHABET = "ab Z_5.,/;:[]\t\u00e9\u0301\u0300\u036f\u0370\n\r\u0085\u2028\u2029\u00a0\u4e2d\ud835\udc00\ud800";
+    private static final String TRAILING_CHARS_REGEXES[] = { " *[,/;:]", "( *[,/;:])+", "(\\s*[,/;:])+", "[\\]\\[]", ",", " *\\.{3}" };
+    private static final String PERIOD_REGEXES[] = { "[a-zA-Z]{3,}", "\\p{L}{2}", "\\w", "[a-z]\\]", "" };
+
+    @Before
+    public void setUp()
+    {
+        if (System.getProperty("solrmarc.path") == null)
+            System.setProperty("solrmarc.path", "core");
+    }
+
+    /**
+     * random strings of the characters the regular expressions care about
+     */
+    @Test
+    public void testRandomValues()
+    {
+        Random random = new Random(25);
+        for (int i = 0; i < 200000; i++)
+        {
+            char chars[] = new char[random.nextInt(9)];
+            for (int c = 0; c < chars.length; c++)
+                chars[c] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            assertSameAsRegex(new String(chars));
+        }
+    }
+
+    /**
+     * values that have been cleaned, and the subfields of the test records
+     */
+    @Test
+    public void testRecordValues()
+            throws IOException
+    {
+        for (String value : new String[] { "", " ", ".", "ab.", "abc.", "Smith, John,", "Title /", "Title :", "Name ;  ", "[Title]",
+                                           "[Title", "Title]", "[sic].", "1999.", "Mass.", "Caf\u00e9.", "Cafe\u0301.", "U.S.", "a\nbc.",
+                                           "ab. ", "ab, ", "ab ,\r\n", "a b ,", "etc. ;", "A.B.C", "[ab.]," })
+            assertSameAsRegex(value);
+
+        String testDataPath = System.getProperty("solrmarc.path") + File.separator + "test" + File.separator + "data";
+        int numValues = 0;
+        for (String fileName : new String[] { "formatRecs.mrc", "non_latin.mrc" })
+        {
+            InputStream in = new FileInputStream(new File(testDataPath, fileName));
+            try
+            {
+                MarcReader reader = new MarcPermissiveStreamReader(in, true, false);
+                while (reader.hasNext())
+                {
+                    for (Object field : reader.next().getDataFields())
+                        for (Object subfield : ((DataField) field).getSubfields())
+                        {
+                            assertSameAsRegex(((Subfield) subfield).getData());
+                            numValues++;
+                        }
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        assertTrue("no test values read", numValues > 0);
+    }
+
+    /**
+     * a regular expression that doesn't compile fails as it always has,
+     *  every time
+     */
+    @Test
+    public void testInvalidRegex()
+    {
+        for (int i = 0; i < 2; i++)
+        {
+            // only compiled for a value with a period to remove
+            assertEquals("abc", Utils.removeTrailingPeriod("abc", "[a-"));
+            try
+            {
+                Utils.removeTrailingPeriod("abc.", "[a-");
+                fail("an invalid regular expression should fail");
+            }
+            catch (PatternSyntaxException e)
+            {
+            }
+            try
+            {
+                Utils.removeTrailingChar("abc.", "[a-");
+                fail("an invalid regular expression should fail");
+            }
+            catch (PatternSyntaxException e)
+            {
+            }
+        }
+    }
+
+    private void assertSameAsRegex(String value)
+    {
+        String shown = escaped(value);
+        assertEquals(shown, regexCleanData(value), Utils.cleanData(value));
+        for (String trailingCharsRegEx : TRAILING_CHARS_REGEXES)
+            assertEquals(shown + " " + trailingCharsRegEx, regexRemoveTrailingChar(value, trailingCharsRegEx), Utils.removeTrailingChar(value, trailingCharsRegEx));
+        for (String periodRegEx : PERIOD_REGEXES)
+            assertEquals(shown + " " + periodRegEx, regexRemoveTrailingPeriod(value, periodRegEx), Utils.removeTrailingPeriod(value, periodRegEx));
+        assertEquals(shown, regexRemoveAllTrailingCharAndPeriod(value, "( *[,/;:])+", "[a-zA-Z]{3,}"), Utils.removeAllTrailingCharAndPeriod(value, "( *[,/;:])+", "[a-zA-Z]{3,}"));
+    }
+
+    private static String escaped(String value)
+    {
+        StringBuilder shown = new StringBuilder("\"");
+        for (char c : value.toCharArray())
+        {
+            if (c >= ' ' && c < 127)
+                shown.append(c);
+            else
+                shown.append(String.format("\\u%04x", (int) c));
+        }
+        return shown.append('"').toString();
+    }
+
+    // the regular expressions as Utils ran them
+
+    private static String regexCleanData(String origStr)
+    {
+        String currResult = origStr;
+        String prevResult;
+        do {
+            prevResult = currResult;
+            currResult = currResult.trim();
+
+            currResult = currResult.replaceAll(" *([,/;:])$", "");
+
+            if (currResult.endsWith("."))
+            {
+                if (currResult.matches(".*\\w\\w\\.$"))
+                    currResult = currResult.substring(0, currResult.length()-1);
+                else if (currResult.matches(".*\\p{L}\\p{L}\\.$"))
+                    currResult = currResult.substring(0, currResult.length()-1);
+                else if (currResult.matches(".*\\w\\p{InCombiningDiacriticalMarks}?\\w\\p{InCombiningDiacriticalMarks}?\\.$"))
+                    currResult = currResult.substring(0, currResult.length()-1);
+            }
+
+            currResult = Utils.removeOuterBrackets(currResult);
+
+            if (currResult.length() == 0)
+                return currResult;
+
+        } while (! currResult.equals(prevResult));
+
+        return currResult;
+    }
+
+    private static String regexRemoveAllTrailingCharAndPeriod(String origStr, String trailingCharsRegEx, String charsB4periodRegEx)
+    {
+        String currResult = origStr;
+        String prevResult;
+        do {
+            prevResult = currResult;
+            currResult = regexRemoveTrailingPeriod(regexRemoveTrailingChar(currResult.trim(), trailingCharsRegEx), charsB4periodRegEx);
+
+            if (currResult.length() == 0)
+                return currResult;
+
+        } while (! currResult.equals(prevResult));
+
+        return currResult;
+    }
+
+    private static String regexRemoveTrailingChar(String origStr, String charsToReplaceRegEx)
+    {
+        return origStr.trim().replaceAll(charsToReplaceRegEx + "$", "");
+    }
+
+    private static String regexRemoveTrailingPeriod(String origStr, String precedingCharsRegEx)
+    {
+        String result = origStr.trim();
+        if (result.endsWith(".") && result.matches(".*" + precedingCharsRegEx + "\\.$"))
+            result = result.substring(0, result.length() - 1).trim();
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+import static org.solrmarc.testUtils.TestRecords.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.marc4j.marc.*;
+import org.solrmarc.index.SolrIndexer;
+
+/**
+ * tests that an indexer configured from a configuration snapshot indexes
+ *  the same as one configured from the properties files, and that the
+ *  snapshot isn't used once a file it was made from changes
+ */
+public class ConfigSnapshotTest
+{
+    private File configDir;
+    private File snapshotFile;
+
+    @Before
+    public void setUp()
+            throws IOException
+    {
+        configDir = File.createTempFile("snapshot", "");
+        configDir.delete();
+        configDir.mkdir();
+        snapshotFile = new File(configDir, "config.snapshot");
+        writeFile("test_index.properties",
+                  "id = 001, first\n" +
+                  "language = 008[35-37], lang_map.properties\n" +
+                  "subject = 650a, join(-)\n" +
+                  "title = custom, getAllAlphaSubfields(245, first)\n" +
+                  "format = 000[6], (map_format), first\n" +
+                  "map_format.a = Book\n");
+        writeFile("lang_map.properties", "eng = English\nfre = French\n");
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File file : configDir.listFiles())
+            file.delete();
+        configDir.delete();
+    }
+
+    /**
+     * the first indexer writes the snapshot, the second is configured from it
+     */
+    @Test
+    public void testSnapshotIsWrittenAndLoaded()
+            throws IOException
+    {
+        SolrIndexer first = createIndexer();
+        assertFalse(first.isConfiguredFromSnapshot());
+        assertTrue(snapshotFile.isFile());
+
+        SolrIndexer second = createIndexer();
+        assertTrue(second.isConfiguredFromSnapshot());
+        assertEquals(first.createFldNames2ValsMap(createRecord()), second.createFldNames2ValsMap(createRecord()));
+        assertEquals("English", second.createFldNames2ValsMap(createRecord()).get("language"));
+        assertEquals("Book", second.createFldNames2ValsMap(createRecord()).get("format"));
+    }
+
+    /**
+     * a changed translation map makes the snapshot stale
+     */
+    @Test
+    public void testChangedFileInvalidatesSnapshot()
+            throws IOException
+    {
+        createIndexer();
+        writeFile("lang_map.properties", "eng = Anglais\nfre = Francais\n");
+        SolrIndexer indexer = createIndexer();
+        assertFalse(indexer.isConfiguredFromSnapshot());
+        assertEquals("Anglais", indexer.createFldNames2ValsMap(createRecord()).get("language"));
+        assertTrue(createIndexer().isConfiguredFromSnapshot());
+    }
+
+    /**
+     * a damaged snapshot is ignored and written again
+     */
+    @Test
+    public void testDamagedSnapshotIsIgnored()
+            throws IOException
+    {
+        createIndexer();
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+        file.seek(file.length() / 2);
+        file.write(file.read() ^ 0xff);
+        file.close();
+        SolrIndexer indexer = createIndexer();
+        assertFalse(indexer.isConfiguredFromSnapshot());
+        assertEquals("English", indexer.createFldNames2ValsMap(createRecord()).get("language"));
+        assertTrue(createIndexer().isConfiguredFromSnapshot());
+    }
+
+    private SolrIndexer createIndexer()
+    {
+        SolrIndexer indexer = new SolrIndexer("test_index.properties", new String[] { configDir.getPath() }, snapshotFile);
+        indexer.finishConfiguration();
+        return indexer;
+    }
+
+    private void writeFile(String name, String contents)
+            throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(configDir, name)), "ISO-8859-1");
+        out.write(contents);
+        out.close();
+    }
+
+    private Record createRecord()
+    {
+        return newRecord(controlField("008", "830415s1983    nyu           000 0 eng d"),
+                         dataField("245", '1', '4', "aThe title"),
+                         dataField("650", ' ', '0', "aCats"),
+                         dataField("650", ' ', '0', "aDogs"));
+    }
+}
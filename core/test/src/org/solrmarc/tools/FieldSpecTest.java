@@ -0,0 +1,127 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+import static org.solrmarc.testUtils.TestRecords.*;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import org.junit.*;
+import org.marc4j.marc.*;
+
+/**
+ * tests that field specifications are parsed once into FieldSpecs, that
+ *  SubfieldCodes want the same codes as the indexOf and pattern matching
+ *  they replace, and that the MarcUtils helpers give the values they always
+ *  have for parsed specifications
+ */
+public class FieldSpecTest
+{
+    /**
+     * a mask of listed codes or a pattern's codes wants the same codes as
+     *  indexOf or matching the pattern, inside and outside ASCII
+     */
+    @Test
+    public void testSubfieldCodes()
+    {
+        for (String listed : new String[] { "", "a", "abcd", "9a?é", "[a-z]" })
+        {
+            SubfieldCodes codes = SubfieldCodes.listed(listed);
+            for (char code = 0; code < 300; code++)
+                assertEquals(listed + " " + (int) code, listed.indexOf(code) != -1, codes.contains(code));
+        }
+        for (String regex : new String[] { ".", "[a-z]", "[^0-9]", "[a-cf-zé]", "abc" })
+        {
+            SubfieldCodes codes = SubfieldCodes.matching(regex);
+            Pattern pattern = Pattern.compile(regex);
+            for (char code = 0; code < 300; code++)
+                assertEquals(regex + " " + (int) code, pattern.matcher("" + code).matches(), codes.contains(code));
+        }
+    }
+
+    /**
+     * the parts of a specification are parsed as getFieldList reads them
+     */
+    @Test
+    public void testParts()
+    {
+        FieldSpec fieldSpec = FieldSpec.forSpec("100abcd:008[35-37]:LNK245ab:600[a-z]'--':24");
+        assertSame(fieldSpec, FieldSpec.forSpec("100abcd:008[35-37]:LNK245ab:600[a-z]'--':24"));
+        assertEquals("100abcd:008[35-37]:LNK245ab:600[a-z]'--':24", fieldSpec.getSpec());
+        List<FieldSpec.Part> parts = fieldSpec.getParts();
+        assertEquals(5, parts.size());
+
+        FieldSpec.Part part = parts.get(0);
+        assertEquals("100", part.getTag());
+        assertEquals("abcd", part.getSubfields());
+        assertFalse(part.hasPositions());
+        assertTrue(part.wantsSubfield('d'));
+        assertFalse(part.wantsSubfield('e'));
+
+        part = parts.get(1);
+        assertEquals("008", part.getTag());
+        assertTrue(part.hasPositions());
+        assertEquals(35, part.getSubstart());
+        assertEquals(38, part.getSubend());
+        assertEquals("", part.getSubfields());
+
+        part = parts.get(2);
+        assertEquals("245", part.getTag());
+        assertTrue(part.isLinked());
+
+        part = parts.get(3);
+        assertEquals("600", part.getTag());
+        assertEquals("--", part.getSeparator());
+        assertTrue(part.isPattern());
+        assertEquals("[a-z]", part.getSubfields());
+        assertTrue(part.wantsSubfield('x'));
+        assertFalse(part.wantsSubfield('2'));
+
+        part = parts.get(4);
+        assertEquals("24", part.getSpec());
+        assertNull(part.getTag());
+        assertNull(part.getSubfields());
+    }
+
+    /**
+     * the helpers give the same values for a parsed specification as for the
+     *  specification string, and the values they have always given
+     */
+    @Test
+    public void testHelpers()
+    {
+        Record record = createRecord();
+        assertFieldList(record, "245a", "The title");
+        assertFieldList(record, "245ab", "The title remainder");
+        assertFieldList(record, "245ab'--'", "The title--remainder");
+        assertFieldList(record, "245a[0-2]", "The");
+        assertFieldList(record, "008[7-10]", "1999");
+        assertFieldList(record, "001", "a123");
+        assertFieldList(record, "245[a-b]", "The title remainder");
+        assertFieldList(record, "LNK245a", "Vernacular title");
+        assertFieldList(record, "650a:245a", "Topic one", "Topic two", "The title");
+        assertFieldList(record, "24:650x", "History");
+
+        assertEquals(MarcUtils.getAllSubfields(record, "650[ax]", "; "), MarcUtils.getAllSubfields(record, FieldSpec.forSpec("650[ax]"), "; "));
+        assertEquals(Arrays.asList("Topic one; History", "Topic two"), new ArrayList<String>(MarcUtils.getAllSubfields(record, "650[ax]", "; ")));
+
+        assertEquals(Arrays.asList("Vernacular title"), new ArrayList<String>(MarcUtils.getLinkedField(record, FieldSpec.forSpec("245a:100a"))));
+        assertEquals(Arrays.asList("Topic one History", "Topic two"), new ArrayList<String>(MarcUtils.getAllAlphaSubfields(record, FieldSpec.forSpec("650"))));
+        assertEquals(Arrays.asList("Topic one", "Topic two"), new ArrayList<String>(MarcUtils.getAllAlphaExcept(record, FieldSpec.forSpec("650x"))));
+    }
+
+    private void assertFieldList(Record record, String spec, String... expected)
+    {
+        assertEquals(spec, Arrays.asList(expected), new ArrayList<String>(MarcUtils.getFieldList(record, spec)));
+        assertEquals(spec, Arrays.asList(expected), new ArrayList<String>(MarcUtils.getFieldList(record, FieldSpec.forSpec(spec))));
+    }
+
+    private Record createRecord()
+    {
+        return newRecord(controlField("008", "000000s1999    xx            000 0 eng d"),
+                         dataField("245", '1', '0', "6880-01", "aThe title", "bremainder"),
+                         dataField("650", ' ', '0', "aTopic one", "xHistory"),
+                         dataField("650", ' ', '0', "aTopic two"),
+                         dataField("880", '1', '0', "6245-01", "aVernacular title"));
+    }
+}
@@ -0,0 +1,88 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+import static org.solrmarc.testUtils.TestRecords.*;
+
+import java.util.*;
+
+import org.junit.*;
+import org.marc4j.marc.*;
+
+/**
+ * tests that the linked field helpers find the 880s linked to a tag with a
+ *  record's LinkedFields as they did scanning all the 880s
+ */
+public class LinkedFieldsTest
+{
+    @After
+    public void tearDown()
+    {
+        RecordTagIndex.setCurrent(null);
+    }
+
+    /**
+     * 880s are found by the first three characters of their subfield 6, in
+     *  the order of the record, each once
+     */
+    @Test
+    public void testLinkedVariableFields()
+    {
+        Record record = createRecord();
+        List<?> fields880 = record.getVariableFields("880");
+        assertEquals(Arrays.asList(fields880.get(0), fields880.get(4), fields880.get(6)), MarcUtils.getLinkedVariableFields(record, "245"));
+        assertEquals(Arrays.asList(fields880.get(1), fields880.get(3)), MarcUtils.getLinkedVariableFields(record, "700:650:700:100"));
+        assertEquals(Collections.emptyList(), MarcUtils.getLinkedVariableFields(record, "600:24"));
+    }
+
+    /**
+     * values of linked fields, with the subfield 6 read as it always has been
+     *  by each helper
+     */
+    @Test
+    public void testLinkedValues()
+    {
+        Record record = createRecord();
+        assertEquals(Arrays.asList("Title one", "Title two"), new ArrayList<String>(MarcUtils.getLinkedField(record, "245a")));
+        assertEquals(Arrays.asList("Name--1900-"), new ArrayList<String>(MarcUtils.getLinkedField(record, "100ad'--'")));
+        assertEquals(Arrays.asList("Title one", "Title two"), new ArrayList<String>(MarcUtils.getFieldList(record, "LNK245a")));
+        // any prefix of the subfield 6
+        assertEquals(Arrays.asList("Title one", "Name", "Topic", "Added entry", "Title two"), new ArrayList<String>(MarcUtils.getLinkedFieldValue(record, "", "a", null)));
+        assertEquals(Arrays.asList("Title one"), new ArrayList<String>(MarcUtils.getLinkedFieldValue(record, "245-01", "a", null)));
+
+        // the subfield 6 trimmed, with a '-' after the tag
+        assertEquals(2, MarcUtils.getVernacularFields(record, "245").size());
+        assertEquals(1, MarcUtils.getVernacularFields(record, "650").size());
+        assertEquals(1, MarcUtils.getVernacularFields(record, "700").size());
+        assertEquals(0, MarcUtils.getVernacularFields(record, "600").size());
+    }
+
+    /**
+     * the table of a record being indexed is built once and kept with its
+     *  RecordTagIndex
+     */
+    @Test
+    public void testKeptWithIndex()
+    {
+        Record record = createRecord();
+        assertNotSame(RecordTagIndex.getLinkedFields(record), RecordTagIndex.getLinkedFields(record));
+        RecordTagIndex.setCurrent(new RecordTagIndex(record));
+        LinkedFields linkedFields = RecordTagIndex.getLinkedFields(record);
+        assertSame(linkedFields, RecordTagIndex.getLinkedFields(record));
+        assertTrue(linkedFields.hasLinks());
+        assertEquals(Arrays.asList("Title one", "Title two"), new ArrayList<String>(MarcUtils.getLinkedField(record, "245a")));
+
+        assertFalse(new LinkedFields(Collections.emptyList()).hasLinks());
+    }
+
+    private Record createRecord()
+    {
+        return newRecord(dataField("245", "6880-01", "aThe title"),
+                         dataField("880", "6245-01/$1", "aTitle one"),
+                         dataField("880", "6100-02", "aName", "d1900-"),
+                         dataField("880", "6 650-03", "aTopic"),
+                         dataField("880", "6700-04", "aAdded entry"),
+                         dataField("880", "62454", "aTitle two"),
+                         dataField("880", "aNo link"),
+                         dataField("880", "6245-05", "bNo a"));
+    }
+}
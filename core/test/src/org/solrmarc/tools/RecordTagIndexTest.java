@@ -0,0 +1,107 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+import static org.solrmarc.testUtils.TestRecords.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.marc.*;
+
+/**
+ * tests for finding the fields of a record by tag with a RecordTagIndex
+ */
+public class RecordTagIndexTest
+{
+    @Before
+    public void setUp()
+    {
+        if (System.getProperty("solrmarc.path") == null)
+            System.setProperty("solrmarc.path", "core");
+    }
+
+    @After
+    public void tearDown()
+    {
+        RecordTagIndex.setCurrent(null);
+    }
+
+    /**
+     * the index should find the same fields, in the same order, as the record
+     *  does for every tag
+     */
+    @Test
+    public void testIndexMatchesRecord()
+            throws IOException
+    {
+        String testDataPath = System.getProperty("solrmarc.path") + File.separator + "test" + File.separator + "data";
+        InputStream in = new FileInputStream(new File(testDataPath, "formatRecs.mrc"));
+        int numRecords = 0;
+        try
+        {
+            MarcReader reader = new MarcPermissiveStreamReader(in, true, false);
+            while (reader.hasNext())
+            {
+                Record record = reader.next();
+                RecordTagIndex index = new RecordTagIndex(record);
+                for (int tagNum = 0; tagNum < 1000; tagNum++)
+                {
+                    String tag = String.format("%03d", tagNum);
+                    List<?> expected = record.getVariableFields(tag);
+                    assertEquals(tag, expected, index.getFields(tag));
+                    assertEquals(tag, !expected.isEmpty(), index.hasTag(tagNum));
+                    assertSame(tag, record.getVariableField(tag), index.getField(tag));
+                }
+                String tags[] = { "260", "264", "008", "006" };
+                assertEquals(record.getVariableFields(tags), index.getFields(tags));
+                numRecords++;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        assertTrue("no test records read", numRecords > 0);
+    }
+
+    /**
+     * tags that aren't numbers should be indexed too
+     */
+    @Test
+    public void testOtherTags()
+    {
+        DataField local = dataField("LOC", "ashelf");
+        Record record = newRecord(local);
+
+        RecordTagIndex index = new RecordTagIndex(record);
+        assertTrue(index.hasTag("LOC"));
+        assertFalse(index.hasTag("XYZ"));
+        assertSame(local, index.getField("LOC"));
+        assertTrue(index.getFields("XYZ").isEmpty());
+        assertFalse(index.hasTag("245"));
+        assertNull(index.getField("245"));
+    }
+
+    /**
+     * the current index should only be used for its own record
+     */
+    @Test
+    public void testCurrentIndex()
+    {
+        Record record = newRecord();
+        Record other = newRecord("b456");
+
+        RecordTagIndex index = new RecordTagIndex(record);
+        RecordTagIndex.setCurrent(index);
+        assertSame(index, RecordTagIndex.forRecord(record));
+        assertNotSame(index, RecordTagIndex.forRecord(other));
+        assertEquals("b456", ((ControlField) RecordTagIndex.getField(other, "001")).getData());
+        assertEquals("a123", ((ControlField) RecordTagIndex.getField(record, "001")).getData());
+
+        RecordTagIndex.setCurrent(null);
+        assertNotSame(index, RecordTagIndex.forRecord(record));
+    }
+}
@@ -0,0 +1,356 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+import static org.solrmarc.testUtils.TestRecords.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.*;
+import org.marc4j.MarcPermissiveStreamReader;
+import org.marc4j.MarcReader;
+import org.marc4j.marc.*;
+import org.solrmarc.index.*;
+import org.solrmarc.solr.SolrInputDocumentSink;
+
+/**
+ * tests for each kind of index specification of an index.properties file
+ */
+public class SolrIndexerSpecTest
+{
+    @Before
+    public void setUp()
+    {
+        if (System.getProperty("solrmarc.path") == null)
+            System.setProperty("solrmarc.path", "core");
+    }
+
+    /**
+     * constants, joined values and first values, translated
+     */
+    @Test
+    public void testFieldSpecs()
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("solo", "\"solo value\"");
+        indexingProps.setProperty("several", "\"one|two|\"");
+        indexingProps.setProperty("subject_joined", "650a, join(-)");
+        indexingProps.setProperty("subject_first", "650a, first");
+        indexingProps.setProperty("subject_all", "650a");
+        indexingProps.setProperty("language", "008[35-37]:041a, (map_lang), first");
+        indexingProps.setProperty("map_lang.fre", "French");
+        indexingProps.setProperty("map_lang.eng", "English");
+
+        Map<String, Object> fields = createIndexer(indexingProps).createFldNames2ValsMap(createRecord());
+        assertEquals("solo value", fields.get("solo"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("one", "two")), fields.get("several"));
+        assertEquals("Cats-Dogs", fields.get("subject_joined"));
+        assertEquals("Cats", fields.get("subject_first"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("Cats", "Dogs")), fields.get("subject_all"));
+        assertEquals("English", fields.get("language"));
+    }
+
+    /**
+     * custom methods with and without parameters, including both signatures
+     *  of getAllAlphaSubfields
+     */
+    @Test
+    public void testCustomSpecs()
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("title", "custom, getTitle");
+        indexingProps.setProperty("subject_alpha", "custom, getAllAlphaSubfields(650)");
+        indexingProps.setProperty("subject_alpha_first", "custom, getAllAlphaSubfields(650, first)");
+        indexingProps.setProperty("subject_alpha_quoted", "custom, getAllAlphaSubfields(\"650\", \"first\")");
+
+        Map<String, Object> fields = createIndexer(indexingProps).createFldNames2ValsMap(createRecord());
+        assertEquals("The title", fields.get("title"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("Cats Pictorial works", "Dogs")), fields.get("subject_alpha"));
+        assertEquals("Cats Pictorial works", fields.get("subject_alpha_first"));
+        assertEquals("Cats Pictorial works", fields.get("subject_alpha_quoted"));
+    }
+
+    /**
+     * custom methods of a mixin taking parameters should be bound to the
+     *  mixin, picking the overload by the number of parameters
+     */
+    @Test
+    public void testMixinCustomSpecs()
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("subject_mixin", "custom(org.solrmarc.testUtils.ParmsMixin), getPrefixed(650a)");
+        indexingProps.setProperty("subject_prefixed", "custom(org.solrmarc.testUtils.ParmsMixin), getPrefixed(650a, \"s:\")");
+
+        Map<String, Object> fields = createIndexer(indexingProps).createFldNames2ValsMap(createRecord());
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("mixin:Cats", "mixin:Dogs")), fields.get("subject_mixin"));
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("s:Cats", "s:Dogs")), fields.get("subject_prefixed"));
+    }
+
+    /**
+     * a custom method can take the RecordContext of the record instead of
+     *  the record;  an indexer with a mixin that keeps no per-record state
+     *  in the context isn't thread safe
+     */
+    @Test
+    public void testContextCustomSpec()
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("subject_count", "custom(org.solrmarc.testUtils.ParmsMixin), getFieldCount(650)");
+        SolrIndexer indexer = createIndexer(indexingProps);
+        assertEquals("2", indexer.createFldNames2ValsMap(createRecord()).get("subject_count"));
+        assertFalse(indexer.isThreadSafe());
+    }
+
+    /**
+     * a record that can't be indexed (e.g. the null record a reader gives
+     *  after skipping a bad one) only fails itself;  the thread isn't left
+     *  indexing it, and goes on to index the next record
+     */
+    @Test
+    public void testBadRecordThenGood()
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("subject", "650a");
+        indexingProps.setProperty("subject_count", "custom(org.solrmarc.testUtils.ParmsMixin), getFieldCount(650)");
+        SolrIndexer indexer = createIndexer(indexingProps);
+        for (int i = 0; i < 2; i++)
+        {
+            try
+            {
+                indexer.createFldNames2ValsMap((Record) null);
+                fail("a null record can't be indexed");
+            }
+            catch (RuntimeException e)
+            {
+            }
+            assertNull(RecordContext.current());
+            Map<String, Object> fields = indexer.createFldNames2ValsMap(createRecord());
+            assertEquals(new LinkedHashSet<String>(Arrays.asList("Cats", "Dogs")), fields.get("subject"));
+            assertEquals("2", fields.get("subject_count"));
+            assertNull(RecordContext.current());
+        }
+    }
+
+    /**
+     * one indexer indexing records on several threads at once should give
+     *  the same fields as it does indexing them one at a time
+     */
+    @Test
+    public void testSharedIndexerOnSeveralThreads()
+            throws Exception
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("id", "001, first");
+        indexingProps.setProperty("title", "245ab, first");
+        indexingProps.setProperty("subject", "650a:651a");
+        indexingProps.setProperty("subject_alpha", "custom, getAllAlphaSubfields(650)");
+        indexingProps.setProperty("language", "008[35-37]:041a, language_map.properties");
+        indexingProps.setProperty("format", "custom(org.solrmarc.index.GetFormatMixin), getContentTypesAndMediaTypes");
+        final SolrIndexer indexer = createIndexer(indexingProps);
+        assertTrue(indexer.isThreadSafe());
+
+        final List<Record> records = new ArrayList<Record>();
+        String testDataPath = System.getProperty("solrmarc.path") + File.separator + "test" + File.separator + "data";
+        InputStream in = new FileInputStream(new File(testDataPath, "formatRecs.mrc"));
+        try
+        {
+            MarcReader reader = new MarcPermissiveStreamReader(in, true, false);
+            while (reader.hasNext())
+                records.add(reader.next());
+        }
+        finally
+        {
+            in.close();
+        }
+        assertTrue("no test records read", records.size() > 0);
+        final List<Map<String, Object>> expected = new ArrayList<Map<String, Object>>();
+        for (Record record : records)
+            expected.add(indexer.createFldNames2ValsMap(record));
+
+        final List<String> mismatches = Collections.synchronizedList(new ArrayList<String>());
+        Thread threads[] = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int pass = 0; pass < 5; pass++)
+                        for (int i = 0; i < records.size(); i++)
+                        {
+                            Map<String, Object> fields = indexer.createFldNames2ValsMap(records.get(i));
+                            if (!expected.get(i).equals(fields))
+                                mismatches.add(records.get(i).getControlNumber() + ": " + fields);
+                        }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(Collections.emptyList(), mismatches);
+    }
+
+    /**
+     * a record with no values for a DeleteRecordIfFieldEmpty specification
+     *  should be deleted
+     */
+    @Test
+    public void testDeleteRecordIfFieldEmpty()
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("subject", "650a, DeleteRecordIfFieldEmpty");
+        indexingProps.setProperty("subject_required", "customDeleteRecordIfFieldEmpty, getAllAlphaSubfields(650)");
+        Map<String, Object> fields = createIndexer(indexingProps).createFldNames2ValsMap(createRecord());
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("Cats", "Dogs")), fields.get("subject"));
+        assertNotNull(fields.get("subject_required"));
+
+        indexingProps.setProperty("note_required", "customDeleteRecordIfFieldEmpty, getAllAlphaSubfields(500)");
+        indexingProps.setProperty("isbn_required", "020a, DeleteRecordIfFieldEmpty");
+        for (String spec : new String[] { "note_required", "isbn_required" })
+        {
+            Properties deleteProps = new Properties();
+            deleteProps.setProperty(spec, indexingProps.getProperty(spec));
+            try
+            {
+                createIndexer(deleteProps).createFldNames2ValsMap(createRecord());
+                fail(spec + " should delete a record without the field");
+            }
+            catch (SolrMarcIndexerException e)
+            {
+                assertEquals(SolrMarcIndexerException.DELETE, e.getLevel());
+            }
+        }
+    }
+
+    /**
+     * field specifications collected in a single walk over each record's
+     *  fields should have the same values, in the same order, as
+     *  MarcUtils.getFieldList gives for them, including the parts left to it
+     */
+    @Test
+    public void testTagGroupedSpecsMatchGetFieldList()
+            throws IOException
+    {
+        String tagStrs[] = { "001", "008[35-37]", "008[7-10]:260c", "245a", "245ab", "245abc:246a", "100abcd:110ab:700a",
+                             "650a:650x:651a", "650avxyz", "650a'--'", "600ax'/'", "020a[0-9]", "000[6-7]", "000",
+                             "245[a-c]", "650[ax]'--'", "LNK245a", "LNK100abcd", "999a:852h:856u", "035a:001",
+                             "008[35-37]:008[35-36]", "008[6]:008[6-6]:008[7-10]", "008:007[0]:006[0]", "007[0-1]:007:007[50]" };
+        Properties indexingProps = new Properties();
+        for (int i = 0; i < tagStrs.length; i++)
+            indexingProps.setProperty("spec" + i, tagStrs[i]);
+        SolrIndexer indexer = createIndexer(indexingProps);
+
+        String testDataPath = System.getProperty("solrmarc.path") + File.separator + "test" + File.separator + "data";
+        int numRecords = 0;
+        for (String fileName : new String[] { "formatRecs.mrc", "non_latin.mrc" })
+        {
+            InputStream in = new FileInputStream(new File(testDataPath, fileName));
+            try
+            {
+                MarcReader reader = new MarcPermissiveStreamReader(in, true, false);
+                while (reader.hasNext())
+                {
+                    Record record = reader.next();
+                    Map<String, Object> fields = indexer.createFldNames2ValsMap(record);
+                    for (int i = 0; i < tagStrs.length; i++)
+                        assertEquals(fileName + " " + record.getControlNumber() + " " + tagStrs[i],
+                                new ArrayList<String>(MarcUtils.getFieldList(record, tagStrs[i])), valueList(fields.get("spec" + i)));
+                    numRecords++;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        assertTrue("no test records read", numRecords > 0);
+    }
+
+    /**
+     * indexing a record straight into a SolrInputDocument should give the
+     *  document SolrUtils.createSolrInputDoc makes from the field map, and
+     *  printing it shouldn't change it
+     */
+    @Test
+    public void testIndexRecordIntoSolrInputDocument()
+            throws IOException
+    {
+        Properties indexingProps = new Properties();
+        indexingProps.setProperty("id", "001, first");
+        indexingProps.setProperty("several", "\"one|two\"");
+        indexingProps.setProperty("title", "245abc");
+        indexingProps.setProperty("subject", "650a:651a");
+        indexingProps.setProperty("subject_joined", "650a, join(-)");
+        indexingProps.setProperty("topic", "custom, getAllAlphaSubfields(650)");
+        indexingProps.setProperty("author", "custom, getSortableAuthor");
+        SolrIndexer indexer = createIndexer(indexingProps);
+
+        String testDataPath = System.getProperty("solrmarc.path") + File.separator + "test" + File.separator + "data";
+        InputStream in = new FileInputStream(new File(testDataPath, "formatRecs.mrc"));
+        int numRecords = 0;
+        try
+        {
+            MarcReader reader = new MarcPermissiveStreamReader(in, true, false);
+            while (reader.hasNext())
+            {
+                Record record = reader.next();
+                Map<String, Object> fields = indexer.createFldNames2ValsMap(record);
+                SolrInputDocument expected = SolrUtils.createSolrInputDoc(fields);
+                SolrInputDocumentSink inputDoc = new SolrInputDocumentSink();
+                indexer.indexRecord(record, null, inputDoc);
+                SolrInputDocument actual = inputDoc.getDocument();
+                assertEquals(expected.getFieldNames(), actual.getFieldNames());
+                for (String fieldName : expected.getFieldNames())
+                    assertEquals(record.getControlNumber() + " " + fieldName,
+                            new ArrayList<Object>(expected.getFieldValues(fieldName)), new ArrayList<Object>(actual.getFieldValues(fieldName)));
+
+                MapDocumentSink map = new MapDocumentSink();
+                PrintingDocumentSink printer = new PrintingDocumentSink(map);
+                indexer.indexRecord(record, null, printer);
+                assertEquals(fields, map.getMap());
+                int numLines = 0;
+                for (Object value : fields.values())
+                    numLines += valueList(value).size();
+                assertEquals(numLines, printer.toString().split("\n").length);
+                assertTrue(printer.toString().contains("id : " + record.getControlNumber() + "\n"));
+                numRecords++;
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        assertTrue("no test records read", numRecords > 0);
+    }
+
+    /**
+     * @return the values of a solr field in a list, in order
+     */
+    private List<String> valueList(Object fieldVals)
+    {
+        List<String> values = new ArrayList<String>();
+        if (fieldVals instanceof String)
+            values.add((String) fieldVals);
+        else if (fieldVals != null)
+            for (Object value : (Collection<?>) fieldVals)
+                values.add((String) value);
+        return values;
+    }
+
+
+    private SolrIndexer createIndexer(Properties indexingProps)
+    {
+        String solrmarcCorePath = System.getProperty("solrmarc.path");
+        return SolrIndexer.indexerFromProperties(indexingProps, new String[] { solrmarcCorePath + File.separator + "translation_maps" });
+    }
+
+    private Record createRecord()
+    {
+        return newRecord(controlField("008", "830415s1983    nyu           000 0 eng d"),
+                         dataField("245", '1', '4', "aThe title"),
+                         dataField("650", ' ', '0', "aCats", "vPictorial works"),
+                         dataField("650", ' ', '0', "aDogs"));
+    }
+}
@@ -0,0 +1,110 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * tests that a TranslationMap maps values the same way Utils.remap does with
+ *  a plain Map of the same entries
+ */
+public class TranslationMapTest
+{
+    private static final String VALUES[] = { "eng", "fre", "ger", "", "xyz", "MUSIC-LIB", "GREEN-STACKS", "GREEN", "abc123", "A1" };
+
+    /**
+     * an exact match map, with and without displayRawIfMissing, __DEFAULT
+     *  and an empty key
+     */
+    @Test
+    public void testExactMapsMatchUtilsRemap()
+    {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("eng", "English");
+        entries.put("fre", "French");
+        entries.put("ger", null);
+        assertSameMapping(entries);
+
+        entries.put("__DEFAULT", "Other");
+        assertSameMapping(entries);
+
+        entries.put("", "Unknown");
+        assertSameMapping(entries);
+
+        entries.remove("__DEFAULT");
+        assertSameMapping(entries);
+
+        entries.put("displayRawIfMissing", "true");
+        assertSameMapping(entries);
+    }
+
+    /**
+     * a pattern map with plain and group replacements, and patterns matching
+     *  more than once
+     */
+    @Test
+    public void testPatternMapsMatchUtilsRemap()
+    {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("pattern_0", "^GREEN.*=>Green Library");
+        entries.put("pattern_1", "^MUSIC-(.*)=>Music $1");
+        entries.put("pattern_2", "[0-9]+=>has digits");
+        entries.put("pattern_3", "^Music (.*)$=>$1 (music)");
+        assertSameMapping(entries);
+
+        TranslationMap map = new TranslationMap(entries);
+        assertTrue(map.isPatternMap());
+        assertEquals("LIB (music)", map.remap("MUSIC-LIB", true));
+        assertFalse(new TranslationMap(Collections.singletonMap("eng", "English")).isPatternMap());
+    }
+
+    /**
+     * a TranslationMap is a read only Map of its entries
+     */
+    @Test
+    public void testMapView()
+    {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("eng", "English");
+        entries.put("ger", null);
+        TranslationMap map = new TranslationMap(entries);
+        assertEquals(entries, map);
+        assertTrue(map.containsKey("ger"));
+        assertNull(map.get("ger"));
+        entries.put("fre", "French");
+        assertFalse("the map should be a copy of the entries", map.containsKey("fre"));
+        try
+        {
+            map.put("fre", "French");
+            fail("a TranslationMap should not be changeable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * an invalid pattern is reported when the map is made
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPattern()
+    {
+        new TranslationMap(Collections.singletonMap("pattern_0", "[abc=>x"));
+    }
+
+    private void assertSameMapping(Map<String, String> entries)
+    {
+        TranslationMap map = new TranslationMap(entries);
+        for (boolean allowDefault : new boolean[] { true, false })
+        {
+            for (String value : VALUES)
+                assertEquals(entries + " " + value, Utils.remap(value, entries, allowDefault), map.remap(value, allowDefault));
+            Set<String> values = new LinkedHashSet<String>(Arrays.asList(VALUES));
+            assertEquals(entries.toString(), new ArrayList<String>(Utils.remap(values, entries, allowDefault)),
+                    new ArrayList<String>(map.remap(values, allowDefault)));
+        }
+    }
+}
@@ -156,4 +156,26 @@ public class UtilUnitTests {
 	}
 
 
+	/**
+	 * unit test for org.solrmarc.tools.Utils.slice
+	 */
+@Test
+	public void testSlice()
+	{
+		String data = "830415s1983    nyu           000 0 eng d";
+		for (int begin = 0; begin < data.length(); begin++)
+			for (int end = begin; end <= data.length() && end <= begin + 4; end++)
+				assertEquals(begin + "-" + end, data.substring(begin, end), slice(data, begin, end));
+		assertSame(slice(data, 6, 7), slice("s", 0, 1));
+		assertEquals("\u4e2d", slice("a\u4e2db", 1, 2));
+		try
+		{
+			slice(data, 40, 41);
+			fail("slice past the end of the value should fail as substring does");
+		}
+		catch (StringIndexOutOfBoundsException e)
+		{
+		}
+	}
+
 }
@@ -0,0 +1,84 @@
+package org.solrmarc.tools;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+/**
+ * tests that a ValueCollector holds the same values, in the same order, as a
+ *  LinkedHashSet given the same values, and that collectors are reused
+ */
+public class ValueCollectorTest
+{
+    /**
+     * values added, with duplicates, both below and above the number of
+     *  values searched for duplicates directly
+     */
+    @Test
+    public void testSameAsLinkedHashSet()
+    {
+        for (int count : new int[] { 0, 1, 5, 12, 13, 40 })
+        {
+            ValueCollector collector = ValueCollector.acquire();
+            Set<String> expected = new LinkedHashSet<String>();
+            for (int i = 0; i < count * 2; i++)
+            {
+                String value = "v" + (i * 7 % (count + 1));
+                assertEquals(value, expected.add(value), collector.add(value));
+            }
+            assertEquals(new ArrayList<String>(expected), new ArrayList<String>(collector));
+            assertEquals(expected, collector);
+            assertEquals(expected.size(), collector.size());
+            for (String value : expected)
+                assertTrue(collector.contains(value));
+            assertFalse(collector.contains("absent"));
+            assertEquals(Utils.join(expected, ", "), collector.join(", "));
+            assertEquals(new ArrayList<String>(expected), new ArrayList<String>(collector.toSet()));
+            collector.release();
+        }
+    }
+
+    /**
+     * the value put in a solr document is null, the value itself, or a copy
+     *  of the values that isn't changed when the collector is reused
+     */
+    @Test
+    public void testToFieldValue()
+    {
+        ValueCollector collector = ValueCollector.acquire();
+        assertNull(collector.toFieldValue());
+        assertNull(collector.first());
+        collector.add("one");
+        assertEquals("one", collector.toFieldValue());
+        collector.add("two");
+        Object fieldValue = collector.toFieldValue();
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("one", "two")), fieldValue);
+        collector.release();
+
+        ValueCollector reused = ValueCollector.acquire();
+        assertSame(collector, reused);
+        assertTrue(reused.isEmpty());
+        reused.add("three");
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("one", "two")), fieldValue);
+        reused.release();
+    }
+
+    /**
+     * a collector is only handed out again once released, and released only
+     *  once however often release is called
+     */
+    @Test
+    public void testPooling()
+    {
+        ValueCollector first = ValueCollector.acquire();
+        ValueCollector second = ValueCollector.acquire();
+        assertNotSame(first, second);
+        first.release();
+        first.release();
+        assertSame(first, ValueCollector.acquire());
+        assertNotSame(first, ValueCollector.acquire());
+        second.release();
+    }
+}
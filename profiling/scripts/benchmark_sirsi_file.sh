@@ -0,0 +1,27 @@
+#! /bin/bash
+# benchmark_sirsi_file.sh
+# Read and map a marc file from the sirsi full dump without sending anything
+#  to Solr, and report the throughput and allocation of each stage
+#  (Profiling flavor)
+#
+# e.g. benchmark_sirsi_file.sh uni_00000000_00499999.marc
+
+# take an argument for the marc file, relative to the raw data directory
+MARC_FILE=$1
+
+HOMEDIR=/home/blacklight
+SOLRMARC_BASEDIR=$HOMEDIR/music-profiling
+
+RAW_DATA_DIR=/data/sirsi/latest
+
+JAVA_HOME=/usr/lib/jvm/java
+
+# set up the classpath
+DIST_DIR=$SOLRMARC_BASEDIR/dist
+SITE_JAR=$DIST_DIR/ProfilingSolrMarc.jar
+CP=$SITE_JAR:$DIST_DIR:$DIST_DIR/lib
+
+# the stage report is printed at the end
+java -Xmx4g -Xms1g -Dsolrmarc.benchmark="true" -cp $CP -jar $SITE_JAR $RAW_DATA_DIR/$MARC_FILE
+
+exit 0
@@ -0,0 +1,37 @@
+#! /bin/bash
+# index_sirsi_all_one_jvm.sh
+# Import all marc files from sirsi full dump into a Solr index, in a single JVM
+#  indexing several files at once  (Profiling flavor)
+#
+# takes the place of running index_sirsi_0000_1049.sh, which starts a JVM per
+#  group of files
+
+# take an argument for the name of the log subdirectory
+LOG_SUBDIR=$1
+# and optionally the number of files to index at once
+FILE_THREADS=${2:-4}
+
+HOMEDIR=/home/blacklight
+SOLRMARC_BASEDIR=$HOMEDIR/music-profiling
+
+RAW_DATA_DIR=/data/sirsi/latest
+
+JAVA_HOME=/usr/lib/jvm/java
+
+# create fresh dist files
+#ant -buildfile $SOLRMARC_BASEDIR/build.xml dist_site
+
+# set up the classpath
+DIST_DIR=$SOLRMARC_BASEDIR/dist
+SITE_JAR=$DIST_DIR/ProfilingSolrMarc.jar
+CP=$SITE_JAR:$DIST_DIR:$DIST_DIR/lib
+
+# create log directory
+LOG_PARENT_DIR=$RAW_DATA_DIR/logs
+LOG_DIR=$LOG_PARENT_DIR/$LOG_SUBDIR
+mkdir -p $LOG_DIR
+
+# index the files
+nohup java -Xmx4g -Xms1g -Dsolrmarc.indexing.file_threads=$FILE_THREADS -Dsolr.commit_at_end="true" -cp $CP -jar $SITE_JAR $RAW_DATA_DIR/uni_*.marc &>$LOG_DIR/log_all.txt
+
+exit 0
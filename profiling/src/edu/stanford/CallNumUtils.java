@@ -835,7 +835,7 @@ public class CallNumUtils
 				if (isGovDoc)
 				{
 					// 086 has no sub b
-					List<DataField> df086List = record.getVariableFields("086");
+					List<DataField> df086List = RecordTagIndex.getFields(record, "086");
 					for (DataField df : df086List)
 					{
 						String suba = MarcUtils.getSubfieldData(df, 'a');
@@ -895,7 +895,7 @@ public class CallNumUtils
 	{
 		List<String> results = new ArrayList<String>();
 
-		List<DataField> dfList = record.getVariableFields(tag);
+		List<DataField> dfList = RecordTagIndex.getFields(record, tag);
 		for (DataField df : dfList)
 		{
 			String suba = MarcUtils.getSubfieldData(df, 'a');
@@ -216,7 +216,7 @@ public class FormatUtils {
 	 * @return true if there is a 502 field, false otherwise
 	 */
 	static boolean isThesis(Record record) {
-        if (record.getVariableFields("502").isEmpty())
+        if (RecordTagIndex.getFields(record, "502").isEmpty())
 			return false;
 		else
 			return true;
@@ -5,8 +5,10 @@ import java.text.ParseException;
 import java.util.*;
 import java.util.regex.*;
 
+import org.marc4j.ErrorHandler;
 import org.marc4j.marc.*;
 //could import static, but this seems clearer
+import org.solrmarc.index.RecordContext;
 import org.solrmarc.tools.*;
 
 import edu.stanford.enumValues.*;
@@ -45,7 +47,21 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	public StanfordIndexer(String indexingPropsFile, String[] propertyDirs)
     		throws FileNotFoundException, IOException, ParseException
     {
-		super(indexingPropsFile, propertyDirs);
+		this(indexingPropsFile, propertyDirs, null);
+	}
+
+	/**
+	 * Constructor using a snapshot of the configuration, including the
+	 *  location lists, when the files it was made from are unchanged
+     * @param indexingPropsFile the name of xxx_index.properties file mapping
+     *  solr field names to values in the marc records
+     * @param propertyDirs - array of directories holding properties files
+     * @param snapshotFile - the configuration snapshot, or null
+	 */
+	public StanfordIndexer(String indexingPropsFile, String[] propertyDirs, File snapshotFile)
+    		throws FileNotFoundException, IOException, ParseException
+    {
+		super(indexingPropsFile, propertyDirs, snapshotFile);
         try
         {
         	LOCATION_MAP_NAME = loadTranslationMap(null, "location_map.properties");
@@ -55,70 +71,105 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 			e.printStackTrace();
 		}
 
-        SKIPPED_LOCS = PropertiesUtils.loadPropertiesSet(propertyDirs, "locations_skipped_list.properties");
-        MISSING_LOCS = PropertiesUtils.loadPropertiesSet(propertyDirs, "locations_missing_list.properties");
-        ONLINE_LOCS = PropertiesUtils.loadPropertiesSet(propertyDirs, "locations_online_list.properties");
-        GOV_DOC_LOCS = PropertiesUtils.loadPropertiesSet(propertyDirs, "gov_doc_location_list.properties");
-        SHELBY_LOCS = PropertiesUtils.loadPropertiesSet(propertyDirs, "locations_shelby_list.properties");
-        BIZ_SHELBY_LOCS = PropertiesUtils.loadPropertiesSet(propertyDirs, "locations_biz_shelby_list.properties");
-        SKIPPED_CALLNUMS = PropertiesUtils.loadPropertiesSet(propertyDirs, "callnums_skipped_list.properties");
-        // try to reuse HashSet, etc. objects instead of creating fresh each time
-        formats = new LinkedHashSet<String>();
-    	sfxUrls = new LinkedHashSet<String>();
-    	fullTextUrls = new LinkedHashSet<String>();
-    	buildings = new HashSet<String>();
-    	shelfkeys = new HashSet<String>();
-    	govDocCats = new HashSet<String>();
-    	itemSet = new LinkedHashSet<Item>();
+        SKIPPED_LOCS = loadPropertiesSet("locations_skipped_list.properties");
+        MISSING_LOCS = loadPropertiesSet("locations_missing_list.properties");
+        ONLINE_LOCS = loadPropertiesSet("locations_online_list.properties");
+        GOV_DOC_LOCS = loadPropertiesSet("gov_doc_location_list.properties");
+        SHELBY_LOCS = loadPropertiesSet("locations_shelby_list.properties");
+        BIZ_SHELBY_LOCS = loadPropertiesSet("locations_biz_shelby_list.properties");
+        SKIPPED_CALLNUMS = loadPropertiesSet("callnums_skipped_list.properties");
 	}
 
-	// variables used in more than one method
-	/** the id of the record - used for error messages in addition to id field */
-	String id = null;
-	/** the formats of the record - used for item_display in addition to format field */
-	Set<String> formats;
-	/** sfxUrls are used for access_method in addition to sfxUrl field */
-	Set<String> sfxUrls;
-	/** fullTextUrls are used for access_method in addition to fullTextUrl field */
-	Set<String> fullTextUrls;
-	/** buildings are used for topics due to weird law 655s */
-	Set<String> buildings;
-	/** shelfkeys are used for reverse_shelfkeys */
-	Set<String> shelfkeys;
-	/** govDocCats are used for top level call number facet */
-	Set<String> govDocCats;
-	/** isSerial is used for shelfkeys and item_display */
-	boolean isSerial;
-
-	/** 008 field */
-	ControlField cf008 = null;
-	/** cf008date1 is bytes 7-10 (0 based index) in 008 field */
-	String cf008date1 = null;
-	/** date260c is a four character String containing year from 260c
-	 * "cleaned" per DateUtils.cleanDate() */
-	String date260c = null;
-	/** Set of 020 subfield a */
-	Set<String> f020suba;
-	/** Set of 020 subfield z */
-	Set<String> f020subz;
-	/** List of 024 DataFields */
-	List<DataField> list024df;
-	/** Set of 655 subfield a */
-	Set<String> f655suba;
-	/** Set of 956 subfield u */
-	Set<String> f956subu;
-
-	/** all items without skipped locations (shadowed, withdrawn) as a Set of
-	 *  Item objects */
-	Set<Item> itemSet;
-
-	/** true if the record has items, false otherwise.  Used to detect on-order records */
-	boolean has999s = false;
-
-	/** all LC call numbers from the items without skipped locations */
-	Set<String> lcCallnums;
-	/** all Dewey call numbers from the items without skipped locations */
-	Set<String> deweyCallnums;
+	/**
+	 * the state worked out for each record in perRecordInit and used by
+	 *  several custom methods.  It is kept with the record, not in the
+	 *  indexer, so one StanfordIndexer can index records on several threads
+	 *  at once.
+	 */
+	static class StanfordRecordContext extends RecordContext
+	{
+		/** the id of the record - used for error messages in addition to id field */
+		String id = null;
+		/** the formats of the record - used for item_display in addition to format field */
+		Set<String> formats = new LinkedHashSet<String>();
+		/** sfxUrls are used for access_method in addition to sfxUrl field */
+		Set<String> sfxUrls = new LinkedHashSet<String>();
+		/** fullTextUrls are used for access_method in addition to fullTextUrl field */
+		Set<String> fullTextUrls = new LinkedHashSet<String>();
+		/** buildings are used for topics due to weird law 655s */
+		Set<String> buildings = new HashSet<String>();
+		/** shelfkeys are used for reverse_shelfkeys */
+		Set<String> shelfkeys = new HashSet<String>();
+		/** govDocCats are used for top level call number facet */
+		Set<String> govDocCats = new HashSet<String>();
+		/** isSerial is used for shelfkeys and item_display */
+		boolean isSerial;
+
+		/** 008 field */
+		ControlField cf008 = null;
+		/** cf008date1 is bytes 7-10 (0 based index) in 008 field */
+		String cf008date1 = null;
+		/** date260c is a four character String containing year from 260c
+		 * "cleaned" per DateUtils.cleanDate() */
+		String date260c = null;
+		/** Set of 020 subfield a */
+		Set<String> f020suba;
+		/** Set of 020 subfield z */
+		Set<String> f020subz;
+		/** List of 024 DataFields */
+		List<DataField> list024df;
+		/** Set of 655 subfield a */
+		Set<String> f655suba;
+		/** Set of 956 subfield u */
+		Set<String> f956subu;
+
+		/** all items without skipped locations (shadowed, withdrawn) as a Set of
+		 *  Item objects */
+		Set<Item> itemSet = new LinkedHashSet<Item>();
+
+		/** true if the record has items, false otherwise.  Used to detect on-order records */
+		boolean has999s = false;
+
+		/** all LC call numbers from the items without skipped locations */
+		Set<String> lcCallnums;
+		/** all Dewey call numbers from the items without skipped locations */
+		Set<String> deweyCallnums;
+
+		StanfordRecordContext(Record record, ErrorHandler errors)
+		{
+			super(record, errors);
+		}
+	}
+
+	@Override
+	protected RecordContext newRecordContext(Record record, ErrorHandler errors)
+	{
+		return new StanfordRecordContext(record, errors);
+	}
+
+	/**
+	 * the per-record state is in the context of each record
+	 */
+	@Override
+	public boolean isThreadSafe()
+	{
+		return mixinsAreThreadSafe();
+	}
+
+	/**
+	 * @return the state of the record being indexed; if a custom method is
+	 *  called for a record that isn't being indexed, the state is worked out
+	 *  for it now
+	 */
+	private StanfordRecordContext context(Record record)
+	{
+		RecordContext context = RecordContext.forRecord(record);
+		if (context instanceof StanfordRecordContext)
+			return (StanfordRecordContext) context;
+		StanfordRecordContext newContext = new StanfordRecordContext(record, null);
+		perRecordInit(newContext);
+		return newContext;
+	}
 
 	/**
 	 * Method from superclass allowing processing that can be done once per
@@ -127,30 +178,32 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record - The MARC record that is being indexed.
 	 */
 	@SuppressWarnings("unchecked")
-	protected void perRecordInit(Record record) {
-		cf008 = (ControlField) record.getVariableField("008");
-		if (cf008 != null)
-			cf008date1 = cf008.getData().substring(7, 11);
+	protected void perRecordInit(RecordContext context) {
+		StanfordRecordContext ctx = (StanfordRecordContext) context;
+		Record record = context.getRecord();
+		ctx.cf008 = (ControlField) RecordTagIndex.getField(record, "008");
+		if (ctx.cf008 != null)
+			ctx.cf008date1 = ctx.cf008.getData().substring(7, 11);
 		else
-			cf008date1 = null;
-		date260c = MarcUtils.getDate(record);
-		f020suba = MarcUtils.getFieldList(record, "020a");
-		f020subz = MarcUtils.getFieldList(record, "020z");
-		f655suba = MarcUtils.getFieldList(record, "655a");
-		f956subu = MarcUtils.getFieldList(record, "956u");
-		list024df = (List<DataField>) record.getVariableFields("024");
-
-		List<DataField> list999df = (List<DataField>) record.getVariableFields("999");
-		has999s = !list999df.isEmpty();
-
-		setId(record);
+			ctx.cf008date1 = null;
+		ctx.date260c = MarcUtils.getDate(record);
+		ctx.f020suba = MarcUtils.getFieldList(record, "020a");
+		ctx.f020subz = MarcUtils.getFieldList(record, "020z");
+		ctx.f655suba = MarcUtils.getFieldList(record, "655a");
+		ctx.f956subu = MarcUtils.getFieldList(record, "956u");
+		ctx.list024df = (List<DataField>) RecordTagIndex.getFields(record, "024");
+
+		List<DataField> list999df = (List<DataField>) RecordTagIndex.getFields(record, "999");
+		ctx.has999s = !list999df.isEmpty();
+
+		setId(record, ctx);
 		boolean getBrowseCallnumFromBib = true;
 
-		itemSet.clear();
+		ctx.itemSet.clear();
 		for (DataField df999 : list999df) {
-			Item item = new Item(df999, id);
+			Item item = new Item(df999, ctx.id);
 			if (!item.shouldBeSkipped())
-				itemSet.add(item);
+				ctx.itemSet.add(item);
 			// we need to get a browseable call number from bib only if
 			//   all items are online, or all items have callnum of "NO CALL NUMBER"
 			if (getBrowseCallnumFromBib) {
@@ -159,29 +212,29 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 			}
 		}
 
-		setFormats(record);
-		isSerial = formats.contains(Format.JOURNAL_PERIODICAL.toString());
-		ItemUtils.lopItemCallnums(itemSet, findTranslationMap(LOCATION_MAP_NAME), isSerial);
-		setSFXUrls(); // doesn't need record b/c they come from 999
-		setFullTextUrls(record);
-		setBuildings(record);
-		setGovDocCats(record);
+		setFormats(record, ctx);
+		ctx.isSerial = ctx.formats.contains(Format.JOURNAL_PERIODICAL.toString());
+		ItemUtils.lopItemCallnums(ctx.itemSet, findTranslationMap(LOCATION_MAP_NAME), ctx.isSerial);
+		setSFXUrls(ctx); // doesn't need record b/c they come from 999
+		setFullTextUrls(record, ctx);
+		setBuildings(record, ctx);
+		setGovDocCats(record, ctx);
 
 		if (getBrowseCallnumFromBib) {
 			// get a call number from the bib fields, if there is one
-			boolean isGovDoc = !govDocCats.isEmpty();
-			CallNumUtils.setCallnumsFromBib(record, itemSet, isGovDoc);
+			boolean isGovDoc = !ctx.govDocCats.isEmpty();
+			CallNumUtils.setCallnumsFromBib(record, ctx.itemSet, isGovDoc);
 		}
 
-		setShelfkeys(record);
+		setShelfkeys(record, ctx);
 
-		lcCallnums = CallNumUtils.getLCcallnums(itemSet);
-		for (String callnum : lcCallnums) {
+		ctx.lcCallnums = CallNumUtils.getLCcallnums(ctx.itemSet);
+		for (String callnum : ctx.lcCallnums) {
 			if (!org.solrmarc.tools.CallNumUtils.isValidLC(callnum))
-				lcCallnums.remove(callnum);
+				ctx.lcCallnums.remove(callnum);
 		}
 
-		deweyCallnums = CallNumUtils.getDeweyNormCallnums(itemSet);
+		ctx.deweyCallnums = CallNumUtils.getDeweyNormCallnums(ctx.itemSet);
 	}
 
 // Id Methods  -------------------- Begin --------------------------- Id Methods
@@ -191,7 +244,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public String getId(final Record record) {
-		return id;
+		StanfordRecordContext ctx = context(record);
+		return ctx.id;
 	}
 
 	/**
@@ -199,15 +253,15 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * Marc4j is unhappy with subfields in a control field so this is a kludge
 	 * work around.
 	 */
-	private void setId(final Record record)
+	private void setId(final Record record, StanfordRecordContext ctx)
 	{
-		id = null;
-		ControlField fld = (ControlField) record.getVariableField("001");
+		ctx.id = null;
+		ControlField fld = (ControlField) RecordTagIndex.getField(record, "001");
 		if (fld != null && fld.getData() != null)
 		{
 			String rawVal = fld.getData();
 			if (rawVal.startsWith("a"))
-				id = rawVal.substring(1);
+				ctx.id = rawVal.substring(1);
 		}
 	}
 
@@ -228,15 +282,16 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public String getMusicRecords(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		String COLL_VAL = "music";
-		if (formats.contains(Format.MUSIC_SCORE.toString()) ||
-			formats.contains(Format.MUSIC_RECORDING.toString()) ||
-			formats.contains(Format.SOUND_RECORDING.toString()))
+		if (ctx.formats.contains(Format.MUSIC_SCORE.toString()) ||
+			ctx.formats.contains(Format.MUSIC_RECORDING.toString()) ||
+			ctx.formats.contains(Format.SOUND_RECORDING.toString()))
 			return COLL_VAL;
 
-		if (formats.contains(Format.BOOK.toString()))
+		if (ctx.formats.contains(Format.BOOK.toString()))
 		{
-			for (Item item : itemSet) {
+			for (Item item : ctx.itemSet) {
 				if (item.getCallnumType() == CallNumberType.LC)
 				{
 					String callnum = item.getCallnum();
@@ -259,7 +314,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getFormats(final Record record)
 	{
-		return formats;
+		StanfordRecordContext ctx = context(record);
+		return ctx.formats;
 	}
 
 	/**
@@ -269,21 +325,21 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 *  Hughes, and Jennifer Vine dated July 23, 2008.
 	 */
 	@SuppressWarnings("unchecked")
-	private void setFormats(final Record record)
+	private void setFormats(final Record record, StanfordRecordContext ctx)
 	{
-		formats.clear();
+		ctx.formats.clear();
 
 		// assign formats based on leader chars 06, 07 and chars in 008
 		String leaderStr = record.getLeader().marshal();
-		formats.addAll(FormatUtils.getFormatsPerLdrAnd008(leaderStr, cf008));
+		ctx.formats.addAll(FormatUtils.getFormatsPerLdrAnd008(leaderStr, ctx.cf008));
 
-		if (formats.isEmpty()) {
+		if (ctx.formats.isEmpty()) {
 			// see if it's a serial for format assignment
 			char leaderChar07 = leaderStr.charAt(7);
-			VariableField f006 = record.getVariableField("006");
-			String serialFormat = FormatUtils.getSerialFormat(leaderChar07, cf008, f006);
+			VariableField f006 = RecordTagIndex.getField(record, "006");
+			String serialFormat = FormatUtils.getSerialFormat(leaderChar07, ctx.cf008, f006);
 			if (serialFormat != null)
-				formats.add(serialFormat);
+				ctx.formats.add(serialFormat);
 		}
 
 		// look for conference proceedings in 6xx
@@ -294,8 +350,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 				subList.addAll(MarcUtils.getSubfieldStrings(df, 'v'));
 				for (String s : subList) {
 					if (s.toLowerCase().contains("congresses")) {
-						formats.remove(Format.JOURNAL_PERIODICAL.toString());
-						formats.add(Format.CONFERENCE_PROCEEDINGS.toString());
+						ctx.formats.remove(Format.JOURNAL_PERIODICAL.toString());
+						ctx.formats.add(Format.CONFERENCE_PROCEEDINGS.toString());
 					}
 				}
 			}
@@ -303,29 +359,29 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 
 		// check for format information from 999 ALPHANUM call numbers
 		// and from itemType (999 subfield t)
-		for (Item item : itemSet) {
+		for (Item item : ctx.itemSet) {
 			if (item.getCallnumType() == CallNumberType.OTHER) {
 				String callnum = item.getCallnum();
 				if (callnum.startsWith("MFILM") || callnum.startsWith("MFICHE"))
-					formats.add(Format.MICROFORMAT.toString());
+					ctx.formats.add(Format.MICROFORMAT.toString());
 				else if (callnum.startsWith("MCD"))
-					formats.add(Format.MUSIC_RECORDING.toString());
+					ctx.formats.add(Format.MUSIC_RECORDING.toString());
 				else if (callnum.startsWith("ZDVD") || callnum.startsWith("ADVD"))
-					formats.add(Format.VIDEO.toString());
+					ctx.formats.add(Format.VIDEO.toString());
 			}
 			if (item.getType().equalsIgnoreCase("DATABASE"))
-				formats.add(Format.DATABASE_A_Z.toString());
+				ctx.formats.add(Format.DATABASE_A_Z.toString());
 		}
 
 		if (FormatUtils.isMicroformat(record))
-			formats.add(Format.MICROFORMAT.toString());
+			ctx.formats.add(Format.MICROFORMAT.toString());
 
 		if (FormatUtils.isThesis(record))
-			formats.add(Format.THESIS.toString());
+			ctx.formats.add(Format.THESIS.toString());
 
 		// if we still don't have a format, it's an "other"
-		if (formats.isEmpty() || formats.size() == 0)
-			formats.add(Format.OTHER.toString());
+		if (ctx.formats.isEmpty() || ctx.formats.size() == 0)
+			ctx.formats.add(Format.OTHER.toString());
 	}
 // Format Methods  ---------------- End ------------------------- Format Methods
 
@@ -371,8 +427,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> get024(final Record record, String desiredInd1Val, String desiredSubFlds)
 	{
+		StanfordRecordContext ctx = context(record);
 		Set<String> results = new LinkedHashSet<String>();
-		for (DataField df024 : list024df)
+		for (DataField df024 : ctx.list024df)
 		{
 			if (df024.getIndicator1() == desiredInd1Val.charAt(0))
 			{
@@ -400,15 +457,16 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getISBNs(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		// ISBN algorithm
 		// 1. all 020 subfield a starting with 10 or 13 digits (last "digit" may be X). Ignore following text.
 		// 2. if no ISBN from any 020 subfield a "yields a search result", use all 020 subfield z starting with 10 or 13 digits (last "digit" may be X). Ignore following text.
 		Set<String> isbnSet = new LinkedHashSet<String>();
-		if (!f020suba.isEmpty())
-			isbnSet.addAll(Utils.returnValidISBNs(f020suba));
+		if (!ctx.f020suba.isEmpty())
+			isbnSet.addAll(Utils.returnValidISBNs(ctx.f020suba));
 
 		if (isbnSet.isEmpty()) {
-			isbnSet.addAll(Utils.returnValidISBNs(f020subz));
+			isbnSet.addAll(Utils.returnValidISBNs(ctx.f020subz));
 		}
 		return isbnSet;
 	}
@@ -422,6 +480,7 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getUserISBNs(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		// ISBN algorithm - more inclusive
     	// 1. all 020 subfield a starting with 10 or 13 digits (last "digit" may be X). Ignore following text.
 		// AND
@@ -432,8 +491,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 
 		Set<String> isbnSet = new HashSet<String>();
 
-		Set<String> allCandidates = new HashSet<String>(f020suba);
-		allCandidates.addAll(f020subz);
+		Set<String> allCandidates = new HashSet<String>(ctx.f020suba);
+		allCandidates.addAll(ctx.f020subz);
 		allCandidates.addAll(MarcUtils.getFieldList(record, "770z:771z:772z:773z:774z:775z:776z:777z:778z:779z"));
 		allCandidates.addAll(MarcUtils.getFieldList(record, "780z:781z:782z:783z:784z:785z:786z:787z:788z:789z"));
 		isbnSet.addAll(Utils.returnValidISBNs(allCandidates));
@@ -539,12 +598,12 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 		StringBuilder resultBuf = new StringBuilder();
 
 		// uniform title
-		DataField df = (DataField) record.getVariableField("130");
+		DataField df = (DataField) RecordTagIndex.getField(record, "130");
 		if (df != null)
 			resultBuf.append(MarcUtils.getAlphaSubfldsAsSortStr(df, false));
 
 		// 245 (required) title statement
-		df = (DataField) record.getVariableField("245");
+		df = (DataField) RecordTagIndex.getField(record, "245");
 		if (df != null)
 			resultBuf.append(MarcUtils.getAlphaSubfldsAsSortStr(df, true));
 
@@ -685,9 +744,10 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
     public Set<String> getTopicAllAlphaExcept(final Record record, final String fieldSpec)
     {
+		StanfordRecordContext ctx = context(record);
 		Set<String> resultSet = MarcUtils.getAllAlphaExcept(record, fieldSpec);
-		if (buildings.contains("LANE-MED"))
-			resultSet.removeAll(f655suba);
+		if (ctx.buildings.contains("LANE-MED"))
+			resultSet.removeAll(ctx.f655suba);
 		resultSet.remove("nomesh");
 		return resultSet;
 	}
@@ -717,9 +777,10 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
     public Set<String> getTopicWithoutTrailingPunct(final Record record, final String fieldSpec, String charsToReplaceRegEx, String charsB4periodRegEx)
     {
+    	StanfordRecordContext ctx = context(record);
     	Set<String> resultSet = removeTrailingPunct(record, fieldSpec, charsToReplaceRegEx, charsB4periodRegEx);
-		if (buildings.contains("LANE-MED"))
-			resultSet.removeAll(f655suba);
+		if (ctx.buildings.contains("LANE-MED"))
+			resultSet.removeAll(ctx.f655suba);
 		resultSet.remove("nomesh");
 		return resultSet;
 	}
@@ -777,8 +838,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getDbAZSubjects(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		Set<String> subjectsSet = new LinkedHashSet<String>();
-		if (formats.contains(Format.DATABASE_A_Z.toString())) {
+		if (ctx.formats.contains(Format.DATABASE_A_Z.toString())) {
 			subjectsSet = MarcUtils.getFieldList(record, "099a");
 		}
 		// add second value for those codes mapping to two values
@@ -827,18 +889,19 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getAccessMethods(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		Set<String> resultSet = new HashSet<String>();
 
-		for (Item item : itemSet) {
+		for (Item item : ctx.itemSet) {
 			if (item.isOnline())
 				resultSet.add(Access.ONLINE.toString());
 			else
 				resultSet.add(Access.AT_LIBRARY.toString());
 		}
 
-		if (fullTextUrls.size() > 0)
+		if (ctx.fullTextUrls.size() > 0)
 			resultSet.add(Access.ONLINE.toString());
-		if (sfxUrls.size() > 0)
+		if (ctx.sfxUrls.size() > 0)
 			resultSet.add(Access.ONLINE.toString());
 
 		return resultSet;
@@ -855,19 +918,20 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
      */
     public Set<String> getSFXUrls(final Record record)
     {
-    	return sfxUrls;
+    	StanfordRecordContext ctx = context(record);
+    	return ctx.sfxUrls;
 	}
 
 	/**
 	 * assign sfxUrls to be strings containing the sfx urls in a record.
 	 */
-	private void setSFXUrls()
+	private void setSFXUrls(StanfordRecordContext ctx)
 	{
-		sfxUrls.clear();
+		ctx.sfxUrls.clear();
 		// all 956 subfield u contain fulltext urls that aren't SFX
-		for (String url : f956subu) {
+		for (String url : ctx.f956subu) {
 			if (isSFXUrl(url))
-				sfxUrls.add(url);
+				ctx.sfxUrls.add(url);
 		}
 	}
 
@@ -877,7 +941,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getFullTextUrls(final Record record)
 	{
-		return fullTextUrls;
+		StanfordRecordContext ctx = context(record);
+		return ctx.fullTextUrls;
 	}
 
 	/**
@@ -885,26 +950,26 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 *  described by the 856u
 	 * @param record a marc4j Record object
 	 */
-	private void setFullTextUrls(final Record record) {
-		fullTextUrls.clear();
+	private void setFullTextUrls(final Record record, StanfordRecordContext ctx) {
+		ctx.fullTextUrls.clear();
 
 		// get full text urls from 856, then check for gsb forms
-		fullTextUrls = super.getFullTextUrls(record);
+		ctx.fullTextUrls = super.getFullTextUrls(record);
 
 		// avoid ConcurrentModificationException  SW-322
-		String[] urlArray = new String[fullTextUrls.size()];
-		urlArray = fullTextUrls.toArray(urlArray);
+		String[] urlArray = new String[ctx.fullTextUrls.size()];
+		urlArray = ctx.fullTextUrls.toArray(urlArray);
 		for (int i = 0; i < urlArray.length; i++) {
 			String possUrl = urlArray[i];
        		if (possUrl.startsWith("http://www.gsb.stanford.edu/jacksonlibrary/services/") ||
          		     possUrl.startsWith("https://www.gsb.stanford.edu/jacksonlibrary/services/"))
-				fullTextUrls.remove(possUrl);
+				ctx.fullTextUrls.remove(possUrl);
 		}
 
 		// get all 956 subfield u containing fulltext urls that aren't SFX
-		for (String url : f956subu) {
+		for (String url : ctx.f956subu) {
 			if (!isSFXUrl(url))
-				fullTextUrls.add(url);
+				ctx.fullTextUrls.add(url);
 		}
 	}
 
@@ -923,7 +988,7 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 
     	Pattern RESTRICTED_PATTERN = Pattern.compile("available to stanford-affiliated users at:", Pattern.CASE_INSENSITIVE);
 
-        List<VariableField> list856 = record.getVariableFields("856");
+        List<VariableField> list856 = RecordTagIndex.getFields(record, "856");
         for (VariableField vf : list856)
         {
             DataField df = (DataField) vf;
@@ -990,7 +1055,7 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
     @SuppressWarnings("unchecked")
 	public Set<String> getPublication(final Record record)
     {
-    	return PublicationUtils.getPublication(record.getVariableFields(new String[]{"260", "264"}));
+    	return PublicationUtils.getPublication(RecordTagIndex.getFields(record, new String[]{"260", "264"}));
 	}
 
 
@@ -1003,7 +1068,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
      */
     public String get008Date1(final Record record, String byte6vals)
     {
-    	return PublicationUtils.get008Date1(cf008, byte6vals);
+    	StanfordRecordContext ctx = context(record);
+    	return PublicationUtils.get008Date1(ctx.cf008, byte6vals);
     }
 
     /**
@@ -1016,7 +1082,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
      */
     public String get008Date2(final Record record, String byte6vals)
     {
-    	return PublicationUtils.get008Date2(cf008, byte6vals);
+    	StanfordRecordContext ctx = context(record);
+    	return PublicationUtils.get008Date2(ctx.cf008, byte6vals);
     }
 
     /**
@@ -1036,7 +1103,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	**/
     public String getOtherYear(final Record record)
     {
-    	return PublicationUtils.getOtherYear(cf008, id, logger);
+    	StanfordRecordContext ctx = context(record);
+    	return PublicationUtils.getOtherYear(ctx.cf008, ctx.id, logger);
     }
 
     /**
@@ -1090,7 +1158,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public String getPubDate(final Record record)
 	{
-		return PublicationUtils.getPubDate(cf008date1, date260c, record.getVariableFields("264"), id, logger);
+		StanfordRecordContext ctx = context(record);
+		return PublicationUtils.getPubDate(ctx.cf008date1, ctx.date260c, RecordTagIndex.getFields(record, "264"), ctx.id, logger);
 	}
 
 	/**
@@ -1103,7 +1172,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getPubDateSliderVals(final Record record)
 	{
-		return PublicationUtils.getPubDateSliderVals(cf008, MarcUtils.getFieldList(record, "260c"), id, logger);
+		StanfordRecordContext ctx = context(record);
+		return PublicationUtils.getPubDateSliderVals(ctx.cf008, MarcUtils.getFieldList(record, "260c"), ctx.id, logger);
 	}
 
 	/**
@@ -1116,7 +1186,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @return String containing publication date, or null if none
 	 */
 	public String getPubDateSort(final Record record) {
-		return PublicationUtils.getPubDateSort(cf008, date260c, record.getVariableFields("264"));
+		StanfordRecordContext ctx = context(record);
+		return PublicationUtils.getPubDateSort(ctx.cf008, ctx.date260c, RecordTagIndex.getFields(record, "264"));
 	}
 
 	/**
@@ -1132,7 +1203,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getPubDateGroups(final Record record)
 	{
-		return PublicationUtils.getPubDateGroups(cf008date1, date260c, record.getVariableFields("264"));
+		StanfordRecordContext ctx = context(record);
+		return PublicationUtils.getPubDateGroups(ctx.cf008date1, ctx.date260c, RecordTagIndex.getFields(record, "264"));
 	}
 
 // Pub Date Methods  --------------  End  --------------------- Pub Date Methods
@@ -1163,30 +1235,45 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 		keepers9xx.add("986");
 	}
 
+	/**
+	 * the text of the 1xx-8xx fields and the keepers, and of any field whose
+	 *  tag isn't three digits, unless it starts with 0 or 9
+	 */
+	private final AllFieldsText allFieldsText = new AllFieldsText(100, 900, keeperTags(), false, true, AllFieldsText.NO_CAP)
+	{
+		@Override
+		protected boolean wantsOtherTag(String tag)
+		{
+			return !tag.startsWith("0") && !tag.startsWith("9");
+		}
+	};
+
+	/** the text of the alphabetic subfields of the 880 fields */
+	private final AllFieldsText linkedFieldsText = new AllFieldsText(880, 881, new String[0], true, true, AllFieldsText.NO_CAP)
+	{
+		@Override
+		protected boolean wantsOtherTag(String tag)
+		{
+			return false;
+		}
+	};
+
+	private String[] keeperTags()
+	{
+		Set<String> keepers = new HashSet<String>(keepers0xx);
+		keepers.addAll(keepers9xx);
+		return keepers.toArray(new String[keepers.size()]);
+	}
+
 	/**
 	 * Returns all subfield contents of all the data fields (non control fields)
 	 *  between 100 and 899 inclusive, as a single string
 	 *  plus the "keeper" fields
 	 * @param record Marc record to extract data from
 	 */
-	@SuppressWarnings("unchecked")
 	public String getAllFields(final Record record)
 	{
-		StringBuilder result = new StringBuilder(5000);
-		List<DataField> dataFieldList = record.getDataFields();
-		for (DataField df : dataFieldList) {
-			String tag = df.getTag();
-			if ( (!tag.startsWith("0") || (tag.startsWith("0") && keepers0xx.contains(tag)))
-				&&
-				(!tag.startsWith("9") || (tag.startsWith("9") && keepers9xx.contains(tag))))
-			{
-				List<Subfield> subfieldList = df.getSubfields();
-				for (Subfield sf : subfieldList) {
-					result.append(sf.getData() + " ");
-				}
-			}
-		}
-		return result.toString().trim();
+		return allFieldsText.build(record);
 	}
 
 	/**
@@ -1195,24 +1282,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 *  plus the "keeper" fields
 	 * @param record Marc record to extract data from
 	 */
-	@SuppressWarnings("unchecked")
 	public String getAllLinkedSearchableFields(final Record record)
 	{
-		StringBuilder result = new StringBuilder(5000);
-	    List<VariableField> linkFldList = MarcUtils.getVariableFields(record, "880");
-		for (VariableField vf : linkFldList) {
-			if (vf instanceof DataField) {
-				List<Subfield> subfieldList = ((DataField) vf).getSubfields();
-				for (Subfield sf : subfieldList) {
-					if (sf.getCode() !=  '\u0000' && Character.isLetter(sf.getCode())) {
-						String d = sf.getData();
-						if (d != null && d.length() > 0)
-							result.append(sf.getData() + " ");
-					}
-				}
-			}
-		}
-		return result.toString().trim();
+		return linkedFieldsText.build(record);
 	}
 
 
@@ -1226,20 +1298,21 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getBuildings(final Record record) {
-		return buildings;
+		StanfordRecordContext ctx = context(record);
+		return ctx.buildings;
 	}
 
 	/**
 	 * set buildings from the 999 subfield m
 	 * @param record a marc4j Record object
 	 */
-	private void setBuildings(final Record record)
+	private void setBuildings(final Record record, StanfordRecordContext ctx)
 	{
-		buildings.clear();
-		for (Item item : itemSet) {
+		ctx.buildings.clear();
+		for (Item item : ctx.itemSet) {
 			String buildingStr = item.getLibrary();
 			if (buildingStr.length() > 0)
-				buildings.add(buildingStr);
+				ctx.buildings.add(buildingStr);
 		}
 	}
 
@@ -1257,12 +1330,13 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public String getPreferredItemBarcode(final Record record)
 	{
-		String barcode = ItemUtils.getPreferredItemBarcode(itemSet);
+		StanfordRecordContext ctx = context(record);
+		String barcode = ItemUtils.getPreferredItemBarcode(ctx.itemSet);
 		if (barcode == null || barcode.length() == 0) {
-			for (Item item : itemSet) {
+			for (Item item : ctx.itemSet) {
 				if ( ( item.isOnline() || item.hasIgnoredCallnum() )
 					 && item.hasSeparateBrowseCallnum()) {
-					String skey = item.getShelfkey(isSerial);
+					String skey = item.getShelfkey(ctx.isSerial);
 					if (skey != null && skey.length() > 0)
 						return item.getBarcode();
 				}
@@ -1280,10 +1354,11 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getItemDisplay(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new LinkedHashSet<String>();
 
 		// if there are no 999s, then it's on order
-		if (!has999s) {
+		if (!ctx.has999s) {
 			String sep = ItemUtils.SEP;
 			result.add( "" + sep +	// barcode
 						"" + sep + 	// library
@@ -1296,7 +1371,7 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 						"" + sep + 	// fullCallnum
 						""); 	// volSort
 		}
-		else result.addAll(ItemUtils.getItemDisplay(itemSet, isSerial, id));
+		else result.addAll(ItemUtils.getItemDisplay(ctx.itemSet, ctx.isSerial, ctx.id));
 
 		return result;
 	}
@@ -1313,7 +1388,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getMhldDisplay(final Record record)
 	{
-		MhldDisplayUtil mhldDisplayUtil = new MhldDisplayUtil(record, id);
+		StanfordRecordContext ctx = context(record);
+		MhldDisplayUtil mhldDisplayUtil = new MhldDisplayUtil(record, ctx.id);
 		return mhldDisplayUtil.getMhldDisplayValues();
 	}
 
@@ -1328,8 +1404,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getLocalCallNums(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new HashSet<String>();
-		for (Item item : itemSet) {
+		for (Item item : ctx.itemSet) {
 			if (!item.hasShelbyLoc()
 					&& !item.hasIgnoredCallnum()
 					&& !item.hasBadLcLaneCallnum()) {
@@ -1350,16 +1427,17 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getCallNumsLevel1(final Record record)
 	{
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new HashSet<String>();
-		for (String callnum : lcCallnums) {
+		for (String callnum : ctx.lcCallnums) {
 			result.add(callnum.substring(0, 1).toUpperCase());
 		}
 
 		// TODO: ?need to REMOVE LC callnum if it's a gov doc location? not sure.
-		if (govDocCats.size() > 0)
+		if (ctx.govDocCats.size() > 0)
 			result.add(CallNumUtils.GOV_DOC_TOP_FACET_VAL);
 
-		if (deweyCallnums.size() > 0)
+		if (ctx.deweyCallnums.size() > 0)
 			result.add(CallNumUtils.DEWEY_TOP_FACET_VAL);
 
 		return result;
@@ -1373,8 +1451,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getLCCallNumCats(final Record record) {
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new HashSet<String>();
-		for (String callnum : lcCallnums) {
+		for (String callnum : ctx.lcCallnums) {
 			String letters = org.solrmarc.tools.CallNumUtils.getLCstartLetters(callnum);
 			if (letters != null)
 				result.add(letters);
@@ -1390,8 +1469,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getLCCallNumsB4Cutter(final Record record) {
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new HashSet<String>();
-		for (String callnum : lcCallnums) {
+		for (String callnum : ctx.lcCallnums) {
 			result.add(org.solrmarc.tools.CallNumUtils.getPortionBeforeCutter(callnum));
 		}
 		return result;
@@ -1404,8 +1484,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getDeweyCallNumBroadCats(final Record record) {
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new HashSet<String>();
-		for (String callnum : deweyCallnums) {
+		for (String callnum : ctx.deweyCallnums) {
 				result.add(callnum.substring(0, 1) + "00s");
 		}
 
@@ -1419,8 +1500,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getDeweyCallNumCats(final Record record) {
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new HashSet<String>();
-		for (String callnum : deweyCallnums) {
+		for (String callnum : ctx.deweyCallnums) {
 				result.add(callnum.substring(0, 2) + "0s");
 		}
 
@@ -1434,8 +1516,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getDeweyCallNumsB4Cutter(final Record record) {
+		StanfordRecordContext ctx = context(record);
 		Set<String> result = new HashSet<String>();
-		for (String callnum : deweyCallnums) {
+		for (String callnum : ctx.deweyCallnums) {
 			result.add(org.solrmarc.tools.CallNumUtils.getPortionBeforeCutter(org.solrmarc.tools.CallNumUtils.addLeadingZeros(callnum)));
 		}
 		return result;
@@ -1447,7 +1530,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getGovDocCats(final Record record) {
-		return govDocCats;
+		StanfordRecordContext ctx = context(record);
+		return ctx.govDocCats;
 	}
 
 	/**
@@ -1457,17 +1541,17 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 *   presence of 086 field (use all 99s that aren't to be skipped)
 	 * @param record a marc4j Record object
 	 */
-	private void setGovDocCats(final Record record)
+	private void setGovDocCats(final Record record, StanfordRecordContext ctx)
 	{
-		govDocCats.clear();
+		ctx.govDocCats.clear();
 
-		boolean has086 = !record.getVariableFields("086").isEmpty();
+		boolean has086 = !RecordTagIndex.getFields(record, "086").isEmpty();
 
-		for (Item item : itemSet) {
+		for (Item item : ctx.itemSet) {
 			if (item.hasGovDocLoc() || has086
 				|| item.getCallnumType() == CallNumberType.SUDOC) {
 				String rawLoc = item.getHomeLoc();
-				govDocCats.add(CallNumUtils.getGovDocTypeFromLocCode(rawLoc));
+				ctx.govDocCats.add(CallNumUtils.getGovDocTypeFromLocCode(rawLoc));
 			}
 		}
 	}
@@ -1478,9 +1562,10 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * @param record a marc4j Record object
 	 */
 	public Set<String> getShelfkeys(final Record record) {
-		if (shelfkeys == null || shelfkeys.size() == 0)
-			setShelfkeys(record);
-		return shelfkeys;
+		StanfordRecordContext ctx = context(record);
+		if (ctx.shelfkeys == null || ctx.shelfkeys.size() == 0)
+			setShelfkeys(record, ctx);
+		return ctx.shelfkeys;
 	}
 
 	/**
@@ -1488,10 +1573,10 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 * numbers without volume info)
 	 * @param record a marc4j Record object
 	 */
-	private void setShelfkeys(final Record record)
+	private void setShelfkeys(final Record record, StanfordRecordContext ctx)
 	{
-		shelfkeys.clear();
-		shelfkeys.addAll(CallNumUtils.getShelfkeys(itemSet, id, isSerial));
+		ctx.shelfkeys.clear();
+		ctx.shelfkeys.addAll(CallNumUtils.getShelfkeys(ctx.itemSet, ctx.id, ctx.isSerial));
 	}
 
 	/**
@@ -1502,7 +1587,8 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 	 */
 	public Set<String> getReverseShelfkeys(final Record record)
 	{
-		return CallNumUtils.getReverseShelfkeys(itemSet, isSerial);
+		StanfordRecordContext ctx = context(record);
+		return CallNumUtils.getReverseShelfkeys(ctx.itemSet, ctx.isSerial);
 	}
 
 // Call Number Methods -------------- End ---------------- Call Number Methods
@@ -1629,9 +1715,10 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
 		Set<String> origVals = MarcUtils.getLinkedField(record, fieldSpec);
 		Set<String> result = new LinkedHashSet<String>();
 
+		String trailingCharsRegEx = "(" + charsToReplaceRegEx + ")+";
 		for (String val : origVals) {
 			result.add(Utils.removeAllTrailingCharAndPeriod(val,
-					"(" + charsToReplaceRegEx + ")+", charsB4periodRegEx));
+					trailingCharsRegEx, charsB4periodRegEx));
 		}
 		return result;
 	}
@@ -1664,8 +1751,9 @@ public class StanfordIndexer extends org.solrmarc.index.SolrIndexer
     public Set<String> removeTrailingPunct(final Record record, final String fieldSpec, String charsToReplaceRegEx, String charsB4periodRegEx)
     {
 		Set<String> resultSet = new LinkedHashSet<String>();
+		String trailingCharsRegEx = "(" + charsToReplaceRegEx + ")+";
 		for (String val : MarcUtils.getFieldList(record, fieldSpec)) {
-    		String result = Utils.removeAllTrailingCharAndPeriod(val, "(" + charsToReplaceRegEx + ")+", charsB4periodRegEx);
+    		String result = Utils.removeAllTrailingCharAndPeriod(val, trailingCharsRegEx, charsB4periodRegEx);
 			resultSet.add(result);
 		}
 